@@ -0,0 +1,17 @@
+package com.flowerfulfort.curl;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// JMH 실행 진입점. 할당량을 같이 보기 위해 gc 프로파일러를 항상 켬.
+// 나머지 인자는 JMH의 커맨드라인 옵션 그대로.
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
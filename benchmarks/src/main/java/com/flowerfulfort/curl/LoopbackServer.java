@@ -0,0 +1,257 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ThroughputSuite가 쓰는 루프백 HTTP/1.1 서버. 프레이밍과 연결 종료를 마음대로 정해야 해서
+// com.sun.net.httpserver 대신 소켓에 직접 씀. 연결마다 스레드 하나, keep-alive 지원.
+//
+//   GET  /data?size=N[&mode=length|chunked|eof][&chunk=N][&drip=ms][&close=1]
+//        N 바이트를 보냄. eof는 길이 없이 보내고 연결을 닫음. drip이면 chunk마다 ms씩 쉼.
+//   GET  /redirect/K/data?...   K번 302로 돌린 뒤 /data?... 를 보냄.
+//   POST, PUT 아무 경로         바디(Content-Length 또는 chunked)를 읽고 받은 바이트 수를 돌려줌.
+final class LoopbackServer implements Closeable {
+    // 보낼 바디는 이 버퍼를 되풀이해서 씀. 1 GB를 보내도 서버 쪽 할당은 없음.
+    private static final byte[] PATTERN = new byte[64 * 1024];
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    static {
+        for (int i = 0; i < PATTERN.length; i++) {
+            PATTERN[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService executor;
+
+    LoopbackServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "loopback-server");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.execute(this::accept);
+    }
+
+    // http://127.0.0.1:port
+    String base() {
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                executor.execute(() -> serve(s));
+            } catch (IOException e) {
+                // close()로 닫힌 경우.
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        try (s) {
+            InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+            OutputStream out = s.getOutputStream();
+            byte[] buf = new byte[64 * 1024];
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null)
+                    return;
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0)
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                                line.substring(colon + 1).trim());
+                }
+                if (line == null)
+                    return;
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 3)
+                    return;
+                boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+                if (parts[0].equals("POST") || parts[0].equals("PUT")) {
+                    if ("100-continue".equalsIgnoreCase(headers.get("expect"))) {
+                        out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                    }
+                    long received = readBody(in, headers, buf);
+                    if (received < 0)
+                        return;
+                    byte[] body = (received + "\n").getBytes(StandardCharsets.US_ASCII);
+                    writeHead(out, 200, "Content-Type: text/plain\r\nContent-Length: " + body.length + "\r\n");
+                    out.write(body);
+                    out.flush();
+                } else if (!respond(parts[1], out)) {
+                    return;
+                }
+                if (!keepAlive)
+                    return;
+            }
+        } catch (IOException e) {
+            // 클라이언트가 먼저 끊은 경우.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 응답을 보내고 연결을 계속 쓸 수 있으면 true.
+    private static boolean respond(String target, OutputStream out) throws IOException, InterruptedException {
+        int q = target.indexOf('?');
+        String path = q >= 0 ? target.substring(0, q) : target;
+        String query = q >= 0 ? target.substring(q) : "";
+        Map<String, String> params = parseQuery(query);
+
+        if (path.startsWith("/redirect/")) {
+            int slash = path.indexOf('/', 10);
+            int hops = Integer.parseInt(path.substring(10, slash));
+            String rest = path.substring(slash);
+            String location = (hops > 1 ? "/redirect/" + (hops - 1) + rest : rest) + query;
+            writeHead(out, 302, "Location: " + location + "\r\nContent-Length: 0\r\n");
+            out.flush();
+            return true;
+        }
+        if (!path.equals("/data")) {
+            writeHead(out, 404, "Content-Length: 0\r\n");
+            out.flush();
+            return true;
+        }
+
+        long size = Long.parseLong(params.getOrDefault("size", "0"));
+        String mode = params.getOrDefault("mode", "length");
+        int chunk = Integer.parseInt(params.getOrDefault("chunk", String.valueOf(PATTERN.length)));
+        long drip = Long.parseLong(params.getOrDefault("drip", "0"));
+        boolean close = params.containsKey("close") || mode.equals("eof");
+        StringBuilder head = new StringBuilder("Content-Type: application/octet-stream\r\n");
+        switch (mode) {
+            case "length" -> head.append("Content-Length: ").append(size).append("\r\n");
+            case "chunked" -> head.append("Transfer-Encoding: chunked\r\n");
+            case "eof" -> {
+            }
+            default -> throw new IOException("unknown mode " + mode);
+        }
+        if (close)
+            head.append("Connection: close\r\n");
+        writeHead(out, 200, head.toString());
+
+        boolean chunked = mode.equals("chunked");
+        long left = size;
+        while (left > 0) {
+            int n = (int) Math.min(Math.min(left, chunk), PATTERN.length);
+            if (chunked) {
+                out.write(Integer.toHexString(n).getBytes(StandardCharsets.US_ASCII));
+                out.write(CRLF);
+            }
+            out.write(PATTERN, 0, n);
+            if (chunked)
+                out.write(CRLF);
+            left -= n;
+            if (drip > 0) {
+                out.flush();
+                Thread.sleep(drip);
+            }
+        }
+        if (chunked)
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return !close;
+    }
+
+    private static void writeHead(OutputStream out, int code, String headers) throws IOException {
+        String reason = switch (code) {
+            case 200 -> "OK";
+            case 302 -> "Found";
+            default -> "Not Found";
+        };
+        out.write(("HTTP/1.1 " + code + " " + reason + "\r\n" + headers + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // 요청 바디를 버리고 길이를 돌려줌. 중간에 끊기면 -1.
+    private static long readBody(InputStream in, Map<String, String> headers, byte[] buf) throws IOException {
+        String length = headers.get("content-length");
+        if (length != null)
+            return skip(in, Long.parseLong(length), buf);
+        if (!"chunked".equalsIgnoreCase(headers.get("transfer-encoding")))
+            return 0;
+        long total = 0;
+        while (true) {
+            String line = readLine(in);
+            if (line == null)
+                return -1;
+            int semi = line.indexOf(';');
+            long n = Long.parseLong((semi >= 0 ? line.substring(0, semi) : line).trim(), 16);
+            if (n == 0) {
+                // 트레일러
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                }
+                return line == null ? -1 : total;
+            }
+            if (skip(in, n, buf) < 0 || readLine(in) == null)
+                return -1;
+            total += n;
+        }
+    }
+
+    private static long skip(InputStream in, long n, byte[] buf) throws IOException {
+        long left = n;
+        while (left > 0) {
+            int r = in.read(buf, 0, (int) Math.min(left, buf.length));
+            if (r < 0)
+                return -1;
+            left -= r;
+        }
+        return n;
+    }
+
+    // CRLF를 뺀 한 줄. 줄을 읽기 전에 EOF면 null.
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r')
+                    sb.setLength(len - 1);
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query.length() <= 1)
+            return params;
+        for (String kv : query.substring(1).split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq >= 0)
+                params.put(kv.substring(0, eq), kv.substring(eq + 1));
+            else
+                params.put(kv, "");
+        }
+        return params;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,73 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// multipart 바디 인코딩. 파일 내용은 /dev/null 채널로 transferTo 되므로
+// 소켓 대신 커널 안에서의 복사 비용만 측정됨.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartEncodingBenchmark {
+    @Param({ "1024", "1048576", "16777216" })
+    public int fileSize;
+
+    private Path file;
+    private List<File> files;
+    private List<String> aliases;
+    private FileChannel sink;
+    private OutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("scurl-bench", ".bin");
+        byte[] data = new byte[fileSize];
+        new Random(42).nextBytes(data);
+        Files.write(file, data);
+        files = List.of(file.toFile());
+        aliases = List.of("upload");
+        sink = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+        out = new BufferedOutputStream(Channels.newOutputStream(sink));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sink.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        MultipartBody body = new MultipartBody(files, aliases);
+        body.writeTo(out, sink);
+        return body.contentLength();
+    }
+}
@@ -0,0 +1,67 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 요청 템플릿 생성과 쓰기.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestEncodingBenchmark {
+    @Param({ "GET", "POST" })
+    public String method;
+
+    @Param({ "0", "4", "16" })
+    public int headers;
+
+    private HttpRequest request;
+
+    @Setup
+    public void setup() {
+        String[] custom = new String[headers];
+        for (int i = 0; i < headers; i++) {
+            custom[i] = "X-Custom-Header-" + i + ": value-" + i;
+        }
+        HttpRequest.Builder builder = HttpRequest.builder()
+                .setHost("http://api.example.com:8080/v1/catalog/items?page=2&size=50")
+                .setMethod(Method.valueOf(method))
+                .setCustomHeader(custom);
+        if (method.equals("POST")) {
+            builder.setData("name=scurl&version=1.0&tags=http,client,benchmark");
+        }
+        request = builder.build();
+        template = request.compileTemplate();
+        sink = OutputStream.nullOutputStream();
+    }
+
+    private RequestTemplate template;
+    private OutputStream sink;
+
+    @Benchmark
+    public RequestTemplate compileTemplate() {
+        return request.compileTemplate();
+    }
+
+    // 반복 전송 경로: 이미 만든 템플릿을 쓰기만 함.
+    @Benchmark
+    public RequestTemplate writeTemplate() throws IOException {
+        template.writeTo(sink);
+        return template;
+    }
+}
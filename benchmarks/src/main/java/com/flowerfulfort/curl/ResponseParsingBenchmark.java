@@ -0,0 +1,94 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// 실제 서버들이 보내는 모양의 응답 헤더 파싱.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    private static final String SMALL = "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: 1234\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n";
+
+    private static final String TYPICAL = "HTTP/1.1 200 OK\r\n"
+            + "Date: Sun, 18 Oct 2026 07:57:15 GMT\r\n"
+            + "Content-Type: application/json; charset=utf-8\r\n"
+            + "Content-Length: 48213\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Keep-Alive: timeout=5, max=100\r\n"
+            + "Cache-Control: private, max-age=60\r\n"
+            + "ETag: \"5f3a9c2e-bc55\"\r\n"
+            + "Last-Modified: Sat, 17 Oct 2026 22:10:03 GMT\r\n"
+            + "Vary: Accept-Encoding, Authorization\r\n"
+            + "Server: nginx/1.25.3\r\n"
+            + "X-Request-Id: 7b0a6f4e-2c1d-4f8a-9e3b-1a2b3c4d5e6f\r\n"
+            + "Strict-Transport-Security: max-age=31536000; includeSubDomains\r\n"
+            + "Set-Cookie: session=abc123def456; Path=/; HttpOnly; Secure\r\n"
+            + "Set-Cookie: region=ap-northeast-2; Path=/\r\n"
+            + "\r\n";
+
+    private static final String CHUNKED_REDIRECT = "HTTP/1.1 302 Found\r\n"
+            + "Location: https://cdn.example.com:8443/assets/v2/bundle.js?rev=42\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "Content-Type: text/html\r\n"
+            + "\r\n";
+
+    @Param({ "small", "typical", "redirect" })
+    public String shape;
+
+    private ByteArrayInputStream in;
+    private ResponseHeader header;
+
+    @Setup
+    public void setup() {
+        String raw = switch (shape) {
+            case "small" -> SMALL;
+            case "typical" -> TYPICAL;
+            default -> CHUNKED_REDIRECT;
+        };
+        // read()가 처음에 mark를 걸기 때문에 reset()으로 같은 바이트를 다시 읽을 수 있음.
+        in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.ISO_8859_1));
+        header = new ResponseHeader();
+    }
+
+    // 응답 처리 경로에서 하는 만큼의 파싱과 조회.
+    @Benchmark
+    public void parseAndLookup(Blackhole bh) throws IOException {
+        in.reset();
+        header.read(in);
+        bh.consume(header.getStatusCode());
+        bh.consume(header.containsToken("Transfer-Encoding", "chunked"));
+        bh.consume(header.getLong("Content-Length", -1));
+        bh.consume(header.containsToken("Connection", "close"));
+        bh.consume(header.get("Location"));
+    }
+
+    @Benchmark
+    public ResponseHeader parseOnly() throws IOException {
+        in.reset();
+        header.read(in);
+        return header;
+    }
+}
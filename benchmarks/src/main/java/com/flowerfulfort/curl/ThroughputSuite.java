@@ -0,0 +1,276 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 루프백 서버(LoopbackServer)를 띄워 두고 HttpRequest의 GET, POST, multipart, -L 경로를 실제 소켓으로
+// 돌리는 통합/성능 점검. 시나리오마다 응답 코드와 바이트 수를 확인하고 req/s, MB/s,
+// 요청 스레드의 할당률과 CPU 사용률, 힙 최대 사용량을 출력함. 확인이 하나라도 틀리면 종료 코드 1.
+//
+//   java -cp benchmarks/target/benchmarks.jar com.flowerfulfort.curl.ThroughputSuite
+//           [--sizes 1k,64k,1m,16m,256m,1g] [--time 2] [--only get-chunked]
+//
+// 할당량은 요청을 보낸 스레드만 잼(서버 스레드는 빠짐). 힙 최대치는 풀마다의 최대치를 더한 것이라
+// 실제보다 조금 클 수 있음. 업로드할 파일은 sparse 파일로 만들어서 1 GB도 디스크를 쓰지 않음.
+final class ThroughputSuite {
+    private static final String DEFAULT_SIZES = "1k,64k,1m,16m,256m,1g";
+    // -d 는 바디를 메모리에 들고 있으므로 이 크기까지만 돌림.
+    private static final long MAX_INLINE_DATA = 1 << 20;
+    // 이보다 크면 워밍업 요청을 건너뜀.
+    private static final long MAX_WARMUP_SIZE = 16 << 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final LoopbackServer server;
+    private final double seconds;
+    private final String only;
+    private final Path dir;
+    private final Map<Long, Path> files = new HashMap<>();
+    private int failures;
+
+    private ThroughputSuite(LoopbackServer server, double seconds, String only) throws IOException {
+        this.server = server;
+        this.seconds = seconds;
+        this.only = only;
+        this.dir = Files.createTempDirectory("scurl-throughput");
+    }
+
+    // 시나리오 하나. 응답 바디가 expected 바이트여야 하고, 업로드면 서버가 받은 바이트 수가
+    // uploaded 이상이어야 함(multipart는 경계 문자열만큼 더 큼).
+    private static final class Scenario {
+        final String name;
+        final long size;
+        final HttpRequest.Builder builder;
+        final long expected;
+        final long uploaded;
+
+        Scenario(String name, long size, HttpRequest.Builder builder, long expected, long uploaded) {
+            this.name = name;
+            this.size = size;
+            this.builder = builder;
+            this.expected = expected;
+            this.uploaded = uploaded;
+        }
+    }
+
+    // 응답 바디를 버리면서 바이트 수와 앞부분만 남김.
+    private static final class Sink extends OutputStream {
+        final byte[] head = new byte[32];
+        long count;
+
+        void reset() {
+            count = 0;
+        }
+
+        String head() {
+            return new String(head, 0, (int) Math.min(count, head.length), StandardCharsets.US_ASCII).trim();
+        }
+
+        @Override
+        public void write(int b) {
+            if (count < head.length)
+                head[(int) count] = (byte) b;
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count < head.length)
+                System.arraycopy(b, off, head, (int) count, (int) Math.min(len, head.length - count));
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String sizes = DEFAULT_SIZES;
+        double seconds = 2;
+        String only = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = args[++i];
+                case "--time" -> seconds = Double.parseDouble(args[++i]);
+                case "--only" -> only = args[++i];
+                default -> {
+                    System.err.println("usage: ThroughputSuite [--sizes 1k,64k,1m] [--time seconds] [--only name]");
+                    System.exit(2);
+                }
+            }
+        }
+        int failures;
+        try (LoopbackServer server = new LoopbackServer()) {
+            ThroughputSuite suite = new ThroughputSuite(server, seconds, only);
+            try {
+                failures = suite.run(sizes.split(","));
+            } finally {
+                suite.deleteFiles();
+            }
+        }
+        if (failures > 0) {
+            System.err.println(failures + " scenario(s) failed");
+            System.exit(1);
+        }
+    }
+
+    private int run(String[] sizes) throws IOException {
+        System.out.printf("server: %s, %.1fs per scenario, max heap %d MB%n", server.base(), seconds,
+                Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("%-14s %6s %8s %10s %10s %11s %12s %6s %9s  %s%n", "scenario", "size", "requests",
+                "req/s", "MB/s", "alloc MB/s", "alloc/req", "cpu%", "peak MB", "result");
+        for (String s : sizes) {
+            long size = parseSize(s.trim());
+            String label = s.trim();
+            String query = "?size=" + size;
+            run(new Scenario("get-length", size, get("/data" + query), size, 0), label);
+            run(new Scenario("get-chunked", size, get("/data" + query + "&mode=chunked"), size, 0), label);
+            run(new Scenario("get-eof", size, get("/data" + query + "&mode=eof"), size, 0), label);
+            run(new Scenario("get-redirect", size, get("/redirect/3/data" + query).setRedirect(), size, 0), label);
+            if (size <= MAX_INLINE_DATA) {
+                // -d 는 -X POST 가 있어야 바디를 보냄.
+                HttpRequest.Builder b = HttpRequest.builder().setHost(server.base() + "/echo")
+                        .setMethod(Method.POST).setData("a".repeat((int) size));
+                run(new Scenario("post-data", size, b, -1, size), label);
+            }
+            HttpRequest.Builder b = HttpRequest.builder().setHost(server.base() + "/echo")
+                    .setDataSource(file(size).toString(), true);
+            run(new Scenario("post-binary", size, b, -1, size), label);
+            b = HttpRequest.builder().setHost(server.base() + "/echo")
+                    .setFiles(new String[] { "file=@" + file(size) });
+            run(new Scenario("multipart", size, b, -1, size), label);
+        }
+        // 연결을 매번 새로 맺는 경우와, 서버가 조금씩 흘려보내는 경우.
+        run(new Scenario("get-close", 1024, get("/data?size=1024&close=1"), 1024, 0), "1k");
+        run(new Scenario("drip-length", 65536, get("/data?size=65536&chunk=4096&drip=10"), 65536, 0), "64k");
+        run(new Scenario("drip-chunked", 65536, get("/data?size=65536&mode=chunked&chunk=4096&drip=10"), 65536, 0),
+                "64k");
+        return failures;
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.builder().setHost(server.base() + path);
+    }
+
+    private void run(Scenario sc, String label) {
+        if (only != null && !sc.name.contains(only))
+            return;
+        Sink sink = new Sink();
+        HttpRequest request = sc.builder.setOutput(sink).build();
+        String error = null;
+        if (sc.size <= MAX_WARMUP_SIZE)
+            error = check(sc, request, sink);
+
+        System.gc();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+        long requests = 0;
+        long bytes = 0;
+        long allocStart = THREADS.getCurrentThreadAllocatedBytes();
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        long now;
+        // 최소 한 번은 보냄. 1 GB 같은 큰 요청은 한 번으로 끝날 수 있음.
+        do {
+            String e = check(sc, request, sink);
+            if (error == null)
+                error = e;
+            requests++;
+            bytes += sink.count + sc.uploaded;
+            now = System.nanoTime();
+        } while (now < deadline && error == null);
+        double elapsed = (now - start) / 1e9;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocStart;
+        long cpu = THREADS.getCurrentThreadCpuTime() - cpuStart;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+
+        if (error != null)
+            failures++;
+        System.out.printf(Locale.ROOT, "%-14s %6s %8d %10.1f %10.1f %11.1f %12s %6.1f %9.1f  %s%n", sc.name, label,
+                requests, requests / elapsed, bytes / 1e6 / elapsed, allocated / 1e6 / elapsed,
+                formatBytes(allocated / requests), cpu / 1e7 / elapsed, peak / 1e6,
+                error == null ? "ok" : "FAIL " + error);
+    }
+
+    // 요청 하나를 보내고 결과를 확인함. 맞으면 null, 틀리면 이유.
+    private static String check(Scenario sc, HttpRequest request, Sink sink) {
+        sink.reset();
+        request.request();
+        if (request.getFailure() != null)
+            return request.getFailure().toString();
+        if (request.getStatusCode() != 200)
+            return "status " + request.getStatusCode();
+        if (sc.expected >= 0 && sink.count != sc.expected)
+            return "body " + sink.count + " bytes, expected " + sc.expected;
+        if (sc.uploaded > 0) {
+            long received;
+            try {
+                received = Long.parseLong(sink.head());
+            } catch (NumberFormatException e) {
+                return "bad echo " + sink.head();
+            }
+            if (received < sc.uploaded)
+                return "server received " + received + " bytes, expected " + sc.uploaded;
+        }
+        return null;
+    }
+
+    // 크기별 업로드 파일. 내용은 0 이지만 길이만큼 그대로 전송됨.
+    private Path file(long size) throws IOException {
+        Path f = files.get(size);
+        if (f == null) {
+            f = dir.resolve("upload-" + size);
+            try (RandomAccessFile raf = new RandomAccessFile(f.toFile(), "rw")) {
+                raf.setLength(size);
+            }
+            files.put(size, f);
+        }
+        return f;
+    }
+
+    private void deleteFiles() throws IOException {
+        for (Path f : files.values()) {
+            Files.deleteIfExists(f);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // 1k, 64k, 1m, 1g 처럼 1024 단위 접미사를 받음.
+    private static long parseSize(String s) {
+        char unit = Character.toLowerCase(s.charAt(s.length() - 1));
+        int shift = switch (unit) {
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        return Long.parseLong(shift == 0 ? s : s.substring(0, s.length() - 1)) << shift;
+    }
+
+    private static String formatBytes(long b) {
+        if (b < 10_000)
+            return b + " B";
+        if (b < 10_000_000)
+            return String.format(Locale.ROOT, "%.1f KB", b / 1e3);
+        return String.format(Locale.ROOT, "%.1f MB", b / 1e6);
+    }
+}
@@ -0,0 +1,42 @@
+package com.flowerfulfort.curl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// URL을 host, port, location으로 분리하는 parse().
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlParsingBenchmark {
+    @Param({ "http://example.com",
+            "http://api.example.com:8080/v1/catalog/items?page=2&size=50",
+            "https://cdn.example.com/assets/v2/static/js/vendor/bundle.min.js" })
+    public String url;
+
+    private HttpRequest request;
+
+    @Setup
+    public void setup() {
+        request = HttpRequest.builder().setHost(url).build();
+    }
+
+    @Benchmark
+    public HttpRequest parse() {
+        request.parse();
+        return request;
+    }
+}
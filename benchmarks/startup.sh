@@ -0,0 +1,85 @@
+#!/bin/sh
+# scurl 시작 시간 비교. 매번 새 프로세스로 같은 요청을 보내고 요청이 끝나기까지의 시간을 잼.
+#
+#   mvn -Pcds package          # target/scurl.jar, target/scurl.jsa
+#   mvn -Pnative package       # target/scurl (GraalVM, 없으면 건너뜀)
+#   benchmarks/startup.sh [url] [runs]
+#
+# url을 주지 않으면 python3 -m http.server를 루프백에 띄워서 작은 파일을 받음.
+set -eu
+
+cd "$(dirname "$0")/.."
+TARGET="$(pwd)/target"
+JAR="$TARGET/scurl.jar"
+JSA="$TARGET/scurl.jsa"
+NATIVE="$TARGET/scurl"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+URL="${1:-}"
+RUNS="${2:-20}"
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR not found. Run mvn -Pcds package first." >&2
+    exit 1
+fi
+
+SERVER_PID=
+cleanup() {
+    [ -n "$SERVER_PID" ] && kill "$SERVER_PID" 2>/dev/null
+    [ -n "${WWW:-}" ] && rm -rf "$WWW"
+    return 0
+}
+trap cleanup EXIT INT TERM
+
+if [ -z "$URL" ]; then
+    WWW="$(mktemp -d)"
+    echo "hello world" > "$WWW/hello"
+    PORT=18765
+    python3 -m http.server "$PORT" --bind 127.0.0.1 --directory "$WWW" >/dev/null 2>&1 &
+    SERVER_PID=$!
+    URL="http://127.0.0.1:$PORT/hello"
+    i=0
+    until "$JAVA" -jar "$JAR" "$URL" >/dev/null 2>&1; do
+        i=$((i + 1))
+        [ "$i" -gt 50 ] && { echo "server did not start" >&2; exit 1; }
+        sleep 0.1
+    done
+fi
+
+now_ns() {
+    date +%s%N
+}
+
+# 이름, 명령... 을 RUNS번 실행하고 min, median, mean(ms)를 출력.
+measure() {
+    name="$1"
+    shift
+    "$@" "$URL" >/dev/null 2>&1 || { echo "$name: request failed" >&2; return; }
+    times=""
+    n=0
+    while [ "$n" -lt "$RUNS" ]; do
+        start=$(now_ns)
+        "$@" "$URL" >/dev/null 2>&1
+        end=$(now_ns)
+        times="$times $(((end - start) / 1000))"
+        n=$((n + 1))
+    done
+    echo "$times" | tr ' ' '\n' | grep . | sort -n | awk -v name="$name" '
+        { v[NR] = $1; sum += $1 }
+        END {
+            med = NR % 2 ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2
+            printf "%-8s min %8.1f ms   median %8.1f ms   mean %8.1f ms\n", name, v[1] / 1000, med / 1000, sum / NR / 1000
+        }'
+}
+
+echo "url: $URL, runs: $RUNS"
+measure jvm "$JAVA" -Xshare:auto -jar "$JAR"
+if [ -f "$JSA" ]; then
+    measure cds "$JAVA" -XX:SharedArchiveFile="$JSA" -jar "$JAR"
+else
+    echo "cds      skipped ($JSA not found, run mvn -Pcds package)"
+fi
+if [ -x "$NATIVE" ]; then
+    measure native "$NATIVE"
+else
+    echo "native   skipped ($NATIVE not found, run mvn -Pnative package)"
+fi
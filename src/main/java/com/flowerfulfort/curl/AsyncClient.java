@@ -0,0 +1,730 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// SocketChannel + Selector 기반의 비동기 클라이언트.
+// 적은 수의 이벤트 루프 스레드가 모든 연결을 나눠 맡으므로, 진행 중인 요청이
+// 수만 개여도 스레드는 늘어나지 않음. 연결/쓰기/읽기 타임아웃은 루프마다 하나씩 있는
+// 타이머 휠로 처리함.
+//
+// 반환된 future는 이벤트 루프 스레드에서 완료되므로, 오래 걸리는 후속 작업은
+// thenApplyAsync 등으로 다른 스레드에 넘겨야 함. 리디렉션은 따라가지 않고
+// 3xx 응답을 그대로 돌려줌. 응답 바디는 메모리에 모으므로 maxResponseSize를 넘으면 실패함.
+public final class AsyncClient implements Closeable {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int WHEEL_SLOTS = 512;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final EventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private final long connectTimeoutNanos;
+    private final long readTimeoutNanos;
+    private final long writeTimeoutNanos;
+    private final long maxResponseSize;
+
+    private AsyncClient(Builder b) throws IOException {
+        int eventLoops = b.eventLoops;
+        this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(b.connectTimeoutMillis);
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(b.readTimeoutMillis);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(b.writeTimeoutMillis);
+        this.maxResponseSize = b.maxResponseSize;
+        this.loops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            loops[i] = new EventLoop("scurl-event-loop-" + i);
+        }
+    }
+
+    // Builder
+    public static final class Builder {
+        private int eventLoops;
+        private long connectTimeoutMillis;
+        private long readTimeoutMillis;
+        private long writeTimeoutMillis;
+        private long maxResponseSize;
+
+        Builder() {
+            // default values.
+            eventLoops = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            connectTimeoutMillis = 10_000;
+            readTimeoutMillis = 30_000;
+            writeTimeoutMillis = 30_000;
+            maxResponseSize = 64L << 20;
+        }
+
+        public Builder setEventLoops(int n) {
+            if (n <= 0)
+                throw new IllegalArgumentException();
+            eventLoops = n;
+            return this;
+        }
+
+        public Builder setConnectTimeout(long millis) {
+            connectTimeoutMillis = millis;
+            return this;
+        }
+
+        // 응답을 기다리는 동안 아무 바이트도 오지 않는 최대 시간.
+        public Builder setReadTimeout(long millis) {
+            readTimeoutMillis = millis;
+            return this;
+        }
+
+        // 요청을 보내는 동안 한 바이트도 쓰지 못하는 최대 시간. 서버가 읽지 않을 때 걸림.
+        public Builder setWriteTimeout(long millis) {
+            writeTimeoutMillis = millis;
+            return this;
+        }
+
+        // 응답 바디(압축을 푼 뒤)의 최대 크기. 넘으면 요청이 실패함.
+        public Builder setMaxResponseSize(long bytes) {
+            if (bytes <= 0)
+                throw new IllegalArgumentException();
+            maxResponseSize = bytes;
+            return this;
+        }
+
+        public AsyncClient build() throws IOException {
+            return new AsyncClient(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // 요청을 보내고 응답 전체를 받으면 완료되는 future를 돌려줌. Request는 바뀌지 않으므로
+    // 같은 객체를 여러 스레드에서 동시에 보내도 됨. 파일 바디와 https는 지원하지 않음.
+    public CompletableFuture<Response> send(Request request) {
+        if (request.bodyFile() != null)
+            return CompletableFuture.failedFuture(new IllegalArgumentException("file bodies are not supported"));
+        Url target = request.target();
+        if (target.isSecure())
+            return CompletableFuture.failedFuture(new IllegalArgumentException("https is not supported"));
+        RequestTemplate template = request.template(target);
+        ExchangeTrace recorder = TransferStats.recording()
+                ? ExchangeTrace.start(template, false, null, Client.Trace.NONE)
+                : null;
+        // 이름 해석은 호출한 스레드에서 함. 이벤트 루프를 막지 않기 위함.
+        InetSocketAddress address;
+        long t0 = System.nanoTime();
+        try {
+            address = new InetSocketAddress(Resolver.shared().resolve(target.host, target.port)[0], target.port);
+        } catch (UnknownHostException e) {
+            if (recorder != null)
+                recorder.end(0, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        Exchange ex = new Exchange(template, target, address, request.url(), request.method() == Method.HEAD,
+                request.isCompressed(), maxResponseSize);
+        ex.lookupNanos = System.nanoTime() - t0;
+        ex.recorder = recorder;
+        loops[Math.floorMod(next.getAndIncrement(), loops.length)].submit(ex);
+        return ex.future;
+    }
+
+    // 이벤트 루프를 멈추고, 끝나지 않은 요청은 실패로 완료함.
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // 요청 하나의 진행 상태와 응답 디코더.
+    private static final class Exchange {
+        private static final int HEADER = 0;
+        private static final int FIXED = 1;
+        private static final int CHUNK_SIZE = 2;
+        private static final int CHUNK_DATA = 3;
+        private static final int CHUNK_CRLF = 4;
+        private static final int TRAILER = 5;
+        private static final int UNTIL_CLOSE = 6;
+        private static final int DONE = 7;
+
+        final ByteBuffer out;
+        final Url target;
+        final InetSocketAddress address;
+        final String key;
+        final String url;
+        final boolean head;
+        // --compressed 요청. 응답을 다 받은 뒤 압축을 풂.
+        final boolean decode;
+        final long maxBody;
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+
+        // 이름 해석에 걸린 시간과 JFR 이벤트(기록 중일 때만).
+        long lookupNanos;
+        ExchangeTrace recorder;
+        ConnectEvent connectEvent;
+
+        SocketChannel channel;
+        SelectionKey selectionKey;
+        boolean reused;
+        TimerWheel.Timeout timeout;
+        long lastActivity;
+
+        int state;
+        byte[] headBuf;
+        int headLen;
+        int statusCode;
+        String reason;
+        Map<String, java.util.List<String>> headers;
+        byte[] body;
+        int bodyLen;
+        long remaining;
+        StringBuilder line;
+        boolean lineDone;
+        long keepAliveMillis;
+        boolean receivedAny;
+
+        Exchange(RequestTemplate template, Url target, InetSocketAddress address, String url, boolean head,
+                boolean decode, long maxBody) {
+            this.out = template.buffer();
+            this.target = target;
+            this.address = address;
+            this.key = Connection.key(target.host, target.port);
+            this.url = url;
+            this.head = head;
+            this.decode = decode;
+            this.maxBody = maxBody;
+            reset();
+        }
+
+        // 새 연결로 다시 보낼 때 처음 상태로 되돌림.
+        void reset() {
+            out.rewind();
+            state = HEADER;
+            headBuf = new byte[1024];
+            headLen = 0;
+            body = null;
+            bodyLen = 0;
+            receivedAny = false;
+            channel = null;
+            selectionKey = null;
+            reused = false;
+        }
+
+        boolean isDone() {
+            return state == DONE;
+        }
+
+        // 읽은 바이트를 디코딩. 응답이 끝나면 true. 남은 바이트는 buf에 그대로 둠.
+        boolean consume(ByteBuffer buf, ResponseHeader parser) throws IOException {
+            receivedAny = true;
+            while (buf.hasRemaining() && state != DONE) {
+                switch (state) {
+                    case HEADER -> readHeader(buf, parser);
+                    case FIXED -> {
+                        int n = (int) Math.min(remaining, buf.remaining());
+                        appendBody(buf, n);
+                        remaining -= n;
+                        if (remaining == 0)
+                            state = DONE;
+                    }
+                    case CHUNK_SIZE -> {
+                        if (readLine(buf)) {
+                            String s = line.toString();
+                            int ext = s.indexOf(';');
+                            if (ext >= 0)
+                                s = s.substring(0, ext);
+                            try {
+                                remaining = Long.parseLong(s.strip(), 16);
+                            } catch (NumberFormatException e) {
+                                throw new MalformedResponseException("Invalid chunk size: " + s);
+                            }
+                            state = remaining == 0 ? TRAILER : CHUNK_DATA;
+                        }
+                    }
+                    case CHUNK_DATA -> {
+                        int n = (int) Math.min(remaining, buf.remaining());
+                        appendBody(buf, n);
+                        remaining -= n;
+                        if (remaining == 0)
+                            state = CHUNK_CRLF;
+                    }
+                    case CHUNK_CRLF -> {
+                        if (readLine(buf))
+                            state = CHUNK_SIZE;
+                    }
+                    case TRAILER -> {
+                        if (readLine(buf) && line.length() == 0)
+                            state = DONE;
+                    }
+                    case UNTIL_CLOSE -> appendBody(buf, buf.remaining());
+                    default -> throw new IllegalStateException();
+                }
+            }
+            return state == DONE;
+        }
+
+        // 연결이 닫힘. 바디가 연결 종료로 끝나는 응답이면 true.
+        boolean onEof() {
+            if (state == UNTIL_CLOSE) {
+                state = DONE;
+                return true;
+            }
+            return false;
+        }
+
+        private void readHeader(ByteBuffer buf, ResponseHeader parser) throws IOException {
+            int start = buf.position();
+            int n = buf.remaining();
+            if (headLen + n > headBuf.length) {
+                if (headLen + n > ResponseHeader.MAX_HEADER_SIZE)
+                    throw new MalformedResponseException("Response header too large");
+                headBuf = Arrays.copyOf(headBuf, Math.max(headBuf.length * 2, headLen + n));
+            }
+            buf.get(headBuf, headLen, n);
+            int from = Math.max(0, headLen - 3);
+            int oldLen = headLen;
+            headLen += n;
+            int end = ResponseHeader.findEnd(headBuf, from, headLen);
+            if (end < 0)
+                return;
+            // 헤더 뒤의 바이트는 바디이므로 되돌려 놓음.
+            buf.position(start + (end - oldLen));
+            parser.read(new ByteArrayInputStream(headBuf, 0, end));
+            headLen = 0;
+
+            statusCode = parser.getStatusCode();
+            if (statusCode >= 100 && statusCode < 200 && statusCode != 101) {
+                // 100 Continue 같은 중간 응답은 건너뜀.
+                return;
+            }
+            if (recorder != null)
+                recorder.responseStarted(statusCode);
+            reason = parser.getReason();
+            headers = parser.toMap();
+            headBuf = null;
+            boolean noBody = head || statusCode < 200 || statusCode == 204 || statusCode == 304;
+            long length = -1;
+            if (noBody) {
+                state = DONE;
+            } else if (parser.containsToken("Transfer-Encoding", "chunked")) {
+                state = CHUNK_SIZE;
+                line = new StringBuilder();
+                lineDone = false;
+            } else if (parser.contains("Content-Length")) {
+                length = parser.getLong("Content-Length", -1);
+                if (length < 0)
+                    throw new MalformedResponseException("Invalid Content-Length: " + parser.get("Content-Length"));
+                if (length > maxBody)
+                    throw tooLarge();
+                remaining = length;
+                state = length == 0 ? DONE : FIXED;
+            } else {
+                state = UNTIL_CLOSE;
+            }
+            keepAliveMillis = state == UNTIL_CLOSE ? 0 : ConnectionPool.keepAliveMillis(parser);
+            body = new byte[(int) Math.min(Math.max(length, 1024), 1 << 20)];
+        }
+
+        // CRLF까지 읽었으면 true. 줄 내용(CR 제외)은 line에 있음.
+        private boolean readLine(ByteBuffer buf) {
+            if (lineDone) {
+                line.setLength(0);
+                lineDone = false;
+            }
+            while (buf.hasRemaining()) {
+                char c = (char) (buf.get() & 0xff);
+                if (c == '\n') {
+                    int len = line.length();
+                    if (len > 0 && line.charAt(len - 1) == '\r')
+                        line.setLength(len - 1);
+                    lineDone = true;
+                    return true;
+                }
+                line.append(c);
+            }
+            return false;
+        }
+
+        private void appendBody(ByteBuffer buf, int n) throws IOException {
+            if (bodyLen + n > maxBody)
+                throw tooLarge();
+            if (bodyLen + n > body.length) {
+                body = Arrays.copyOf(body, Math.max(body.length * 2, bodyLen + n));
+            }
+            buf.get(body, bodyLen, n);
+            bodyLen += n;
+        }
+
+        Response toResponse(Decompressor decompressor) throws IOException {
+            byte[] b = body != null ? body : new byte[0];
+            int len = bodyLen;
+            String encoding = headers.containsKey("Content-Encoding") ? headers.get("Content-Encoding").get(0) : null;
+            if (decode && len > 0 && Decompressor.supports(encoding)) {
+                // 압축을 푼 크기도 maxBody까지만 받음.
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream((int) Math.min(len * 4L, maxBody)) {
+                    @Override
+                    public void write(byte[] b, int off, int n) {
+                        if (count + n > maxBody)
+                            throw new UncheckedIOException(tooLarge());
+                        super.write(b, off, n);
+                    }
+                };
+                try {
+                    BodyInputStream.copy(decompressor.open(new ByteArrayInputStream(b, 0, len), encoding), decoded,
+                            new byte[BodyInputStream.BUFFER_SIZE]);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                b = decoded.toByteArray();
+                len = b.length;
+            }
+            return new Response(statusCode, reason, headers, url, new ByteArrayInputStream(b, 0, len), len);
+        }
+
+        private IOException tooLarge() {
+            return new IOException("Response body exceeds " + maxBody + " bytes: " + url);
+        }
+    }
+
+    // 유휴 연결. 같은 host:port의 다음 요청이 가져다 씀.
+    private static final class Idle {
+        final SocketChannel channel;
+        final SelectionKey selectionKey;
+        final String key;
+        TimerWheel.Timeout timeout;
+
+        Idle(SocketChannel channel, SelectionKey selectionKey, String key) {
+            this.channel = channel;
+            this.selectionKey = selectionKey;
+            this.key = key;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Thread thread;
+        final Selector selector;
+        final Queue<Exchange> incoming = new ConcurrentLinkedQueue<>();
+        final TimerWheel wheel = new TimerWheel(TICK_NANOS, WHEEL_SLOTS);
+        final Map<String, ArrayDeque<Idle>> idle = new HashMap<>();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        // 헤더 파싱은 한 번에 끝나므로 루프 하나에 파서 하나면 충분함.
+        final ResponseHeader parser = new ResponseHeader();
+        final Decompressor decompressor = new Decompressor();
+        volatile boolean running = true;
+
+        EventLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void submit(Exchange ex) {
+            if (!running) {
+                ex.future.completeExceptionally(new IOException("Client closed"));
+                return;
+            }
+            incoming.add(ex);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(wheel.isEmpty() ? 0 : wheel.millisUntilNextTick());
+                    Exchange ex;
+                    while ((ex = incoming.poll()) != null) {
+                        start(ex);
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        handle(key);
+                    }
+                    wheel.advance();
+                }
+            } catch (IOException e) {
+                // selector 자체의 오류. 아래에서 모두 정리함.
+            } finally {
+                IOException closed = new IOException("Client closed");
+                Exchange ex;
+                while ((ex = incoming.poll()) != null) {
+                    ex.future.completeExceptionally(closed);
+                }
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Exchange e)
+                        e.future.completeExceptionally(closed);
+                    closeQuietly(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // 닫는 중의 오류는 무시.
+                }
+            }
+        }
+
+        private void start(Exchange ex) {
+            Idle reuse = pollIdle(ex.key);
+            if (reuse != null) {
+                ex.channel = reuse.channel;
+                ex.selectionKey = reuse.selectionKey;
+                ex.reused = true;
+                ex.selectionKey.attach(ex);
+                ex.selectionKey.interestOps(SelectionKey.OP_WRITE);
+                if (ex.recorder != null)
+                    ex.recorder.connected(true);
+                scheduleWriteTimeout(ex);
+                return;
+            }
+            // 이름은 send()에서 해석했으므로 이벤트는 TCP 연결만 재고, 해석 시간은 따로 남김.
+            if (TransferStats.recording()) {
+                ex.connectEvent = new ConnectEvent();
+                ex.connectEvent.begin();
+            }
+            try {
+                SocketChannel ch = SocketChannel.open();
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ex.channel = ch;
+                boolean connected = ch.connect(ex.address);
+                ex.selectionKey = ch.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT,
+                        ex);
+                if (connected) {
+                    connected(ex);
+                    scheduleWriteTimeout(ex);
+                } else {
+                    ex.timeout = wheel.schedule(connectTimeoutNanos,
+                            () -> fail(ex, new SocketTimeoutException("Connect timed out: " + ex.address)));
+                }
+            } catch (IOException e) {
+                fail(ex, e);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Object att = key.attachment();
+            if (att instanceof Idle i) {
+                // 유휴 연결에 읽을 것이 생겼다면 서버가 닫은 것.
+                removeIdle(i);
+                closeQuietly(key);
+                return;
+            }
+            Exchange ex = (Exchange) att;
+            try {
+                if (!key.isValid())
+                    return;
+                if (key.isConnectable()) {
+                    ex.channel.finishConnect();
+                    cancelTimeout(ex);
+                    connected(ex);
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    scheduleWriteTimeout(ex);
+                }
+                if (key.isWritable()) {
+                    if (ex.channel.write(ex.out) > 0)
+                        ex.lastActivity = System.nanoTime();
+                    if (!ex.out.hasRemaining()) {
+                        if (ex.recorder != null)
+                            ex.recorder.requestSent(ex.out.limit());
+                        cancelTimeout(ex);
+                        key.interestOps(SelectionKey.OP_READ);
+                        ex.lastActivity = System.nanoTime();
+                        scheduleIdleTimeout(ex, readTimeoutNanos, readTimeoutNanos, "Read timed out");
+                    }
+                }
+                if (key.isReadable()) {
+                    read(ex);
+                }
+            } catch (IOException e) {
+                if (!retry(ex))
+                    fail(ex, e);
+            }
+        }
+
+        private void read(Exchange ex) throws IOException {
+            while (true) {
+                readBuffer.clear();
+                int n = ex.channel.read(readBuffer);
+                if (n == 0)
+                    return;
+                if (n == -1) {
+                    if (ex.onEof()) {
+                        complete(ex, false);
+                    } else if (!retry(ex)) {
+                        fail(ex, new EOFException("Connection closed before response completed"));
+                    }
+                    return;
+                }
+                ex.lastActivity = System.nanoTime();
+                readBuffer.flip();
+                if (ex.consume(readBuffer, parser)) {
+                    // 응답 뒤에 더 온 바이트가 있으면 연결 상태를 믿을 수 없음.
+                    complete(ex, ex.keepAliveMillis > 0 && !readBuffer.hasRemaining());
+                    return;
+                }
+                if (n < readBuffer.capacity())
+                    return;
+            }
+        }
+
+        // 새 연결이 맺어짐. JFR 이벤트를 남김.
+        private void connected(Exchange ex) {
+            ConnectEvent event = ex.connectEvent;
+            ex.connectEvent = null;
+            if (event != null && event.shouldCommit()) {
+                event.host = ex.target.host;
+                event.port = ex.target.port;
+                event.address = ex.address.getAddress().getHostAddress();
+                event.lookupTime = ex.lookupNanos;
+                event.commit();
+            }
+            if (ex.recorder != null)
+                ex.recorder.connected(false);
+        }
+
+        // 재사용한 연결이 서버 쪽에서 이미 닫혀 있었다면 새 연결로 한 번 더 보냄.
+        private boolean retry(Exchange ex) {
+            if (!ex.reused || ex.receivedAny)
+                return false;
+            cancelTimeout(ex);
+            closeQuietly(ex.selectionKey);
+            ex.reset();
+            start(ex);
+            return true;
+        }
+
+        // 요청을 쓰는 동안 서버가 읽지 않아 송신 버퍼가 차 있으면 writeTimeout 뒤에 실패함.
+        private void scheduleWriteTimeout(Exchange ex) {
+            ex.lastActivity = System.nanoTime();
+            scheduleIdleTimeout(ex, writeTimeoutNanos, writeTimeoutNanos, "Write timed out");
+        }
+
+        // lastActivity 뒤로 limit 동안 주고받은 것이 없으면 실패함.
+        private void scheduleIdleTimeout(Exchange ex, long delay, long limit, String message) {
+            ex.timeout = wheel.schedule(delay, () -> {
+                long idleFor = System.nanoTime() - ex.lastActivity;
+                if (idleFor >= limit) {
+                    fail(ex, new SocketTimeoutException(message));
+                } else {
+                    // 그 사이에 데이터가 오갔으면 남은 시간만큼 다시 기다림.
+                    scheduleIdleTimeout(ex, limit - idleFor, limit, message);
+                }
+            });
+        }
+
+        private void cancelTimeout(Exchange ex) {
+            if (ex.timeout != null) {
+                ex.timeout.cancel();
+                ex.timeout = null;
+            }
+        }
+
+        private void complete(Exchange ex, boolean keepAlive) {
+            cancelTimeout(ex);
+            if (keepAlive) {
+                release(ex);
+            } else {
+                closeQuietly(ex.selectionKey);
+            }
+            try {
+                Response res = ex.toResponse(decompressor);
+                if (ex.recorder != null)
+                    ex.recorder.end(ex.bodyLen, null);
+                ex.future.complete(res);
+            } catch (IOException e) {
+                if (ex.recorder != null)
+                    ex.recorder.end(ex.bodyLen, e);
+                ex.future.completeExceptionally(e);
+            }
+        }
+
+        private void fail(Exchange ex, Throwable cause) {
+            cancelTimeout(ex);
+            if (ex.selectionKey != null) {
+                closeQuietly(ex.selectionKey);
+            } else if (ex.channel != null) {
+                try {
+                    ex.channel.close();
+                } catch (IOException e) {
+                    // 닫는 중의 오류는 무시.
+                }
+            }
+            if (ex.recorder != null)
+                ex.recorder.end(ex.bodyLen, cause);
+            ex.future.completeExceptionally(cause);
+        }
+
+        private void release(Exchange ex) {
+            Idle i = new Idle(ex.channel, ex.selectionKey, ex.key);
+            ex.selectionKey.attach(i);
+            ex.selectionKey.interestOps(SelectionKey.OP_READ);
+            idle.computeIfAbsent(ex.key, k -> new ArrayDeque<>()).addFirst(i);
+            i.timeout = wheel.schedule(TimeUnit.MILLISECONDS.toNanos(ex.keepAliveMillis), () -> {
+                removeIdle(i);
+                closeQuietly(i.selectionKey);
+            });
+        }
+
+        private Idle pollIdle(String key) {
+            ArrayDeque<Idle> q = idle.get(key);
+            if (q == null)
+                return null;
+            Idle i;
+            while ((i = q.pollFirst()) != null) {
+                i.timeout.cancel();
+                if (i.selectionKey.isValid() && i.channel.isOpen())
+                    return i;
+            }
+            return null;
+        }
+
+        private void removeIdle(Idle i) {
+            i.timeout.cancel();
+            ArrayDeque<Idle> q = idle.get(i.key);
+            if (q != null)
+                q.remove(i);
+        }
+
+        private void closeQuietly(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // 닫는 중의 오류는 무시.
+            }
+        }
+    }
+}
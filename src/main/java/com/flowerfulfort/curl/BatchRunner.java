@@ -0,0 +1,335 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+// 요청 목록을 한 프로세스 안에서 동시에 실행하고 결과를 NDJSON으로 출력.
+// 각 줄은 커맨드라인과 같은 "[option] url" 형식.
+// pipeline이 0보다 크면 읽는 대로 host:port 별 대기열에 넣고, host마다 연결 perHost개까지
+// 각 연결에 대기열에서 pipeline개씩 꺼내 연달아 보냄. 어느 모드든 대기 중이거나 진행 중인
+// 요청은 parallel개까지이고, 자리가 날 때까지 입력을 더 읽지 않음.
+final class BatchRunner {
+    private final int perHost;
+    private final boolean ordered;
+    private final int pipeline;
+
+    // 전체 동시 실행 수 제한.
+    private final Semaphore inFlight;
+    // host:port 별 동시 연결 수 제한.
+    private final Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+    // pipeline 모드의 host:port 별 대기열.
+    private final Map<String, HostQueue> hostQueues = new HashMap<>();
+
+    // ordered 모드에서 앞선 결과를 기다리는 줄들.
+    private final Map<Long, String> pending = new HashMap<>();
+    private long nextIndex;
+    private PrintStream out;
+
+    BatchRunner(int parallel, int perHost, boolean ordered, int pipeline) {
+        if (parallel <= 0 || perHost <= 0 || pipeline < 0)
+            throw new IllegalArgumentException();
+        this.perHost = perHost;
+        this.ordered = ordered;
+        this.pipeline = pipeline;
+        this.inFlight = new Semaphore(parallel);
+    }
+
+    // source가 "-"이면 표준 입력에서 읽음.
+    void run(String source, PrintStream out) throws IOException, InterruptedException {
+        this.out = out;
+        this.nextIndex = 0;
+        ConnectionPool.shared().setMaxIdlePerHost(perHost);
+        Options options = Main.requestOptions();
+        ExecutorService executor = newExecutor();
+        try (BufferedReader br = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : new BufferedReader(new FileReader(source))) {
+            if (pipeline > 0) {
+                runPipelined(br, options, executor);
+                return;
+            }
+            String line;
+            long index = 0;
+            while ((line = br.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                long i = index++;
+                String spec = line;
+                // 입력을 미리 다 읽지 않도록 자리가 날 때까지 기다림.
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        emit(i, execute(i, spec, options));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            out.flush();
+        }
+    }
+
+    private void runPipelined(BufferedReader br, Options options, ExecutorService executor)
+            throws IOException, InterruptedException {
+        hostQueues.clear();
+        String line;
+        long index = 0;
+        while ((line = br.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            long i = index++;
+            HttpRequest request;
+            try {
+                request = parse(line, options);
+            } catch (ParseException | IOException | IllegalArgumentException e) {
+                emit(i, errorLine(i, line, e.toString()));
+                continue;
+            }
+            if (request == null) {
+                emit(i, errorLine(i, line, "host is missing"));
+                continue;
+            }
+            // 자리는 결과 줄을 낼 때 돌려받음.
+            inFlight.acquire();
+            hostQueues.computeIfAbsent(request.hostKey(), k -> new HostQueue())
+                    .add(new Entry(i, line, request), executor);
+        }
+    }
+
+    private record Entry(long index, String spec, HttpRequest request) {
+    }
+
+    // 한 host:port로 갈 요청들. 일꾼은 perHost개까지 뜨고, 각자 연결 하나로 대기열에서
+    // pipeline개씩 꺼내 보내다가 대기열이 비면 끝남.
+    private final class HostQueue {
+        // 아래는 this로 보호.
+        private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+        private int workers;
+
+        void add(Entry entry, ExecutorService executor) {
+            boolean start;
+            synchronized (this) {
+                queue.add(entry);
+                start = workers < perHost;
+                if (start)
+                    workers++;
+            }
+            if (start)
+                executor.execute(this::work);
+        }
+
+        private void work() {
+            while (true) {
+                List<Entry> batch = new ArrayList<>(pipeline);
+                synchronized (this) {
+                    while (batch.size() < pipeline && !queue.isEmpty())
+                        batch.add(queue.poll());
+                    if (batch.isEmpty()) {
+                        workers--;
+                        return;
+                    }
+                }
+                runBatch(batch);
+            }
+        }
+    }
+
+    private void runBatch(List<Entry> batch) {
+        List<HttpRequest> requests = new ArrayList<>(batch.size());
+        for (Entry e : batch)
+            requests.add(e.request());
+        boolean[] done = new boolean[batch.size()];
+        try {
+            new Pipeline(pipeline).run(requests, (k, nanos) -> {
+                done[k] = true;
+                Entry e = batch.get(k);
+                finish(e.index(), resultLine(e.index(), e.request(), nanos / 1e6));
+            });
+        } catch (RuntimeException ex) {
+            // 결과를 못 낸 요청마다 오류 줄을 내서 ordered 출력이 멈추지 않게 함.
+            for (int k = 0; k < batch.size(); k++) {
+                if (!done[k]) {
+                    Entry e = batch.get(k);
+                    finish(e.index(), errorLine(e.index(), e.spec(), ex.toString()));
+                }
+            }
+        }
+    }
+
+    private void finish(long index, String line) {
+        emit(index, line);
+        inFlight.release();
+    }
+
+    // 한 줄을 요청으로 만듦. 바디는 버림. url이 없으면 null.
+    // -v는 헤더를 표준 출력에 찍어 NDJSON을 깨뜨리므로 받지 않음.
+    private static HttpRequest parse(String spec, Options options) throws ParseException, IOException {
+        CommandLine cmd = new DefaultParser().parse(options, tokenize(spec));
+        if (cmd.hasOption("v"))
+            throw new ParseException("-v is not allowed in batch lines");
+        if (cmd.getArgs().length == 0)
+            return null;
+        return Main.configure(HttpRequest.builder(), cmd)
+                .setOutput(OutputStream.nullOutputStream())
+                .build();
+    }
+
+    private String execute(long index, String spec, Options options) {
+        HttpRequest request;
+        try {
+            request = parse(spec, options);
+        } catch (ParseException | IOException | IllegalArgumentException e) {
+            return errorLine(index, spec, e.toString());
+        }
+        if (request == null)
+            return errorLine(index, spec, "host is missing");
+
+        Semaphore slot = hostSlots.computeIfAbsent(request.hostKey(), k -> new Semaphore(perHost));
+        slot.acquireUninterruptibly();
+        long start = System.nanoTime();
+        try {
+            request.request();
+        } catch (RuntimeException e) {
+            // 서버가 보낸 잘못된 값 등으로 요청이 예외로 끝나도 이 순번의 줄은 남겨야 ordered 출력이 멈추지 않음.
+            return errorLine(index, spec, e.toString());
+        } finally {
+            slot.release();
+        }
+        return resultLine(index, request, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static String resultLine(long index, HttpRequest request, double millis) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"index\":").append(index);
+        sb.append(",\"method\":\"").append(request.getMethod()).append('"');
+        sb.append(",\"url\":");
+        appendJsonString(sb, request.getUrl());
+        sb.append(",\"status\":").append(request.getStatusCode());
+        sb.append(",\"bytes\":").append(request.getBodyBytes());
+        sb.append(",\"time_ms\":").append(String.format(Locale.ROOT, "%.3f", millis));
+        if (request.getFailure() != null) {
+            sb.append(",\"error\":");
+            appendJsonString(sb, request.getFailure().toString());
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String errorLine(long index, String spec, String error) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"index\":").append(index).append(",\"request\":");
+        appendJsonString(sb, spec);
+        sb.append(",\"status\":0,\"error\":");
+        appendJsonString(sb, error);
+        return sb.append('}').toString();
+    }
+
+    private synchronized void emit(long index, String line) {
+        if (!ordered) {
+            out.println(line);
+            return;
+        }
+        pending.put(index, line);
+        String next;
+        while ((next = pending.remove(nextIndex)) != null) {
+            out.println(next);
+            nextIndex++;
+        }
+    }
+
+    // 따옴표와 역슬래시를 처리하는 간단한 셸 스타일 토큰 분리.
+    static String[] tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (c == '\\' && quote == '"' && i + 1 < line.length()) {
+                    cur.append(line.charAt(++i));
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inToken = true;
+            } else if (c == '\\' && i + 1 < line.length()) {
+                cur.append(line.charAt(++i));
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(cur.toString());
+                    cur.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                cur.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken)
+            tokens.add(cur.toString());
+        return tokens.toArray(new String[0]);
+    }
+
+    static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    // Java 21 이상에서는 가상 스레드를, 그 이전에는 데몬 스레드 풀을 사용.
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.flowerfulfort.curl;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 같은 요청을 반복해서 보내는 부하 생성기(wrk 스타일).
+// rate가 0이면 closed-loop: 각 워커가 응답을 받자마자 다음 요청을 보냄.
+// rate가 있으면 open-loop: 요청마다 예정 시각을 정하고, 지연시간을 예정 시각부터 잼.
+// 서버가 밀려 예정보다 늦게 보낸 시간까지 포함되므로 coordinated omission이 보정됨.
+final class BenchRunner {
+    private final HttpRequest.Builder builder;
+    private final int concurrency;
+    private final long durationNanos;
+    private final long maxRequests;
+    private final double rate;
+
+    // 워커들이 나눠 가지는 요청 번호.
+    private final AtomicLong issued = new AtomicLong();
+
+    BenchRunner(HttpRequest.Builder builder, int concurrency, long durationNanos, long maxRequests, double rate) {
+        if (concurrency <= 0 || (durationNanos <= 0 && maxRequests <= 0) || rate < 0)
+            throw new IllegalArgumentException();
+        this.builder = builder.setOutput(OutputStream.nullOutputStream());
+        this.concurrency = concurrency;
+        this.durationNanos = durationNanos;
+        this.maxRequests = maxRequests;
+        this.rate = rate;
+    }
+
+    // 워커 하나의 결과. 워커끼리 공유하지 않으므로 동기화가 필요 없음.
+    private static final class Stats {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] statusCounts = new long[600];
+        final Map<String, Long> errors = new TreeMap<>();
+        long bytes;
+    }
+
+    void run(PrintStream out) throws InterruptedException {
+        HttpRequest sample = builder.build();
+        ConnectionPool.shared().setMaxIdlePerHost(concurrency);
+        out.printf("Running %s test @ %s%n", describeLimit(), sample.getUrl());
+        out.printf("  %d connections, %s%n", concurrency,
+                rate > 0 ? String.format(Locale.ROOT, "open-loop at %.1f req/s", rate) : "closed-loop");
+
+        List<Stats> results = new ArrayList<>();
+        ExecutorService executor = BatchRunner.newExecutor();
+        long start = System.nanoTime();
+        long deadline = durationNanos > 0 ? start + durationNanos : Long.MAX_VALUE;
+        for (int i = 0; i < concurrency; i++) {
+            Stats stats = new Stats();
+            results.add(stats);
+            executor.execute(() -> work(stats, start, deadline));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        Stats total = new Stats();
+        for (Stats s : results) {
+            total.histogram.merge(s.histogram);
+            for (int i = 0; i < total.statusCounts.length; i++) {
+                total.statusCounts[i] += s.statusCounts[i];
+            }
+            s.errors.forEach((k, v) -> total.errors.merge(k, v, Long::sum));
+            total.bytes += s.bytes;
+        }
+        report(out, total, elapsed);
+    }
+
+    private String describeLimit() {
+        if (durationNanos > 0)
+            return String.format(Locale.ROOT, "%.1fs", durationNanos / 1e9);
+        return maxRequests + " request";
+    }
+
+    private void work(Stats stats, long start, long deadline) {
+        double interval = rate > 0 ? 1e9 / rate : 0;
+        // 워커마다 요청 하나를 만들어 두고 계속 재사용. 인코딩된 템플릿과 버퍼도 재사용됨.
+        HttpRequest request = builder.build();
+        while (true) {
+            long n = issued.getAndIncrement();
+            if (maxRequests > 0 && n >= maxRequests)
+                return;
+            long begin;
+            if (rate > 0) {
+                // n번째 요청의 예정 시각까지 기다림. 이미 지났다면 바로 보냄.
+                begin = start + (long) (n * interval);
+                if (begin >= deadline)
+                    return;
+                long wait;
+                while ((wait = begin - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                begin = System.nanoTime();
+                if (begin >= deadline)
+                    return;
+            }
+
+            request.request();
+            stats.histogram.record(System.nanoTime() - begin);
+
+            if (request.getFailure() != null) {
+                stats.errors.merge(request.getFailure().getClass().getSimpleName(), 1L, Long::sum);
+            } else {
+                int code = request.getStatusCode();
+                if (code >= 0 && code < stats.statusCounts.length)
+                    stats.statusCounts[code]++;
+                stats.bytes += request.getBodyBytes();
+            }
+        }
+    }
+
+    private static void report(PrintStream out, Stats total, long elapsed) {
+        LatencyHistogram h = total.histogram;
+        double seconds = elapsed / 1e9;
+        long errors = total.errors.values().stream().mapToLong(Long::longValue).sum();
+        out.printf(Locale.ROOT, "  %d requests in %.2fs, %.2f MB read%n", h.getTotalCount(), seconds,
+                total.bytes / 1e6);
+        out.printf(Locale.ROOT, "Requests/sec: %10.2f%n", h.getTotalCount() / seconds);
+        out.printf(Locale.ROOT, "Transfer/sec: %10.2f MB%n", total.bytes / 1e6 / seconds);
+
+        StringBuilder codes = new StringBuilder();
+        for (int i = 0; i < total.statusCounts.length; i++) {
+            if (total.statusCounts[i] > 0)
+                codes.append(' ').append(i).append('=').append(total.statusCounts[i]);
+        }
+        out.println("Status codes:" + (codes.length() == 0 ? " none" : codes));
+        out.printf("Errors: %d%n", errors);
+        total.errors.forEach((k, v) -> out.printf("  %s: %d%n", k, v));
+
+        out.println("Latency:");
+        out.printf(Locale.ROOT, "  %-6s %10s%n", "min", millis(h.getMinValue()));
+        out.printf(Locale.ROOT, "  %-6s %10s%n", "mean", millis((long) h.getMean()));
+        for (double p : new double[] { 50, 90, 99, 99.9 }) {
+            out.printf(Locale.ROOT, "  %-6s %10s%n", "p" + (p == (long) p ? String.valueOf((long) p) : String.valueOf(p)),
+                    millis(h.valueAtPercentile(p)));
+        }
+        out.printf(Locale.ROOT, "  %-6s %10s%n", "max", millis(h.getMaxValue()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+    }
+}
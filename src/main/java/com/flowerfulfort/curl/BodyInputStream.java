@@ -0,0 +1,246 @@
+package com.flowerfulfort.curl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 응답 바디의 framing(Content-Length, chunked, 연결 종료까지)을 풀어
+// 순수한 바디 바이트만 돌려주는 스트림.
+abstract class BodyInputStream extends InputStream {
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    protected final InputStream in;
+    protected boolean complete;
+
+    private BodyInputStream(InputStream in) {
+        this.in = in;
+        this.complete = false;
+    }
+
+    // 응답 헤더를 보고 알맞은 바디 스트림을 고름.
+    // noBody는 HEAD 요청이나 1xx/204/304 처럼 바디가 없는 응답.
+    static BodyInputStream open(InputStream in, ResponseHeader header, boolean noBody) throws IOException {
+        if (noBody) {
+            return new FixedLength(in, 0);
+        }
+        if (header.containsToken("Transfer-Encoding", "chunked")) {
+            return new Chunked(in);
+        }
+        if (header.contains("Content-Length")) {
+            long length = header.getLong("Content-Length", -1);
+            if (length < 0)
+                throw new MalformedResponseException("Invalid Content-Length: " + header.get("Content-Length"));
+            return new FixedLength(in, length);
+        }
+        return new UntilClose(in);
+    }
+
+    // 바디의 끝을 연결 종료 없이 알 수 있는지. 즉, 연결을 재사용할 수 있는지.
+    abstract boolean isFramed();
+
+    // chunked 바디 뒤에 오는 trailer 헤더.
+    Map<String, String> trailers() {
+        return Collections.emptyMap();
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xff;
+    }
+
+    // 남은 바디를 out으로 복사. 주어진 버퍼 하나만 사용하므로 메모리는 바디 크기와 무관.
+    long transferTo(OutputStream out, byte[] buf) throws IOException {
+        return copy(this, out, buf);
+    }
+
+    // 남은 바디를 file로 옮김. conn은 in을 읽고 있는 연결.
+    long transferTo(FileOutput file, Connection conn, byte[] buf) throws IOException {
+        return copy(this, file, buf);
+    }
+
+    // in의 남은 바이트를 out으로 복사. 압축을 푼 바디처럼 BodyInputStream을 감싼 스트림에 씀.
+    static long copy(InputStream in, OutputStream out, byte[] buf) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1) {
+            out.write(buf, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    // 남은 바디를 읽어서 버림.
+    long drain(byte[] buf) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = read(buf, 0, buf.length)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static final class FixedLength extends BodyInputStream {
+        private long remaining;
+
+        FixedLength(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+            this.complete = length == 0;
+        }
+
+        @Override
+        boolean isFramed() {
+            return true;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0)
+                return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1)
+                throw new EOFException("Connection closed with " + remaining + " bytes remaining");
+            remaining -= n;
+            if (remaining == 0)
+                complete = true;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        // 연결의 버퍼에 이미 읽혀 있는 부분만 스트림으로 읽고, 나머지는 소켓 채널에서 파일로 바로 받음.
+        @Override
+        long transferTo(FileOutput file, Connection conn, byte[] buf) throws IOException {
+            if (conn.readChannel() == null)
+                return super.transferTo(file, conn, buf);
+            long total = 0;
+            int buffered;
+            while (remaining > 0 && (buffered = conn.buffered()) > 0) {
+                int n = read(buf, 0, Math.min(buf.length, buffered));
+                file.write(buf, 0, n);
+                total += n;
+            }
+            if (remaining > 0) {
+                total += file.transferFrom(conn.readChannel(), remaining);
+                remaining = 0;
+            }
+            complete = true;
+            return total;
+        }
+    }
+
+    private static final class Chunked extends BodyInputStream {
+        // 현재 chunk에서 남은 바이트. -1이면 다음 chunk 크기를 읽어야 함.
+        private long remaining;
+        private Map<String, String> trailers;
+
+        Chunked(InputStream in) {
+            super(in);
+            this.remaining = -1;
+            this.trailers = Collections.emptyMap();
+        }
+
+        @Override
+        boolean isFramed() {
+            return true;
+        }
+
+        @Override
+        Map<String, String> trailers() {
+            return trailers;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (complete)
+                return -1;
+            if (remaining <= 0) {
+                if (remaining == 0) {
+                    // chunk 데이터 뒤의 CRLF.
+                    Connection.readLine(in);
+                }
+                remaining = readChunkSize();
+                if (remaining == 0) {
+                    readTrailers();
+                    complete = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1)
+                throw new EOFException("Connection closed inside a chunk");
+            remaining -= n;
+            return n;
+        }
+
+        private long readChunkSize() throws IOException {
+            String line = Connection.readLine(in);
+            if (line == null)
+                throw new EOFException("Connection closed before last chunk");
+            int ext = line.indexOf(';');
+            if (ext >= 0)
+                line = line.substring(0, ext);
+            try {
+                return Long.parseLong(line.strip(), 16);
+            } catch (NumberFormatException e) {
+                throw new MalformedResponseException("Invalid chunk size: " + line);
+            }
+        }
+
+        private void readTrailers() throws IOException {
+            String line;
+            while ((line = Connection.readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0)
+                    continue;
+                if (trailers.isEmpty())
+                    trailers = new LinkedHashMap<>();
+                trailers.put(line.substring(0, colon).strip(), line.substring(colon + 1).strip());
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return remaining > 0 ? (int) Math.min(in.available(), remaining) : 0;
+        }
+    }
+
+    private static final class UntilClose extends BodyInputStream {
+        UntilClose(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        boolean isFramed() {
+            return false;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (complete)
+                return -1;
+            int n = in.read(b, off, len);
+            if (n == -1)
+                complete = true;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// AppCDS 아카이브를 만들 때의 학습 실행(mvn -Pcds package).
+// -XX:ArchiveClassesAtExit 로 이 클래스를 실행하면, 루프백 서버를 띄워 두고 Main을 평소 쓰는
+// 옵션들로 몇 번 돌려서 그동안 읽은 클래스(commons-cli, 요청/응답 처리, JDK의 소켓, TLS, zip 등)를
+// 아카이브에 담음. 결과는 버리고 종료 코드만 남김.
+final class CdsTraining {
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", CdsTraining::handle);
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        Path dir = Files.createTempDirectory("scurl-cds");
+        Path data = Files.writeString(dir.resolve("data.txt"), "name=scurl\n");
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        try {
+            run(base + "/text");
+            run("-v", "-H", "Accept: */*", "-w", "%{http_code} %{time_total}\n", base + "/text");
+            run("-L", base + "/redirect");
+            run("--compressed", base + "/gzip");
+            run("-d", "a=1&b=2", base + "/echo");
+            run("-d", "@" + data, base + "/echo");
+            run("-F", "file=@" + data, base + "/echo");
+            run("-T", data.toString(), base + "/echo");
+            run("-o", dir.resolve("out").toString(), base + "/text");
+            run("--cache", dir.resolve("cache").toString(), base + "/text");
+            // ClientHello를 받고 바로 닫는 서버. 핸드셰이크는 실패하지만 TLS 클래스는 읽힘.
+            try (ServerSocket tls = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                Thread closer = new Thread(() -> {
+                    try (Socket s = tls.accept()) {
+                        s.getInputStream().read(new byte[512]);
+                    } catch (IOException ignored) {
+                    }
+                });
+                closer.setDaemon(true);
+                closer.start();
+                run("-k", "https://127.0.0.1:" + tls.getLocalPort() + "/text");
+            }
+            run();
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+            server.stop(0);
+            deleteAll(dir);
+        }
+        out.println("CDS training finished");
+    }
+
+    private static void run(String... args) {
+        Main.main(args);
+    }
+
+    private static void handle(HttpExchange ex) throws IOException {
+        ex.getRequestBody().readAllBytes();
+        String path = ex.getRequestURI().getPath();
+        byte[] body = "hello world\n".getBytes(StandardCharsets.US_ASCII);
+        switch (path) {
+            case "/redirect" -> {
+                ex.getResponseHeaders().add("Location", "/text");
+                ex.sendResponseHeaders(302, -1);
+                ex.close();
+                return;
+            }
+            case "/gzip" -> {
+                ex.getResponseHeaders().add("Content-Encoding", "gzip");
+                ex.getResponseHeaders().add("Content-Type", "text/plain");
+                // 길이 0은 chunked.
+                ex.sendResponseHeaders(200, 0);
+                try (OutputStream os = new GZIPOutputStream(ex.getResponseBody())) {
+                    os.write(body);
+                }
+                return;
+            }
+            default -> {
+                ex.getResponseHeaders().add("Content-Type", "text/plain");
+                ex.getResponseHeaders().add("Cache-Control", "max-age=60");
+                ex.getResponseHeaders().add("ETag", "\"t\"");
+                ex.sendResponseHeaders(200, body.length);
+            }
+        }
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
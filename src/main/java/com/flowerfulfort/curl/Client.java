@@ -0,0 +1,598 @@
+package com.flowerfulfort.curl;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// 다른 JVM 코드에 넣어 쓰는 동기 HTTP/1.1 클라이언트. http 요청은 HTTP/2(h2c)로도 보낼 수 있음.
+// 연결 풀, 이름 캐시와 재사용 버퍼를 가지고 있으며, 여러 스레드가 하나의 Client로
+// 동시에 send()해도 됨. 다 쓰면 close()로 유휴 연결을 닫음.
+//
+//     try (Client client = Client.builder().build();
+//             Response res = client.send(Request.builder().setUrl("http://example.com").build())) {
+//         res.body().transferTo(out);
+//     }
+//
+// 연결하지 못하면 UnknownHostException, ConnectException, SSLException 등을,
+// 연결 뒤의 HTTP 오류는 HttpException(TooManyRedirectsException, EmptyReplyException,
+// MalformedResponseException)을 던짐. 4xx, 5xx 응답은 예외가 아니라 그대로 돌려줌.
+//
+// scurl 명령도 exchange()로 같은 방식으로 요청을 보냄.
+public final class Client implements Closeable {
+    static final int DEFAULT_MAX_REDIRECTS = 5;
+    // 이보다 큰 바디는 Expect: 100-continue로 서버의 허락을 먼저 받음(curl과 같은 기준).
+    static final long EXPECT_THRESHOLD = 1L << 20;
+    // 100 Continue를 기다리는 시간. 응답이 없으면 그냥 바디를 보냄.
+    private static final int EXPECT_TIMEOUT = 1000;
+
+    // scurl 명령이 쓰는 클라이언트. 공용 풀과 이름 캐시를 씀.
+    private static final Client SHARED = new Client(ConnectionPool.shared(), DEFAULT_MAX_REDIRECTS, false);
+
+    private final ConnectionPool pool;
+    private final int maxRedirects;
+    // close()에서 풀을 닫을지. 공용 풀은 닫지 않음.
+    private final boolean ownsPool;
+
+    // 응답마다 새로 만들지 않고 돌려 쓰는 파서, 압축 해제기, 버퍼.
+    private final Queue<ResponseHeader> parsers = new ConcurrentLinkedQueue<>();
+    private final Queue<Decompressor> decompressors = new ConcurrentLinkedQueue<>();
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    private Client(ConnectionPool pool, int maxRedirects, boolean ownsPool) {
+        this.pool = pool;
+        this.maxRedirects = maxRedirects;
+        this.ownsPool = ownsPool;
+    }
+
+    // Builder
+    public static final class Builder {
+        private int maxRedirects;
+        private int maxIdlePerHost;
+        private long dnsTtlMillis;
+        private final Resolver resolver;
+
+        Builder() {
+            // default values.
+            maxRedirects = DEFAULT_MAX_REDIRECTS;
+            maxIdlePerHost = 0;
+            dnsTtlMillis = Resolver.DEFAULT_TTL;
+            resolver = new Resolver();
+        }
+
+        // 요청 하나에서 따라갈 리디렉션 수. 넘으면 TooManyRedirectsException.
+        public Builder setMaxRedirects(int n) {
+            if (n < 0)
+                throw new IllegalArgumentException();
+            maxRedirects = n;
+            return this;
+        }
+
+        // host 하나에 보관할 유휴 연결 수.
+        public Builder setMaxIdlePerHost(int n) {
+            if (n <= 0)
+                throw new IllegalArgumentException();
+            maxIdlePerHost = n;
+            return this;
+        }
+
+        // curl의 --resolve와 같은 "host:port:addr[,addr...]". 이 host:port는 이름을 조회하지 않음.
+        public Builder addResolve(String spec) {
+            resolver.addOverride(spec);
+            return this;
+        }
+
+        // 조회한 주소를 재사용할 시간.
+        public Builder setDnsTtl(long millis) {
+            dnsTtlMillis = millis;
+            return this;
+        }
+
+        public Client build() {
+            resolver.setTtl(dnsTtlMillis);
+            ConnectionPool pool = new ConnectionPool(resolver);
+            if (maxIdlePerHost > 0)
+                pool.setMaxIdlePerHost(maxIdlePerHost);
+            return new Client(pool, maxRedirects, true);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    static Client shared() {
+        return SHARED;
+    }
+
+    ConnectionPool pool() {
+        return pool;
+    }
+
+    // 요청을 보내고 최종 응답의 헤더를 받으면 돌아옴. 바디는 Response.body()로 읽으며,
+    // 끝까지 읽거나 닫으면 연결이 풀로 돌아감.
+    public Response send(Request request) throws IOException {
+        ResponseHeader header = parsers.poll();
+        if (header == null)
+            header = new ResponseHeader();
+        try {
+            return send(request, header);
+        } finally {
+            parsers.offer(header);
+        }
+    }
+
+    private Response send(Request request, ResponseHeader header) throws IOException {
+        Url target = request.target();
+        Method method = request.method();
+        // 리디렉션으로 바디 없는 GET이 됨.
+        boolean rewritten = false;
+        for (int redirects = 0;; redirects++) {
+            RequestTemplate t;
+            RequestBody body = null;
+            boolean expect = false;
+            if (rewritten) {
+                t = request.redirectedGet(target);
+            } else if (request.bodyFile() != null) {
+                // 보낼 때의 파일 크기로 Content-Length를 정함.
+                long size = Files.size(request.bodyFile());
+                body = new FileBody(request.bodyFile(), 0, size);
+                expect = size >= EXPECT_THRESHOLD;
+                t = request.compile(target, size, expect);
+            } else {
+                t = request.template(target);
+            }
+            Exchange ex = exchange(target.host, target.port, target.isSecure(), t, body, expect, header,
+                    Trace.NONE, request.http2());
+            Connection conn = ex.conn;
+            int status = header.getStatusCode();
+            boolean noBody = method == Method.HEAD || status < 200 || status == 204 || status == 304;
+            BodyInputStream in = null;
+            InputStream framed;
+            long keepAlive;
+            if (ex.stream != null) {
+                framed = ex.stream.body();
+                keepAlive = 0;
+            } else {
+                try {
+                    in = BodyInputStream.open(conn.getInputStream(), header, noBody);
+                } catch (IOException e) {
+                    conn.close();
+                    ex.end(0, e);
+                    throw e;
+                }
+                framed = in;
+                // 요청 바디를 보내지 않았다면 서버가 아직 그것을 기다리고 있을 수 있으므로 닫음.
+                keepAlive = in.isFramed() && !ex.bodyWithheld ? ConnectionPool.keepAliveMillis(header) : 0;
+            }
+
+            String location = header.get("Location");
+            if (request.isRedirect() && status >= 300 && status < 400 && location != null) {
+                Url next;
+                try {
+                    next = target.resolve(location);
+                } catch (MalformedResponseException e) {
+                    ex.abort();
+                    ex.end(0, e);
+                    throw e;
+                }
+                if (redirects >= maxRedirects) {
+                    ex.abort();
+                    TooManyRedirectsException e = new TooManyRedirectsException(next.toString(), maxRedirects);
+                    ex.end(0, e);
+                    throw e;
+                }
+                finish(ex, in, keepAlive);
+                ex.end(0, null);
+                target = next;
+                if (redirectsAsGet(status, method)) {
+                    method = Method.GET;
+                    rewritten = true;
+                }
+                continue;
+            }
+
+            long length = noBody ? 0
+                    : header.containsToken("Transfer-Encoding", "chunked") ? -1
+                    : header.getLong("Content-Length", -1);
+            InputStream content = framed;
+            Decompressor decompressor = null;
+            String encoding = header.get("Content-Encoding");
+            if (request.isCompressed() && length != 0 && Decompressor.supports(encoding)) {
+                decompressor = decompressors.poll();
+                if (decompressor == null)
+                    decompressor = new Decompressor();
+                try {
+                    content = decompressor.open(framed, encoding);
+                } catch (IOException e) {
+                    decompressors.offer(decompressor);
+                    ex.abort();
+                    ex.end(0, e);
+                    throw e;
+                }
+                length = -1;
+            }
+            InputStream stream;
+            if (length == 0) {
+                // 읽을 것이 없으므로 바로 돌려줌.
+                finish(ex, in, keepAlive);
+                ex.end(0, null);
+                stream = InputStream.nullInputStream();
+            } else {
+                stream = new BodyStream(ex, in, content, decompressor, keepAlive);
+            }
+            return new Response(status, header.getReason(), header.toMap(), target.toString(), stream, length);
+        }
+    }
+
+    // 이 리디렉션을 바디 없는 GET으로 따라가야 하는지. curl과 브라우저처럼 303, 그리고 POST에 대한
+    // 301, 302는 GET으로 바꾸고, 307, 308은 메소드와 바디를 그대로 보냄. scurl 명령도 같은 규칙을 씀.
+    static boolean redirectsAsGet(int status, Method method) {
+        return status == 303 && method != Method.HEAD && method != Method.GET
+                || (status == 301 || status == 302) && method == Method.POST;
+    }
+
+    // 끝까지 읽은 바디의 연결을 풀에 돌려줌. 남은 바디가 있으면 읽어서 버림.
+    // HTTP/2는 스트림만 닫음. 다 받지 않았다면 RST_STREAM으로 취소됨.
+    private void finish(Exchange ex, BodyInputStream in, long keepAlive) {
+        if (ex.stream != null) {
+            ex.stream.close();
+            return;
+        }
+        Connection conn = ex.conn;
+        if (keepAlive <= 0) {
+            conn.close();
+            return;
+        }
+        byte[] buf = buffers.poll();
+        if (buf == null)
+            buf = new byte[BodyInputStream.BUFFER_SIZE];
+        try {
+            if (!in.isComplete())
+                in.drain(buf);
+            pool.release(conn, keepAlive);
+        } catch (IOException e) {
+            conn.close();
+        } finally {
+            buffers.offer(buf);
+        }
+    }
+
+    // 유휴 연결을 닫음. 읽고 있는 응답은 그대로 읽을 수 있음.
+    @Override
+    public void close() {
+        if (ownsPool)
+            pool.closeAll();
+    }
+
+    // exchange()의 단계마다 불림. scurl 명령은 -v 출력과 -w의 시각을 여기서 남김.
+    interface Trace {
+        Trace NONE = new Trace() {
+        };
+
+        // 연결을 얻음. 새 연결이거나 풀에서 꺼낸 연결.
+        default void connected(Connection conn) {
+        }
+
+        // 요청을 쓰기 시작함.
+        default void requestStarted() {
+        }
+
+        // 요청을 다 썼음. bodySent가 false면 최종 응답이 먼저 와서 바디를 보내지 않음.
+        default void requestSent(boolean bodySent) {
+        }
+
+        // 100 Continue가 오지 않아 기다리지 않고 바디를 보냄.
+        default void continueTimedOut() {
+        }
+
+        // 응답 헤더를 하나 읽음. 100 Continue 같은 중간 응답도 포함.
+        default void headerReceived(ResponseHeader header) {
+        }
+
+        // 최종 응답 헤더를 읽음.
+        default void responseStarted(ResponseHeader header) {
+        }
+
+        // HTTP/2 스트림을 열고 요청 헤더를 보냄. connected() 대신 불림.
+        default void streamOpened(Http2Stream stream) {
+        }
+
+        // 서버가 Upgrade: h2c를 받아 들여 응답이 HTTP/2로 옴.
+        default void upgraded() {
+        }
+    }
+
+    // 최종 응답 헤더까지 받은 연결. HTTP/2면 stream으로 바디를 읽으며 연결은 다른 요청과 함께 씀.
+    static final class Exchange {
+        final Connection conn;
+        // Expect: 100-continue에 최종 응답이 먼저 와서 바디를 보내지 않았는지. 연결을 재사용할 수 없음.
+        final boolean bodyWithheld;
+        final Http2Stream stream;
+        // JFR이 기록 중이면 이 교환의 ExchangeEvent. 바디를 다 처리한 쪽이 end()로 남김.
+        ExchangeTrace recorder;
+
+        Exchange(Connection conn, boolean bodyWithheld) {
+            this.conn = conn;
+            this.bodyWithheld = bodyWithheld;
+            this.stream = null;
+        }
+
+        Exchange(Http2Stream stream) {
+            this.conn = stream.connection();
+            this.bodyWithheld = false;
+            this.stream = stream;
+        }
+
+        // 바디를 다 읽지 않고 그만둠. HTTP/1.1은 연결을 닫고, HTTP/2는 스트림만 취소함.
+        void abort() {
+            if (stream != null)
+                stream.close();
+            else
+                conn.close();
+        }
+
+        // 교환이 끝남. received는 받은 바디 바이트 수, failure는 실패 원인(성공이면 null).
+        void end(long received, Throwable failure) {
+            if (recorder != null)
+                recorder.end(received, failure);
+        }
+    }
+
+    // http2가 OFF가 아니면 http 요청을 HTTP/2로 보냄. Upgrade는 바디 없는 요청에만 쓰고,
+    // 바디가 있거나 서버가 Upgrade를 받아 들이지 않으면 HTTP/1.1로 보냄.
+    // JFR이 기록 중이면 ExchangeEvent를 시작함. 여기서 실패하면 바로 남기고, 아니면 돌려준 Exchange의 end()로 남김.
+    Exchange exchange(String host, int port, boolean secure, RequestTemplate t, RequestBody body, boolean expect,
+            ResponseHeader header, Trace trace, Http2Mode http2) throws IOException {
+        ExchangeTrace recorder = TransferStats.recording() ? ExchangeTrace.start(t, secure, body, trace) : null;
+        try {
+            Exchange ex = route(host, port, secure, t, body, expect, header, recorder != null ? recorder : trace,
+                    http2);
+            ex.recorder = recorder;
+            return ex;
+        } catch (IOException e) {
+            if (recorder != null)
+                recorder.end(0, e);
+            throw e;
+        }
+    }
+
+    private Exchange route(String host, int port, boolean secure, RequestTemplate t, RequestBody body,
+            boolean expect, ResponseHeader header, Trace trace, Http2Mode http2) throws IOException {
+        if (http2 != Http2Mode.OFF && !secure) {
+            // 서버가 처리하지 않은 스트림(GOAWAY 뒤, REFUSED_STREAM)은 한 번 더 보냄.
+            for (int attempt = 0;; attempt++) {
+                Http2Connection h2 = pool.http2(host, port);
+                if (h2 == null) {
+                    if (http2 == Http2Mode.PRIOR_KNOWLEDGE)
+                        h2 = pool.openHttp2(host, port);
+                    else if (body == null && t.bodyLength() == 0)
+                        return upgrade(host, port, t, header, trace);
+                    else
+                        break;
+                }
+                Exchange ex = exchange(h2, t, body, header, trace, attempt > 0);
+                if (ex != null)
+                    return ex;
+            }
+        }
+        return exchange(host, port, secure, t, body, expect, header, trace);
+    }
+
+    // 스트림 하나로 요청을 보내고 최종 응답 헤더를 받음. 바디는 DATA 프레임으로 보내며
+    // Expect: 100-continue는 쓰지 않음. 서버가 처리하지 않은 스트림이면 null(last면 예외).
+    private static Exchange exchange(Http2Connection h2, RequestTemplate t, RequestBody body, ResponseHeader header,
+            Trace trace, boolean last) throws IOException {
+        boolean hasBody = body != null || t.bodyLength() > 0;
+        Http2Stream stream;
+        try {
+            stream = h2.newStream(Http2Connection.requestFields(t), !hasBody);
+        } catch (IOException e) {
+            // 그 사이에 연결이 닫히기 시작함.
+            if (last || h2.isUsable())
+                throw e;
+            return null;
+        }
+        try {
+            trace.streamOpened(stream);
+            trace.requestStarted();
+            if (hasBody) {
+                try (OutputStream out = stream.requestBody()) {
+                    t.writeBodyTo(out);
+                    if (body != null)
+                        body.writeTo(out);
+                } catch (IOException e) {
+                    // 바디를 다 받기 전에 최종 응답을 보내고 스트림을 끊은 서버(413 등).
+                    if (!stream.hasResponse())
+                        throw e;
+                }
+            }
+            trace.requestSent(true);
+            stream.awaitResponse(header);
+        } catch (IOException e) {
+            stream.close();
+            if (last || !stream.isRefused())
+                throw e;
+            return null;
+        }
+        trace.headerReceived(header);
+        trace.responseStarted(header);
+        return new Exchange(stream);
+    }
+
+    // Upgrade: h2c를 붙여 HTTP/1.1로 보냄. 서버가 101로 받아 들이면 응답은 같은 연결의 스트림 1로 옴.
+    private Exchange upgrade(String host, int port, RequestTemplate t, ResponseHeader header, Trace trace)
+            throws IOException {
+        Exchange ex = exchange(host, port, false, t.withHeaders(Http2Connection.upgradeHeaders()), null, false,
+                header, trace);
+        if (header.getStatusCode() != 101)
+            return ex;
+        Http2Stream stream;
+        try {
+            Http2Connection h2 = Http2Connection.upgrade(ex.conn);
+            pool.offerHttp2(host, port, h2);
+            trace.upgraded();
+            stream = h2.upgradeStream();
+            stream.awaitResponse(header);
+        } catch (IOException e) {
+            ex.conn.close();
+            throw e;
+        }
+        trace.headerReceived(header);
+        trace.responseStarted(header);
+        return new Exchange(stream);
+    }
+
+    // 연결을 얻어 요청을 보내고 최종 응답 헤더를 header에 읽음. 바디는 연결에 남아 있으므로
+    // 호출한 쪽이 처리한 뒤 연결을 풀에 돌려주거나 닫아야 함.
+    // expect이면 헤더만 먼저 보내고 100 Continue를 잠시 기다린 뒤 바디를 보내며,
+    // 그 전에 최종 응답(401, 413 등)이 오면 바디를 보내지 않음.
+    // 재사용한 연결이 이미 서버에서 닫혔다면 새 연결로 한 번 더 보냄.
+    Exchange exchange(String host, int port, boolean secure, RequestTemplate t, RequestBody body, boolean expect,
+            ResponseHeader header, Trace trace) throws IOException {
+        Connection conn = null;
+        try {
+            while (true) {
+                conn = pool.acquire(host, port, secure);
+                trace.connected(conn);
+
+                try {
+                    // 헤더(와 데이터)를 전송
+                    trace.requestStarted();
+                    t.writeTo(conn.getOutputStream());
+                    boolean received = false;
+                    if (body != null) {
+                        if (expect) {
+                            conn.getOutputStream().flush();
+                            received = awaitContinue(conn, header, trace);
+                        }
+                        // 파일 데이터를 전송.
+                        if (!received)
+                            body.writeTo(conn);
+                    }
+                    conn.getOutputStream().flush();
+                    trace.requestSent(!received);
+
+                    // response를 받음.
+                    if (received || readHeader(conn, header, trace))
+                        return new Exchange(conn, received);
+                } catch (SocketException e) {
+                    // 서버가 닫은 유휴 연결에 쓰면 EOF 대신 RST(Connection reset, Broken pipe)를 받기도 함.
+                    // 이쪽에서 닫은 것(--max-time)이 아니면 응답 없이 닫힌 것과 같이 다시 보냄.
+                    if (!conn.isReused() || !conn.isOpen())
+                        throw e;
+                }
+                conn.close();
+                if (!conn.isReused())
+                    throw new EmptyReplyException();
+            }
+        } catch (IOException e) {
+            if (conn != null)
+                conn.close();
+            throw e;
+        }
+    }
+
+    // 100 Continue를 기다림. 바디를 보내야 하면 false, 그 전에 최종 응답이 왔다면 true.
+    private static boolean awaitContinue(Connection conn, ResponseHeader header, Trace trace) throws IOException {
+        if (!conn.awaitInput(EXPECT_TIMEOUT)) {
+            trace.continueTimedOut();
+            return false;
+        }
+        if (!header.read(conn.getInputStream()))
+            throw new EOFException("Connection closed while waiting for 100-continue");
+        trace.headerReceived(header);
+        if (header.getStatusCode() == 100)
+            return false;
+        trace.responseStarted(header);
+        return true;
+    }
+
+    // 최종 응답 헤더를 읽음. 헤더 없이 연결이 닫혔다면 false.
+    // 100 Continue 같은 중간 응답은 건너뜀(101은 최종 응답으로 봄).
+    static boolean readHeader(Connection conn, ResponseHeader header, Trace trace) throws IOException {
+        do {
+            if (!header.read(conn.getInputStream()))
+                return false;
+            trace.headerReceived(header);
+        } while (header.getStatusCode() >= 100 && header.getStatusCode() < 200 && header.getStatusCode() != 101);
+        trace.responseStarted(header);
+        return true;
+    }
+
+    // Response.body(). 끝까지 읽으면 연결을 풀에 돌려주고, 그 전에 닫으면 연결을 닫음.
+    private final class BodyStream extends InputStream {
+        private final Exchange ex;
+        // HTTP/2면 null.
+        private final BodyInputStream framed;
+        // framed 그대로이거나 압축을 푸는 스트림.
+        private final InputStream content;
+        private final Decompressor decompressor;
+        private final long keepAlive;
+        private long received;
+        private boolean done;
+
+        BodyStream(Exchange ex, BodyInputStream framed, InputStream content, Decompressor decompressor,
+                long keepAlive) {
+            this.ex = ex;
+            this.framed = framed;
+            this.content = content;
+            this.decompressor = decompressor;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done)
+                return -1;
+            int n;
+            try {
+                n = content.read(b, off, len);
+            } catch (IOException e) {
+                end(false, e);
+                throw e;
+            }
+            if (n == -1)
+                end(true, null);
+            else
+                received += n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return done ? 0 : content.available();
+        }
+
+        @Override
+        public void close() {
+            end(false, null);
+        }
+
+        // complete이면 바디를 끝까지 읽은 것. 압축 스트림 뒤에 남은 framing은 finish()가 마저 읽음.
+        private void end(boolean complete, IOException failure) {
+            if (done)
+                return;
+            done = true;
+            if (complete)
+                finish(ex, framed, keepAlive);
+            else
+                ex.abort();
+            ex.end(received, failure);
+            if (decompressor != null)
+                decompressors.offer(decompressor);
+        }
+    }
+}
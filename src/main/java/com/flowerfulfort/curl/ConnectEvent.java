@@ -0,0 +1,35 @@
+package com.flowerfulfort.curl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// 새 연결 하나를 여는 동안(이름 해석 + TCP 연결 + TLS 핸드셰이크)의 JFR 이벤트.
+// 이벤트의 길이가 전체 시간이고, 그중 이름 해석과 핸드셰이크에 걸린 시간은 따로 기록함.
+@Name("com.flowerfulfort.curl.Connect")
+@Label("HTTP Connect")
+@Category({ "scurl", "HTTP" })
+@Description("Name resolution, TCP connect and TLS handshake for a new connection")
+@StackTrace(false)
+final class ConnectEvent extends Event {
+    @Label("Host")
+    String host;
+
+    @Label("Port")
+    int port;
+
+    @Label("Remote Address")
+    String address;
+
+    @Label("Name Lookup Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long lookupTime;
+
+    @Label("TLS Handshake Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long handshakeTime;
+}
@@ -0,0 +1,252 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+// 하나의 TCP 연결. keep-alive로 여러 요청이 재사용할 수 있도록
+// 소켓과 버퍼링된 스트림을 요청 사이에 그대로 유지한다.
+final class Connection implements Closeable {
+    private final String host;
+    private final int port;
+    private final SocketChannel channel;
+    private final Socket socket;
+    // https면 socket 위에 얹은 TLS 소켓, 아니면 null.
+    private final SSLSocket tls;
+    private final Input in;
+    private final OutputStream out;
+
+    // 풀에서 꺼내 재사용된 연결인지 여부.
+    private boolean reused;
+    // 이 시각이 지나면 유휴 연결을 버림.
+    private long idleDeadline;
+    // 연결을 열 때 이름 해석과 TCP 연결에 걸린 시간(ns).
+    private final long lookupNanos;
+    private final long connectNanos;
+    private final long handshakeNanos;
+
+    Connection(String host, int port) throws IOException {
+        this(host, port, false);
+    }
+
+    Connection(String host, int port, boolean secure) throws IOException {
+        this(host, port, secure, Resolver.shared());
+    }
+
+    Connection(String host, int port, boolean secure, Resolver resolver) throws IOException {
+        this.host = host;
+        this.port = port;
+        ConnectEvent event = TransferStats.recording() ? new ConnectEvent() : null;
+        if (event != null)
+            event.begin();
+        long t0 = System.nanoTime();
+        InetAddress[] addresses = resolver.resolve(host, port);
+        long t1 = System.nanoTime();
+        // 파일을 transferTo로 보낼 수 있도록 채널 기반 소켓을 사용.
+        this.channel = Connector.shared().connect(host, addresses, port);
+        this.socket = channel.socket();
+        long t2 = System.nanoTime();
+        // curl과 같이 Nagle 알고리즘을 끔.
+        socket.setTcpNoDelay(true);
+        if (secure) {
+            try {
+                this.tls = Tls.shared().handshake(socket, host, port);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        } else {
+            this.tls = null;
+        }
+        this.lookupNanos = t1 - t0;
+        this.connectNanos = t2 - t1;
+        this.handshakeNanos = secure ? System.nanoTime() - t2 : 0;
+        if (event != null && event.shouldCommit()) {
+            event.host = host;
+            event.port = port;
+            event.address = socket.getInetAddress().getHostAddress();
+            event.lookupTime = lookupNanos;
+            event.handshakeTime = handshakeNanos;
+            event.commit();
+        }
+        Socket s = tls != null ? tls : socket;
+        this.in = new Input(s.getInputStream());
+        this.out = new BufferedOutputStream(s.getOutputStream());
+        this.reused = false;
+    }
+
+    long getLookupNanos() {
+        return lookupNanos;
+    }
+
+    long getConnectNanos() {
+        return connectNanos;
+    }
+
+    // TLS 핸드셰이크에 걸린 시간(ns). https가 아니면 0.
+    long getHandshakeNanos() {
+        return handshakeNanos;
+    }
+
+    static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    // 풀에서 연결을 찾는 키. 같은 host:port라도 https와 http 연결은 섞지 않음.
+    static String key(String host, int port, boolean secure) {
+        return secure ? "https://" + key(host, port) : key(host, port);
+    }
+
+    String key() {
+        return key(host, port, tls != null);
+    }
+
+    boolean isSecure() {
+        return tls != null;
+    }
+
+    // https면 협상된 TLS 세션, 아니면 null.
+    SSLSession tlsSession() {
+        return tls != null ? tls.getSession() : null;
+    }
+
+    // ALPN으로 서버가 고른 프로토콜. 없으면 null.
+    String applicationProtocol() {
+        String p = tls != null ? tls.getApplicationProtocol() : null;
+        return p == null || p.isEmpty() ? null : p;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    InetAddress getInetAddress() {
+        return socket.getInetAddress();
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    // transferTo로 파일을 바로 보낼 때 사용. 쓰기 전에 getOutputStream()을 flush 해야 함.
+    // https 연결은 암호화를 거쳐야 하므로 getOutputStream()에 쓰는 채널을 줌(다 쓴 뒤 flush 필요).
+    WritableByteChannel channel() {
+        return tls != null ? Channels.newChannel(out) : channel;
+    }
+
+    // 바디를 소켓에서 파일로 바로 받을 때 사용. 먼저 buffered()만큼을 getInputStream()에서 읽어야 함.
+    // https 연결은 복호화를 거쳐야 하므로 null.
+    ReadableByteChannel readChannel() {
+        return tls != null ? null : channel;
+    }
+
+    // getInputStream()이 소켓에서 미리 읽어 두어 아직 돌려주지 않은 바이트 수.
+    int buffered() {
+        return in.buffered();
+    }
+
+    // BufferedInputStream의 버퍼에 남은 양을 알 수 있게 함.
+    private static final class Input extends BufferedInputStream {
+        Input(InputStream in) {
+            super(in);
+        }
+
+        synchronized int buffered() {
+            return count - pos;
+        }
+    }
+
+    // timeoutMillis 안에 읽을 바이트가 오는지. 아무것도 소비하지 않음.
+    // 연결이 닫혀도 true(다음 읽기에서 알게 됨).
+    boolean awaitInput(int timeoutMillis) throws IOException {
+        if (in.available() > 0)
+            return true;
+        Socket s = tls != null ? tls : socket;
+        int old = s.getSoTimeout();
+        s.setSoTimeout(timeoutMillis);
+        try {
+            in.mark(1);
+            in.read();
+            in.reset();
+            return true;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } finally {
+            s.setSoTimeout(old);
+        }
+    }
+
+    boolean isReused() {
+        return reused;
+    }
+
+    void markReused() {
+        reused = true;
+    }
+
+    void setIdleDeadline(long deadline) {
+        idleDeadline = deadline;
+    }
+
+    boolean isExpired(long now) {
+        return now >= idleDeadline;
+    }
+
+    boolean isOpen() {
+        return !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown()
+                && (tls == null || !tls.isClosed());
+    }
+
+    // CRLF(또는 LF)로 끝나는 한 줄을 읽음. 헤더는 ISO-8859-1로 해석.
+    // 스트림이 끝났으면 null.
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int len = line.size();
+                byte[] bytes = line.toByteArray();
+                if (len > 0 && bytes[len - 1] == '\r')
+                    len--;
+                return new String(bytes, 0, len, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (tls != null)
+                tls.close();
+            else
+                socket.close();
+        } catch (IOException e) {
+            // 닫는 중의 오류는 무시.
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// host:port 별로 유휴 연결을 보관하는 HTTP/1.1 keep-alive 풀.
+// h2c 연결은 빌려주고 돌려받지 않고 host:port마다 하나를 두고 여러 스레드가 함께 씀.
+final class ConnectionPool {
+    // 서버가 Keep-Alive: timeout을 주지 않았을 때의 유휴 시간(ms).
+    static final long DEFAULT_KEEP_ALIVE = 30_000;
+    private static final int DEFAULT_MAX_IDLE_PER_HOST = 8;
+
+    private static final ConnectionPool SHARED = new ConnectionPool(Resolver.shared());
+
+    private final Map<String, Deque<Connection>> idle = new HashMap<>();
+    // host:port 별 HTTP/2 연결. 여는 중이면 완료되지 않은 future라 다른 스레드는 기다렸다가 같이 씀.
+    private final Map<String, CompletableFuture<Http2Connection>> http2 = new HashMap<>();
+    private int maxIdlePerHost = DEFAULT_MAX_IDLE_PER_HOST;
+    // 새 연결을 열 때 이름을 찾는 곳.
+    private final Resolver resolver;
+
+    ConnectionPool(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    static ConnectionPool shared() {
+        return SHARED;
+    }
+
+    // host 하나에 보관할 유휴 연결 수.
+    synchronized void setMaxIdlePerHost(int max) {
+        maxIdlePerHost = Math.max(1, max);
+    }
+
+    // 살아있는 유휴 연결이 있으면 재사용하고, 없으면 새로 연결.
+    Connection acquire(String host, int port) throws IOException {
+        return acquire(host, port, false);
+    }
+
+    // secure이면 https 연결. 새 연결은 TLS 핸드셰이크까지 마친 뒤 돌려줌.
+    Connection acquire(String host, int port, boolean secure) throws IOException {
+        Connection conn = poll(Connection.key(host, port, secure));
+        if (conn != null) {
+            conn.markReused();
+            return conn;
+        }
+        return new Connection(host, port, secure, resolver);
+    }
+
+    private synchronized Connection poll(String key) {
+        evictExpired();
+        Deque<Connection> q = idle.get(key);
+        if (q == null)
+            return null;
+        Connection conn;
+        while ((conn = q.pollFirst()) != null) {
+            if (conn.isOpen())
+                return conn;
+            conn.close();
+        }
+        return null;
+    }
+
+    // 응답을 끝까지 읽은 연결을 풀에 되돌림.
+    synchronized void release(Connection conn, long keepAliveMillis) {
+        if (keepAliveMillis <= 0 || !conn.isOpen()) {
+            conn.close();
+            return;
+        }
+        conn.setIdleDeadline(System.currentTimeMillis() + keepAliveMillis);
+        Deque<Connection> q = idle.computeIfAbsent(conn.key(), k -> new ArrayDeque<>());
+        q.addFirst(conn);
+        while (q.size() > maxIdlePerHost) {
+            q.pollLast().close();
+        }
+    }
+
+    // 새 스트림을 열 수 있는 HTTP/2 연결이 있으면 돌려줌. 다른 스레드가 prior knowledge로 여는 중이면 기다림.
+    Http2Connection http2(String host, int port) throws IOException {
+        CompletableFuture<Http2Connection> f;
+        synchronized (this) {
+            f = http2.get(Connection.key(host, port, false));
+        }
+        if (f == null)
+            return null;
+        Http2Connection h2 = join(f);
+        return h2 != null && h2.isUsable() ? h2 : null;
+    }
+
+    // prior knowledge로 HTTP/2 연결을 열어 풀에 둠. 동시에 부른 스레드들은 같은 연결 하나를 받음.
+    Http2Connection openHttp2(String host, int port) throws IOException {
+        String key = Connection.key(host, port, false);
+        CompletableFuture<Http2Connection> f;
+        CompletableFuture<Http2Connection> mine = null;
+        synchronized (this) {
+            f = http2.get(key);
+            if (f == null || f.isDone() && !usable(f)) {
+                if (f != null)
+                    retire(f);
+                mine = new CompletableFuture<>();
+                http2.put(key, mine);
+                f = mine;
+            }
+        }
+        if (mine == null) {
+            Http2Connection h2 = join(f);
+            if (h2 == null)
+                throw new HttpException("HTTP/2 connection to " + key + " failed");
+            return h2;
+        }
+        try {
+            Http2Connection h2 = Http2Connection.open(new Connection(host, port, false, resolver));
+            mine.complete(h2);
+            return h2;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                http2.remove(key, mine);
+            }
+            mine.complete(null);
+            throw e;
+        }
+    }
+
+    // Upgrade로 HTTP/2가 된 연결을 풀에 둠. 이미 쓸 수 있는 연결이 있으면 이 연결은 지금 스트림만 끝내고 닫음.
+    synchronized void offerHttp2(String host, int port, Http2Connection h2) {
+        String key = Connection.key(host, port, false);
+        CompletableFuture<Http2Connection> f = http2.get(key);
+        if (f != null && (!f.isDone() || usable(f))) {
+            h2.drain();
+            return;
+        }
+        if (f != null)
+            retire(f);
+        http2.put(key, CompletableFuture.completedFuture(h2));
+    }
+
+    // 여는 데 실패했으면 null.
+    private static Http2Connection join(CompletableFuture<Http2Connection> f) throws IOException {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static boolean usable(CompletableFuture<Http2Connection> f) {
+        Http2Connection h2 = f.getNow(null);
+        return h2 != null && h2.isUsable();
+    }
+
+    // 남은 스트림이 끝나면 닫음.
+    private static void retire(CompletableFuture<Http2Connection> f) {
+        Http2Connection h2 = f.getNow(null);
+        if (h2 != null)
+            h2.drain();
+    }
+
+    // 유휴 시간이 지난 연결을 닫음.
+    synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        http2.values().removeIf(f -> {
+            if (!f.isDone())
+                return false;
+            Http2Connection h2 = f.getNow(null);
+            if (h2 != null && h2.isUsable() && !h2.isIdle(now, DEFAULT_KEEP_ALIVE))
+                return false;
+            retire(f);
+            return true;
+        });
+        Iterator<Deque<Connection>> it = idle.values().iterator();
+        while (it.hasNext()) {
+            Deque<Connection> q = it.next();
+            q.removeIf(c -> {
+                if (c.isExpired(now) || !c.isOpen()) {
+                    c.close();
+                    return true;
+                }
+                return false;
+            });
+            if (q.isEmpty())
+                it.remove();
+        }
+    }
+
+    synchronized void closeAll() {
+        idle.values().forEach(q -> q.forEach(Connection::close));
+        idle.clear();
+        http2.values().forEach(ConnectionPool::retire);
+        http2.clear();
+    }
+
+    // 응답 헤더의 Connection / Keep-Alive를 보고 연결 유지 시간을 정함.
+    // 0이면 연결을 닫아야 함.
+    static long keepAliveMillis(ResponseHeader header) {
+        if (header.containsToken("Connection", "close"))
+            return 0;
+        if (header.isHttp10() && !header.containsToken("Connection", "keep-alive"))
+            return 0;
+        String keepAlive = header.get("Keep-Alive");
+        if (keepAlive != null) {
+            for (String param : keepAlive.split(",")) {
+                String[] kv = param.strip().split("=");
+                if (kv.length == 2 && kv[0].equalsIgnoreCase("timeout")) {
+                    try {
+                        return Math.min(DEFAULT_KEEP_ALIVE, Long.parseLong(kv[1].strip()) * 1000);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return DEFAULT_KEEP_ALIVE;
+    }
+}
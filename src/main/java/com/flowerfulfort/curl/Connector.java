@@ -0,0 +1,152 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// 찾은 주소들 중 하나로 TCP 연결을 맺음. 주소가 여럿이면 Happy Eyeballs(RFC 8305) 방식으로
+// IPv6, IPv4가 번갈아 오도록 늘어놓고 STAGGER 간격으로 하나씩 연결을 시작해 먼저 연결된 것을 씀.
+// 앞 주소가 응답하지 않아도(블랙홀) OS의 연결 시간 제한(수 분)을 기다리지 않고 다음 주소로 넘어감.
+// 이긴 주소의 종류는 host별로 기억해 두고 다음 연결에서 그쪽부터 시도함.
+final class Connector {
+    // 다음 주소로 연결을 시작하기까지 기다리는 시간(ms). RFC 8305의 권장값.
+    static final long STAGGER = 250;
+
+    private static final long STAGGER_NANOS = TimeUnit.MILLISECONDS.toNanos(STAGGER);
+    private static final Connector SHARED = new Connector();
+
+    // host -> 지난번에 IPv4 주소가 이겼는지. 없으면 IPv6부터.
+    private final Map<String, Boolean> preferV4 = new ConcurrentHashMap<>();
+    // --connect-timeout. 0이면 제한 없음.
+    private volatile long connectTimeoutNanos;
+
+    static Connector shared() {
+        return SHARED;
+    }
+
+    // 주소 전체에 걸친 연결 시간 제한. 0이면 제한 없음.
+    void setConnectTimeout(long millis) {
+        connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    // 블로킹 모드로 연결된 채널을 돌려줌. 모두 실패하면 마지막 실패를 던짐.
+    SocketChannel connect(String host, InetAddress[] addresses, int port) throws IOException {
+        if (addresses.length == 0)
+            throw new UnknownHostException(host);
+        long limit = connectTimeoutNanos;
+        if (addresses.length == 1 && limit == 0)
+            return SocketChannel.open(new InetSocketAddress(addresses[0], port));
+        InetAddress[] order = order(addresses, preferV4.getOrDefault(host, false));
+        SocketChannel winner = race(order, port, limit);
+        InetAddress won = ((InetSocketAddress) winner.getRemoteAddress()).getAddress();
+        preferV4.put(host, won instanceof Inet4Address);
+        return winner;
+    }
+
+    // 첫 주소와 같은 종류부터 두 종류를 번갈아 늘어놓음. 같은 종류 안에서는 찾은 순서를 지킴.
+    static InetAddress[] order(InetAddress[] addresses, boolean v4First) {
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        for (InetAddress a : addresses) {
+            ((a instanceof Inet4Address) == v4First ? first : second).add(a);
+        }
+        InetAddress[] order = new InetAddress[addresses.length];
+        int i = 0;
+        for (int k = 0; k < Math.max(first.size(), second.size()); k++) {
+            if (k < first.size())
+                order[i++] = first.get(k);
+            if (k < second.size())
+                order[i++] = second.get(k);
+        }
+        return order;
+    }
+
+    // 진행 중인 시도 수는 직접 셈. 취소한 키는 다음 select까지 selector.keys()에 남아 있어서
+    // 그것으로 세면 모두 거절됐을 때 끝나지 않고 기다림.
+    private static SocketChannel race(InetAddress[] order, int port, long limit) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + limit;
+        SocketChannel winner = null;
+        IOException last = null;
+        Selector selector = Selector.open();
+        try {
+            int next = 0;
+            int pending = 0;
+            long nextStart = start;
+            while (winner == null) {
+                long now = System.nanoTime();
+                // 차례가 됐거나 진행 중인 시도가 모두 실패했으면 다음 주소로 시작.
+                if (next < order.length && (now - nextStart >= 0 || pending == 0)) {
+                    SocketChannel ch = SocketChannel.open();
+                    InetSocketAddress target = new InetSocketAddress(order[next++], port);
+                    try {
+                        ch.configureBlocking(false);
+                        if (ch.connect(target)) {
+                            winner = ch;
+                            break;
+                        }
+                        ch.register(selector, SelectionKey.OP_CONNECT);
+                        pending++;
+                    } catch (IOException e) {
+                        ch.close();
+                        last = e;
+                        continue;
+                    }
+                    nextStart = now + STAGGER_NANOS;
+                }
+                // 남은 주소도 진행 중인 시도도 없음. 시간 제한 전이라도 마지막 실패(거절 등)를 그대로 알림.
+                if (pending == 0)
+                    throw last;
+                long wait = next < order.length ? nextStart - now : Long.MAX_VALUE;
+                if (limit > 0) {
+                    if (deadline - now <= 0)
+                        throw new SocketTimeoutException(
+                                "Connection timed out after " + TimeUnit.NANOSECONDS.toMillis(now - start)
+                                        + " milliseconds");
+                    wait = Math.min(wait, deadline - now);
+                }
+                selector.select(wait == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                if (Thread.interrupted())
+                    throw new InterruptedIOException("Connect interrupted");
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel ch = (SocketChannel) key.channel();
+                    try {
+                        if (ch.finishConnect()) {
+                            winner = ch;
+                            break;
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        ch.close();
+                        pending--;
+                        last = e;
+                        // 실패한 시도가 있으면 기다리지 않고 다음 주소를 시작.
+                        nextStart = System.nanoTime();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() != winner)
+                    key.channel().close();
+            }
+            // 셀렉터를 닫아야 등록이 풀려 블로킹 모드로 바꿀 수 있음.
+            selector.close();
+        }
+        winner.configureBlocking(true);
+        return winner;
+    }
+}
@@ -0,0 +1,221 @@
+package com.flowerfulfort.curl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Content-Encoding(gzip, deflate)를 읽으면서 푸는 스트림.
+// 압축된 바이트는 고정 크기 버퍼 하나로 조금씩 Inflater에 넘기므로
+// 바디 전체를 모아두지 않음. framing은 아래의 BodyInputStream이 처리하므로
+// chunked 응답에도 그대로 쓸 수 있음.
+//
+// 요청마다 Inflater를 새로 만들지 않도록 open()으로 다시 씀.
+final class Decompressor extends InputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    // gzip 헤더의 플래그.
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    // gzip과 zlib 헤더가 없는 deflate는 nowrap, zlib 형식의 deflate는 wrapped를 씀.
+    private final Inflater nowrap = new Inflater(true);
+    private Inflater wrapped;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buf = new byte[BodyInputStream.BUFFER_SIZE];
+
+    private InputStream in;
+    private Inflater inflater;
+    private boolean gzip;
+    // buf에서 아직 쓰지 않은 구간 [pos, limit).
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    // 지원하는 인코딩인지. "identity"나 알 수 없는 값이면 바디를 그대로 둬야 함.
+    static boolean supports(String encoding) {
+        if (encoding == null)
+            return false;
+        String e = encoding.strip();
+        return e.equalsIgnoreCase("gzip") || e.equalsIgnoreCase("x-gzip") || e.equalsIgnoreCase("deflate");
+    }
+
+    // in에서 encoding으로 압축된 바디를 읽도록 초기화.
+    Decompressor open(InputStream in, String encoding) throws IOException {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        this.eof = false;
+        String e = encoding.strip();
+        gzip = !e.equalsIgnoreCase("deflate");
+        inflater = nowrap;
+        if (gzip) {
+            if (!readGzipHeader()) {
+                // 빈 바디.
+                eof = true;
+            }
+        } else {
+            // RFC 상 deflate는 zlib 형식이지만 헤더 없이 보내는 서버도 있어 첫 두 바이트로 구분.
+            if (!ensure(2)) {
+                eof = true;
+            } else {
+                int cmf = buf[pos] & 0xff;
+                int flg = buf[pos + 1] & 0xff;
+                boolean zlib = (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0;
+                if (zlib) {
+                    if (wrapped == null)
+                        wrapped = new Inflater();
+                    inflater = wrapped;
+                }
+            }
+        }
+        inflater.reset();
+        crc.reset();
+        return this;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (!eof) {
+            // 끝난 Inflater도 needsInput()이 true이므로 finished()를 먼저 봐야 함.
+            if (inflater.finished()) {
+                finishMember();
+                continue;
+            }
+            if (inflater.needsInput()) {
+                if (pos == limit && fill() == -1)
+                    throw new EOFException("Compressed body ended unexpectedly");
+                inflater.setInput(buf, pos, limit - pos);
+            }
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed body: " + e.getMessage());
+            }
+            pos = limit - inflater.getRemaining();
+            if (n > 0) {
+                if (gzip)
+                    crc.update(b, off, n);
+                return n;
+            }
+            if (inflater.needsDictionary())
+                throw new IOException("Compressed body needs a preset dictionary");
+        }
+        return -1;
+    }
+
+    // deflate 스트림 하나가 끝남. gzip이면 trailer를 확인하고 다음 멤버가 있으면 이어서 읽음.
+    private void finishMember() throws IOException {
+        if (!gzip) {
+            eof = true;
+            return;
+        }
+        if (!ensure(8))
+            throw new EOFException("Compressed body ended inside gzip trailer");
+        long expectedCrc = readIntLE();
+        long expectedSize = readIntLE();
+        if (expectedCrc != crc.getValue())
+            throw new IOException("gzip CRC mismatch");
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL))
+            throw new IOException("gzip size mismatch");
+        // 여러 멤버를 이어 붙인 gzip도 허용.
+        if (readGzipHeader()) {
+            inflater.reset();
+            crc.reset();
+        } else {
+            eof = true;
+        }
+    }
+
+    // 다음 gzip 헤더를 읽음. 더 읽을 바이트가 없으면 false.
+    private boolean readGzipHeader() throws IOException {
+        if (!ensure(1))
+            return false;
+        if (!ensure(10))
+            throw new EOFException("Compressed body ended inside gzip header");
+        int magic = (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8;
+        if (magic != GZIP_MAGIC)
+            throw new IOException("Not in gzip format");
+        if (buf[pos + 2] != 8)
+            throw new IOException("Unsupported gzip compression method");
+        int flags = buf[pos + 3] & 0xff;
+        pos += 10;
+        if ((flags & FEXTRA) != 0) {
+            if (!ensure(2))
+                throw new EOFException("Compressed body ended inside gzip header");
+            int xlen = (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8;
+            pos += 2;
+            skip(xlen);
+        }
+        if ((flags & FNAME) != 0)
+            skipZeroTerminated();
+        if ((flags & FCOMMENT) != 0)
+            skipZeroTerminated();
+        if ((flags & FHCRC) != 0)
+            skip(2);
+        return true;
+    }
+
+    private void skip(int n) throws IOException {
+        while (n > 0) {
+            if (pos == limit && fill() == -1)
+                throw new EOFException("Compressed body ended inside gzip header");
+            int k = Math.min(n, limit - pos);
+            pos += k;
+            n -= k;
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (true) {
+            if (pos == limit && fill() == -1)
+                throw new EOFException("Compressed body ended inside gzip header");
+            if (buf[pos++] == 0)
+                return;
+        }
+    }
+
+    private long readIntLE() {
+        long v = (buf[pos] & 0xffL) | (buf[pos + 1] & 0xffL) << 8 | (buf[pos + 2] & 0xffL) << 16
+                | (buf[pos + 3] & 0xffL) << 24;
+        pos += 4;
+        return v;
+    }
+
+    // buf에 n바이트 이상 남도록 채움. 스트림이 먼저 끝나면 false.
+    private boolean ensure(int n) throws IOException {
+        if (limit - pos >= n)
+            return true;
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < n) {
+            int r = in.read(buf, limit, buf.length - limit);
+            if (r == -1)
+                return false;
+            limit += r;
+        }
+        return true;
+    }
+
+    // buf가 비었을 때 새로 채움.
+    private int fill() throws IOException {
+        int r = in.read(buf, 0, buf.length);
+        pos = 0;
+        limit = Math.max(r, 0);
+        return r;
+    }
+}
@@ -0,0 +1,10 @@
+package com.flowerfulfort.curl;
+
+// 요청을 보냈지만 서버가 응답 헤더 없이 연결을 닫은 경우.
+public class EmptyReplyException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    public EmptyReplyException() {
+        super("Empty reply from server");
+    }
+}
@@ -0,0 +1,54 @@
+package com.flowerfulfort.curl;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// 요청 하나를 보내고 응답 바디를 다 받기까지의 JFR 이벤트.
+// 리디렉션을 따라가면 단계마다 하나씩 생김. 각 단계 시간은 이벤트 시작부터의 경과 시간.
+@Name("com.flowerfulfort.curl.Exchange")
+@Label("HTTP Exchange")
+@Category({ "scurl", "HTTP" })
+@Description("One HTTP request/response exchange with per-phase timings")
+@StackTrace(false)
+final class ExchangeEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("URL")
+    String url;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Reused Connection")
+    boolean reused;
+
+    @Label("Connected")
+    @Timespan(Timespan.NANOSECONDS)
+    long connected;
+
+    @Label("Request Sent")
+    @Timespan(Timespan.NANOSECONDS)
+    long requestSent;
+
+    @Label("First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    long firstByte;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    @Label("Failure")
+    String failure;
+}
@@ -0,0 +1,102 @@
+package com.flowerfulfort.curl;
+
+// 요청/응답 한 번의 ExchangeEvent를 채움. Client.Trace로 넘기면 단계마다 시각을 남기고 감싼 trace에
+// 그대로 넘김. Trace를 거치지 않는 파이프라인과 AsyncClient는 단계 메소드를 직접 부름.
+// 이벤트 클래스를 읽으면 JFR이 초기화되므로 TransferStats.recording()일 때만 만듦.
+final class ExchangeTrace implements Client.Trace {
+    private final ExchangeEvent event = new ExchangeEvent();
+    private final Client.Trace delegate;
+    private final long start;
+    // 템플릿(헤더와 -d 바디)과 따로 흘려보내는 바디의 바이트 수.
+    private final long templateBytes;
+    private final long bodyBytes;
+    private boolean ended;
+
+    private ExchangeTrace(RequestTemplate t, boolean secure, long bodyBytes, Client.Trace delegate) {
+        this.delegate = delegate;
+        this.templateBytes = t.length();
+        this.bodyBytes = bodyBytes;
+        event.method = t.getMethod().name();
+        event.url = (secure ? "https://" : "http://") + t.getAuthority() + t.getPath();
+        event.begin();
+        start = System.nanoTime();
+    }
+
+    // t를 보내는 교환의 측정을 시작함. body는 템플릿 밖의 바디(없으면 null).
+    static ExchangeTrace start(RequestTemplate t, boolean secure, RequestBody body, Client.Trace delegate) {
+        return new ExchangeTrace(t, secure, body != null ? Math.max(0, body.contentLength()) : 0, delegate);
+    }
+
+    void connected(boolean reused) {
+        event.reused = reused;
+        event.connected = System.nanoTime() - start;
+    }
+
+    void requestSent(long bytes) {
+        event.requestSent = System.nanoTime() - start;
+        event.bytesSent = bytes;
+    }
+
+    // 최종 응답 헤더를 받음. Upgrade처럼 두 번 불리면 처음 시각과 나중 상태 코드를 씀.
+    void responseStarted(int statusCode) {
+        if (event.firstByte == 0)
+            event.firstByte = System.nanoTime() - start;
+        event.statusCode = statusCode;
+    }
+
+    // 바디까지 다 받았거나 실패함. 이벤트를 남기며 두 번째부터는 무시함.
+    void end(long bytesReceived, Throwable failure) {
+        if (ended)
+            return;
+        ended = true;
+        if (!event.shouldCommit())
+            return;
+        event.bytesReceived = bytesReceived;
+        event.failure = failure != null ? failure.toString() : null;
+        event.commit();
+    }
+
+    @Override
+    public void connected(Connection conn) {
+        connected(conn.isReused());
+        delegate.connected(conn);
+    }
+
+    @Override
+    public void requestStarted() {
+        delegate.requestStarted();
+    }
+
+    @Override
+    public void requestSent(boolean bodySent) {
+        requestSent(templateBytes + (bodySent ? bodyBytes : 0));
+        delegate.requestSent(bodySent);
+    }
+
+    @Override
+    public void continueTimedOut() {
+        delegate.continueTimedOut();
+    }
+
+    @Override
+    public void headerReceived(ResponseHeader header) {
+        delegate.headerReceived(header);
+    }
+
+    @Override
+    public void responseStarted(ResponseHeader header) {
+        responseStarted(header.getStatusCode());
+        delegate.responseStarted(header);
+    }
+
+    @Override
+    public void streamOpened(Http2Stream stream) {
+        connected(stream.isReused());
+        delegate.streamOpened(stream);
+    }
+
+    @Override
+    public void upgraded() {
+        delegate.upgraded();
+    }
+}
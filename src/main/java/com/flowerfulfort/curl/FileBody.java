@@ -0,0 +1,56 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// 파일의 [offset, offset + length) 구간을 그대로 보내는 바디(-T).
+// 이어서 올릴 때는 서버가 이미 가진 만큼 offset을 옮겨서 만듦.
+final class FileBody implements RequestBody {
+    private final Path file;
+    private final long offset;
+    private final long length;
+
+    FileBody(Path file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    // 파일 내용은 힙을 거치지 않고 transferTo로 전송.
+    @Override
+    public void writeTo(Connection conn) throws IOException {
+        conn.getOutputStream().flush();
+        transfer(conn.channel());
+        conn.getOutputStream().flush();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        transfer(Channels.newChannel(out));
+    }
+
+    private void transfer(WritableByteChannel target) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (fc.size() < offset + length)
+                throw new IOException("File changed while uploading: " + file);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long n = fc.transferTo(position, end - position, target);
+                if (n <= 0 && position >= fc.size())
+                    throw new IOException("File changed while uploading: " + file);
+                position += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.flowerfulfort.curl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// -o, -O로 받는 바디를 쓰는 파일. 바이트를 그대로 FileChannel에 씀.
+// Content-Length를 알면 preallocate()로 파일 크기를 먼저 잡고, 평문 연결의 바디는
+// transferFrom()으로 소켓 채널에서 direct 버퍼 하나를 거쳐 파일로 바로 옮김(힙 배열을 거치지 않음).
+final class FileOutput extends OutputStream {
+    // 소켓에서 한 번에 읽어 쓰는 크기.
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    // 진행 표시를 하지 않으면 null.
+    private final ProgressMeter meter;
+    // 다음에 쓸 위치이자 지금까지 쓴 바이트 수.
+    private long position;
+    // preallocate()로 늘려 둔 크기. close()에서 실제로 쓴 만큼 줄임.
+    private long allocated;
+    private ByteBuffer direct;
+    private final ByteBuffer one = ByteBuffer.allocate(1);
+
+    private FileOutput(FileChannel channel, ProgressMeter meter) {
+        this.channel = channel;
+        this.meter = meter;
+    }
+
+    // 파일을 새로 만들거나 비움. progress가 null이 아니면 거기에 진행 표시를 함.
+    static FileOutput open(Path file, PrintStream progress) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new FileOutput(channel, progress != null ? new ProgressMeter(progress) : null);
+    }
+
+    // -O: URL 경로의 마지막 부분을 파일 이름으로 씀. 쿼리는 뺌. 이름이 없으면(경로가 /로 끝남) null.
+    static String remoteName(String url) {
+        String path = Url.parse(url).path;
+        int end = path.length();
+        int q = path.indexOf('?');
+        if (q >= 0)
+            end = q;
+        int hash = path.indexOf('#');
+        if (hash >= 0 && hash < end)
+            end = hash;
+        String name = path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+        return name.isEmpty() ? null : name;
+    }
+
+    // 앞으로 length 바이트를 받음. 파일을 그 크기까지 먼저 늘려 두고 진행 표시에 전체 크기를 알림.
+    void preallocate(long length) throws IOException {
+        if (length <= 0)
+            return;
+        long end = position + length;
+        if (meter != null)
+            meter.setTotal(end);
+        if (end > allocated) {
+            // 끝에 한 바이트를 써서 늘림. 도중에 끊기면 close()에서 받은 만큼으로 줄임.
+            one.clear();
+            one.put((byte) 0).flip();
+            channel.write(one, end - 1);
+            allocated = end;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        one.clear();
+        one.put((byte) b).flip();
+        write(one);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    private void write(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+        if (meter != null)
+            meter.update(position);
+    }
+
+    // src에서 count 바이트를 읽어 파일에 씀. 그 전에 끝나면 EOFException.
+    long transferFrom(ReadableByteChannel src, long count) throws IOException {
+        ByteBuffer buf = direct;
+        if (buf == null) {
+            buf = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+            direct = buf;
+        }
+        long left = count;
+        while (left > 0) {
+            buf.clear();
+            if (left < buf.capacity())
+                buf.limit((int) left);
+            int n = src.read(buf);
+            if (n == -1)
+                throw new EOFException("Connection closed with " + left + " bytes remaining");
+            buf.flip();
+            write(buf);
+            left -= n;
+        }
+        return count;
+    }
+
+    // 늘려 둔 크기만큼 받지 못했으면 받은 만큼으로 줄이고 닫음.
+    @Override
+    public void close() throws IOException {
+        try {
+            if (allocated > position)
+                channel.truncate(position);
+        } finally {
+            channel.close();
+            if (meter != null)
+                meter.finish();
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// HTTP/2 헤더 압축(RFC 7541). 연결 하나에 Encoder(보내는 쪽 동적 테이블)와
+// Decoder(받는 쪽 동적 테이블)를 하나씩 두고 그 연결의 모든 스트림이 같이 씀.
+// 같은 연결로 비슷한 요청을 계속 보내면 두 번째부터는 헤더가 대부분 1바이트 인덱스가 됨.
+// 헤더 블록은 보낸 순서대로 인코딩/디코딩해야 테이블이 어긋나지 않으므로 호출하는 쪽이 순서를 지킴.
+final class Hpack {
+    static final int DEFAULT_TABLE_SIZE = 4096;
+    // 동적 테이블 항목마다 더하는 크기(RFC 7541 4.1).
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC_TABLE = {
+            { ":authority", "" }, { ":method", "GET" }, { ":method", "POST" }, { ":path", "/" },
+            { ":path", "/index.html" }, { ":scheme", "http" }, { ":scheme", "https" }, { ":status", "200" },
+            { ":status", "204" }, { ":status", "206" }, { ":status", "304" }, { ":status", "400" },
+            { ":status", "404" }, { ":status", "500" }, { "accept-charset", "" },
+            { "accept-encoding", "gzip, deflate" }, { "accept-language", "" }, { "accept-ranges", "" },
+            { "accept", "" }, { "access-control-allow-origin", "" }, { "age", "" }, { "allow", "" },
+            { "authorization", "" }, { "cache-control", "" }, { "content-disposition", "" },
+            { "content-encoding", "" }, { "content-language", "" }, { "content-length", "" },
+            { "content-location", "" }, { "content-range", "" }, { "content-type", "" }, { "cookie", "" },
+            { "date", "" }, { "etag", "" }, { "expect", "" }, { "expires", "" }, { "from", "" }, { "host", "" },
+            { "if-match", "" }, { "if-modified-since", "" }, { "if-none-match", "" }, { "if-range", "" },
+            { "if-unmodified-since", "" }, { "last-modified", "" }, { "link", "" }, { "location", "" },
+            { "max-forwards", "" }, { "proxy-authenticate", "" }, { "proxy-authorization", "" },
+            { "range", "" }, { "referer", "" }, { "refresh", "" }, { "retry-after", "" }, { "server", "" },
+            { "set-cookie", "" }, { "strict-transport-security", "" }, { "transfer-encoding", "" },
+            { "user-agent", "" }, { "vary", "" }, { "via", "" }, { "www-authenticate", "" } };
+
+    // "이름\0값" 또는 "이름" -> 정적 테이블 인덱스(1부터). 같은 이름이 여럿이면 첫 번째.
+    private static final Map<String, Integer> STATIC_INDEX = new HashMap<>();
+
+    // 허프만 부호(RFC 7541 부록 B). 256번(EOS)은 보내지 않으므로 뺌.
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee };
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26 };
+    // 디코딩용 이진 트리. 노드 n의 자식은 tree[2n](0), tree[2n+1](1).
+    // 음수면 잎이며 -(기호 + 1).
+    private static final int[] HUFFMAN_TREE;
+
+    static {
+        for (int i = STATIC_TABLE.length; i > 0; i--) {
+            String[] e = STATIC_TABLE[i - 1];
+            STATIC_INDEX.put(e[0] + '\0' + e[1], i);
+            STATIC_INDEX.put(e[0], i);
+        }
+        int[] tree = new int[2 * 512];
+        int nodes = 1;
+        for (int sym = 0; sym < 256; sym++) {
+            int node = 0;
+            int code = HUFFMAN_CODES[sym];
+            for (int bit = HUFFMAN_LENGTHS[sym] - 1; bit >= 0; bit--) {
+                int slot = 2 * node + ((code >>> bit) & 1);
+                if (bit == 0) {
+                    tree[slot] = -(sym + 1);
+                } else {
+                    if (tree[slot] == 0)
+                        tree[slot] = nodes++;
+                    node = tree[slot];
+                }
+            }
+        }
+        HUFFMAN_TREE = tree;
+    }
+
+    private Hpack() {
+    }
+
+    // 동적 테이블. 가장 최근에 넣은 항목이 인덱스 62.
+    // 항목마다 넣은 순서(seq)를 매겨 두고, 인덱스는 (inserted - seq) + 61로 계산함.
+    private static final class Table {
+        private String[] names = new String[16];
+        private String[] values = new String[16];
+        private int[] sizes = new int[16];
+        // 가장 오래된 항목의 seq와 지금까지 넣은 항목 수.
+        private long evicted;
+        private long inserted;
+        private int size;
+        private int maxSize = DEFAULT_TABLE_SIZE;
+
+        int count() {
+            return (int) (inserted - evicted);
+        }
+
+        // 동적 테이블 안의 i번째(0이 가장 최근) 항목의 위치.
+        private int slot(long seq) {
+            return (int) (seq % names.length);
+        }
+
+        String name(int i) {
+            return names[slot(inserted - 1 - i)];
+        }
+
+        String value(int i) {
+            return values[slot(inserted - 1 - i)];
+        }
+
+        // 새 항목의 seq. 항목이 테이블보다 크면 테이블을 비우기만 하고 -1.
+        long add(String name, String value, int entrySize) {
+            while (size + entrySize > maxSize && count() > 0)
+                evict();
+            if (entrySize > maxSize)
+                return -1;
+            if (count() == names.length)
+                grow();
+            int s = slot(inserted);
+            names[s] = name;
+            values[s] = value;
+            sizes[s] = entrySize;
+            size += entrySize;
+            return inserted++;
+        }
+
+        void setMaxSize(int max) {
+            maxSize = max;
+            while (size > maxSize)
+                evict();
+        }
+
+        // 가장 오래된 항목을 뺌. 뺀 항목의 seq.
+        long evict() {
+            int s = slot(evicted);
+            size -= sizes[s];
+            names[s] = null;
+            values[s] = null;
+            return evicted++;
+        }
+
+        private void grow() {
+            int n = names.length;
+            String[] nn = new String[n * 2];
+            String[] nv = new String[n * 2];
+            int[] ns = new int[n * 2];
+            for (long seq = evicted; seq < inserted; seq++) {
+                int from = (int) (seq % n);
+                int to = (int) (seq % (n * 2));
+                nn[to] = names[from];
+                nv[to] = values[from];
+                ns[to] = sizes[from];
+            }
+            names = nn;
+            values = nv;
+            sizes = ns;
+        }
+    }
+
+    // 요청 헤더를 인코딩. 연결의 쓰기 락 안에서, 보내는 순서대로 불러야 함.
+    static final class Encoder {
+        private final Table table = new Table();
+        // "이름\0값" 또는 "이름" -> 동적 테이블에 넣은 seq.
+        private final Map<String, Long> index = new HashMap<>();
+        // 상대가 테이블 크기를 줄였으면 다음 블록 앞에 크기 변경을 알려야 함.
+        private int pendingSizeUpdate = -1;
+
+        // 상대의 SETTINGS_HEADER_TABLE_SIZE. 기본 크기보다 크게는 쓰지 않음.
+        void setMaxTableSize(int max) {
+            int size = Math.min(max, DEFAULT_TABLE_SIZE);
+            if (size != table.maxSize) {
+                pendingSizeUpdate = pendingSizeUpdate < 0 ? size : Math.min(pendingSizeUpdate, size);
+                setTableSize(size);
+            }
+        }
+
+        private void setTableSize(int size) {
+            table.maxSize = size;
+            while (table.size > size)
+                forget(table.evict());
+        }
+
+        // 이름은 소문자여야 함. 인증 정보는 중간 프록시도 테이블에 넣지 않도록 never-indexed로,
+        // 매번 바뀌는 경로와 길이는 테이블을 밀어내지 않도록 인덱싱 없이 보냄.
+        void encode(String name, String value, ByteArrayOutputStream out) {
+            if (pendingSizeUpdate >= 0) {
+                writeInt(out, 0x20, 5, pendingSizeUpdate);
+                if (pendingSizeUpdate != table.maxSize)
+                    writeInt(out, 0x20, 5, table.maxSize);
+                pendingSizeUpdate = -1;
+            }
+            String key = name + '\0' + value;
+            int i = lookup(key);
+            if (i > 0) {
+                writeInt(out, 0x80, 7, i);
+                return;
+            }
+            int nameIndex = lookup(name);
+            boolean sensitive = name.equals("authorization") || name.equals("proxy-authorization")
+                    || name.equals("cookie");
+            boolean indexing = !sensitive && !name.equals(":path") && !name.equals("content-length");
+            if (indexing)
+                writeInt(out, 0x40, 6, nameIndex);
+            else
+                writeInt(out, sensitive ? 0x10 : 0x00, 4, nameIndex);
+            byte[] v = value.getBytes(StandardCharsets.UTF_8);
+            if (nameIndex == 0)
+                writeString(out, name.getBytes(StandardCharsets.UTF_8));
+            writeString(out, v);
+            if (indexing) {
+                int entrySize = name.getBytes(StandardCharsets.UTF_8).length + v.length + ENTRY_OVERHEAD;
+                while (table.size + entrySize > table.maxSize && table.count() > 0)
+                    forget(table.evict());
+                long seq = table.add(name, value, entrySize);
+                if (seq >= 0) {
+                    index.put(key, seq);
+                    index.put(name, seq);
+                }
+            }
+        }
+
+        // 정적 테이블을 먼저 보고 없으면 동적 테이블. 없으면 0.
+        private int lookup(String key) {
+            Integer s = STATIC_INDEX.get(key);
+            if (s != null)
+                return s;
+            Long seq = index.get(key);
+            if (seq == null || seq < table.evicted)
+                return 0;
+            return (int) (table.inserted - seq) + STATIC_TABLE.length;
+        }
+
+        // 테이블에서 빠진 항목을 가리키는 색인을 지움. 이름 색인이 더 최근 항목을 가리키면 둠.
+        private void forget(long seq) {
+            index.values().removeIf(s -> s == seq);
+        }
+    }
+
+    // 응답 헤더 블록을 디코딩. 연결의 읽기 스레드에서 받은 순서대로 불러야 함.
+    static final class Decoder {
+        private final Table table = new Table();
+        // 우리가 SETTINGS로 알린 크기. 서버는 이보다 크게 바꿀 수 없음.
+        private final int maxSize;
+
+        Decoder(int maxSize) {
+            this.maxSize = maxSize;
+            table.setMaxSize(maxSize);
+        }
+
+        // 이름과 값은 ISO-8859-1로 바이트를 그대로 옮긴 문자열.
+        void decode(byte[] block, int off, int len, BiConsumer<String, String> sink) throws IOException {
+            int[] pos = { off };
+            int end = off + len;
+            boolean fieldSeen = false;
+            while (pos[0] < end) {
+                int b = block[pos[0]] & 0xff;
+                if ((b & 0x80) != 0) { // 인덱스
+                    int i = readInt(block, pos, end, 7);
+                    sink.accept(name(i), value(i));
+                    fieldSeen = true;
+                } else if ((b & 0xc0) == 0x40) { // 인덱싱하는 리터럴
+                    int i = readInt(block, pos, end, 6);
+                    String name = i == 0 ? readString(block, pos, end) : name(i);
+                    String value = readString(block, pos, end);
+                    table.add(name, value, name.length() + value.length() + ENTRY_OVERHEAD);
+                    sink.accept(name, value);
+                    fieldSeen = true;
+                } else if ((b & 0xe0) == 0x20) { // 테이블 크기 변경. 블록 맨 앞에서만 올 수 있음.
+                    int size = readInt(block, pos, end, 5);
+                    if (fieldSeen || size > maxSize)
+                        throw new MalformedResponseException("HPACK: invalid table size update " + size);
+                    table.setMaxSize(size);
+                } else { // 인덱싱하지 않는 리터럴(0000, 0001)
+                    int i = readInt(block, pos, end, 4);
+                    String name = i == 0 ? readString(block, pos, end) : name(i);
+                    sink.accept(name, readString(block, pos, end));
+                    fieldSeen = true;
+                }
+            }
+        }
+
+        private String name(int i) throws IOException {
+            if (i <= 0)
+                throw new MalformedResponseException("HPACK: index 0");
+            if (i <= STATIC_TABLE.length)
+                return STATIC_TABLE[i - 1][0];
+            i -= STATIC_TABLE.length + 1;
+            if (i >= table.count())
+                throw new MalformedResponseException("HPACK: index out of range");
+            return table.name(i);
+        }
+
+        private String value(int i) throws IOException {
+            if (i <= STATIC_TABLE.length)
+                return STATIC_TABLE[i - 1][1];
+            return table.value(i - STATIC_TABLE.length - 1);
+        }
+    }
+
+    // prefix 비트 정수(RFC 7541 5.1). first는 앞의 플래그 비트.
+    static void writeInt(ByteArrayOutputStream out, int first, int prefix, int value) {
+        int max = (1 << prefix) - 1;
+        if (value < max) {
+            out.write(first | value);
+            return;
+        }
+        out.write(first | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readInt(byte[] a, int[] pos, int end, int prefix) throws IOException {
+        int max = (1 << prefix) - 1;
+        int value = a[pos[0]++] & max;
+        if (value < max)
+            return value;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= end)
+                throw new MalformedResponseException("HPACK: truncated integer");
+            int b = a[pos[0]++] & 0xff;
+            value += (b & 0x7f) << shift;
+            if (value < 0 || shift > 21)
+                throw new MalformedResponseException("HPACK: integer overflow");
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+        }
+    }
+
+    // 허프만으로 줄어들면 허프만으로, 아니면 그대로.
+    static void writeString(ByteArrayOutputStream out, byte[] s) {
+        long bits = 0;
+        for (byte b : s) {
+            bits += HUFFMAN_LENGTHS[b & 0xff];
+        }
+        int huffmanLength = (int) ((bits + 7) / 8);
+        if (huffmanLength >= s.length) {
+            writeInt(out, 0x00, 7, s.length);
+            out.write(s, 0, s.length);
+            return;
+        }
+        writeInt(out, 0x80, 7, huffmanLength);
+        long acc = 0;
+        int n = 0;
+        for (byte b : s) {
+            int sym = b & 0xff;
+            acc = (acc << HUFFMAN_LENGTHS[sym]) | HUFFMAN_CODES[sym];
+            n += HUFFMAN_LENGTHS[sym];
+            while (n >= 8) {
+                n -= 8;
+                out.write((int) (acc >>> n));
+            }
+        }
+        // 남은 비트는 EOS의 앞부분(모두 1)으로 채움.
+        if (n > 0)
+            out.write((int) ((acc << (8 - n)) | (0xff >>> n)));
+    }
+
+    static String readString(byte[] a, int[] pos, int end) throws IOException {
+        if (pos[0] >= end)
+            throw new MalformedResponseException("HPACK: truncated string");
+        boolean huffman = (a[pos[0]] & 0x80) != 0;
+        int len = readInt(a, pos, end, 7);
+        if (len > end - pos[0])
+            throw new MalformedResponseException("HPACK: truncated string");
+        int from = pos[0];
+        pos[0] += len;
+        if (!huffman)
+            return new String(a, from, len, StandardCharsets.ISO_8859_1);
+        StringBuilder sb = new StringBuilder(len * 8 / 5);
+        int node = 0;
+        // 마지막 기호 뒤로 읽은 비트 수와 그것이 모두 1인지.
+        int pad = 0;
+        boolean ones = true;
+        for (int i = from; i < from + len; i++) {
+            int b = a[i] & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (b >>> bit) & 1;
+                int next = HUFFMAN_TREE[2 * node + one];
+                pad++;
+                ones &= one == 1;
+                if (next < 0) {
+                    sb.append((char) (-next - 1));
+                    node = 0;
+                    pad = 0;
+                    ones = true;
+                } else if (next == 0) {
+                    // EOS이거나 없는 부호.
+                    throw new MalformedResponseException("HPACK: invalid Huffman code");
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (pad > 7 || !ones)
+            throw new MalformedResponseException("HPACK: invalid Huffman padding");
+        return sb.toString();
+    }
+}
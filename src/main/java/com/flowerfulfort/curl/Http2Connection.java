@@ -0,0 +1,732 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 평문 HTTP/2(h2c) 연결 하나(RFC 9113). 같은 host:port로 가는 요청은 모두 이 연결 하나에서
+// 스트림으로 나눠 보냄. 프레임은 연결마다 읽기 스레드 하나가 받아 스트림별로 나눠 주고,
+// 쓰기는 out을 잠가 프레임 단위로 보내므로 여러 스트림의 프레임이 섞이지 않음.
+//
+// 흐름 제어: 받는 쪽은 스트림마다 STREAM_WINDOW 까지만 쌓이므로 연결 창은 받자마자 돌려주고,
+// 스트림 창은 애플리케이션이 읽은 만큼 돌려줌. 느린 스트림이 있어도 다른 스트림은 막히지 않음.
+// 보내는 쪽은 연결 창과 스트림 창이 둘 다 남아 있을 때만 DATA를 보내고 없으면 WINDOW_UPDATE를 기다림.
+//
+// 락 순서는 out -> this. this를 잡은 채로 out을 잡지 않음.
+final class Http2Connection implements Closeable {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // 프레임 종류
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // 플래그
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY = 0x20;
+
+    // SETTINGS
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    // 오류 코드
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+    private static final String[] ERROR_NAMES = { "NO_ERROR", "PROTOCOL_ERROR", "INTERNAL_ERROR",
+            "FLOW_CONTROL_ERROR", "SETTINGS_TIMEOUT", "STREAM_CLOSED", "FRAME_SIZE_ERROR", "REFUSED_STREAM", "CANCEL",
+            "COMPRESSION_ERROR", "CONNECT_ERROR", "ENHANCE_YOUR_CALM", "INADEQUATE_SECURITY", "HTTP_1_1_REQUIRED" };
+
+    private static final int DEFAULT_WINDOW = 65_535;
+    static final int DEFAULT_FRAME_SIZE = 16_384;
+    private static final int MAX_WINDOW = Integer.MAX_VALUE;
+    // 우리가 받는 창. 스트림 하나가 읽히기를 기다리며 쌓아 둘 수 있는 최대 바이트.
+    static final int STREAM_WINDOW = 1 << 20;
+    private static final int CONNECTION_WINDOW = 16 << 20;
+
+    private final Connection conn;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+    private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+    // out으로 보호. 프레임 헤더를 만들 때 씀.
+    private final byte[] frameHeader = new byte[9];
+
+    // 아래는 this로 보호.
+    private int nextStreamId = 1;
+    private int opened;
+    private int active;
+    private int maxConcurrentStreams = Integer.MAX_VALUE;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int initialSendWindow = DEFAULT_WINDOW;
+    private int maxFrameSize = DEFAULT_FRAME_SIZE;
+    // 연결 창에서 받았지만 아직 돌려주지 않은 바이트. 읽기 스레드만 씀.
+    private int unacknowledged;
+    // GOAWAY를 받았거나 보냈으면 새 스트림을 열지 않음.
+    private boolean goingAway;
+    // 남은 스트림이 끝나면 닫음.
+    private boolean draining;
+    private IOException failure;
+    // 스트림이 하나도 없게 된 시각(ms). 풀의 유휴 연결 정리에 씀.
+    private long idleSince = System.currentTimeMillis();
+
+    private Http2Connection(Connection conn) {
+        this.conn = conn;
+        this.in = conn.getInputStream();
+        this.out = conn.getOutputStream();
+    }
+
+    // prior knowledge: 연결하자마자 HTTP/2로 말함(curl --http2-prior-knowledge).
+    static Http2Connection open(Connection conn) throws IOException {
+        Http2Connection h2 = new Http2Connection(conn);
+        h2.start();
+        return h2;
+    }
+
+    // Upgrade: h2c 요청에 서버가 101로 답한 연결. 그 요청은 스트림 1이 되어 응답이 HTTP/2로 옴.
+    static Http2Connection upgrade(Connection conn) throws IOException {
+        Http2Connection h2 = new Http2Connection(conn);
+        Http2Stream stream = new Http2Stream(h2, 1, DEFAULT_WINDOW, STREAM_WINDOW, false);
+        // 요청은 HTTP/1.1로 이미 다 보냄.
+        stream.halfClose();
+        h2.streams.put(1, stream);
+        h2.nextStreamId = 3;
+        h2.opened = 1;
+        h2.active = 1;
+        h2.start();
+        return h2;
+    }
+
+    // Upgrade 요청에 붙이는 헤더.
+    static List<String> upgradeHeaders() {
+        String settings = Base64.getUrlEncoder().withoutPadding().encodeToString(settingsPayload());
+        return List.of("Connection: Upgrade, HTTP2-Settings", "Upgrade: h2c", "HTTP2-Settings: " + settings);
+    }
+
+    // HTTP/1.1 템플릿의 요청줄과 헤더를 HTTP/2 필드(이름, 값 번갈아)로 바꿈.
+    // 이름은 소문자로, Host는 :authority로 바꾸고 연결별 헤더는 뺌(RFC 9113 8.2.2).
+    static List<String> requestFields(RequestTemplate t) {
+        String[] lines = t.headerText().split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        List<String> fields = new ArrayList<>(lines.length * 2 + 8);
+        fields.add(":method");
+        fields.add(requestLine[0]);
+        fields.add(":scheme");
+        fields.add("http");
+        fields.add(":authority");
+        fields.add(t.getAuthority());
+        fields.add(":path");
+        fields.add(requestLine[1]);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0)
+                continue;
+            String name = lines[i].substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colon + 1).strip();
+            switch (name) {
+                case "host", "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade",
+                        "expect", "http2-settings" -> {
+                    continue;
+                }
+                case "te" -> {
+                    if (!value.equalsIgnoreCase("trailers"))
+                        continue;
+                }
+                default -> {
+                }
+            }
+            fields.add(name);
+            fields.add(value);
+        }
+        return fields;
+    }
+
+    // 푸시는 끄고 스트림 창을 넓힘.
+    private static byte[] settingsPayload() {
+        byte[] p = new byte[12];
+        putSetting(p, 0, SETTINGS_ENABLE_PUSH, 0);
+        putSetting(p, 6, SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW);
+        return p;
+    }
+
+    private static void putSetting(byte[] p, int off, int id, int value) {
+        p[off] = (byte) (id >>> 8);
+        p[off + 1] = (byte) id;
+        putInt(p, off + 2, value);
+    }
+
+    private void start() throws IOException {
+        synchronized (out) {
+            out.write(PREFACE);
+            byte[] settings = settingsPayload();
+            writeFrameLocked(SETTINGS, 0, 0, settings, 0, settings.length);
+            writeWindowUpdateLocked(0, CONNECTION_WINDOW - DEFAULT_WINDOW);
+            out.flush();
+        }
+        Thread reader = new Thread(this::readLoop, "h2-" + conn.getHost() + ":" + conn.getPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    Connection connection() {
+        return conn;
+    }
+
+    // Upgrade로 연 스트림 1.
+    Http2Stream upgradeStream() {
+        return streams.get(1);
+    }
+
+    // 새 스트림을 열 수 있는지.
+    synchronized boolean isUsable() {
+        return failure == null && !goingAway && !draining && nextStreamId > 0;
+    }
+
+    // 스트림이 없이 maxIdle(ms)이 지났는지.
+    synchronized boolean isIdle(long now, long maxIdle) {
+        return active == 0 && now - idleSince >= maxIdle;
+    }
+
+    // 남은 스트림이 끝나면 닫음. 같은 host로 다른 연결이 이미 풀에 있을 때 씀.
+    void drain() {
+        boolean idle;
+        synchronized (this) {
+            draining = true;
+            idle = active == 0;
+        }
+        if (idle)
+            close();
+    }
+
+    // 요청 헤더를 보내고 스트림을 엶. fields는 이름(소문자), 값이 번갈아 들어 있음.
+    // 서버의 동시 스트림 수 제한에 걸리면 자리가 날 때까지 기다림.
+    Http2Stream newStream(List<String> fields, boolean endStream) throws IOException {
+        synchronized (this) {
+            while (active >= maxConcurrentStreams && failure == null && !goingAway) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            checkUsable();
+            active++;
+        }
+        // 스트림 번호는 보내는 순서대로 커져야 하고 HPACK도 보내는 순서대로 인코딩해야 하므로
+        // out을 잡은 채로 번호를 정하고 인코딩함.
+        Http2Stream stream;
+        synchronized (out) {
+            synchronized (this) {
+                try {
+                    checkUsable();
+                } catch (IOException e) {
+                    active--;
+                    throw e;
+                }
+                stream = new Http2Stream(this, nextStreamId, initialSendWindow, STREAM_WINDOW, opened > 0);
+                nextStreamId += 2;
+                opened++;
+                idleSince = Long.MAX_VALUE;
+            }
+            streams.put(stream.id, stream);
+            ByteArrayOutputStream block = new ByteArrayOutputStream(128);
+            for (int i = 0; i < fields.size(); i += 2) {
+                encoder.encode(fields.get(i), fields.get(i + 1), block);
+            }
+            byte[] b = block.toByteArray();
+            stream.requestHeaderBytes = b.length;
+            int frameSize = maxFrameSize();
+            int off = 0;
+            int type = HEADERS;
+            do {
+                int n = Math.min(frameSize, b.length - off);
+                boolean last = off + n == b.length;
+                int flags = (last ? END_HEADERS : 0) | (type == HEADERS && endStream ? END_STREAM : 0);
+                writeFrameLocked(type, flags, stream.id, b, off, n);
+                off += n;
+                type = CONTINUATION;
+            } while (off < b.length);
+            out.flush();
+        }
+        if (endStream)
+            stream.halfClose();
+        return stream;
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null)
+            throw failure;
+        if (goingAway || draining || nextStreamId < 0)
+            throw new HttpException("HTTP/2 connection is closing");
+    }
+
+    private synchronized int maxFrameSize() {
+        return maxFrameSize;
+    }
+
+    // 창이 허락하는 만큼씩 DATA 프레임으로 나눠 보냄. len이 0이어도 endStream이면 빈 프레임을 보냄.
+    void writeData(Http2Stream stream, byte[] b, int off, int len, boolean endStream) throws IOException {
+        do {
+            int n;
+            synchronized (this) {
+                while (len > 0 && (sendWindow <= 0 || stream.sendWindow <= 0) && failure == null
+                        && streams.containsKey(stream.id)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (failure != null)
+                    throw failure;
+                if (!streams.containsKey(stream.id))
+                    throw new HttpException("HTTP/2 stream " + stream.id + " closed by server");
+                n = (int) Math.min(Math.min(len, maxFrameSize), Math.min(sendWindow, stream.sendWindow));
+                sendWindow -= n;
+                stream.sendWindow -= n;
+            }
+            boolean last = n == len;
+            synchronized (out) {
+                writeFrameLocked(DATA, last && endStream ? END_STREAM : 0, stream.id, b, off, n);
+                out.flush();
+            }
+            off += n;
+            len -= n;
+        } while (len > 0);
+    }
+
+    // 스트림 창을 돌려줌. 응답을 다 받은 스트림에는 보내지 않음.
+    void windowUpdate(int streamId, int increment) {
+        if (!streams.containsKey(streamId))
+            return;
+        try {
+            synchronized (out) {
+                writeWindowUpdateLocked(streamId, increment);
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // 더 받을 필요가 없는 스트림을 끊음.
+    void cancel(Http2Stream stream) {
+        if (!streams.containsKey(stream.id))
+            return;
+        byte[] p = new byte[4];
+        putInt(p, 0, CANCEL);
+        try {
+            synchronized (out) {
+                writeFrameLocked(RST_STREAM, 0, stream.id, p, 0, 4);
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // 양쪽이 END_STREAM을 보냈거나 스트림이 끊김.
+    void streamClosed(Http2Stream stream) {
+        if (streams.remove(stream.id, stream)) {
+            boolean close;
+            synchronized (this) {
+                active--;
+                if (active == 0)
+                    idleSince = System.currentTimeMillis();
+                close = active == 0 && draining;
+                notifyAll();
+            }
+            if (close)
+                close();
+        }
+    }
+
+    static String errorName(int code) {
+        return code >= 0 && code < ERROR_NAMES.length ? ERROR_NAMES[code]
+                : "0x" + Integer.toHexString(code).toUpperCase(Locale.ROOT);
+    }
+
+    private void writeFrameLocked(int type, int flags, int streamId, byte[] payload, int off, int len)
+            throws IOException {
+        byte[] h = frameHeader;
+        h[0] = (byte) (len >>> 16);
+        h[1] = (byte) (len >>> 8);
+        h[2] = (byte) len;
+        h[3] = (byte) type;
+        h[4] = (byte) flags;
+        putInt(h, 5, streamId);
+        out.write(h, 0, 9);
+        out.write(payload, off, len);
+    }
+
+    private void writeWindowUpdateLocked(int streamId, int increment) throws IOException {
+        byte[] p = new byte[4];
+        putInt(p, 0, increment);
+        writeFrameLocked(WINDOW_UPDATE, 0, streamId, p, 0, 4);
+    }
+
+    private static void putInt(byte[] a, int off, int v) {
+        a[off] = (byte) (v >>> 24);
+        a[off + 1] = (byte) (v >>> 16);
+        a[off + 2] = (byte) (v >>> 8);
+        a[off + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] a, int off) {
+        return (a[off] & 0xff) << 24 | (a[off + 1] & 0xff) << 16 | (a[off + 2] & 0xff) << 8 | (a[off + 3] & 0xff);
+    }
+
+    // 연결 오류. 이 연결의 모든 스트림이 실패함.
+    private static final class ProtocolException extends HttpException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        ProtocolException(int code, String message) {
+            super("HTTP/2 " + errorName(code) + ": " + message);
+            this.code = code;
+        }
+    }
+
+    // 읽기 스레드. 연결이 끊기거나 프로토콜 오류가 날 때까지 프레임을 받아 나눠 줌.
+    private void readLoop() {
+        byte[] header = new byte[9];
+        byte[] payload = new byte[DEFAULT_FRAME_SIZE];
+        // 여러 프레임(HEADERS + CONTINUATION)에 걸친 헤더 블록.
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        int blockStream = 0;
+        boolean blockEndStream = false;
+        int lastStreamId = 0;
+        try {
+            while (true) {
+                if (!readFully(header, 9)) {
+                    fail(new EOFException("HTTP/2 connection closed by server"));
+                    return;
+                }
+                int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | (header[2] & 0xff);
+                int type = header[3] & 0xff;
+                int flags = header[4] & 0xff;
+                int streamId = getInt(header, 5) & 0x7fffffff;
+                // SETTINGS_MAX_FRAME_SIZE를 따로 알리지 않았으므로 기본 크기까지만 받음.
+                if (length > DEFAULT_FRAME_SIZE)
+                    throw new ProtocolException(FRAME_SIZE_ERROR, "frame of " + length + " bytes");
+                if (!readFully(payload, length))
+                    throw new EOFException("HTTP/2 connection closed inside a frame");
+                if (blockStream != 0 && (type != CONTINUATION || streamId != blockStream))
+                    throw new ProtocolException(PROTOCOL_ERROR, "expected CONTINUATION");
+                if (streamId > lastStreamId)
+                    lastStreamId = streamId;
+
+                switch (type) {
+                    case DATA -> onData(payload, length, flags, streamId);
+                    case HEADERS -> {
+                        int off = 0;
+                        int end = length;
+                        if ((flags & PADDED) != 0) {
+                            off = 1;
+                            end -= payload[0] & 0xff;
+                        }
+                        if ((flags & PRIORITY) != 0)
+                            off += 5;
+                        if (streamId == 0 || off > end)
+                            throw new ProtocolException(PROTOCOL_ERROR, "malformed HEADERS");
+                        block.reset();
+                        block.write(payload, off, end - off);
+                        blockEndStream = (flags & END_STREAM) != 0;
+                        if ((flags & END_HEADERS) != 0)
+                            onHeaderBlock(streamId, block, blockEndStream);
+                        else
+                            blockStream = streamId;
+                    }
+                    case CONTINUATION -> {
+                        if (blockStream == 0)
+                            throw new ProtocolException(PROTOCOL_ERROR, "unexpected CONTINUATION");
+                        if (block.size() + length > ResponseHeader.MAX_HEADER_SIZE)
+                            throw new ProtocolException(PROTOCOL_ERROR, "header block too large");
+                        block.write(payload, 0, length);
+                        if ((flags & END_HEADERS) != 0) {
+                            onHeaderBlock(blockStream, block, blockEndStream);
+                            blockStream = 0;
+                        }
+                    }
+                    case RST_STREAM -> {
+                        if (length != 4 || streamId == 0)
+                            throw new ProtocolException(PROTOCOL_ERROR, "malformed RST_STREAM");
+                        Http2Stream s = streams.get(streamId);
+                        if (s != null)
+                            s.onReset(getInt(payload, 0));
+                    }
+                    case SETTINGS -> onSettings(payload, length, flags, streamId);
+                    case PUSH_PROMISE -> throw new ProtocolException(PROTOCOL_ERROR, "push is disabled");
+                    case PING -> {
+                        if (length != 8 || streamId != 0)
+                            throw new ProtocolException(FRAME_SIZE_ERROR, "malformed PING");
+                        if ((flags & ACK) == 0) {
+                            synchronized (out) {
+                                writeFrameLocked(PING, ACK, 0, payload, 0, 8);
+                                out.flush();
+                            }
+                        }
+                    }
+                    case GOAWAY -> {
+                        if (length < 8)
+                            throw new ProtocolException(FRAME_SIZE_ERROR, "malformed GOAWAY");
+                        onGoAway(getInt(payload, 0) & 0x7fffffff, getInt(payload, 4));
+                    }
+                    case WINDOW_UPDATE -> {
+                        if (length != 4)
+                            throw new ProtocolException(FRAME_SIZE_ERROR, "malformed WINDOW_UPDATE");
+                        onWindowUpdate(streamId, getInt(payload, 0) & 0x7fffffff);
+                    }
+                    default -> {
+                        // PRIORITY와 모르는 프레임은 무시.
+                    }
+                }
+            }
+        } catch (ProtocolException e) {
+            goAway(lastStreamId, e.code);
+            fail(e);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private boolean readFully(byte[] b, int len) throws IOException {
+        int off = 0;
+        while (off < len) {
+            int n = in.read(b, off, len - off);
+            if (n < 0) {
+                if (off == 0 && len == 9)
+                    return false;
+                throw new EOFException("HTTP/2 connection closed inside a frame");
+            }
+            off += n;
+        }
+        return true;
+    }
+
+    private void onData(byte[] payload, int length, int flags, int streamId) throws IOException {
+        if (streamId == 0)
+            throw new ProtocolException(PROTOCOL_ERROR, "DATA on stream 0");
+        int off = 0;
+        int end = length;
+        if ((flags & PADDED) != 0) {
+            if (length == 0 || (payload[0] & 0xff) >= length)
+                throw new ProtocolException(PROTOCOL_ERROR, "bad padding");
+            off = 1;
+            end -= payload[0] & 0xff;
+        }
+        // 연결 창은 받자마자 돌려줌. 버퍼에 쌓이는 양은 스트림 창이 막음.
+        unacknowledged += length;
+        if (unacknowledged >= CONNECTION_WINDOW / 2) {
+            synchronized (out) {
+                writeWindowUpdateLocked(0, unacknowledged);
+                out.flush();
+            }
+            unacknowledged = 0;
+        }
+        Http2Stream s = streams.get(streamId);
+        if (s == null)
+            return; // 이미 취소한 스트림.
+        byte[] data = new byte[end - off];
+        System.arraycopy(payload, off, data, 0, data.length);
+        if (!s.onData(data, length, (flags & END_STREAM) != 0))
+            resetStream(s, FLOW_CONTROL_ERROR, "receive window exceeded");
+    }
+
+    // 스트림 오류(RFC 9113 5.4.2). 그 스트림만 실패시키고 RST_STREAM을 보냄. 연결은 계속 씀.
+    private void resetStream(Http2Stream s, int code, String message) throws IOException {
+        s.fail(new HttpException("HTTP/2 stream " + s.id + " " + errorName(code) + ": " + message), false);
+        byte[] p = new byte[4];
+        putInt(p, 0, code);
+        synchronized (out) {
+            writeFrameLocked(RST_STREAM, 0, s.id, p, 0, 4);
+            out.flush();
+        }
+    }
+
+    // 헤더 블록은 스트림이 이미 없어도 디코딩해야 HPACK 테이블이 어긋나지 않음.
+    private void onHeaderBlock(int streamId, ByteArrayOutputStream block, boolean endStream) throws IOException {
+        List<String> fields = new ArrayList<>();
+        byte[] b = block.toByteArray();
+        try {
+            decoder.decode(b, 0, b.length, (name, value) -> {
+                fields.add(name);
+                fields.add(value);
+            });
+        } catch (MalformedResponseException e) {
+            throw new ProtocolException(COMPRESSION_ERROR, e.getMessage());
+        }
+        Http2Stream s = streams.get(streamId);
+        if (s != null)
+            s.onHeaders(fields, b.length, endStream);
+    }
+
+    private void onSettings(byte[] payload, int length, int flags, int streamId) throws IOException {
+        if (streamId != 0 || length % 6 != 0)
+            throw new ProtocolException(FRAME_SIZE_ERROR, "malformed SETTINGS");
+        if ((flags & ACK) != 0)
+            return;
+        synchronized (out) {
+            for (int i = 0; i < length; i += 6) {
+                int id = (payload[i] & 0xff) << 8 | (payload[i + 1] & 0xff);
+                int value = getInt(payload, i + 2);
+                switch (id) {
+                    case SETTINGS_HEADER_TABLE_SIZE -> encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    case SETTINGS_MAX_CONCURRENT_STREAMS -> {
+                        synchronized (this) {
+                            maxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                            notifyAll();
+                        }
+                    }
+                    case SETTINGS_INITIAL_WINDOW_SIZE -> {
+                        if (value < 0)
+                            throw new ProtocolException(FLOW_CONTROL_ERROR, "initial window too large");
+                        synchronized (this) {
+                            // 이미 열린 스트림의 창도 차이만큼 바뀜. 그래서 창이 2^31-1을 넘으면 연결 오류.
+                            int delta = value - initialSendWindow;
+                            for (Http2Stream s : streams.values()) {
+                                if (s.sendWindow + delta > MAX_WINDOW)
+                                    throw new ProtocolException(FLOW_CONTROL_ERROR,
+                                            "initial window overflows stream " + s.id);
+                            }
+                            initialSendWindow = value;
+                            for (Http2Stream s : streams.values()) {
+                                s.sendWindow += delta;
+                            }
+                            notifyAll();
+                        }
+                    }
+                    case SETTINGS_MAX_FRAME_SIZE -> {
+                        if (value < DEFAULT_FRAME_SIZE || value > 0xffffff)
+                            throw new ProtocolException(PROTOCOL_ERROR, "bad max frame size " + value);
+                        synchronized (this) {
+                            maxFrameSize = value;
+                        }
+                    }
+                    default -> {
+                        // ENABLE_PUSH, MAX_HEADER_LIST_SIZE 등은 클라이언트에 영향 없음.
+                    }
+                }
+            }
+            writeFrameLocked(SETTINGS, ACK, 0, payload, 0, 0);
+            out.flush();
+        }
+    }
+
+    // 연결 창의 0 증가나 넘침은 연결 오류, 스트림 창의 것은 그 스트림만 끊는 스트림 오류(RFC 9113 6.9).
+    private void onWindowUpdate(int streamId, int increment) throws IOException {
+        if (streamId == 0) {
+            if (increment == 0)
+                throw new ProtocolException(PROTOCOL_ERROR, "zero WINDOW_UPDATE");
+            synchronized (this) {
+                if (sendWindow + increment > MAX_WINDOW)
+                    throw new ProtocolException(FLOW_CONTROL_ERROR, "window overflow");
+                sendWindow += increment;
+                notifyAll();
+            }
+            return;
+        }
+        Http2Stream s = streams.get(streamId);
+        if (s == null)
+            return;
+        if (increment == 0) {
+            resetStream(s, PROTOCOL_ERROR, "zero WINDOW_UPDATE");
+            return;
+        }
+        boolean overflow;
+        synchronized (this) {
+            overflow = s.sendWindow + increment > MAX_WINDOW;
+            if (!overflow) {
+                s.sendWindow += increment;
+                notifyAll();
+            }
+        }
+        // this를 잡은 채로 out을 잡지 않음.
+        if (overflow)
+            resetStream(s, FLOW_CONTROL_ERROR, "window overflow");
+    }
+
+    // 서버가 연결을 닫으려 함. lastStreamId 보다 큰 스트림은 처리되지 않았으므로 다른 연결로 다시 보내도 됨.
+    private void onGoAway(int lastStreamId, int errorCode) {
+        synchronized (this) {
+            goingAway = true;
+            notifyAll();
+        }
+        for (Http2Stream s : streams.values()) {
+            if (s.id > lastStreamId)
+                s.fail(new HttpException("HTTP/2 stream " + s.id + " refused by GOAWAY (" + errorName(errorCode)
+                        + ")"), true);
+        }
+    }
+
+    private void goAway(int lastStreamId, int errorCode) {
+        byte[] p = new byte[8];
+        putInt(p, 0, lastStreamId);
+        putInt(p, 4, errorCode);
+        try {
+            synchronized (out) {
+                writeFrameLocked(GOAWAY, 0, 0, p, 0, 8);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 어차피 닫을 연결.
+        }
+    }
+
+    // 연결이 더 이상 쓸 수 없게 됨. 남은 스트림은 모두 실패.
+    private void fail(IOException e) {
+        synchronized (this) {
+            if (failure != null)
+                return;
+            failure = e;
+            notifyAll();
+        }
+        conn.close();
+        for (Http2Stream s : streams.values()) {
+            s.fail(e, false);
+        }
+    }
+
+    // 남은 스트림을 끝내고 GOAWAY를 보낸 뒤 닫음.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (failure != null)
+                return;
+            goingAway = true;
+        }
+        goAway(0, NO_ERROR);
+        fail(new HttpException("HTTP/2 connection closed"));
+    }
+}
@@ -0,0 +1,11 @@
+package com.flowerfulfort.curl;
+
+// 평문(http) 요청에 HTTP/2를 쓰는 방법. https는 지금은 언제나 HTTP/1.1.
+enum Http2Mode {
+    // HTTP/1.1만 씀.
+    OFF,
+    // 첫 요청에 Upgrade: h2c를 붙이고, 서버가 101로 받아 주면 그 연결을 HTTP/2로 씀(--http2).
+    UPGRADE,
+    // 처음부터 HTTP/2로 말함(--http2-prior-knowledge).
+    PRIOR_KNOWLEDGE
+}
@@ -0,0 +1,373 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// HTTP/2 스트림 하나(요청 하나와 그 응답). 응답 헤더와 DATA는 연결의 읽기 스레드가 넣어 주고,
+// 요청한 스레드가 awaitResponse()와 body()로 꺼내 씀. 받은 DATA는 스트림 창만큼만 쌓이며
+// 애플리케이션이 읽은 만큼 WINDOW_UPDATE로 돌려줌.
+// 바디를 끝까지 읽지 않고 닫으면 RST_STREAM(CANCEL)을 보내고 연결은 계속 씀.
+final class Http2Stream implements Closeable {
+    final int id;
+    private final Http2Connection connection;
+    // 이 스트림 전에 같은 연결로 보낸 스트림이 있었는지.
+    private final boolean reused;
+    // 보낸 헤더 블록의 크기.
+    int requestHeaderBytes;
+
+    // 보내기 창. 연결의 락으로 보호.
+    long sendWindow;
+
+    // 아래는 this로 보호.
+    // 받기 창에서 남은 바이트.
+    private int receiveWindow;
+    // 읽었지만 아직 WINDOW_UPDATE로 돌려주지 않은 바이트.
+    private int consumed;
+    // 응답 헤더. 이름, 값이 번갈아 들어 있음.
+    private List<String> headers;
+    private int responseHeaderBytes;
+    private Map<String, String> trailers = Collections.emptyMap();
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private int chunkPos;
+    // END_STREAM을 받음/보냄.
+    private boolean remoteClosed;
+    private boolean localClosed;
+    private boolean closed;
+    private IOException error;
+    // 서버가 처리하지 않은 스트림(GOAWAY 뒤, REFUSED_STREAM). 다른 연결로 다시 보내도 안전함.
+    private boolean refused;
+
+    private final InputStream body = new Body();
+
+    Http2Stream(Http2Connection connection, int id, long sendWindow, int receiveWindow, boolean reused) {
+        this.connection = connection;
+        this.id = id;
+        this.sendWindow = sendWindow;
+        this.receiveWindow = receiveWindow;
+        this.reused = reused;
+    }
+
+    boolean isReused() {
+        return reused;
+    }
+
+    Connection connection() {
+        return connection.connection();
+    }
+
+    // 요청 바디를 DATA 프레임으로 보내는 스트림. close()하면 END_STREAM을 보냄.
+    OutputStream requestBody() {
+        return new RequestOutput();
+    }
+
+    // 요청을 다 보냄(HEADERS에 END_STREAM을 붙였거나 Upgrade 요청으로 이미 보냄).
+    void halfClose() {
+        synchronized (this) {
+            localClosed = true;
+        }
+        checkClosed();
+    }
+
+    // 최종 응답 헤더(1xx 제외)를 기다려서 "HTTP/2 200" 상태줄의 HTTP/1.1 모양으로 header에 넣음.
+    // 헤더 처리, -v 출력, 캐시 등은 HTTP/1.1 응답과 같은 코드를 씀.
+    void awaitResponse(ResponseHeader header) throws IOException {
+        List<String> fields;
+        synchronized (this) {
+            while (headers == null && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (headers == null)
+                throw error;
+            fields = headers;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        String status = null;
+        for (int i = 0; i < fields.size(); i += 2) {
+            if (fields.get(i).equals(":status"))
+                status = fields.get(i + 1);
+        }
+        out.writeBytes(("HTTP/2 " + status + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i);
+            if (name.startsWith(":"))
+                continue;
+            out.writeBytes((name + ": " + fields.get(i + 1) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+        out.writeBytes(new byte[] { '\r', '\n' });
+        if (!header.read(new ByteArrayInputStream(out.toByteArray())))
+            throw new MalformedResponseException("Empty HTTP/2 response header");
+    }
+
+    synchronized boolean hasResponse() {
+        return headers != null;
+    }
+
+    // 받은 응답 헤더 블록(HPACK으로 압축된 것)의 크기.
+    synchronized int responseHeaderBytes() {
+        return responseHeaderBytes;
+    }
+
+    synchronized boolean isRefused() {
+        return refused;
+    }
+
+    InputStream body() {
+        return body;
+    }
+
+    // 바디 뒤에 온 트레일러(grpc-status 등). 바디를 끝까지 읽은 뒤에 부름.
+    synchronized Map<String, String> trailers() {
+        return trailers;
+    }
+
+    // 읽기 스레드에서 부름. 응답 헤더 또는 트레일러 블록.
+    void onHeaders(List<String> fields, int blockLength, boolean endStream) throws IOException {
+        synchronized (this) {
+            if (headers == null) {
+                String status = null;
+                for (int i = 0; i < fields.size(); i += 2) {
+                    if (fields.get(i).equals(":status"))
+                        status = fields.get(i + 1);
+                }
+                if (status == null || status.length() != 3)
+                    throw new MalformedResponseException("HTTP/2 response without :status");
+                // 100 Continue 등 중간 응답은 건너뜀.
+                if (status.charAt(0) != '1') {
+                    headers = fields;
+                    responseHeaderBytes = blockLength;
+                }
+            } else {
+                Map<String, String> t = new LinkedHashMap<>();
+                for (int i = 0; i < fields.size(); i += 2) {
+                    t.put(fields.get(i), fields.get(i + 1));
+                }
+                trailers = t;
+            }
+            if (endStream)
+                remoteClosed = true;
+            notifyAll();
+        }
+        if (endStream)
+            checkClosed();
+    }
+
+    // 읽기 스레드에서 부름. frameLength는 패딩을 포함한 길이로 창에서 뺌.
+    // 창을 넘겨 보냈으면 false.
+    boolean onData(byte[] data, int frameLength, boolean endStream) {
+        synchronized (this) {
+            receiveWindow -= frameLength;
+            if (receiveWindow < 0)
+                return false;
+            if (!closed) {
+                if (data.length > 0)
+                    chunks.addLast(data);
+                // 패딩은 읽을 일이 없으므로 바로 돌려줄 몫에 넣음.
+                consumed += frameLength - data.length;
+            }
+            if (endStream)
+                remoteClosed = true;
+            notifyAll();
+        }
+        if (endStream)
+            checkClosed();
+        return true;
+    }
+
+    // 서버가 스트림을 끊음. 응답을 이미 다 받았다면(NO_ERROR로 업로드만 멈추게 한 경우) 오류가 아님.
+    void onReset(int errorCode) {
+        synchronized (this) {
+            if (!remoteClosed) {
+                error = new HttpException("HTTP/2 stream " + id + " reset by server: "
+                        + Http2Connection.errorName(errorCode));
+                refused = errorCode == Http2Connection.REFUSED_STREAM;
+            }
+            remoteClosed = true;
+            localClosed = true;
+            notifyAll();
+        }
+        connection.streamClosed(this);
+    }
+
+    // 연결이 끊기거나 GOAWAY로 처리되지 않음.
+    void fail(IOException e, boolean refused) {
+        synchronized (this) {
+            if (!remoteClosed) {
+                error = e;
+                this.refused = refused;
+            }
+            remoteClosed = true;
+            localClosed = true;
+            notifyAll();
+        }
+        connection.streamClosed(this);
+    }
+
+    // 요청한 쪽이 그만둠(--max-time). 기다리던 읽기는 e로 실패하고 서버에는 RST_STREAM(CANCEL)을 보냄.
+    void abort(IOException e) {
+        synchronized (this) {
+            if (closed || remoteClosed && localClosed)
+                return;
+            error = e;
+            remoteClosed = true;
+            localClosed = true;
+            chunks.clear();
+            notifyAll();
+        }
+        connection.cancel(this);
+        connection.streamClosed(this);
+    }
+
+    private synchronized IOException error() {
+        return error;
+    }
+
+    private void checkClosed() {
+        boolean done;
+        synchronized (this) {
+            done = localClosed && remoteClosed;
+        }
+        if (done)
+            connection.streamClosed(this);
+    }
+
+    // 바디를 끝까지 읽지 않았으면 스트림을 취소함.
+    @Override
+    public void close() {
+        boolean cancel;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            cancel = !remoteClosed || !localClosed;
+            localClosed = true;
+            remoteClosed = true;
+            chunks.clear();
+            notifyAll();
+        }
+        if (cancel)
+            connection.cancel(this);
+        connection.streamClosed(this);
+    }
+
+    // 받은 DATA를 순서대로 돌려줌. 읽은 양이 창의 절반을 넘으면 WINDOW_UPDATE를 보냄.
+    private final class Body extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            int n;
+            int credit = 0;
+            synchronized (Http2Stream.this) {
+                while (chunks.isEmpty() && !remoteClosed && error == null) {
+                    try {
+                        Http2Stream.this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (chunks.isEmpty()) {
+                    if (error != null)
+                        throw error;
+                    return -1;
+                }
+                byte[] c = chunks.peekFirst();
+                n = Math.min(len, c.length - chunkPos);
+                System.arraycopy(c, chunkPos, b, off, n);
+                chunkPos += n;
+                if (chunkPos == c.length) {
+                    chunks.pollFirst();
+                    chunkPos = 0;
+                }
+                consumed += n;
+                if (consumed >= Http2Connection.STREAM_WINDOW / 2 && !remoteClosed) {
+                    credit = consumed;
+                    consumed = 0;
+                    receiveWindow += credit;
+                }
+            }
+            if (credit > 0)
+                connection.windowUpdate(id, credit);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            synchronized (Http2Stream.this) {
+                byte[] c = chunks.peekFirst();
+                return c == null ? 0 : c.length - chunkPos;
+            }
+        }
+
+        @Override
+        public void close() {
+            Http2Stream.this.close();
+        }
+    }
+
+    // 프레임 하나 크기까지 모아서 DATA로 보냄.
+    private final class RequestOutput extends OutputStream {
+        private final byte[] buf = new byte[Http2Connection.DEFAULT_FRAME_SIZE];
+        private int count;
+        private boolean finished;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length)
+                send(false);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buf.length)
+                    send(false);
+                int n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void send(boolean endStream) throws IOException {
+            IOException e = error();
+            if (e != null)
+                throw e;
+            connection.writeData(Http2Stream.this, buf, 0, count, endStream);
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished)
+                return;
+            finished = true;
+            send(true);
+            halfClose();
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 디스크에 응답을 저장해 두는 캐시(--cache).
+//
+// 메소드 + URL의 SHA-256을 키로 "<키>.meta"와 "<키>.body" 두 파일을 둠. meta에는 신선한 기한,
+// Vary에 걸린 요청 헤더 값과 응답 헤더를, body에는 (--compressed면 압축을 푼) 바디를 그대로 씀.
+// 요청 헤더의 Vary 값이 저장된 것과 다르면 없는 것으로 봄.
+//
+// Cache-Control: max-age(없으면 Expires)가 지나기 전에는 서버에 묻지 않고, 지나면
+// If-None-Match / If-Modified-Since로 물어서 304가 오면 저장된 바디를 씀.
+// no-store면 저장하지 않고, no-cache면 매번 재검증함.
+//
+// 전체 크기가 한도를 넘으면 가장 오래 쓰지 않은 항목부터 지움. 마지막 사용 시각은 body 파일의
+// 수정 시각에 기록함. 여러 scurl 프로세스가 같은 디렉터리를 쓸 수 있도록 "lock" 파일에 읽을 때는
+// 공유 잠금, 쓸 때는 배타 잠금을 걸고, 새 파일은 임시 파일에 다 쓴 뒤 이름을 바꿔 넣음.
+// 파일 잠금은 프로세스 단위이므로 같은 프로세스 안(batch 모드 등)에서는 디렉터리마다 하나인 모니터로 막음.
+final class HttpCache {
+    static final long DEFAULT_MAX_SIZE = 100L << 20;
+    private static final String MAGIC = "scurl-cache 1";
+    // 이보다 오래된 임시 파일은 죽은 프로세스가 남긴 것으로 보고 지움.
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+    // 저장하지 않는 헤더. 연결에 관한 것이거나 바디를 푼 뒤에는 맞지 않는 것.
+    private static final Set<String> SKIP = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    // 캐시 디렉터리의 실제 경로 -> 그 디렉터리를 쓰는 모든 HttpCache가 함께 쓰는 모니터.
+    private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    static {
+        SKIP.addAll(List.of("Connection", "Keep-Alive", "Proxy-Connection", "Transfer-Encoding", "Trailer",
+                "Upgrade", "Content-Length", "Content-Encoding", "Age"));
+    }
+
+    private final Path dir;
+    private final Path lockFile;
+    private final long maxSize;
+    private final Object monitor;
+
+    HttpCache(Path dir, long maxSize) throws IOException {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException();
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.lockFile = dir.resolve("lock");
+        this.maxSize = maxSize;
+        this.monitor = MONITORS.computeIfAbsent(dir.toRealPath(), k -> new Object());
+    }
+
+    private interface Locked<T> {
+        T run() throws IOException;
+    }
+
+    // 같은 디렉터리를 쓰는 다른 스레드와 프로세스를 막고 action을 실행함.
+    // 잠금은 lock 파일의 채널에 걸리므로 채널을 닫으면 함께 풀림.
+    private <T> T locked(boolean shared, Locked<T> action) throws IOException {
+        synchronized (monitor) {
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                channel.lock(0, Long.MAX_VALUE, shared);
+                return action.run();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // 저장된 응답 하나. 바디 파일은 찾을 때 열어 두므로 다른 프로세스가 바꿔도 읽는 내용은 그대로임.
+    static final class Entry implements Closeable {
+        private final String key;
+        private final String request;
+        private final List<String> vary;
+        private long freshUntil;
+        private byte[] header;
+        private final FileChannel body;
+
+        private Entry(String key, String request, List<String> vary, long freshUntil, byte[] header,
+                FileChannel body) {
+            this.key = key;
+            this.request = request;
+            this.vary = vary;
+            this.freshUntil = freshUntil;
+            this.header = header;
+            this.body = body;
+        }
+
+        // 서버에 묻지 않고 써도 되는지.
+        boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        // 상태줄부터 빈 줄까지의 응답 헤더 바이트. ResponseHeader.read()로 다시 파싱할 수 있음.
+        byte[] headerBytes() {
+            return header;
+        }
+
+        // 재검증에 쓸 요청 헤더들.
+        List<String> conditionalHeaders() {
+            List<String> list = new ArrayList<>(2);
+            String etag = headerValue(header, "ETag");
+            String lastModified = headerValue(header, "Last-Modified");
+            if (etag != null)
+                list.add("If-None-Match: " + etag);
+            if (lastModified != null)
+                list.add("If-Modified-Since: " + lastModified);
+            return list;
+        }
+
+        // 바디 전체를 out에 씀.
+        long copyTo(OutputStream out) throws IOException {
+            long size = body.size();
+            long pos = 0;
+            WritableByteChannel target = Channels.newChannel(out);
+            while (pos < size) {
+                pos += body.transferTo(pos, size - pos, target);
+            }
+            return size;
+        }
+
+        @Override
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // 읽기만 했으므로 무시.
+            }
+        }
+    }
+
+    // method, url에 저장된 응답. 없거나 requestHeaders(요청 헤더 텍스트)의 Vary 값이 다르면 null.
+    Entry lookup(Method method, String url, String requestHeaders) throws IOException {
+        String request = method + " " + url;
+        String key = key(request);
+        Path meta = dir.resolve(key + ".meta");
+        Path body = dir.resolve(key + ".body");
+        return locked(true, () -> {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(meta, StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            if (lines.size() < 4 || !lines.get(0).equals(MAGIC) || !lines.get(1).equals(request))
+                return null;
+            long freshUntil = Long.parseLong(lines.get(2));
+            int varyCount = Integer.parseInt(lines.get(3));
+            List<String> vary = lines.subList(4, 4 + varyCount);
+            for (String v : vary) {
+                int colon = v.indexOf(':');
+                String value = headerValue(requestHeaders, v.substring(0, colon));
+                if (!v.substring(colon + 1).equals(value != null ? value : ""))
+                    return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines.subList(4 + varyCount, lines.size())) {
+                sb.append(line).append("\r\n");
+            }
+            sb.append("\r\n");
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(body, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            // LRU를 위한 마지막 사용 시각.
+            Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(key, request, List.copyOf(vary), freshUntil,
+                    sb.toString().getBytes(StandardCharsets.ISO_8859_1), channel);
+        });
+    }
+
+    // 304를 받은 뒤 새 헤더로 신선한 기한과 검증값을 고쳐 씀.
+    void refresh(Entry entry, ResponseHeader notModified) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String[] stored = new String(entry.header, StandardCharsets.ISO_8859_1).split("\r\n");
+        for (String line : stored) {
+            int colon = line.indexOf(':');
+            // 304에 새로 온 헤더는 그것으로 바꿈.
+            if (lines.isEmpty() || colon < 0 || SKIP.contains(line.substring(0, colon))
+                    || !notModified.contains(line.substring(0, colon)))
+                lines.add(line);
+        }
+        for (int i = 0; i < notModified.size(); i++) {
+            if (!SKIP.contains(notModified.name(i)))
+                lines.add(notModified.name(i) + ": " + notModified.value(i));
+        }
+        entry.freshUntil = freshUntil(notModified, System.currentTimeMillis());
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append("\r\n");
+        }
+        sb.append("\r\n");
+        entry.header = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        Path temp = Files.createTempFile(dir, entry.key, ".tmp");
+        try {
+            Files.write(temp, metaLines(entry.request, entry.freshUntil, entry.vary, lines), StandardCharsets.UTF_8);
+            locked(false, () -> {
+                // 그 사이 다른 프로세스가 항목을 지웠다면 되살리지 않음.
+                if (Files.exists(dir.resolve(entry.key + ".body")))
+                    Files.move(temp, dir.resolve(entry.key + ".meta"), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                return null;
+            });
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 응답을 저장할 수 있으면 바디를 받을 Writer, 아니면 null.
+    Writer writer(Method method, String url, String requestHeaders, ResponseHeader header) throws IOException {
+        if (method != Method.GET || header.getStatusCode() != 200)
+            return null;
+        if (header.containsToken("Cache-Control", "no-store") || header.containsToken("Vary", "*"))
+            return null;
+        long now = System.currentTimeMillis();
+        long freshUntil = freshUntil(header, now);
+        // 신선하지도 않고 재검증할 방법도 없으면 저장해도 쓸 일이 없음.
+        if (freshUntil <= now && !header.contains("ETag") && !header.contains("Last-Modified"))
+            return null;
+
+        List<String> vary = new ArrayList<>();
+        for (String v : header.getAll("Vary")) {
+            for (String name : v.split(",")) {
+                name = name.strip();
+                if (!name.isEmpty()) {
+                    String value = headerValue(requestHeaders, name);
+                    vary.add(name + ":" + (value != null ? value : ""));
+                }
+            }
+        }
+        List<String> lines = new ArrayList<>(header.size() + 1);
+        lines.add(header.getStatusLine());
+        for (int i = 0; i < header.size(); i++) {
+            if (!SKIP.contains(header.name(i)))
+                lines.add(header.name(i) + ": " + header.value(i));
+        }
+        String request = method + " " + url;
+        return new Writer(key(request), request, freshUntil, vary, lines);
+    }
+
+    // 받는 바디를 임시 파일에 쓰고, commit()하면 캐시에 넣음.
+    final class Writer implements Closeable {
+        private final String key;
+        private final String request;
+        private final long freshUntil;
+        private final List<String> vary;
+        private final List<String> headerLines;
+        private final Path temp;
+        private final OutputStream file;
+        private boolean committed;
+
+        private Writer(String key, String request, long freshUntil, List<String> vary, List<String> headerLines)
+                throws IOException {
+            this.key = key;
+            this.request = request;
+            this.freshUntil = freshUntil;
+            this.vary = vary;
+            this.headerLines = headerLines;
+            this.temp = Files.createTempFile(dir, key, ".tmp");
+            this.file = new BufferedOutputStream(Files.newOutputStream(temp), BodyInputStream.BUFFER_SIZE);
+        }
+
+        // out에 쓰는 바이트를 캐시 파일에도 씀.
+        OutputStream tee(OutputStream out) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    file.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    file.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+
+        // 바디를 끝까지 받았을 때 호출. 기존 항목을 바꾸고 한도를 넘으면 오래된 항목을 지움.
+        void commit() throws IOException {
+            file.close();
+            List<String> lines = new ArrayList<>(headerLines);
+            lines.add("Content-Length: " + Files.size(temp));
+            Path metaTemp = Files.createTempFile(dir, key, ".tmp");
+            try {
+                Files.write(metaTemp, metaLines(request, freshUntil, vary, lines), StandardCharsets.UTF_8);
+                locked(false, () -> {
+                    Files.move(temp, dir.resolve(key + ".body"), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(metaTemp, dir.resolve(key + ".meta"), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    evict();
+                    return null;
+                });
+                committed = true;
+            } finally {
+                Files.deleteIfExists(metaTemp);
+            }
+        }
+
+        // commit()하지 않았다면 임시 파일을 지움.
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                file.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static List<String> metaLines(String request, long freshUntil, List<String> vary, List<String> header) {
+        List<String> lines = new ArrayList<>(4 + vary.size() + header.size());
+        lines.add(MAGIC);
+        lines.add(request);
+        lines.add(String.valueOf(freshUntil));
+        lines.add(String.valueOf(vary.size()));
+        lines.addAll(vary);
+        lines.addAll(header);
+        return lines;
+    }
+
+    // 배타 잠금을 잡은 상태에서 호출. 바디 크기의 합이 한도 아래가 될 때까지 오래 쓰지 않은 항목부터 지움.
+    private void evict() throws IOException {
+        record Item(Path body, long size, long used) {
+        }
+        List<Item> items = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (!name.endsWith(".body") && !name.endsWith(".tmp"))
+                    continue;
+                BasicFileAttributes a;
+                try {
+                    a = Files.readAttributes(p, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long used = a.lastModifiedTime().toMillis();
+                if (name.endsWith(".tmp")) {
+                    if (now - used > STALE_TEMP_MILLIS)
+                        Files.deleteIfExists(p);
+                    continue;
+                }
+                items.add(new Item(p, a.size(), used));
+                total += a.size();
+            }
+        }
+        if (total <= maxSize)
+            return;
+        items.sort(Comparator.comparingLong(Item::used));
+        for (Item item : items) {
+            if (total <= maxSize)
+                break;
+            String name = item.body().getFileName().toString();
+            Files.deleteIfExists(dir.resolve(name.substring(0, name.length() - 5) + ".meta"));
+            Files.deleteIfExists(item.body());
+            total -= item.size();
+        }
+    }
+
+    // 응답을 서버에 묻지 않고 쓸 수 있는 기한(epoch ms). 기한이 없으면 now.
+    static long freshUntil(ResponseHeader header, long now) {
+        if (header.containsToken("Cache-Control", "no-cache"))
+            return now;
+        long age = Math.max(0, header.getLong("Age", 0));
+        for (String cc : header.getAll("Cache-Control")) {
+            for (String d : cc.split(",")) {
+                d = d.strip();
+                if (d.regionMatches(true, 0, "max-age=", 0, 8)) {
+                    try {
+                        return now + Math.max(0, Long.parseLong(d.substring(8).strip()) - age) * 1000;
+                    } catch (NumberFormatException e) {
+                        return now;
+                    }
+                }
+            }
+        }
+        String expires = header.get("Expires");
+        if (expires != null) {
+            try {
+                long e = ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                String date = header.get("Date");
+                // 서버와 시계가 다를 수 있으므로 Date 기준의 남은 시간을 씀.
+                long d = date != null
+                        ? ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                        : now;
+                return now + Math.max(0, e - d);
+            } catch (DateTimeParseException e) {
+                // 잘못된 Expires는 이미 지난 것으로 봄.
+                return now;
+            }
+        }
+        return now;
+    }
+
+    // "Name: value" 줄들에서 name의 값. 없으면 null.
+    private static String headerValue(String text, String name) {
+        for (String line : text.split("\r\n")) {
+            if (line.length() > name.length() && line.charAt(name.length()) == ':'
+                    && line.regionMatches(true, 0, name, 0, name.length()))
+                return line.substring(name.length() + 1).strip();
+        }
+        return null;
+    }
+
+    private static String headerValue(byte[] header, String name) {
+        return headerValue(new String(header, StandardCharsets.ISO_8859_1), name);
+    }
+
+    private static String key(String request) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : d) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // 모든 JDK에 있음.
+            throw new IllegalStateException(e);
+        }
+    }
+}
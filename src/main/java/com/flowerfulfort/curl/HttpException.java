@@ -0,0 +1,17 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+
+// 서버와 연결은 되었지만 HTTP 교환이 제대로 끝나지 않은 경우의 예외.
+// 연결 자체의 실패는 UnknownHostException, ConnectException, SSLException 등 JDK의 예외를 그대로 씀.
+public class HttpException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public HttpException(String message) {
+        super(message);
+    }
+
+    public HttpException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,22 +1,27 @@
 package com.flowerfulfort.curl;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.net.Socket;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.SSLSession;
 
 public class HttpRequest {
     private String originHost;
@@ -25,15 +30,22 @@ public class HttpRequest {
     private Method method;
     private String data;
     private int port;
+    // https면 TLS 연결을 씀.
+    private boolean secure;
 
     // multiparts 파일을 전송하는 용도.
     private boolean sendFile;
     private List<File> files;
     private List<String> fileAlias;
-    private int fileLen;
-
-    // fileAlias의 인덱스를 지정하는 용도.
-    private int fileCounter;
+    // -T로 올릴 파일과 이미 올라간 바이트 수.
+    private Path uploadFile;
+    private long uploadOffset;
+    // --data-binary @file. 길이를 알 수 있으므로 그대로 transferTo로 보냄.
+    private Path dataFile;
+    // -d @file, -d @-, --data-binary @- 처럼 길이를 모르고 흘려보내는 바디.
+    private RequestBody dataBody;
+    // 최종 응답을 받을 때까지 바디를 보내지 않았는지(Expect: 100-continue). 연결을 재사용할 수 없음.
+    private boolean bodyWithheld;
 
     private int redirectCounter;
     private boolean visible;
@@ -41,70 +53,71 @@ public class HttpRequest {
     private String[] customHeader;
 
     private boolean redirect;
+    // --compressed. Accept-Encoding을 보내고 받은 바디의 압축을 풂.
+    private boolean compressed;
+    // -d 데이터를 gzip으로 압축해서 보냄.
+    private boolean gzipData;
+    // 마지막 응답이 따라가야 할 리디렉션이었는지.
+    private boolean followRedirect;
+    // 리디렉션을 따라가며 바디 없는 GET으로 바뀌었는지(Client.redirectsAsGet).
+    private boolean redirectedGet;
+
+    // 최종 응답의 헤더를 받으면 바디를 쓰기 전에 호출됨.
+    private Consumer<ResponseHeader> responseListener;
+
+    // --cache. GET 응답을 디스크에 저장하고 다시 씀.
+    private HttpCache cache;
+    // 지금 보내는 요청이 캐시를 거치는지, 재검증 중인 항목과 보낸 요청 헤더.
+    private boolean caching;
+    private HttpCache.Entry cached;
+    private String cachedRequest;
+
+    // 바디를 쓸 곳. null이면 표준 출력에 텍스트만 출력.
+    private OutputStream output;
+    // --http2, --http2-prior-knowledge. http 요청을 HTTP/2(h2c)로 보냄.
+    private Http2Mode http2;
+    // --max-time(ns). 0이면 제한 없음. 요청 중에는 timer가 시간을 잼.
+    private long maxTimeNanos;
+    private TransferTimer timer;
+
+    // 마지막 응답의 결과.
+    private int statusCode;
+    private long bodyBytes;
+    private IOException failure;
+
+    // 연결과 요청/응답 교환은 Client에 맡기고, 여기서는 명령줄의 출력과 측정을 함.
+    private static final Client CLIENT = Client.shared();
+
+    // 응답 바디를 옮길 때 재사용하는 버퍼.
+    private final byte[] buffer = new byte[BodyInputStream.BUFFER_SIZE];
+    // --compressed 응답의 압축을 풀 때 재사용. 처음 쓸 때 만듦.
+    private Decompressor decompressor;
+    // 응답 헤더를 파싱할 때 재사용하는 버퍼.
+    private final ResponseHeader responseHeader = new ResponseHeader();
 
-    // 파일 바운더리
-    // 바운더리가 어떻게 생성되는지 몰라 고정.
-    private static final String BOUNDARY = "------------------------cmeNT2ZxyH1uAG6jCp0boL";
-
-    // 헤더 포맷
-    private static final String GET_HEADER_FORMAT = "%s %s HTTP/1.1\r\nHost: %s\r\nUser-Agent: curl/1.0.0\r\nAccept: */*\r\n%s\r\n";
-    private static final String POST_HEADER_FORMAT = "%s %s HTTP/1.1\r\nHost: %s\r\nUser-Agent: curl/1.0.0\r\nAccept: */*\r\n%sContent-Length: %d\r\n\r\n%s";
-    // private static final String POST_HEADER_FORMAT = "%s %s HTTP/1.1\r\nHost:
-    // %s\r\nUser-Agent: curl/1.0.0\r\nAccept: */*\r\n%sContent-Length:
-    // %d\r\nContent-Type: application/x-www-form-urlencoded\r\n\r\n%s";
-    private static final String FILE_HEADER_FORMAT = "POST %s HTTP/1.1\r\nHost: %s\r\nUser-Agent: curl/1.0.0\r\nAccept: */*\r\n%sContent-Length: %d\r\nContent-Type: multipart/form-data; boundary=%s\r\n\r\n";
-    private static final String FILE_SUBHEADER_FORMAT = "Content-Disposition: form-data; name=\"%s\"; filename=\"%s\"\r\nContent-Type: text/plain\r\n\r\n";
-    private static final String ENDLINE = "\r\n";
-    private static final String LITTLE_BOUND = "--";
+    // 미리 인코딩한 요청. 처음 보낼 때 만들고 경로가 바뀔 때만 다시 만듦.
+    private RequestTemplate template;
+
+    // 단계별 시각과 크기(-w). 요청마다 새로 잼.
+    private final TransferStats stats = new TransferStats();
+    // 진행 중인 요청/응답 한 번의 JFR 이벤트. Client.exchange()나 파이프라인의 writeTo()가 시작함.
+    private ExchangeTrace recorder;
+
+    // 처음 요청한 URL. 리디렉션을 따라간 뒤 다시 request() 하면 여기서 시작.
+    private final String requestUrl;
 
     HttpRequest(String host, Method method, String data) {
         visible = false;
+        this.requestUrl = host;
         this.originHost = host;
         this.method = method;
         this.data = data;
         this.sendFile = false;
         redirect = false;
-        fileLen = 0;
-        fileCounter = 0;
         redirectCounter = 0;
-        String httpProto = null;
-        StringTokenizer stoken = new StringTokenizer(host, ":");
-        if (host.startsWith("http")) {
-            /* http(s) */
-            httpProto = stoken.nextToken();
-        } else {
+        if (!host.startsWith("http")) {
             throw new IllegalArgumentException();
         }
-
-        /* //www.example.com */
-        stoken.nextToken();
-
-        /* www.example.com:8080 */
-        if (stoken.hasMoreTokens()) { // 포트번호가 명시가 되어 있는 경우.
-            String tok = stoken.nextToken();
-            tok = stoken.nextToken();
-            int from = 0;
-            int to = from;
-            while (to < tok.length()) {
-                if (!Character.isDigit(tok.charAt(to))) {
-                    // 숫자가 아니면
-                    break;
-                } else
-                    to++;
-            }
-            if (to < 0) { // 포트번호가 명시되어 있지 않는 예외상황.
-                throw new IllegalArgumentException();
-            }
-            port = Integer.parseInt(tok.substring(from, to));
-        } else if (httpProto == null) { // 포트번호도 없고 http 프로토콜 명시도 없는 경우.
-            port = 80; // 기본은 HTTP
-        } else { // 프로토콜 명시가 있는 경우.
-            port = switch (httpProto) {
-                case "http" -> 80;
-                case "https" -> 443;
-                default -> throw new IllegalArgumentException();
-            };
-        }
         parse();
     }
 
@@ -119,6 +132,18 @@ public class HttpRequest {
         private ArrayList<String> fileAlias;
         private boolean sendFile;
         private boolean redirect;
+        private boolean compressed;
+        private boolean gzipData;
+        private Path uploadFile;
+        private long uploadOffset;
+        private Path dataFile;
+        private boolean dataStdin;
+        private boolean dataBinary;
+        private Consumer<ResponseHeader> responseListener;
+        private HttpCache cache;
+        private OutputStream output;
+        private Http2Mode http2;
+        private long maxTimeMillis;
 
         Builder() {
             // default values.
@@ -130,6 +155,8 @@ public class HttpRequest {
             files = new ArrayList<>();
             fileAlias = new ArrayList<>();
             redirect = false;
+            output = null;
+            http2 = Http2Mode.OFF;
         }
 
         public Builder setHost(String host) {
@@ -147,6 +174,20 @@ public class HttpRequest {
             return this;
         }
 
+        // 바디를 source 파일에서 읽어 흘려보냄. "-"이면 표준 입력. -X가 없으면 POST.
+        // binary가 아니면 -d 처럼 CR, LF를 빼고 보냄.
+        public Builder setDataSource(String source, boolean binary) {
+            if (source.equals("-")) {
+                dataStdin = true;
+                dataFile = null;
+            } else {
+                dataStdin = false;
+                dataFile = Path.of(source);
+            }
+            dataBinary = binary;
+            return this;
+        }
+
         public Builder setHeaderVisible() {
             visible = true;
             return this;
@@ -162,6 +203,64 @@ public class HttpRequest {
             return this;
         }
 
+        public Builder setCompressed() {
+            compressed = true;
+            return this;
+        }
+
+        public Builder setGzipData() {
+            gzipData = true;
+            return this;
+        }
+
+        // 파일 내용을 바디로 보냄. -X가 없으면 PUT.
+        public Builder setUploadFile(Path file) {
+            uploadFile = file;
+            return this;
+        }
+
+        // 파일의 offset부터 보내고 Content-Range를 붙임. 서버에 이미 있는 부분을 건너뛸 때 씀.
+        public Builder setUploadOffset(long offset) {
+            uploadOffset = offset;
+            return this;
+        }
+
+        // 최종 응답의 헤더를 바디보다 먼저 받아봄. 바디를 어디에 쓸지 정할 때 씀.
+        public Builder setResponseListener(Consumer<ResponseHeader> listener) {
+            responseListener = listener;
+            return this;
+        }
+
+        // GET 응답을 cache에 저장하고, 저장된 응답이 있으면 그것을 씀.
+        public Builder setCache(HttpCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        // 바디를 표준 출력 대신 out으로 씀. Content-Type과 상관없이 모든 바이트를 씀.
+        public Builder setOutput(OutputStream out) {
+            output = out;
+            return this;
+        }
+
+        // http 요청에 Upgrade: h2c를 붙여 HTTP/2를 청함(--http2). 바디가 있으면 HTTP/1.1로 보냄.
+        public Builder setHttp2() {
+            http2 = Http2Mode.UPGRADE;
+            return this;
+        }
+
+        // http 요청을 처음부터 HTTP/2로 보냄(--http2-prior-knowledge).
+        public Builder setHttp2PriorKnowledge() {
+            http2 = Http2Mode.PRIOR_KNOWLEDGE;
+            return this;
+        }
+
+        // 리디렉션을 포함한 요청 전체의 시간 제한(--max-time). 0이면 제한 없음.
+        public Builder setMaxTime(long millis) {
+            maxTimeMillis = millis;
+            return this;
+        }
+
         public Builder setFiles(String[] f) throws FileNotFoundException {
             if (f.length <= 0)
                 throw new IllegalArgumentException();
@@ -185,7 +284,12 @@ public class HttpRequest {
             if (host == null) {
                 throw new IllegalArgumentException();
             }
-            HttpRequest req = new HttpRequest(host, method, data);
+            Method m = method;
+            if (method == Method.GET && uploadFile != null)
+                m = Method.PUT;
+            else if (method == Method.GET && (dataFile != null || dataStdin))
+                m = Method.POST;
+            HttpRequest req = new HttpRequest(host, m, data);
             req.visible = visible;
 
             if (sendFile) {
@@ -195,6 +299,20 @@ public class HttpRequest {
             }
             req.customHeader = customHeader;
             req.redirect = redirect;
+            req.compressed = compressed;
+            req.gzipData = gzipData;
+            req.uploadFile = uploadFile;
+            req.uploadOffset = uploadOffset;
+            if (dataFile != null && dataBinary && !gzipData) {
+                req.dataFile = dataFile;
+            } else if (dataFile != null || dataStdin) {
+                req.dataBody = new StreamBody(dataFile, !dataBinary, gzipData);
+            }
+            req.responseListener = responseListener;
+            req.cache = cache;
+            req.output = output;
+            req.http2 = http2;
+            req.maxTimeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxTimeMillis));
             return req;
         }
     }
@@ -203,309 +321,736 @@ public class HttpRequest {
         return new Builder();
     }
 
-    // host와 location을 분리.
-    private void parse() {
-        StringTokenizer stoken = new StringTokenizer(originHost, "/");
-        if (originHost.startsWith("http")) {
-            /* http(s):// 을 먼저 떼어냄. */
-            stoken.nextToken();
-        }
-        host = stoken.nextToken();
-        if (stoken.hasMoreTokens()) {
-            StringBuilder sb = new StringBuilder();
-            while (stoken.hasMoreTokens()) {
-                sb.append('/').append(stoken.nextToken());
-            }
-            location = sb.toString();
-        } else {
-            location = "/";
-        }
+    // host, port와 location을 분리.
+    void parse() {
+        Url url = Url.parse(originHost);
+        secure = url.isSecure();
+        host = url.host;
+        port = url.port;
+        location = url.path;
     }
 
-    // 헤더를 생성하는 메소드
-    private String createHeader() {
-        int contentLength = 0;
-        if (data != null) {
-            contentLength = data.length();
-        }
-        StringBuilder cHeader = new StringBuilder("");
+    // Host 헤더의 값. 기본 포트가 아니면 포트를 붙임.
+    private String authority() {
+        return port == (secure ? 443 : 80) ? host : host + ":" + port;
+    }
+
+    // 최초 요청 대상의 host:port.
+    String hostKey() {
+        return Connection.key(host, port);
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    boolean isSecure() {
+        return secure;
+    }
+
+    String getUrl() {
+        return originHost;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    // 지금 보내는 메소드. 리디렉션으로 GET이 됐을 수 있음.
+    private Method currentMethod() {
+        return redirectedGet ? Method.GET : method;
+    }
+
+    // 마지막 응답의 상태 코드. 응답을 받지 못했으면 0.
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    // 마지막 응답에서 받은 바디 바이트 수.
+    long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    // 리디렉션을 따라간 뒤의 최종 URL.
+    String getEffectiveUrl() {
+        String scheme = originHost.substring(0, originHost.indexOf(':'));
+        return scheme + "://" + authority() + location;
+    }
+
+    // 마지막으로 받은 응답 헤더. 다음 요청을 보내면 바뀜.
+    ResponseHeader getResponseHeader() {
+        return responseHeader;
+    }
+
+    // 응답 바디의 압축을 풀어야 하는지.
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    // 요청이 실패했다면 그 원인.
+    IOException getFailure() {
+        return failure;
+    }
+
+    // 마지막 request()의 단계별 시간과 크기.
+    TransferStats getStats() {
+        return stats;
+    }
+
+    // 요청 템플릿을 만드는 메소드
+    RequestTemplate compileTemplate() {
+        return compileTemplate(Collections.emptyList());
+    }
+
+    // extra는 -H 헤더 뒤에 붙일 헤더들.
+    private RequestTemplate compileTemplate(List<String> extra) {
+        Method method = currentMethod();
+        List<String> headers = new ArrayList<>();
         boolean contentFlag = false;
+        boolean acceptEncodingFlag = false;
         if (customHeader != null) {
             for (String h : customHeader) {
                 if (h.startsWith("Content-Type"))
                     contentFlag = true;
-                cHeader.append(h).append(ENDLINE);
+                if (h.regionMatches(true, 0, "Accept-Encoding:", 0, 16))
+                    acceptEncodingFlag = true;
+                headers.add(h);
             }
         }
+        headers.addAll(extra);
         if ((method == Method.POST || method == Method.PUT) && !contentFlag) {
-            cHeader.append("Content-Type: application/x-www-form-urlencoded").append(ENDLINE);
-        }
-        switch (method) {
-            case GET:
-                return String.format(GET_HEADER_FORMAT, method, location, host, cHeader.toString());
-            case PUT:
-            case POST:
-            case DELETE:
-            case HEAD:
-                return data != null
-                        ? String.format(POST_HEADER_FORMAT, method, location, host, cHeader.toString(), contentLength,
-                                data)
-                        : String.format(GET_HEADER_FORMAT, method, location, host, cHeader.toString());
-            default:
-                throw new IllegalArgumentException();
+            headers.add("Content-Type: application/x-www-form-urlencoded");
+        }
+        if (compressed && !acceptEncodingFlag) {
+            headers.add("Accept-Encoding: deflate, gzip");
+        }
+        // GET은 데이터를 보내지 않음.
+        // Content-Length는 글자 수가 아니라 인코딩된 바이트 수.
+        byte[] body = method != Method.GET && data != null ? data.getBytes(StandardCharsets.UTF_8) : null;
+        if (body != null && gzipData) {
+            body = gzip(body);
+            headers.add("Content-Encoding: gzip");
+        }
+        return RequestTemplate.compile(method, location, authority(), headers, body);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(data);
+        } catch (IOException e) {
+            // 메모리에 쓰므로 일어나지 않음.
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    // 현재 host와 location에 맞는 템플릿. 같은 요청을 반복하면 그대로 재사용됨.
+    RequestTemplate template() {
+        if (template == null || !template.getAuthority().equals(authority())) {
+            template = compileTemplate();
+        } else {
+            template = template.withPath(location);
+        }
+        return template;
+    }
+
+    public void request() {
+        reset();
+        timer = maxTimeNanos > 0 ? TransferTimer.start(maxTimeNanos) : null;
+        try {
+            if (sendFile) {
+                requestMultipart();
+            } else if (uploadFile != null) {
+                requestUpload();
+            } else if (dataFile != null || dataBody != null) {
+                requestData();
+            } else if (cache != null && method == Method.GET) {
+                requestCached();
+            } else {
+                requestNormally();
+            }
+        } finally {
+            if (timer != null) {
+                timer.finish();
+                timer = null;
+            }
+        }
+    }
 
+    // 이전 결과를 지움.
+    void reset() {
+        if (redirectCounter > 0) {
+            // 이전 요청이 리디렉션을 따라갔다면 처음 URL로 되돌림.
+            originHost = requestUrl;
+            parse();
+            redirectCounter = 0;
         }
+        if (redirectedGet) {
+            redirectedGet = false;
+            template = null;
+        }
+        statusCode = 0;
+        bodyBytes = 0;
+        failure = null;
+        followRedirect = false;
+        bodyWithheld = false;
+        recorder = null;
+        stats.reset(System.nanoTime());
     }
 
-    public static Map<String, String> parseHeader(String header) {
-        String[] headers = header.split("\n");
-        HashMap<String, String> h = new HashMap<>();
+    // 같은 요청을 다시 보내도 결과가 같은 메소드인지. 파이프라인에 넣거나
+    // 응답을 못 받은 요청을 다시 보낼 수 있는지 판단할 때 씀.
+    boolean isIdempotent() {
+        return !hasFileBody() && method != Method.POST;
+    }
 
-        String[] httpRequest = headers[0].split(" ");
-        h.put("HTTPVersion", httpRequest[0]);
-        h.put("StatusCode", httpRequest[1]);
-        h.put("Status", httpRequest[2]);
+    // 바디를 템플릿에 넣지 않고 파일에서 흘려보내는 요청인지(-F, -T, -d @file).
+    boolean hasFileBody() {
+        return sendFile || uploadFile != null || dataFile != null || dataBody != null;
+    }
 
-        for (int i = 1; i < headers.length; i++) {
-            StringTokenizer tok = new StringTokenizer(headers[i], ":");
-            String key = tok.nextToken().strip();
-            String value = tok.nextToken().strip();
-            h.put(key, value);
+    // 파이프라인에서 받은 응답이 리디렉션이었다면 나머지를 일반 요청으로 이어감.
+    boolean needsRedirect() {
+        return followRedirect;
+    }
+
+    void continueRedirect() {
+        followRedirect = false;
+        requestNormally();
+    }
+
+    void fail(IOException e) {
+        failure = e;
+        endExchange(e);
+    }
+
+    void requestNormally() {
+        if (!checkRedirectLoop())
+            return;
+        if (exchange(template(), null)) {
+            requestNormally(); // location을 바꾸고 다시 request.
         }
-        return h;
     }
 
-    public void request() {
-        if (sendFile) {
-            requestMultipart();
-        } else {
+    // 캐시에 신선한 응답이 있으면 서버에 묻지 않고, 오래된 응답은 조건부 요청으로 재검증함.
+    private void requestCached() {
+        RequestTemplate t = template();
+        HttpCache.Entry entry;
+        try {
+            entry = cache.lookup(method, getEffectiveUrl(), t.headerText());
+        } catch (IOException e) {
+            System.err.println("* Cache unavailable: " + e.getMessage());
             requestNormally();
+            return;
+        }
+        try {
+            if (entry != null && entry.isFresh()) {
+                if (visible)
+                    System.out.println("* Using fresh response from cache");
+                serveCached(entry);
+                return;
+            }
+            if (entry != null) {
+                List<String> conditional = entry.conditionalHeaders();
+                if (!conditional.isEmpty())
+                    t = compileTemplate(conditional);
+            }
+            caching = true;
+            cached = entry;
+            cachedRequest = t.headerText();
+            if (exchange(t, null)) {
+                requestNormally(); // location을 바꾸고 다시 request.
+            }
+        } catch (IOException e) {
+            failure = e;
+            if (output == null)
+                System.err.println("Cannot read cached response: " + e.getMessage());
+        } finally {
+            caching = false;
+            cached = null;
+            if (entry != null)
+                entry.close();
         }
     }
 
-    private void requestNormally() {
-        if (redirectCounter > 5) {
-            System.err.println("Redirection loop detected.");
-            System.err.println("Application Terminated");
-            System.exit(1);
+    // 저장된 응답을 서버에서 받은 것처럼 처리함.
+    private void serveCached(HttpCache.Entry entry) throws IOException {
+        InputStream in = new ByteArrayInputStream(entry.headerBytes());
+        if (!responseHeader.read(in))
+            throw new IOException("Empty cached response");
+        statusCode = responseHeader.getStatusCode();
+        printResponseHeader();
+        if (responseListener != null)
+            responseListener.accept(responseHeader);
+        String ctype = responseHeader.get("Content-Type");
+        if (output != null || printable(ctype)) {
+            OutputStream out = output != null ? output : System.out;
+            bodyBytes = entry.copyTo(out);
+            out.flush();
         }
-        // System.out.println(host);
-        try (Socket sc = new Socket(host, port)) {
-            String sendHeader = createHeader();
-            if (visible) { // -v 옵션
-                System.out.printf("* Connected to %s (%s) port %d%n", host, sc.getInetAddress(), sc.getPort());
-                String[] lines = sendHeader.split("\r\n");
-                for (String s : lines) {
-                    System.out.print("> ");
-                    System.out.println(s);
-                }
-                System.out.println("> ");
+        stats.finished(System.nanoTime(), bodyBytes, ctype);
+    }
+
+    // Content-Type을 체크하여 텍스트와 json 데이터만 출력.
+    private static boolean printable(String ctype) {
+        return ctype != null && (ctype.startsWith("text/") || ctype.equals("application/json"));
+    }
+
+    private void requestMultipart() {
+        if (!checkRedirectLoop())
+            return;
+        MultipartBody body = new MultipartBody(files, fileAlias);
+        // 전송헤더. 바운더리가 매번 다르므로 템플릿을 재사용하지 않음.
+        List<String> headers = new ArrayList<>();
+        if (customHeader != null) {
+            headers.addAll(Arrays.asList(customHeader));
+        }
+        headers.add("Content-Length: " + body.contentLength());
+        headers.add("Content-Type: multipart/form-data; boundary=" + body.getBoundary());
+        boolean expect = addExpect(headers, body.contentLength());
+        RequestTemplate sendHeader = RequestTemplate.compile(Method.POST, location, authority(), headers, null);
+        if (exchange(sendHeader, body, expect)) {
+            // location을 바꾸고 다시 request. GET으로 바뀌었으면 바디 없이 보냄.
+            if (redirectedGet)
+                requestNormally();
+            else
+                requestMultipart();
+        }
+    }
+
+    private void requestUpload() {
+        if (!checkRedirectLoop())
+            return;
+        long size;
+        try {
+            size = Files.size(uploadFile);
+        } catch (IOException e) {
+            failure = e;
+            return;
+        }
+        FileBody body = new FileBody(uploadFile, uploadOffset, size - uploadOffset);
+        List<String> headers = new ArrayList<>();
+        if (customHeader != null) {
+            headers.addAll(Arrays.asList(customHeader));
+        }
+        headers.add("Content-Length: " + body.contentLength());
+        if (uploadOffset > 0) {
+            // 서버에 이미 있는 앞부분은 빼고 나머지만 보냄.
+            headers.add("Content-Range: bytes " + uploadOffset + "-" + (size - 1) + "/" + size);
+        }
+        boolean expect = addExpect(headers, body.contentLength());
+        RequestTemplate sendHeader = RequestTemplate.compile(method, location, authority(), headers, null);
+        if (exchange(sendHeader, body, expect)) {
+            if (redirectedGet)
+                requestNormally();
+            else
+                requestUpload();
+        }
+    }
+
+    private void requestData() {
+        if (!checkRedirectLoop())
+            return;
+        RequestBody body = dataBody;
+        if (dataFile != null) {
+            // 보낼 때의 파일 크기로 Content-Length를 정함.
+            try {
+                body = new FileBody(dataFile, 0, Files.size(dataFile));
+            } catch (IOException e) {
+                failure = e;
+                if (output == null)
+                    System.err.println("Cannot read data file: " + e.getMessage());
+                return;
+            }
+        }
+        long length = body.contentLength();
+        List<String> headers = new ArrayList<>();
+        boolean contentFlag = false;
+        if (customHeader != null) {
+            for (String h : customHeader) {
+                if (h.regionMatches(true, 0, "Content-Type:", 0, 13))
+                    contentFlag = true;
+                headers.add(h);
             }
+        }
+        if (!contentFlag)
+            headers.add("Content-Type: application/x-www-form-urlencoded");
+        if (length >= 0) {
+            headers.add("Content-Length: " + length);
+        } else {
+            headers.add("Transfer-Encoding: chunked");
+            if (gzipData)
+                headers.add("Content-Encoding: gzip");
+        }
+        boolean expect = addExpect(headers, length);
+        RequestTemplate sendHeader = RequestTemplate.compile(method, location, authority(), headers, null);
+        if (exchange(sendHeader, body, expect)) {
+            if (redirectedGet)
+                requestNormally();
+            else
+                requestData();
+        }
+    }
 
-            // 헤더(와 데이터)를 전송
-            sc.getOutputStream().write(sendHeader.getBytes());
-
-            // response를 받음.
-            BufferedReader br = new BufferedReader(new InputStreamReader(sc.getInputStream()));
-            String str = null;
-            StringBuilder sb = new StringBuilder();
-            while ((str = br.readLine()) != null) {
-                if (str.isEmpty())
-                    break;
-                sb.append(str).append('\n');
-            } // header 받기
-            if (visible) {
-                System.out.println("* Request completely sent off");
-                String[] receivedHeader = sb.toString().split("\n");
-                for (String s : receivedHeader) {
-                    System.out.print("< ");
-                    System.out.println(s);
-                }
-                System.out.println("< ");
+    // 바디가 크거나 길이를 모르면 Expect: 100-continue를 붙임. -H로 Expect를 준 경우는 그대로 둠.
+    private boolean addExpect(List<String> headers, long length) {
+        if (length >= 0 && length < Client.EXPECT_THRESHOLD)
+            return false;
+        if (customHeader != null) {
+            for (String h : customHeader) {
+                if (h.regionMatches(true, 0, "Expect:", 0, 7))
+                    return h.substring(7).strip().equalsIgnoreCase("100-continue");
             }
-            sb.deleteCharAt(sb.length() - 1);
-            Map<String, String> header = parseHeader(sb.toString());
-
-            // 만약 30x redirect 라면...
-            int statusCode = Integer.parseInt(header.get("StatusCode"));
-            String next = header.get("Location");
-            if (redirect && statusCode >= 300 && statusCode < 400 && next != null) {
-                if (next.startsWith("http")) {
-                    // 다른 도메인으로 갈 경우..
-                    originHost = next;
-                    parse();
-                } else { // 도메인 내의 location만 지시하는 경우.
-                    location = next;
+        }
+        headers.add("Expect: 100-continue");
+        return true;
+    }
+
+    // 파이프라인용. 요청을 conn의 버퍼에 쓰기만 하고 flush는 호출한 쪽이 함.
+    void writeTo(Connection conn) throws IOException {
+        RequestTemplate t = template();
+        beginExchange();
+        if (TransferStats.recording()) {
+            recorder = ExchangeTrace.start(t, secure, null, Client.Trace.NONE);
+            recorder.connected(conn.isReused());
+        }
+        stats.connected(conn, System.nanoTime());
+        printRequestHeader(conn, t);
+        stats.requestStarted(System.nanoTime(), t.length() - t.bodyLength(), t.bodyLength());
+        t.writeTo(conn.getOutputStream());
+        // flush는 묶음 단위라 요청마다의 전송 완료 시각은 쓴 시점으로 대신함.
+        stats.requestSent(System.nanoTime());
+        if (recorder != null)
+            recorder.requestSent(t.length());
+        if (visible)
+            System.out.println("* Request completely sent off");
+    }
+
+    // 파이프라인용. 앞서 보낸 요청의 응답 하나를 conn에서 읽어 처리하며, 연결은 풀에 돌려주지 않음.
+    // 응답 없이 연결이 닫혔으면 -1, 아니면 연결을 계속 쓸 수 있는 시간(0이면 닫아야 함).
+    long receive(Connection conn) throws IOException {
+        if (!Client.readHeader(conn, responseHeader, new Trace(template, null)))
+            return -1;
+        if (recorder != null)
+            recorder.responseStarted(responseHeader.getStatusCode());
+        long keepAlive = consumeResponse(responseHeader, conn);
+        endExchange(null);
+        return keepAlive;
+    }
+
+    // 리디렉션을 너무 많이 따라갔으면 TooManyRedirectsException으로 실패시킴.
+    private boolean checkRedirectLoop() {
+        if (redirectCounter > Client.DEFAULT_MAX_REDIRECTS) {
+            failure = new TooManyRedirectsException(getEffectiveUrl(), Client.DEFAULT_MAX_REDIRECTS);
+            stats.failed(System.nanoTime());
+            if (output == null)
+                System.err.println("Redirection loop detected.");
+            return false;
+        }
+        return true;
+    }
+
+    // 요청을 보내고 응답을 처리함. 리디렉션을 따라가야 하면 true.
+    private boolean exchange(RequestTemplate sendHeader, RequestBody body) {
+        return exchange(sendHeader, body, false);
+    }
+
+    // expect이면 헤더만 먼저 보내고 100 Continue를 잠시 기다린 뒤 바디를 보냄.
+    // 그 전에 최종 응답(401, 413 등)이 오면 바디를 보내지 않음.
+    private boolean exchange(RequestTemplate sendHeader, RequestBody body, boolean expect) {
+        Client.Exchange ex = null;
+        beginExchange();
+        bodyWithheld = false;
+        try {
+            if (timer != null)
+                timer.check();
+            ex = CLIENT.exchange(host, port, secure, sendHeader, body, expect, responseHeader,
+                    new Trace(sendHeader, body), http2);
+            recorder = ex.recorder;
+            bodyWithheld = ex.bodyWithheld;
+            boolean next = handleResponse(ex, responseHeader);
+            endExchange(null);
+            return next;
+        } catch (IOException e) {
+            if (ex != null)
+                ex.abort();
+            if (timer != null)
+                e = timer.translate(e);
+            failure = e;
+            endExchange(e);
+            if (output == null) {
+                if (e instanceof SocketTimeoutException) {
+                    System.err.println(e.getMessage());
+                } else {
+                    e.printStackTrace();
+                    System.err.println("Cannot connect to host\n");
                 }
-                redirectCounter++;
-                requestNormally(); // location을 바꾸고 다시 request.
+            }
+            return false;
+        }
+    }
+
+    // 교환 단계마다 -v 출력과 -w 시각을 남김.
+    private final class Trace implements Client.Trace {
+        private final RequestTemplate sendHeader;
+        private final RequestBody body;
+        private Http2Stream stream;
+
+        Trace(RequestTemplate sendHeader, RequestBody body) {
+            this.sendHeader = sendHeader;
+            this.body = body;
+        }
+
+        @Override
+        public void connected(Connection conn) {
+            if (timer != null)
+                timer.attach(conn);
+            stats.connected(conn, System.nanoTime());
+            printRequestHeader(conn, sendHeader);
+        }
+
+        @Override
+        public void requestStarted() {
+            // HTTP/2는 HPACK으로 압축해서 보낸 헤더 크기로 셈.
+            long headerBytes = stream != null ? stream.requestHeaderBytes
+                    : sendHeader.length() - sendHeader.bodyLength();
+            stats.requestStarted(System.nanoTime(), headerBytes,
+                    sendHeader.bodyLength() + (body != null ? Math.max(0, body.contentLength()) : 0));
+        }
+
+        @Override
+        public void requestSent(boolean bodySent) {
+            stats.requestSent(System.nanoTime());
+            if (visible && bodySent)
+                System.out.println("* Request completely sent off");
+        }
+
+        @Override
+        public void continueTimedOut() {
+            if (visible)
+                System.out.println("* Done waiting for 100-continue");
+        }
+
+        @Override
+        public void headerReceived(ResponseHeader header) {
+            printResponseHeader();
+        }
+
+        @Override
+        public void responseStarted(ResponseHeader header) {
+            stats.responseStarted(System.nanoTime(), header.byteLength());
+        }
+
+        @Override
+        public void streamOpened(Http2Stream stream) {
+            this.stream = stream;
+            if (timer != null)
+                timer.attach(stream);
+            stats.connected(stream.connection(), stream.isReused(), System.nanoTime());
+            printRequestHeader(stream.connection(), stream.isReused(), sendHeader, stream);
+        }
+
+        @Override
+        public void upgraded() {
+            if (visible)
+                System.out.println("* Connection state changed (HTTP/2 confirmed)");
+        }
+    }
+
+    // 요청/응답 한 번의 측정을 시작함. 리디렉션을 따라가면 단계마다 불림.
+    private void beginExchange() {
+        recorder = null;
+        stats.beginExchange(System.nanoTime());
+    }
+
+    // 측정을 끝내고 JFR 이벤트를 남김. e는 실패 원인(성공이면 null).
+    // Client.exchange()에서 실패했다면 이벤트는 이미 남았고 recorder는 null임.
+    private void endExchange(IOException e) {
+        if (timer != null)
+            timer.detach();
+        if (e != null)
+            stats.failed(System.nanoTime());
+        ExchangeTrace r = recorder;
+        recorder = null;
+        if (r != null)
+            r.end(bodyBytes, e);
+    }
+
+    private void printRequestHeader(Connection conn, RequestTemplate sendHeader) {
+        printRequestHeader(conn, conn.isReused(), sendHeader, null);
+    }
+
+    // stream이 있으면 HTTP/2 스트림으로 보낸 요청. 요청줄의 버전만 바꿔서 출력함.
+    private void printRequestHeader(Connection conn, boolean reused, RequestTemplate sendHeader,
+            Http2Stream stream) {
+        if (visible) { // -v 옵션
+            if (reused) {
+                System.out.printf("* Re-using existing connection with host %s%n", host);
             } else {
-                String ctype = header.get("Content-Type");
-                // Content-Type을 체크하여 텍스트와 json 데이터만 출력.
-                if (ctype != null && (ctype.startsWith("text/") || ctype.equals("application/json"))) {
-                    // 헤더의 Content-Length를 읽어 그만큼 읽음.
-                    int bodyLength = Integer.parseInt(header.get("Content-Length"));
-
-                    char[] buf = new char[bodyLength];
-                    br.read(buf);
-                    // 표준 출력으로 출력.
-                    System.out.println(buf);
-                }
-                if (visible) {
-                    System.out.printf("Connection to host %s left intact%n", host);
+                System.out.printf("* Connected to %s (%s) port %d%n", host, conn.getInetAddress(), conn.getPort());
+                SSLSession session = conn.tlsSession();
+                if (session != null) {
+                    System.out.printf("* SSL connection using %s / %s (handshake %.1f ms)%n", session.getProtocol(),
+                            session.getCipherSuite(), conn.getHandshakeNanos() / 1e6);
+                    String alpn = conn.applicationProtocol();
+                    System.out.println(alpn != null ? "* ALPN: server accepted " + alpn
+                            : "* ALPN: server did not agree on a protocol");
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Cannot connect to host\n");
+            String[] lines = sendHeader.headerText().split("\r\n");
+            if (stream != null) {
+                System.out.printf("* Using Stream ID: %d%n", stream.id);
+                lines[0] = lines[0].substring(0, lines[0].lastIndexOf(' ')) + " HTTP/2";
+            }
+            for (String s : lines) {
+                System.out.print("> ");
+                System.out.println(s);
+            }
+            System.out.println("> ");
         }
     }
 
-    private void requestMultipart() {
-        if (redirectCounter > 5) {
-            System.err.println("Redirection loop detected.");
-            System.err.println("Application Terminated");
-            System.exit(1);
+
+    private void printResponseHeader() {
+        if (visible) {
+            for (String s : responseHeader.lines()) {
+                System.out.print("< ");
+                System.out.println(s);
+            }
+            System.out.println("< ");
+        }
+    }
+
+    // 바디를 처리하고 연결을 풀에 되돌림. HTTP/2는 스트림만 닫고 연결은 풀에 있는 그대로 씀.
+    // 리디렉션을 따라가야 한다면 location을 바꾸고 true를 반환.
+    private boolean handleResponse(Client.Exchange ex, ResponseHeader header) throws IOException {
+        if (ex.stream != null) {
+            try (Http2Stream stream = ex.stream) {
+                consumeResponse(header, ex.conn, stream.body(), null, stream);
+            }
+        } else {
+            CLIENT.pool().release(ex.conn, consumeResponse(header, ex.conn));
+        }
+        if (followRedirect) {
+            followRedirect = false;
+            return true;
+        }
+        return false;
+    }
+
+    // 바디를 끝까지 처리하고 연결을 계속 쓸 수 있는 시간을 반환(0이면 닫아야 함).
+    // 리디렉션을 따라가야 한다면 location을 바꾸고 followRedirect를 켬.
+    private long consumeResponse(ResponseHeader header, Connection conn) throws IOException {
+        boolean noBody = method == Method.HEAD || header.getStatusCode() < 200 || header.getStatusCode() == 204
+                || header.getStatusCode() == 304;
+        BodyInputStream framed = BodyInputStream.open(conn.getInputStream(), header, noBody);
+        return consumeResponse(header, conn, framed, framed, null);
+    }
+
+    // body는 HTTP/1.1이면 framed, HTTP/2면 stream의 바디. HTTP/2의 바디 끝은 END_STREAM으로 알 수 있으므로
+    // framing 없이 읽고, 끝까지 읽지 않은 스트림은 닫을 때 취소됨.
+    private long consumeResponse(ResponseHeader header, Connection conn, InputStream body, BodyInputStream framed,
+            Http2Stream stream) throws IOException {
+        boolean caching = this.caching;
+        this.caching = false;
+        statusCode = header.getStatusCode();
+        boolean noBody = method == Method.HEAD || statusCode < 200 || statusCode == 204 || statusCode == 304;
+        // 길이를 알 수 없는 바디는 연결이 닫혀야 끝나므로 재사용하지 않음.
+        // 요청 바디를 보내지 않았다면 서버가 아직 그것을 기다리고 있을 수 있으므로 역시 닫음.
+        long keepAlive = stream != null ? ConnectionPool.DEFAULT_KEEP_ALIVE
+                : framed.isFramed() && !bodyWithheld ? ConnectionPool.keepAliveMillis(header) : 0;
+
+        // 만약 30x redirect 라면...
+        String next = header.get("Location");
+        if (redirect && statusCode >= 300 && statusCode < 400 && next != null) {
+            if (framed != null && keepAlive > 0)
+                framed.drain(buffer);
+            Url target = Url.parse(getEffectiveUrl()).resolve(next);
+            if (target.host.equals(host) && target.port == port && target.isSecure() == secure) {
+                // 도메인 내의 location만 지시하는 경우.
+                location = target.path;
+            } else { // 다른 도메인으로 갈 경우..
+                originHost = target.toString();
+                parse();
+            }
+            if (!redirectedGet && Client.redirectsAsGet(statusCode, method)) {
+                redirectedGet = true;
+                template = null;
+            }
+            redirectCounter++;
+            followRedirect = true;
+            return keepAlive;
+        }
+
+        // 저장된 바디가 아직 유효함. 검증값과 기한을 고치고 저장된 응답을 씀.
+        if (caching && statusCode == 304 && cached != null) {
+            if (visible)
+                System.out.println("* Cached response revalidated");
+            cache.refresh(cached, header);
+            serveCached(cached);
+            return keepAlive;
         }
-        if (files != null) {
+
+        if (responseListener != null)
+            responseListener.accept(header);
+
+        String ctype = header.get("Content-Type");
+        boolean print = printable(ctype);
+        HttpCache.Writer store = caching ? cache.writer(method, getEffectiveUrl(), cachedRequest, header) : null;
+        if (output != null || print || store != null) {
+            // --compressed이면 받으면서 압축을 풂. 요청하지 않은 인코딩은 그대로 둠.
+            InputStream content = body;
+            String encoding = header.get("Content-Encoding");
+            if (compressed && !noBody && Decompressor.supports(encoding)) {
+                if (decompressor == null)
+                    decompressor = new Decompressor();
+                content = decompressor.open(body, encoding);
+            }
+            // 문자 디코딩 없이 바이트 그대로 흘려보냄.
+            OutputStream out = output != null ? output : print ? System.out : OutputStream.nullOutputStream();
             try {
-                fileLen = 0;
-                // 파일과 boundary를 쌓기위한 파이프스트림.
-                PipedInputStream pin = new PipedInputStream();
-                PipedOutputStream pout = new PipedOutputStream(pin);
-                BufferedWriter bpout = new BufferedWriter(new OutputStreamWriter(pout));
-
-                // FileReader는 character 단위로 read하기 때문에 output도 맞춤.
-                OutputStreamWriter poutput = new OutputStreamWriter(pout);
-
-                // bound가 "--"를 붙이고 설정된 boundary를 붙임.
-                bpout.write(LITTLE_BOUND);
-                bpout.write(BOUNDARY);
-                bpout.flush();
-                fileLen += (BOUNDARY.length() + LITTLE_BOUND.length());
-
-                files.stream().forEach(file -> {
-                    try (FileReader fr = new FileReader(file)) {
-                        bpout.write(ENDLINE);
-                        // 파일의 서브헤더를 설정.
-                        String subHeader = String.format(FILE_SUBHEADER_FORMAT, fileAlias.get(fileCounter++),
-                                file.getName());
-                        bpout.write(subHeader);
-                        fileLen = fileLen + ENDLINE.length() + subHeader.length();
-                        bpout.flush(); // 길이를 계산하고 flush.
-
-                        int ch = 0;
-                        // 파일을 읽어 파이프에 write.
-                        while ((ch = fr.read()) != -1) {
-                            poutput.write(ch);
-                            fileLen++;
-                        }
-                        poutput.flush();
-                        // 파일 끝 바운더리
-                        bpout.write(ENDLINE);
-                        bpout.write(LITTLE_BOUND);
-                        bpout.write(BOUNDARY);
-                        bpout.flush();
-                        fileLen = fileLen + ENDLINE.length() + BOUNDARY.length() + LITTLE_BOUND.length();
-                    } catch (IOException exp) {
-                        exp.printStackTrace();
-                        System.err.println("File IO Error\n");
-                        System.exit(1);
-                    }
-                });
-                bpout.write(LITTLE_BOUND);
-                fileLen += LITTLE_BOUND.length();
-                bpout.write(ENDLINE);
-                fileLen += ENDLINE.length();
-                bpout.flush();
-
-                try (Socket sc = new Socket(host, port)) {
-                    // custom Header.
-                    StringBuilder cHeader = new StringBuilder("");
-                    if (customHeader != null) {
-                        for (String h : customHeader) {
-                            cHeader.append(h).append(ENDLINE);
-                        }
-                    }
-
-                    // 파일 버퍼를 분할할 수 있도록 만드는게 좋을듯..
-                    char[] fileBuf = new char[fileLen];
-                    // 전송헤더
-                    String sendHeader = String.format(FILE_HEADER_FORMAT, location, host, cHeader.toString(), fileLen,
-                            BOUNDARY);
-                    if (visible) {
-                        System.out.printf("* Connected to %s (%s) port %d%n", host, sc.getInetAddress(), sc.getPort());
-                        String[] lines = sendHeader.split("\r\n");
-                        for (String s : lines) {
-                            System.out.print("> ");
-                            System.out.println(s);
-                        }
-                        System.out.println("> ");
-                    }
-                    // (파일과 바운더리가 쌓인)파이프에서 char 단위로 읽어들임.
-                    BufferedReader pinput = new BufferedReader(new InputStreamReader(pin));
-                    pinput.read(fileBuf);
-
-                    BufferedWriter socketOut = new BufferedWriter(new OutputStreamWriter(sc.getOutputStream()));
-
-                    // 헤더를 먼저 전송.
-                    sc.getOutputStream().write(sendHeader.getBytes());
-                    // 파일 데이터를 전송.
-                    socketOut.write(fileBuf);
-                    socketOut.flush();
-
-                    // 응답을 받음.
-                    BufferedReader br = new BufferedReader(new InputStreamReader(sc.getInputStream()));
-                    String str = null;
-                    StringBuilder sb = new StringBuilder();
-                    while ((str = br.readLine()) != null) {
-                        if (str.isEmpty())
-                            break;
-                        sb.append(str).append('\n');
-                    } // header 받기
-
-                    if (visible) {
-                        System.out.println("* Request completely sent off");
-                        String[] receivedHeader = sb.toString().split("\n");
-                        for (String s : receivedHeader) {
-                            System.out.print("< ");
-                            System.out.println(s);
-                        }
-                        System.out.println("< ");
-                    }
-                    sb.deleteCharAt(sb.length() - 1);
-                    Map<String, String> header = parseHeader(sb.toString());
-                    // 만약 30x redirect 라면...
-                    if (redirect && header.get("Status").equals("FOUND")) {
-                        String next = header.get("Location");
-                        if (next.startsWith("http")) {
-                            // 다른 도메인으로 갈 경우..
-                            originHost = next;
-                            parse();
-                        } else { // 도메인 내의 location만 지시하는 경우.
-                            location = next;
-                        }
-                        redirectCounter++;
-                        requestMultipart(); // location을 바꾸고 다시 request.
-                    } else {
-                        String ctype = header.get("Content-Type");
-                        // Content-Type을 체크하여 텍스트와 json 데이터만 출력.
-                        if (ctype != null && (ctype.startsWith("text/") || ctype.equals("application/json"))) {
-                            int bodyLength = Integer.parseInt(header.get("Content-Length"));
-
-                            char[] buf = new char[bodyLength];
-                            br.read(buf);
-                            System.out.println(buf);
-                        }
-                        if (visible) {
-                            System.out.printf("Connection to host %s left intact%n", host);
-                        }
-                        poutput.close();
-                    }
+                if (store != null)
+                    out = store.tee(out);
+                if (out instanceof FileOutput file && content == body) {
+                    // -o, -O: 받은 바이트를 그대로 파일에 씀. 길이를 알면 파일 크기를 먼저 잡음.
+                    file.preallocate(noBody ? 0 : header.getLong("Content-Length", -1));
+                    bodyBytes = framed != null ? framed.transferTo(file, conn, buffer)
+                            : BodyInputStream.copy(content, file, buffer);
+                } else {
+                    bodyBytes = BodyInputStream.copy(content, out, buffer);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                out.flush();
+                // 압축 스트림이 끝난 뒤에 남은 framing(마지막 chunk 등)을 마저 읽음.
+                if (framed != null && keepAlive > 0 && !framed.isComplete())
+                    framed.drain(buffer);
+                if (store != null)
+                    store.commit();
+            } finally {
+                if (store != null)
+                    store.close();
+            }
+        } else if (framed != null && keepAlive > 0) {
+            bodyBytes = framed.drain(buffer);
+        } else if (stream != null) {
+            bodyBytes = BodyInputStream.copy(body, OutputStream.nullOutputStream(), buffer);
+        }
+        stats.finished(System.nanoTime(), bodyBytes, ctype);
+        if (visible) {
+            Map<String, String> trailers = stream != null ? stream.trailers() : framed.trailers();
+            for (Map.Entry<String, String> t : trailers.entrySet()) {
+                System.out.printf("< %s: %s%n", t.getKey(), t.getValue());
+            }
+            if (keepAlive > 0) {
+                System.out.printf("Connection to host %s left intact%n", host);
+            } else {
+                System.out.println("* Closing connection");
             }
         }
+        return keepAlive;
     }
 }
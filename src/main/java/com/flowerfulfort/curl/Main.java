@@ -1,10 +1,16 @@
 package com.flowerfulfort.curl;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.MissingArgumentException;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
@@ -14,24 +20,109 @@ public class Main {
             Options:
             -v                  verbose, 요청, 응답 헤더를 출력한다.
             -H <line>           임의의 헤더를 서버로 전송한다.
-            -d <data>           POST, PUT 등에 데이터를 전송한다.
+            -d <data>           POST, PUT 등에 데이터를 전송한다. @file 이면 파일 내용을, @- 이면
+                                표준 입력을 줄바꿈을 빼고 chunked로 보낸다.
+            --data-binary <data>  -d와 같지만 @file 내용을 그대로 보낸다.
             -X <command>        사용할 method를 지정한다. 지정되지 않은 경우, 기본값은 GET
             -L                  서버의 응답이 30x 계열이면 다음 응답을 따라 간다.
             -F <name=@[contentURI]>   multipart/form-data를 구성하여 전송한다.
+            -T <file>           파일 내용을 PUT으로 올린다.
+            -C <offset>         끊긴 전송을 offset부터 이어서 한다. - 이면 -o 파일의 크기,
+                                -T와 함께 쓰면 서버에 있는 크기부터 이어서 올린다.
+            --retry <n>         -C 전송이 도중에 끊기면 다시 시도할 횟수. 기본값은 5
+            -o <file>           응답 바디를 표준 출력 대신 파일에 그대로(Content-Type과 상관없이) 쓴다.
+                                터미널에서 실행하면 stderr에 진행 표시를 한다.
+            -O                  -o와 같지만 URL 경로의 마지막 부분을 파일 이름으로 쓴다.
+            --no-progress-meter -o, -O의 진행 표시를 하지 않는다.
+            --segments <n>      -o와 함께 쓰며, Range를 지원하는 서버에서 n개의 연결로 나눠 받는다.
+                                지원하지 않으면 연결 하나로 받는다.
+            -w <format>         요청이 끝난 뒤 format을 출력한다. %{time_connect}, %{time_starttransfer},
+                                %{time_total}, %{size_download}, %{speed_download}, %{http_code} 등의
+                                변수를 쓸 수 있고, @file 이면 파일 내용을 format으로 쓴다.
+            --cache <dir>       GET 응답을 dir에 저장해 두고, Cache-Control 기한 안에는 저장된 응답을 쓴다.
+                                기한이 지나면 ETag, Last-Modified로 재검증해서 304이면 저장된 바디를 쓴다.
+            --cache-size <MB>   캐시 디렉터리의 최대 크기. 넘으면 오래 쓰지 않은 응답부터 지운다. 기본값은 100
+            --compressed        gzip, deflate 압축 응답을 요청하고 받으면서 압축을 푼다.
+            --gzip-data         -d 데이터를 gzip으로 압축하고 Content-Encoding: gzip을 붙인다.
+            --http2             http 요청에 Upgrade: h2c를 붙여 서버가 받아 주면 HTTP/2로 바꾼다.
+                                바디가 있는 요청은 HTTP/2 연결이 이미 있을 때만 HTTP/2로 보낸다.
+            --http2-prior-knowledge  http 요청을 처음부터 HTTP/2(h2c)로 보낸다. 같은 host:port로
+                                가는 요청은 연결 하나에서 스트림으로 나눠 동시에 보낸다.
+            --batch <file>      파일(- 이면 표준 입력)의 각 줄을 요청으로 보고 동시에 실행한다.
+                                각 줄은 [option] url 형식이며 결과는 NDJSON으로 출력한다. 줄에 -v는 쓸 수 없다.
+            --parallel <n>      batch 모드에서 동시에 실행할 요청 수. 기본값은 50
+            --parallel-host <n> batch 모드에서 host 하나에 동시에 열 연결 수.
+            --ordered           batch 결과를 입력 순서대로 출력한다.
+            --pipeline <n>      batch 모드에서 host마다 연결 하나에 요청을 n개씩 연달아 보낸다
+                                (HTTP/1.1 파이프라이닝). 서버가 중간에 연결을 닫으면 하나씩 보낸다.
+            --resolve <host:port:addr>  host:port로 연결할 때 이름을 조회하지 않고 addr을 쓴다.
+                                여러 번 지정할 수 있고, addr은 쉼표로 여러 개 줄 수 있다.
+            --dns-ttl <sec>     조회한 주소를 재사용할 시간. 기본값은 60
+            --connect-timeout <sec>  연결을 맺는 데 쓸 최대 시간. 주소가 여럿이면 IPv6, IPv4를 번갈아
+                                250ms 간격으로 동시에 시도해서 먼저 연결된 것을 쓴다.
+            -m, --max-time <sec>  요청 하나(리디렉션 포함)에 쓸 최대 시간.
+            -k, --insecure      https 서버의 인증서와 호스트 이름을 확인하지 않는다.
+            --cacert <file>     JDK 기본 신뢰 저장소 대신 file(PEM 인증서 묶음 또는 PKCS12/JKS)의
+                                CA로 서버 인증서를 확인한다.
+            --bench             같은 요청을 반복해서 보내고 처리량과 지연시간 분포를 출력한다.
+            --duration <sec>    bench 모드의 실행 시간. --requests가 없으면 기본값은 10
+            --requests <n>      bench 모드에서 보낼 요청 수.
+            --concurrency <n>   bench 모드의 동시 연결 수. 기본값은 1
+            --rate <n>          bench 모드에서 초당 보낼 요청 수. 지정하면 open-loop로 동작하며
+                                지연시간은 예정 시각부터 측정한다(coordinated omission 보정).
                         """;
 
-    public static void main(String[] args) {
-        CommandLineParser parser = new DefaultParser();
+    // curl과 같이 시간 제한에 걸리면 28로 끝냄.
+    private static final int TIMEOUT_EXIT = 28;
+
+    // 요청 하나를 구성하는 옵션들. batch 파일의 각 줄도 같은 옵션으로 해석함.
+    static Options requestOptions() {
         Options options = new Options();
 
         options.addOption("v", false, "verbose, 요청, 응답 헤더를 출력한다.");
         options.addOption("H", true, "임의의 헤더를 서버로 전송한다.");
         options.addOption("d", true, "POST, PUT 등에 데이터를 전송한다.");
+        options.addOption(null, "data-binary", true, "-d와 같지만 @file 내용을 그대로 보낸다.");
         options.addOption("X", true, "사용할 method를 지정한다. 지정되지 않은 경우, 기본값은 GET");
         options.addOption("L", false, "서버의 응답이 30x 계열이면 다음 응답을 따라 간다.");
         options.addOption("F", true, "multipart/form-data를 구성하여 전송한다.");
+        options.addOption("T", true, "파일 내용을 PUT으로 올린다.");
+        options.addOption(null, "compressed", false, "gzip, deflate 압축 응답을 요청하고 받으면서 압축을 푼다.");
+        options.addOption(null, "gzip-data", false, "-d 데이터를 gzip으로 압축해서 보낸다.");
+        options.addOption(null, "http2", false, "http 요청에 Upgrade: h2c를 붙여 HTTP/2로 바꾸기를 청한다.");
+        options.addOption(null, "http2-prior-knowledge", false, "http 요청을 처음부터 HTTP/2(h2c)로 보낸다.");
+        options.addOption("m", "max-time", true, "요청 하나에 쓸 최대 시간(초).");
+        return options;
+    }
+
+    public static void main(String[] args) {
+        CommandLineParser parser = new DefaultParser();
+        Options options = requestOptions();
+        options.addOption("C", true, "끊긴 전송을 offset부터 이어서 한다.");
+        options.addOption(null, "retry", true, "-C 전송이 도중에 끊기면 다시 시도할 횟수.");
+        options.addOption("o", true, "응답 바디를 표준 출력 대신 파일에 쓴다.");
+        options.addOption("O", "remote-name", false, "URL의 마지막 경로를 이름으로 하는 파일에 쓴다.");
+        options.addOption(null, "no-progress-meter", false, "-o, -O의 진행 표시를 하지 않는다.");
+        options.addOption("w", "write-out", true, "요청이 끝난 뒤 format을 출력한다.");
+        options.addOption(null, "cache", true, "GET 응답을 dir에 저장해 두고 다시 쓴다.");
+        options.addOption(null, "cache-size", true, "캐시 디렉터리의 최대 크기(MB).");
+        options.addOption(null, "segments", true, "Range를 지원하는 서버에서 n개의 연결로 나눠 받는다.");
+        options.addOption(null, "batch", true, "파일(- 이면 표준 입력)의 각 줄을 요청으로 보고 동시에 실행한다.");
+        options.addOption(null, "parallel", true, "batch 모드에서 동시에 실행할 요청 수.");
+        options.addOption(null, "parallel-host", true, "batch 모드에서 host 하나에 동시에 열 연결 수.");
+        options.addOption(null, "ordered", false, "batch 결과를 입력 순서대로 출력한다.");
+        options.addOption(null, "pipeline", true, "batch 모드에서 host마다 연결 하나에 요청을 n개씩 연달아 보낸다.");
+        options.addOption(null, "resolve", true, "host:port로 연결할 때 이름을 조회하지 않고 addr을 쓴다.");
+        options.addOption(null, "dns-ttl", true, "조회한 주소를 재사용할 시간(초).");
+        options.addOption(null, "connect-timeout", true, "연결을 맺는 데 쓸 최대 시간(초).");
+        options.addOption("k", "insecure", false, "https 서버의 인증서와 호스트 이름을 확인하지 않는다.");
+        options.addOption(null, "cacert", true, "file의 CA로 서버 인증서를 확인한다.");
+        options.addOption(null, "bench", false, "같은 요청을 반복해서 보내고 처리량과 지연시간 분포를 출력한다.");
+        options.addOption(null, "duration", true, "bench 모드의 실행 시간(초).");
+        options.addOption(null, "requests", true, "bench 모드에서 보낼 요청 수.");
+        options.addOption(null, "concurrency", true, "bench 모드의 동시 연결 수.");
+        options.addOption(null, "rate", true, "bench 모드에서 초당 보낼 요청 수(open-loop).");
 
-        HttpRequest.Builder builder = HttpRequest.builder();
         if (args.length <= 0) {
             System.out.print(HELPER);
             return;
@@ -39,48 +130,290 @@ public class Main {
         try {
             CommandLine cmd = parser.parse(options, args);
             String opt = null;
-            // visibility 옵션
-            if (cmd.hasOption("v")) {
-                builder.setHeaderVisible();
+            // 이름 해석 옵션은 모든 모드에 적용.
+            String[] resolves = null;
+            if ((resolves = cmd.getOptionValues("resolve")) != null) {
+                for (String r : resolves) {
+                    Resolver.shared().addOverride(r);
+                }
             }
-            // Method 옵션
-            if ((opt = cmd.getOptionValue("X")) != null) {
-                builder.setMethod(Method.valueOf(opt));
+            if ((opt = cmd.getOptionValue("dns-ttl")) != null) {
+                Resolver.shared().setTtl(millisValue(cmd, "dns-ttl"));
             }
-            // data 전송 옵션
-            if ((opt = cmd.getOptionValue("d")) != null) {
-                builder.setData(opt);
+            // 연결 시간 제한도 모든 모드에 적용.
+            if ((opt = cmd.getOptionValue("connect-timeout")) != null) {
+                Connector.shared().setConnectTimeout(millisValue(cmd, "connect-timeout"));
             }
-            // host 세팅
-            String[] host = cmd.getArgs();
-            if (host.length == 0) {
-                System.err.println("host is missing.\n");
-                System.exit(1);
-            } else {
-                builder.setHost(host[0]);
+            // TLS 옵션도 모든 모드에 적용.
+            if ((opt = cmd.getOptionValue("cacert")) != null) {
+                if (!new File(opt).isFile())
+                    throw new FileNotFoundException(opt);
+                Tls.shared().setCaCert(Path.of(opt));
+            }
+            if (cmd.hasOption("k")) {
+                Tls.shared().setInsecure(true);
+            }
+            // batch 모드
+            if ((opt = cmd.getOptionValue("batch")) != null) {
+                int parallel = intValue(cmd, "parallel", 50, 1);
+                int perHost = intValue(cmd, "parallel-host", parallel, 1);
+                int pipeline = intValue(cmd, "pipeline", 0, 0);
+                // HTTP/2는 연결 하나에 스트림을 여러 개 열므로 파이프라인을 쓰지 않음.
+                if (cmd.hasOption("http2") || cmd.hasOption("http2-prior-knowledge"))
+                    pipeline = 0;
+                new BatchRunner(parallel, perHost, cmd.hasOption("ordered"), pipeline).run(opt, System.out);
+                return;
             }
-            // file 옵션
-            String[] files = null;
-            if ((files = cmd.getOptionValues("F")) != null) {
-                builder.setFiles(files);
+            // bench 모드
+            if (cmd.hasOption("bench")) {
+                long requests = longValue(cmd, "requests", 0, 0);
+                double seconds = doubleValue(cmd, "duration", requests > 0 ? 0 : 10);
+                new BenchRunner(configure(HttpRequest.builder(), cmd), intValue(cmd, "concurrency", 1, 1),
+                        (long) (seconds * 1e9), requests, doubleValue(cmd, "rate", 0)).run(System.out);
+                return;
             }
-            // 커스텀 헤더
-            String[] customHeaders = null;
-            if ((customHeaders = cmd.getOptionValues("H")) != null) {
-                builder.setCustomHeader(customHeaders);
+            // 이어 받기, 이어 올리기
+            if ((opt = cmd.getOptionValue("C")) != null) {
+                String file = outputFile(cmd);
+                String upload = cmd.getOptionValue("T");
+                if ((file == null && upload == null) || cmd.getArgs().length == 0) {
+                    System.out.print(HELPER);
+                    return;
+                }
+                long offset = opt.equals("-") ? -1 : longValue(cmd, "C", 0, 0);
+                int retry = intValue(cmd, "retry", ResumableTransfer.DEFAULT_RETRY, 0);
+                ResumableTransfer transfer = new ResumableTransfer(cmd.getArgs()[0], cmd.getOptionValues("H"),
+                        cmd.hasOption("L"), retry);
+                try {
+                    if (upload != null) {
+                        transfer.upload(Path.of(upload), offset, System.out, System.err);
+                    } else {
+                        transfer.download(Path.of(file), offset, System.err);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Transfer failed: " + e.getMessage());
+                    System.exit(1);
+                }
+                return;
             }
-            // 리디렉션
-            if (cmd.hasOption("L")) {
-                builder.setRedirect();
+            // 분할 다운로드
+            if ((opt = cmd.getOptionValue("segments")) != null) {
+                String file = outputFile(cmd);
+                if (file == null || cmd.getArgs().length == 0) {
+                    System.out.print(HELPER);
+                    return;
+                }
+                try {
+                    new SegmentedDownload(cmd.getArgs()[0], cmd.getOptionValues("H"), cmd.hasOption("L"),
+                            intValue(cmd, "segments", 1, 1), Path.of(file)).run(System.err);
+                } catch (IOException e) {
+                    System.err.println("Download failed: " + e.getMessage());
+                    System.exit(1);
+                }
+                return;
+            }
+            HttpRequest.Builder builder = configure(HttpRequest.builder(), cmd);
+            String writeOut = (opt = cmd.getOptionValue("w")) != null ? WriteOut.template(opt) : null;
+            // 디스크 캐시
+            if ((opt = cmd.getOptionValue("cache")) != null) {
+                long size = cmd.hasOption("cache-size")
+                        ? (long) (doubleValue(cmd, "cache-size", 0) * (1 << 20))
+                        : HttpCache.DEFAULT_MAX_SIZE;
+                builder.setCache(new HttpCache(Path.of(opt), size));
+            }
+            if ((opt = outputFile(cmd)) != null) {
+                // 진행 표시는 사람이 보고 있을 때만 함.
+                PrintStream progress = System.console() != null && !cmd.hasOption("no-progress-meter")
+                        ? System.err : null;
+                HttpRequest request;
+                try (FileOutput out = FileOutput.open(Path.of(opt), progress)) {
+                    request = builder.setOutput(out).build();
+                    request.request();
+                }
+                printWriteOut(writeOut, request);
+                if (request.getFailure() instanceof SocketTimeoutException) {
+                    System.err.println(request.getFailure().getMessage());
+                    System.exit(TIMEOUT_EXIT);
+                }
+                if (request.getFailure() != null) {
+                    System.err.println("Cannot connect to host: " + request.getFailure().getMessage());
+                    System.exit(1);
+                }
+                return;
             }
             HttpRequest request = builder.build();
             request.request();
+            printWriteOut(writeOut, request);
+            if (request.getFailure() instanceof SocketTimeoutException)
+                System.exit(TIMEOUT_EXIT);
+            if (request.getFailure() instanceof TooManyRedirectsException)
+                System.exit(1);
+        } catch (MissingArgumentException e) {
+            System.err.println(e.getMessage() + "\n");
+            System.exit(1);
         } catch (ParseException e) {
+            // 모르는 옵션, 잘못된 옵션 값.
+            System.err.println(e.getMessage() + "\n");
             System.out.print(HELPER);
+            System.exit(1);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             System.err.println("Files are not existing");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Cannot read batch file");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    // -o 파일, -O 이면 URL 경로의 마지막 부분. 둘 다 없으면 null.
+    private static String outputFile(CommandLine cmd) {
+        String file = cmd.getOptionValue("o");
+        if (file == null && cmd.hasOption("O") && cmd.getArgs().length > 0) {
+            file = FileOutput.remoteName(cmd.getArgs()[0]);
+            if (file == null) {
+                System.err.println("Remote file name has no length!");
+                System.exit(1);
+            }
+        }
+        return file;
+    }
+
+    // -w 가 있으면 요청 결과를 형식에 맞춰 출력.
+    private static void printWriteOut(String format, HttpRequest request) {
+        if (format != null) {
+            System.out.print(WriteOut.format(format, request));
+            System.out.flush();
+        }
+    }
+
+    private static String checkDataSource(String source) throws FileNotFoundException {
+        if (!source.equals("-") && !new File(source).isFile())
+            throw new FileNotFoundException(source);
+        return source;
+    }
+
+    // 파싱된 옵션을 builder에 적용.
+    static HttpRequest.Builder configure(HttpRequest.Builder builder, CommandLine cmd)
+            throws FileNotFoundException, ParseException {
+        String opt = null;
+        // visibility 옵션
+        if (cmd.hasOption("v")) {
+            builder.setHeaderVisible();
         }
+        // Method 옵션
+        if ((opt = cmd.getOptionValue("X")) != null) {
+            try {
+                builder.setMethod(Method.valueOf(opt));
+            } catch (IllegalArgumentException e) {
+                throw invalid("X", opt);
+            }
+        }
+        // data 전송 옵션. @file, @- 이면 파일이나 표준 입력에서 읽음.
+        if ((opt = cmd.getOptionValue("d")) != null) {
+            if (opt.startsWith("@"))
+                builder.setDataSource(checkDataSource(opt.substring(1)), false);
+            else
+                builder.setData(opt);
+        }
+        if ((opt = cmd.getOptionValue("data-binary")) != null) {
+            if (opt.startsWith("@"))
+                builder.setDataSource(checkDataSource(opt.substring(1)), true);
+            else
+                builder.setData(opt);
+        }
+        // host 세팅
+        String[] host = cmd.getArgs();
+        if (host.length == 0) {
+            throw new MissingArgumentException("host is missing.");
+        } else {
+            builder.setHost(host[0]);
+        }
+        // file 옵션
+        String[] files = null;
+        if ((files = cmd.getOptionValues("F")) != null) {
+            builder.setFiles(files);
+        }
+        // 업로드 파일
+        if ((opt = cmd.getOptionValue("T")) != null) {
+            if (!new File(opt).isFile())
+                throw new FileNotFoundException(opt);
+            builder.setUploadFile(Path.of(opt));
+        }
+        // 커스텀 헤더
+        String[] customHeaders = null;
+        if ((customHeaders = cmd.getOptionValues("H")) != null) {
+            builder.setCustomHeader(customHeaders);
+        }
+        // 압축
+        if (cmd.hasOption("compressed")) {
+            builder.setCompressed();
+        }
+        if (cmd.hasOption("gzip-data")) {
+            builder.setGzipData();
+        }
+        // 리디렉션
+        if (cmd.hasOption("L")) {
+            builder.setRedirect();
+        }
+        // HTTP/2
+        if (cmd.hasOption("http2-prior-knowledge")) {
+            builder.setHttp2PriorKnowledge();
+        } else if (cmd.hasOption("http2")) {
+            builder.setHttp2();
+        }
+        // 전체 시간 제한
+        if (cmd.hasOption("m")) {
+            builder.setMaxTime(millisValue(cmd, "m"));
+        }
+        return builder;
+    }
+
+    // 정수 옵션의 값. 없으면 def. 정수가 아니거나 min보다 작으면 ParseException.
+    static int intValue(CommandLine cmd, String name, int def, int min) throws ParseException {
+        long n = longValue(cmd, name, def, min);
+        if (n > Integer.MAX_VALUE)
+            throw invalid(name, cmd.getOptionValue(name));
+        return (int) n;
+    }
+
+    static long longValue(CommandLine cmd, String name, long def, long min) throws ParseException {
+        String v = cmd.getOptionValue(name);
+        if (v == null)
+            return def;
+        try {
+            long n = Long.parseLong(v);
+            if (n >= min)
+                return n;
+        } catch (NumberFormatException e) {
+            // 아래에서 알림.
+        }
+        throw invalid(name, v);
+    }
+
+    // 0 이상의 실수 옵션. 없으면 def.
+    static double doubleValue(CommandLine cmd, String name, double def) throws ParseException {
+        String v = cmd.getOptionValue(name);
+        if (v == null)
+            return def;
+        try {
+            double d = Double.parseDouble(v);
+            if (d >= 0 && Double.isFinite(d))
+                return d;
+        } catch (NumberFormatException e) {
+            // 아래에서 알림.
+        }
+        throw invalid(name, v);
+    }
+
+    // 초 단위 옵션(--connect-timeout 등)을 ms로.
+    static long millisValue(CommandLine cmd, String name) throws ParseException {
+        return (long) (doubleValue(cmd, name, 0) * 1000);
+    }
 
+    private static ParseException invalid(String name, String value) {
+        return new ParseException("Invalid value for " + (name.length() == 1 ? "-" : "--") + name + ": " + value);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package com.flowerfulfort.curl;
+
+// 응답의 상태줄, 헤더, framing(Content-Length, chunk)을 해석할 수 없는 경우.
+public class MalformedResponseException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    public MalformedResponseException(String message) {
+        super(message);
+    }
+}
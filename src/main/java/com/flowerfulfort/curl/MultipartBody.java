@@ -0,0 +1,108 @@
+package com.flowerfulfort.curl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// multipart/form-data 바디를 메모리에 모으지 않고 소켓으로 흘려보내는 인코더.
+// 파일 크기와 바운더리, 서브헤더 길이로 Content-Length를 미리 계산함.
+final class MultipartBody implements RequestBody {
+    private static final String SUBHEADER_FORMAT = "Content-Disposition: form-data; name=\"%s\"; filename=\"%s\"\r\nContent-Type: %s\r\n\r\n";
+    private static final String ENDLINE = "\r\n";
+    private static final String LITTLE_BOUND = "--";
+    private static final char[] BOUNDARY_CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            .toCharArray();
+
+    private final String boundary;
+    private final List<File> files;
+    // 각 파일 앞에 붙는 "--boundary\r\n서브헤더" 바이트.
+    private final byte[][] prefixes;
+    private final long[] lengths;
+    // 마지막 "\r\n--boundary--\r\n".
+    private final byte[] closing;
+    private final long contentLength;
+
+    MultipartBody(List<File> files, List<String> fileAlias) {
+        this.boundary = randomBoundary();
+        this.files = files;
+        this.prefixes = new byte[files.size()][];
+        this.lengths = new long[files.size()];
+        long length = 0;
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            String prefix = (i == 0 ? "" : ENDLINE) + LITTLE_BOUND + boundary + ENDLINE
+                    + String.format(SUBHEADER_FORMAT, fileAlias.get(i), file.getName(), contentType(file));
+            prefixes[i] = prefix.getBytes(StandardCharsets.UTF_8);
+            lengths[i] = file.length();
+            length += prefixes[i].length + lengths[i];
+        }
+        closing = (ENDLINE + LITTLE_BOUND + boundary + LITTLE_BOUND + ENDLINE).getBytes(StandardCharsets.UTF_8);
+        contentLength = length + closing.length;
+    }
+
+    // curl과 같은 모양의 요청마다 다른 바운더리.
+    private static String randomBoundary() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder("------------------------");
+        for (int i = 0; i < 22; i++) {
+            sb.append(BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String contentType(File file) {
+        String type = URLConnection.guessContentTypeFromName(file.getName());
+        return type != null ? type : "application/octet-stream";
+    }
+
+    String getBoundary() {
+        return boundary;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    // 바디 전체를 연결에 씀. 파일 내용은 힙을 거치지 않고 transferTo로 전송.
+    @Override
+    public void writeTo(Connection conn) throws IOException {
+        writeTo(conn.getOutputStream(), conn.channel());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, Channels.newChannel(out));
+    }
+
+    // out과 channel은 같은 목적지. 바운더리는 out으로, 파일은 channel로 보냄.
+    void writeTo(OutputStream out, WritableByteChannel channel) throws IOException {
+        for (int i = 0; i < files.size(); i++) {
+            out.write(prefixes[i]);
+            // 버퍼에 쌓인 데이터를 먼저 내보냄.
+            out.flush();
+            try (FileChannel fc = FileChannel.open(files.get(i).toPath(), StandardOpenOption.READ)) {
+                // Content-Length를 계산한 뒤 파일 크기가 바뀌면 요청이 깨지므로 중단.
+                if (fc.size() < lengths[i])
+                    throw new IOException("File changed while uploading: " + files.get(i));
+                long position = 0;
+                while (position < lengths[i]) {
+                    long n = fc.transferTo(position, lengths[i] - position, channel);
+                    if (n <= 0 && position >= fc.size())
+                        throw new IOException("File changed while uploading: " + files.get(i));
+                    position += n;
+                }
+            }
+        }
+        out.write(closing);
+        out.flush();
+    }
+}
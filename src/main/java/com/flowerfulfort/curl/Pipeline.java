@@ -0,0 +1,169 @@
+package com.flowerfulfort.curl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// 한 host:port로 가는 요청들을 HTTP/1.1 파이프라이닝으로 보냄.
+// 연결 하나에 최대 depth개의 요청을 연달아 쓰고, 응답은 보낸 순서대로 읽음.
+// 왕복 시간이 긴 곳에 작은 GET을 많이 보낼 때 요청마다가 아니라 묶음마다 RTT가 한 번 듦.
+//
+// 서버가 응답 도중 연결을 닫거나 Connection: close를 보내면 남은 요청은
+// 한 번에 하나씩 보내는 방식으로 바꿈. 보냈지만 응답을 못 받은 요청은
+// 멱등인 경우에만 다시 보내고, POST나 -F 요청은 파이프라인에 넣지 않고 따로 보냄.
+final class Pipeline {
+    // 응답을 못 받아 다시 보내는 최대 횟수.
+    private static final int MAX_REPLAY = 2;
+
+    // 요청 하나가 끝날 때마다 호출됨. elapsedNanos는 요청을 쓴 시점부터 잼.
+    interface Listener {
+        void completed(int index, long elapsedNanos);
+    }
+
+    private static final ConnectionPool POOL = ConnectionPool.shared();
+
+    private final int depth;
+    private boolean serial;
+
+    Pipeline(int depth) {
+        if (depth <= 0)
+            throw new IllegalArgumentException();
+        this.depth = depth;
+    }
+
+    // 파이프라이닝을 포기하고 하나씩 보내게 되었는지.
+    boolean isSerial() {
+        return serial;
+    }
+
+    // requests는 모두 같은 scheme, host:port로 가야 함. 결과는 각 HttpRequest에 남음.
+    void run(List<HttpRequest> requests, Listener listener) {
+        if (requests.isEmpty())
+            return;
+        HttpRequest first = requests.get(0);
+        String host = first.getHost();
+        int port = first.getPort();
+        boolean secure = first.isSecure();
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            requests.get(i).reset();
+            queue.add(i);
+        }
+        int[] replays = new int[requests.size()];
+        long[] started = new long[requests.size()];
+        List<Integer> redirects = new ArrayList<>();
+
+        while (!queue.isEmpty()) {
+            int head = queue.peek();
+            HttpRequest r = requests.get(head);
+            if (!r.isIdempotent()) {
+                // 멱등이 아닌 요청은 다른 요청과 섞지 않고 기존 경로로 보냄.
+                queue.poll();
+                long begin = System.nanoTime();
+                r.request();
+                listener.completed(head, System.nanoTime() - begin);
+                continue;
+            }
+
+            Connection conn;
+            try {
+                conn = POOL.acquire(host, port, secure);
+            } catch (IOException e) {
+                // 연결 자체가 안 되면 남은 요청은 모두 같은 이유로 실패.
+                while (!queue.isEmpty()) {
+                    int i = queue.poll();
+                    requests.get(i).fail(e);
+                    listener.completed(i, 0);
+                }
+                break;
+            }
+
+            // 묶음 하나를 씀. 멱등이 아닌 요청을 만나면 거기서 끊음.
+            List<Integer> sent = new ArrayList<>(depth);
+            int limit = serial ? 1 : depth;
+            try {
+                while (sent.size() < limit && !queue.isEmpty() && requests.get(queue.peek()).isIdempotent()) {
+                    int i = queue.poll();
+                    started[i] = System.nanoTime();
+                    requests.get(i).writeTo(conn);
+                    sent.add(i);
+                }
+                conn.getOutputStream().flush();
+            } catch (IOException e) {
+                conn.close();
+                requeue(sent, 0, queue, requests, replays, listener, e, conn.isReused());
+                continue;
+            }
+
+            // 보낸 순서대로 응답을 읽음.
+            int answered = 0;
+            long keepAlive = 0;
+            IOException cause = null;
+            while (answered < sent.size()) {
+                int i = sent.get(answered);
+                HttpRequest req = requests.get(i);
+                try {
+                    keepAlive = req.receive(conn);
+                } catch (IOException e) {
+                    // 응답을 읽다가 실패. 이 요청은 실패로 끝내고 뒤의 것들은 다시 보냄.
+                    req.fail(e);
+                    listener.completed(i, System.nanoTime() - started[i]);
+                    answered++;
+                    cause = e;
+                    keepAlive = 0;
+                    break;
+                }
+                if (keepAlive < 0) {
+                    cause = new EOFException("Connection closed before pipelined response");
+                    keepAlive = 0;
+                    break;
+                }
+                answered++;
+                if (req.needsRedirect()) {
+                    redirects.add(i);
+                } else {
+                    listener.completed(i, System.nanoTime() - started[i]);
+                }
+                if (keepAlive == 0)
+                    break;
+            }
+
+            if (answered < sent.size()) {
+                conn.close();
+                // 재사용한 연결이 이미 닫혀 있어 아무 응답도 못 받은 경우는 파이프라이닝 탓이 아님.
+                boolean stale = answered == 0 && conn.isReused() && cause instanceof EOFException;
+                if (!stale && sent.size() > 1)
+                    serial = true;
+                if (cause == null)
+                    cause = new EOFException("Server closed connection during pipeline");
+                requeue(sent, answered, queue, requests, replays, listener, cause, stale);
+            } else {
+                POOL.release(conn, keepAlive);
+            }
+        }
+
+        // 리디렉션은 응답 순서와 상관없으므로 파이프라인이 끝난 뒤 하나씩 따라감.
+        for (int i : redirects) {
+            requests.get(i).continueRedirect();
+            listener.completed(i, System.nanoTime() - started[i]);
+        }
+    }
+
+    // 응답을 못 받은 요청을 큐 앞에 순서대로 되돌림. 너무 많이 다시 보낸 요청은 실패로 끝냄.
+    // free가 true이면 다시 보낸 횟수에 넣지 않음.
+    private static void requeue(List<Integer> sent, int from, ArrayDeque<Integer> queue, List<HttpRequest> requests,
+            int[] replays, Listener listener, IOException cause, boolean free) {
+        for (int k = sent.size() - 1; k >= from; k--) {
+            int i = sent.get(k);
+            if (!free && ++replays[i] > MAX_REPLAY) {
+                requests.get(i).fail(cause);
+                listener.completed(i, 0);
+            } else {
+                queue.addFirst(i);
+            }
+        }
+    }
+}
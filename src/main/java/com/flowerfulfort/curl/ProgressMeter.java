@@ -0,0 +1,84 @@
+package com.flowerfulfort.curl;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+// -o, -O로 받을 때 stderr에 한 줄로 다시 그리는 진행 표시.
+// update()는 쓸 때마다 불리지만 시각만 비교하고 돌아가며, 다시 그리는 것은 INTERVAL에 한 번뿐.
+final class ProgressMeter {
+    private static final long INTERVAL = 200_000_000L;
+
+    private final PrintStream out;
+    private final long start = System.nanoTime();
+    private long nextDraw = start + INTERVAL;
+    // 받을 전체 바이트. 모르면 -1.
+    private long total = -1;
+    private long bytes;
+    // 지난번에 그린 줄의 길이. 짧은 줄로 덮어쓸 때 남는 글자를 지움.
+    private int width;
+
+    ProgressMeter(PrintStream out) {
+        this.out = out;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    void update(long bytes) {
+        this.bytes = bytes;
+        long now = System.nanoTime();
+        if (now < nextDraw)
+            return;
+        nextDraw = now + INTERVAL;
+        draw(now);
+    }
+
+    // 마지막 상태를 그리고 줄을 바꿈.
+    void finish() {
+        draw(System.nanoTime());
+        out.println();
+        out.flush();
+    }
+
+    private void draw(long now) {
+        double seconds = Math.max(now - start, 1) / 1e9;
+        double speed = bytes / seconds;
+        StringBuilder sb = new StringBuilder(80);
+        if (total > 0) {
+            sb.append(String.format(Locale.ROOT, "%5.1f%% %8s / %-8s", bytes * 100.0 / total, size(bytes),
+                    size(total)));
+        } else {
+            sb.append(String.format(Locale.ROOT, "%8s", size(bytes)));
+        }
+        sb.append(String.format(Locale.ROOT, " %8s/s %s", size((long) speed), time((long) seconds)));
+        if (total > 0 && bytes < total && speed > 0)
+            sb.append(" eta ").append(time((long) ((total - bytes) / speed)));
+        int len = sb.length();
+        while (sb.length() < width) {
+            sb.append(' ');
+        }
+        width = len;
+        out.print('\r');
+        out.print(sb);
+        out.flush();
+    }
+
+    // curl처럼 1024 단위로 줄여서 씀.
+    private static String size(long n) {
+        if (n < 1024)
+            return n + "B";
+        String units = "kMGT";
+        double v = n;
+        int i = -1;
+        while (v >= 1024 && i < units.length() - 1) {
+            v /= 1024;
+            i++;
+        }
+        return String.format(Locale.ROOT, v < 10 ? "%.2f%c" : v < 100 ? "%.1f%c" : "%.0f%c", v, units.charAt(i));
+    }
+
+    private static String time(long seconds) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,207 @@
+package com.flowerfulfort.curl;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Client.send()로 보낼 요청. 만들어진 뒤에는 바뀌지 않으므로 여러 스레드에서 같은 객체를
+// 몇 번이고 보내도 됨. 리디렉션을 따라간 결과는 Response.url()에 남고 요청은 그대로임.
+// 303, 그리고 POST에 대한 301, 302를 따라갈 때는 curl과 브라우저처럼 바디 없는 GET으로 바꿔 보냄.
+public final class Request {
+    private final Method method;
+    private final Url url;
+    // "Name: value" 형식의 헤더 줄.
+    private final List<String> headers;
+    // 템플릿에 넣어 보내는 바디. bodyFile과 함께 쓰지 않음.
+    private final byte[] body;
+    // 보낼 때마다 파일에서 읽어 흘려보내는 바디.
+    private final Path bodyFile;
+    private final boolean redirect;
+    private final boolean compressed;
+    private final Http2Mode http2;
+
+    // 처음 URL로 보낼 템플릿. 처음 보낼 때 만듦.
+    private volatile RequestTemplate template;
+
+    private Request(Builder b) {
+        this.url = Url.parse(b.url);
+        this.headers = Collections.unmodifiableList(new ArrayList<>(b.headers));
+        this.body = b.body;
+        this.bodyFile = b.bodyFile;
+        this.redirect = b.redirect;
+        this.compressed = b.compressed;
+        this.http2 = b.http2;
+        if (b.method == Method.GET && (body != null || bodyFile != null))
+            this.method = Method.POST;
+        else
+            this.method = b.method;
+    }
+
+    // Builder
+    public static final class Builder {
+        private String url;
+        private Method method;
+        private final List<String> headers;
+        private byte[] body;
+        private Path bodyFile;
+        private boolean redirect;
+        private boolean compressed;
+        private Http2Mode http2;
+
+        Builder() {
+            // default values.
+            method = Method.GET;
+            headers = new ArrayList<>();
+            http2 = Http2Mode.OFF;
+        }
+
+        public Builder setUrl(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder setMethod(Method method) {
+            this.method = method;
+            return this;
+        }
+
+        // 같은 이름을 여러 번 주면 모두 보냄.
+        public Builder addHeader(String name, String value) {
+            if (name.indexOf(':') >= 0 || name.indexOf('\n') >= 0 || value.indexOf('\n') >= 0)
+                throw new IllegalArgumentException("Invalid header: " + name);
+            headers.add(name + ": " + value);
+            return this;
+        }
+
+        // UTF-8로 인코딩해서 보냄. -X가 없으면 POST.
+        public Builder setBody(String body) {
+            return setBody(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Builder setBody(byte[] body) {
+            this.body = body.clone();
+            this.bodyFile = null;
+            return this;
+        }
+
+        // 파일 내용을 바디로 보냄. 보낼 때마다 파일을 다시 열어 그때의 크기로 보냄.
+        public Builder setBody(Path file) {
+            this.bodyFile = file;
+            this.body = null;
+            return this;
+        }
+
+        // 30x 응답의 Location을 따라감.
+        public Builder setRedirect() {
+            redirect = true;
+            return this;
+        }
+
+        // gzip, deflate 응답을 요청하고 바디를 읽을 때 압축을 풂.
+        public Builder setCompressed() {
+            compressed = true;
+            return this;
+        }
+
+        // http URL이면 Upgrade: h2c로 HTTP/2를 청함. 바디가 있는 요청은 이미 HTTP/2 연결이 있을 때만 HTTP/2로 감.
+        public Builder setHttp2() {
+            http2 = Http2Mode.UPGRADE;
+            return this;
+        }
+
+        // http URL이면 처음부터 HTTP/2(h2c)로 보냄. 같은 host:port로 가는 요청은 연결 하나를 함께 씀.
+        public Builder setHttp2PriorKnowledge() {
+            http2 = Http2Mode.PRIOR_KNOWLEDGE;
+            return this;
+        }
+
+        // URL이 없거나 http, https가 아니면 IllegalArgumentException.
+        public Request build() {
+            if (url == null)
+                throw new IllegalArgumentException("url is missing");
+            return new Request(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Method method() {
+        return method;
+    }
+
+    public String url() {
+        return url.toString();
+    }
+
+    public List<String> headers() {
+        return headers;
+    }
+
+    Url target() {
+        return url;
+    }
+
+    Path bodyFile() {
+        return bodyFile;
+    }
+
+    boolean isRedirect() {
+        return redirect;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    Http2Mode http2() {
+        return http2;
+    }
+
+    // 리디렉션 등으로 target에 보낼 템플릿. 처음 URL이면 만들어 둔 것을 씀.
+    RequestTemplate template(Url target) {
+        if (target != url)
+            return compile(target, -1, false);
+        RequestTemplate t = template;
+        if (t == null) {
+            t = compile(target, -1, false);
+            template = t;
+        }
+        return t;
+    }
+
+    // 리디렉션을 따라가며 GET으로 바꿔 보낼 템플릿. 바디와 자동으로 붙이던 Content-Type은 뺌.
+    RequestTemplate redirectedGet(Url target) {
+        return compile(Method.GET, target, false, -1, false);
+    }
+
+    // fileLength는 파일 바디의 길이(없으면 -1). expect이면 Expect: 100-continue를 붙임.
+    RequestTemplate compile(Url target, long fileLength, boolean expect) {
+        return compile(method, target, body != null || bodyFile != null, fileLength, expect);
+    }
+
+    private RequestTemplate compile(Method method, Url target, boolean hasBody, long fileLength, boolean expect) {
+        List<String> lines = new ArrayList<>(headers.size() + 4);
+        boolean contentFlag = false;
+        boolean acceptEncodingFlag = false;
+        for (String h : headers) {
+            if (h.regionMatches(true, 0, "Content-Type:", 0, 13))
+                contentFlag = true;
+            if (h.regionMatches(true, 0, "Accept-Encoding:", 0, 16))
+                acceptEncodingFlag = true;
+            lines.add(h);
+        }
+        if (hasBody && !contentFlag)
+            lines.add("Content-Type: application/x-www-form-urlencoded");
+        if (compressed && !acceptEncodingFlag)
+            lines.add("Accept-Encoding: deflate, gzip");
+        if (fileLength >= 0)
+            lines.add("Content-Length: " + fileLength);
+        if (expect)
+            lines.add("Expect: 100-continue");
+        return RequestTemplate.compile(method, target.path, target.authority(), lines, hasBody ? body : null);
+    }
+}
@@ -0,0 +1,16 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// 템플릿에 넣지 않고 헤더 뒤에 따로 흘려보내는 요청 바디.
+// 길이를 알면 Content-Length를, 모르면(-1) Transfer-Encoding: chunked를 붙임.
+interface RequestBody {
+    long contentLength();
+
+    // 헤더를 쓴 뒤의 연결에 바디 전체를 씀.
+    void writeTo(Connection conn) throws IOException;
+
+    // framing 없이 바디 내용만 out에 씀. HTTP/2 스트림처럼 DATA 프레임으로 나눠 보낼 때 씀.
+    void writeTo(OutputStream out) throws IOException;
+}
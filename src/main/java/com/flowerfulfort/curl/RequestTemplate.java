@@ -0,0 +1,145 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// 미리 인코딩해 둔 요청(요청줄 + 헤더 + 바디) 바이트.
+// 한 번 만들면 바뀌지 않으므로 같은 요청을 여러 번 보낼 때 할당 없이 그대로 씀.
+// 리디렉션처럼 경로만 바뀌는 경우 withPath()로 경로 부분만 바꾼 새 템플릿을 만듦.
+final class RequestTemplate {
+    private final Method method;
+    private final String path;
+    private final String authority;
+    private final byte[] bytes;
+    // bytes 안에서 경로가 차지하는 구간.
+    private final int pathOffset;
+    private final int pathLength;
+    // 헤더 끝(빈 줄 포함)의 위치. 그 뒤는 바디.
+    private final int headerLength;
+    private volatile ByteBuffer direct;
+
+    private RequestTemplate(Method method, String path, String authority, byte[] bytes, int pathOffset,
+            int pathLength, int headerLength) {
+        this.method = method;
+        this.path = path;
+        this.authority = authority;
+        this.bytes = bytes;
+        this.pathOffset = pathOffset;
+        this.pathLength = pathLength;
+        this.headerLength = headerLength;
+    }
+
+    // headerLines는 "Name: value" 형식. body가 null이 아니면 인코딩된 바이트 길이로
+    // Content-Length를 붙임.
+    static RequestTemplate compile(Method method, String path, String authority, List<String> headerLines,
+            byte[] body) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(method).append(' ');
+        int pathStart = sb.length();
+        sb.append(path);
+        int pathEnd = sb.length();
+        sb.append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(authority).append("\r\n");
+        sb.append("User-Agent: curl/1.0.0\r\n");
+        sb.append("Accept: */*\r\n");
+        for (String h : headerLines) {
+            sb.append(h).append("\r\n");
+        }
+        if (body != null) {
+            sb.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        sb.append("\r\n");
+
+        byte[] prefix = sb.substring(0, pathStart).getBytes(StandardCharsets.UTF_8);
+        byte[] encodedPath = sb.substring(pathStart, pathEnd).getBytes(StandardCharsets.UTF_8);
+        byte[] rest = sb.substring(pathEnd).getBytes(StandardCharsets.UTF_8);
+        int bodyLength = body != null ? body.length : 0;
+        byte[] bytes = new byte[prefix.length + encodedPath.length + rest.length + bodyLength];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        System.arraycopy(encodedPath, 0, bytes, prefix.length, encodedPath.length);
+        System.arraycopy(rest, 0, bytes, prefix.length + encodedPath.length, rest.length);
+        if (body != null)
+            System.arraycopy(body, 0, bytes, bytes.length - bodyLength, bodyLength);
+        return new RequestTemplate(method, path, authority, bytes, prefix.length, encodedPath.length,
+                bytes.length - bodyLength);
+    }
+
+    // 경로만 바꾼 템플릿. 나머지 바이트는 그대로 복사.
+    RequestTemplate withPath(String newPath) {
+        if (newPath.equals(path))
+            return this;
+        byte[] encodedPath = newPath.getBytes(StandardCharsets.UTF_8);
+        int tail = bytes.length - pathOffset - pathLength;
+        byte[] patched = new byte[pathOffset + encodedPath.length + tail];
+        System.arraycopy(bytes, 0, patched, 0, pathOffset);
+        System.arraycopy(encodedPath, 0, patched, pathOffset, encodedPath.length);
+        System.arraycopy(bytes, pathOffset + pathLength, patched, pathOffset + encodedPath.length, tail);
+        return new RequestTemplate(method, newPath, authority, patched, pathOffset, encodedPath.length,
+                headerLength - pathLength + encodedPath.length);
+    }
+
+    // 헤더 끝(빈 줄 앞)에 lines를 덧붙인 템플릿. h2c Upgrade 헤더를 붙일 때 씀.
+    RequestTemplate withHeaders(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String h : lines) {
+            sb.append(h).append("\r\n");
+        }
+        byte[] extra = sb.toString().getBytes(StandardCharsets.UTF_8);
+        int at = headerLength - 2;
+        byte[] patched = new byte[bytes.length + extra.length];
+        System.arraycopy(bytes, 0, patched, 0, at);
+        System.arraycopy(extra, 0, patched, at, extra.length);
+        System.arraycopy(bytes, at, patched, at + extra.length, bytes.length - at);
+        return new RequestTemplate(method, path, authority, patched, pathOffset, pathLength,
+                headerLength + extra.length);
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String getAuthority() {
+        return authority;
+    }
+
+    int length() {
+        return bytes.length;
+    }
+
+    // 템플릿에 들어 있는 바디(-d)의 바이트 수.
+    int bodyLength() {
+        return bytes.length - headerLength;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    // 템플릿에 들어 있는 바디(-d)만 씀.
+    void writeBodyTo(OutputStream out) throws IOException {
+        out.write(bytes, headerLength, bytes.length - headerLength);
+    }
+
+    // NIO 채널에 쓸 때 사용하는 direct 버퍼. 호출할 때마다 position이 0인 새 view를 줌.
+    ByteBuffer buffer() {
+        ByteBuffer d = direct;
+        if (d == null) {
+            d = ByteBuffer.allocateDirect(bytes.length);
+            d.put(bytes).flip();
+            direct = d;
+        }
+        return d.asReadOnlyBuffer();
+    }
+
+    // -v 출력용 헤더 부분(마지막 빈 줄 제외).
+    String headerText() {
+        return new String(bytes, 0, headerLength - 4, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package com.flowerfulfort.curl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// 연결 전에 host 이름을 주소로 바꾸는 캐시.
+// 찾은 주소는 ttl 동안, 찾지 못한 이름(NXDOMAIN)은 negativeTtl 동안 보관하고,
+// 같은 이름을 여러 스레드가 동시에 찾으면 한 번만 조회하고 결과를 나눠 씀.
+// --resolve host:port:addr로 지정한 주소는 조회 없이 그대로 씀.
+//
+// 이 캐시 아래에는 JVM 자체의 InetAddress 캐시(networkaddress.cache.ttl)가 있으므로,
+// ttl을 그보다 짧게 잡아도 실제 조회는 JVM 캐시가 만료된 뒤에야 일어남.
+final class Resolver {
+    static final long DEFAULT_TTL = 60_000;
+    static final long DEFAULT_NEGATIVE_TTL = 5_000;
+
+    private static final Resolver SHARED = new Resolver();
+
+    // 조회 결과. addresses가 null이면 찾지 못한 이름.
+    private static final class Entry {
+        final InetAddress[] addresses;
+        final long expiresAt;
+
+        Entry(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    // 조회 중인 이름. 같은 이름을 찾는 다른 스레드는 이 결과를 기다림.
+    private final Map<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+    // host:port -> 지정된 주소.
+    private final Map<String, InetAddress[]> overrides = new ConcurrentHashMap<>();
+
+    private volatile long ttlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL);
+    private volatile long negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NEGATIVE_TTL);
+
+    static Resolver shared() {
+        return SHARED;
+    }
+
+    // 찾은 주소를 보관할 시간. 0이면 캐시하지 않음.
+    void setTtl(long millis) {
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    // 찾지 못한 이름을 기억할 시간.
+    void setNegativeTtl(long millis) {
+        negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    // curl의 --resolve와 같은 "host:port:addr[,addr...]" 형식. IPv6 주소는 [::1]처럼 괄호로 감쌈.
+    void addOverride(String spec) {
+        int c1 = spec.indexOf(':');
+        int c2 = c1 < 0 ? -1 : spec.indexOf(':', c1 + 1);
+        if (c1 <= 0 || c2 < 0)
+            throw new IllegalArgumentException("Invalid --resolve: " + spec);
+        String host = spec.substring(0, c1);
+        int port = Integer.parseInt(spec.substring(c1 + 1, c2));
+        String[] addrs = spec.substring(c2 + 1).split(",");
+        InetAddress[] resolved = new InetAddress[addrs.length];
+        for (int i = 0; i < addrs.length; i++) {
+            String a = addrs[i].strip();
+            if (a.startsWith("[") && a.endsWith("]"))
+                a = a.substring(1, a.length() - 1);
+            if (!isLiteral(a))
+                throw new IllegalArgumentException("Invalid address in --resolve: " + addrs[i]);
+            try {
+                // 리터럴이므로 조회 없이 바로 만들어짐. 이름은 원래 host로 둠.
+                resolved[i] = InetAddress.getByAddress(host, InetAddress.getByName(a).getAddress());
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Invalid address in --resolve: " + addrs[i]);
+            }
+        }
+        overrides.put(Connection.key(host, port), resolved);
+    }
+
+    // IPv4 점 표기이거나 IPv6(콜론 포함)인지. 이름이 들어가면 조회가 일어나므로 막음.
+    private static boolean isLiteral(String a) {
+        if (a.isEmpty())
+            return false;
+        if (a.indexOf(':') >= 0)
+            return true;
+        for (int i = 0; i < a.length(); i++) {
+            char c = a.charAt(i);
+            if (c != '.' && (c < '0' || c > '9'))
+                return false;
+        }
+        return true;
+    }
+
+    // host:port로 연결할 주소들. 앞에서부터 차례로 시도하면 됨.
+    InetAddress[] resolve(String host, int port) throws UnknownHostException {
+        InetAddress[] forced = overrides.get(Connection.key(host, port));
+        if (forced != null)
+            return forced;
+        Entry e = cache.get(host);
+        if (e == null || e.isExpired(System.nanoTime()))
+            e = lookup(host);
+        if (e.addresses == null)
+            throw new UnknownHostException(host);
+        return e.addresses;
+    }
+
+    private Entry lookup(String host) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inflight.putIfAbsent(host, mine);
+        if (running != null)
+            return running.join();
+        try {
+            // 기다리는 사이 다른 스레드가 조회를 끝냈을 수 있음.
+            Entry e = cache.get(host);
+            if (e == null || e.isExpired(System.nanoTime())) {
+                try {
+                    InetAddress[] addresses = InetAddress.getAllByName(host);
+                    e = new Entry(addresses, System.nanoTime() + ttlNanos);
+                } catch (UnknownHostException ex) {
+                    e = new Entry(null, System.nanoTime() + negativeTtlNanos);
+                }
+                cache.put(host, e);
+            }
+            mine.complete(e);
+            return e;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inflight.remove(host, mine);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.flowerfulfort.curl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+// 응답 하나. 상태와 헤더는 바뀌지 않지만 바디는 스트림이라 한 번만 읽을 수 있음.
+// Client.send()의 응답은 바디를 끝까지 읽거나 close()해야 연결이 풀로 돌아가므로
+// try-with-resources로 쓰는 것이 좋음. 끝까지 읽지 않고 닫으면 연결은 버림.
+public final class Response implements Closeable {
+    private final int statusCode;
+    private final String reason;
+    // 이름은 대소문자를 구분하지 않음.
+    private final Map<String, List<String>> headers;
+    // 리디렉션을 따라간 뒤의 최종 URL.
+    private final String url;
+    private final InputStream body;
+    private final long bodyLength;
+
+    Response(int statusCode, String reason, Map<String, List<String>> headers, String url, InputStream body,
+            long bodyLength) {
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.headers = headers;
+        this.url = url;
+        this.body = body;
+        this.bodyLength = bodyLength;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public String reason() {
+        return reason;
+    }
+
+    public Map<String, List<String>> headers() {
+        return headers;
+    }
+
+    // 같은 이름의 첫 번째 값. 없으면 null.
+    public String header(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    public String url() {
+        return url;
+    }
+
+    // 읽을 바디의 바이트 수. 미리 알 수 없으면(chunked, 압축을 푸는 경우 등) -1.
+    public long bodyLength() {
+        return bodyLength;
+    }
+
+    // 바디 스트림. 부를 때마다 같은 스트림을 돌려주며 이미 읽은 부분은 다시 읽을 수 없음.
+    public InputStream body() {
+        return body;
+    }
+
+    // body()를 채널로 감싼 것. 파일 등 다른 채널로 옮길 때 씀.
+    public ReadableByteChannel bodyChannel() {
+        return Channels.newChannel(body);
+    }
+
+    // 남은 바디를 모두 읽음.
+    public byte[] bodyAsBytes() throws IOException {
+        try (InputStream in = body) {
+            return in.readAllBytes();
+        }
+    }
+
+    public String bodyAsString(Charset charset) throws IOException {
+        return new String(bodyAsBytes(), charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+}
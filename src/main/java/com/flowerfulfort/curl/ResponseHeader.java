@@ -0,0 +1,322 @@
+package com.flowerfulfort.curl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// HTTP/1.1 상태줄과 응답 헤더를 바이트 단위로 파싱.
+// 헤더 바이트는 재사용하는 ByteBuffer에 그대로 두고 각 필드의 위치만 기록하며,
+// 값은 요청될 때만 String으로 만듦. 이름 비교는 대소문자를 구분하지 않음.
+final class ResponseHeader {
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int INITIAL_SIZE = 4 * 1024;
+
+    private ByteBuffer buf;
+    private int length;
+
+    // 상태줄
+    private int versionEnd;
+    private int statusCode;
+    private int reasonStart;
+    private int lineEnd;
+
+    // 필드마다 [이름 시작, 이름 끝, 값 시작, 값 끝].
+    private int[] fields;
+    private int count;
+    // 값을 String으로 만든 결과. 필요할 때만 채워짐.
+    private String[] values;
+
+    ResponseHeader() {
+        buf = ByteBuffer.allocate(INITIAL_SIZE);
+        fields = new int[4 * 32];
+        values = new String[32];
+    }
+
+    // in에서 빈 줄까지 읽어 파싱. 헤더 뒤의 바디는 in에 그대로 남음.
+    // in은 mark/reset을 지원해야 함. 아무 바이트도 없이 스트림이 끝났으면 false.
+    boolean read(InputStream in) throws IOException {
+        in.mark(MAX_HEADER_SIZE);
+        byte[] a = buf.array();
+        int filled = 0;
+        int end = -1;
+        while (end < 0) {
+            if (filled == a.length) {
+                if (a.length >= MAX_HEADER_SIZE)
+                    throw new MalformedResponseException("Response header too large");
+                buf = ByteBuffer.allocate(Math.min(a.length * 2, MAX_HEADER_SIZE));
+                buf.put(a, 0, filled);
+                a = buf.array();
+            }
+            int n = in.read(a, filled, a.length - filled);
+            if (n == -1) {
+                if (filled == 0)
+                    return false;
+                throw new EOFException("Connection closed inside response header");
+            }
+            end = findEnd(a, Math.max(0, filled - 3), filled + n);
+            filled += n;
+        }
+        // 헤더만큼만 소비하고 나머지는 바디로 돌려놓음.
+        in.reset();
+        long skip = end;
+        while (skip > 0) {
+            long s = in.skip(skip);
+            if (s <= 0)
+                throw new EOFException();
+            skip -= s;
+        }
+        length = end;
+        buf.limit(end);
+        parse();
+        return true;
+    }
+
+    // 빈 줄(CRLF CRLF 또는 LF LF) 바로 뒤의 위치. 없으면 -1.
+    static int findEnd(byte[] a, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] != '\n')
+                continue;
+            if (i + 1 < to && a[i + 1] == '\n')
+                return i + 2;
+            if (i + 2 < to && a[i + 1] == '\r' && a[i + 2] == '\n')
+                return i + 3;
+        }
+        return -1;
+    }
+
+    private void parse() throws IOException {
+        byte[] a = buf.array();
+        count = 0;
+        // 상태줄: HTTP/1.1 200 OK
+        int eol = lineEnd(a, 0);
+        lineEnd = eol;
+        int sp = indexOf(a, 0, eol, (byte) ' ');
+        if (sp < 0 || sp + 4 > eol)
+            throw new MalformedResponseException("Malformed status line");
+        versionEnd = sp;
+        int code = 0;
+        for (int i = sp + 1; i < sp + 4; i++) {
+            int d = a[i] - '0';
+            if (d < 0 || d > 9)
+                throw new MalformedResponseException("Malformed status code");
+            code = code * 10 + d;
+        }
+        statusCode = code;
+        reasonStart = Math.min(sp + 5, eol);
+
+        int pos = nextLine(a, eol);
+        while (pos < length) {
+            eol = lineEnd(a, pos);
+            if (eol == pos)
+                break; // 빈 줄
+            int colon = indexOf(a, pos, eol, (byte) ':');
+            if (colon > pos) {
+                if (count == values.length) {
+                    fields = Arrays.copyOf(fields, fields.length * 2);
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                int vs = colon + 1;
+                int ve = eol;
+                while (vs < ve && (a[vs] == ' ' || a[vs] == '\t'))
+                    vs++;
+                while (ve > vs && (a[ve - 1] == ' ' || a[ve - 1] == '\t'))
+                    ve--;
+                int f = count * 4;
+                fields[f] = pos;
+                fields[f + 1] = colon;
+                fields[f + 2] = vs;
+                fields[f + 3] = ve;
+                values[count] = null;
+                count++;
+            }
+            pos = nextLine(a, eol);
+        }
+    }
+
+    // pos에서 시작하는 줄의 끝(CR 또는 LF 위치).
+    private int lineEnd(byte[] a, int pos) {
+        int nl = indexOf(a, pos, length, (byte) '\n');
+        if (nl < 0)
+            nl = length;
+        return nl > pos && a[nl - 1] == '\r' ? nl - 1 : nl;
+    }
+
+    private int nextLine(byte[] a, int eol) {
+        if (eol < length && a[eol] == '\r')
+            eol++;
+        return eol + 1;
+    }
+
+    private static int indexOf(byte[] a, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (a[i] == b)
+                return i;
+        }
+        return -1;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    // 빈 줄까지 포함한 헤더의 바이트 수.
+    int byteLength() {
+        return length;
+    }
+
+    String getVersion() {
+        return new String(buf.array(), 0, versionEnd, StandardCharsets.ISO_8859_1);
+    }
+
+    boolean isHttp10() {
+        byte[] a = buf.array();
+        return versionEnd == 8 && a[5] == '1' && a[7] == '0';
+    }
+
+    String getReason() {
+        return new String(buf.array(), reasonStart, lineEnd - reasonStart, StandardCharsets.ISO_8859_1);
+    }
+
+    String getStatusLine() {
+        return new String(buf.array(), 0, lineEnd, StandardCharsets.ISO_8859_1);
+    }
+
+    int size() {
+        return count;
+    }
+
+    String name(int i) {
+        int f = i * 4;
+        return new String(buf.array(), fields[f], fields[f + 1] - fields[f], StandardCharsets.ISO_8859_1);
+    }
+
+    String value(int i) {
+        String v = values[i];
+        if (v == null) {
+            int f = i * 4;
+            v = new String(buf.array(), fields[f + 2], fields[f + 3] - fields[f + 2], StandardCharsets.ISO_8859_1);
+            values[i] = v;
+        }
+        return v;
+    }
+
+    private int indexOf(String name, int from) {
+        for (int i = from; i < count; i++) {
+            if (regionEquals(fields[i * 4], fields[i * 4 + 1], name))
+                return i;
+        }
+        return -1;
+    }
+
+    // 버퍼의 [start, end)가 s와 대소문자 구분 없이 같은지. 할당 없음.
+    private boolean regionEquals(int start, int end, String s) {
+        if (end - start != s.length())
+            return false;
+        byte[] a = buf.array();
+        for (int i = 0; i < s.length(); i++) {
+            int c1 = a[start + i];
+            int c2 = s.charAt(i);
+            if (c1 != c2 && toLower(c1) != toLower(c2))
+                return false;
+        }
+        return true;
+    }
+
+    private static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+
+    boolean contains(String name) {
+        return indexOf(name, 0) >= 0;
+    }
+
+    // 같은 이름의 첫 번째 값. 없으면 null.
+    String get(String name) {
+        int i = indexOf(name, 0);
+        return i < 0 ? null : value(i);
+    }
+
+    // Set-Cookie 처럼 여러 번 온 헤더의 값들.
+    List<String> getAll(String name) {
+        List<String> list = new ArrayList<>(2);
+        for (int i = indexOf(name, 0); i >= 0; i = indexOf(name, i + 1)) {
+            list.add(value(i));
+        }
+        return list;
+    }
+
+    // 숫자 값을 String을 만들지 않고 읽음. 없거나 숫자가 아니면 defaultValue.
+    long getLong(String name, long defaultValue) {
+        int i = indexOf(name, 0);
+        if (i < 0)
+            return defaultValue;
+        byte[] a = buf.array();
+        int vs = fields[i * 4 + 2];
+        int ve = fields[i * 4 + 3];
+        if (vs == ve || ve - vs > 18)
+            return defaultValue;
+        long v = 0;
+        for (int p = vs; p < ve; p++) {
+            int d = a[p] - '0';
+            if (d < 0 || d > 9)
+                return defaultValue;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    // "Connection: keep-alive, Upgrade" 처럼 쉼표로 나뉜 값에 token이 있는지.
+    // 같은 이름의 헤더가 여러 개여도 모두 확인.
+    boolean containsToken(String name, String token) {
+        byte[] a = buf.array();
+        for (int i = indexOf(name, 0); i >= 0; i = indexOf(name, i + 1)) {
+            int p = fields[i * 4 + 2];
+            int ve = fields[i * 4 + 3];
+            while (p < ve) {
+                int e = indexOf(a, p, ve, (byte) ',');
+                if (e < 0)
+                    e = ve;
+                int s = p;
+                int t = e;
+                while (s < t && (a[s] == ' ' || a[s] == '\t'))
+                    s++;
+                while (t > s && (a[t - 1] == ' ' || a[t - 1] == '\t'))
+                    t--;
+                if (regionEquals(s, t, token))
+                    return true;
+                p = e + 1;
+            }
+        }
+        return false;
+    }
+
+    // 이름(대소문자 무시) -> 값 목록. 헤더를 파싱 버퍼 밖으로 넘길 때 사용.
+    Map<String, List<String>> toMap() {
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < count; i++) {
+            map.computeIfAbsent(name(i), k -> new ArrayList<>(1)).add(value(i));
+        }
+        map.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        return Collections.unmodifiableMap(map);
+    }
+
+    // 받은 그대로의 헤더 줄들(-v 출력용).
+    List<String> lines() {
+        List<String> list = new ArrayList<>(count + 1);
+        list.add(getStatusLine());
+        byte[] a = buf.array();
+        for (int i = 0; i < count; i++) {
+            int f = i * 4;
+            list.add(new String(a, fields[f], fields[f + 3] - fields[f], StandardCharsets.ISO_8859_1));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,262 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 끊긴 전송을 이어서 하는 -C.
+//
+// 다운로드: 받다 만 파일 뒤에 Range: bytes=N- 로 나머지만 받아 붙임. 처음 받을 때의
+// ETag(없으면 Last-Modified)를 "<파일>.resume"에 적어 두고 If-Range로 보내므로,
+// 그 사이 서버의 파일이 바뀌었다면 200 전체 응답이 와서 처음부터 다시 씀.
+// 바디를 받다가 연결이 끊기면 받은 곳부터 점점 긴 간격을 두고 다시 요청함.
+//
+// 업로드: HEAD로 서버에 이미 있는 크기를 확인하고, 나머지를 Content-Range PUT으로 보냄.
+// 서버가 Content-Range PUT을 지원해야 함.
+final class ResumableTransfer {
+    static final int DEFAULT_RETRY = 5;
+    private static final long INITIAL_BACKOFF = 1_000;
+    private static final long MAX_BACKOFF = 30_000;
+
+    private final String url;
+    private final String[] headers;
+    private final boolean redirect;
+    private final int retry;
+
+    ResumableTransfer(String url, String[] headers, boolean redirect, int retry) {
+        if (retry < 0)
+            throw new IllegalArgumentException();
+        this.url = url;
+        this.headers = headers != null ? headers : new String[0];
+        this.redirect = redirect;
+        this.retry = retry;
+    }
+
+    // 응답 헤더를 보고 정한 바디의 처리 방법. 응답마다 새로 만듦.
+    private static final class Sink extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer one = ByteBuffer.allocate(1);
+        // 다음에 쓸 파일 위치. 끊기면 여기부터 다시 받음.
+        long position;
+        // 바디를 파일에 쓰지 않고 버림(오류 응답 등).
+        boolean discard;
+        // 이어 받을 수 없는 응답. 다시 시도하지 않음.
+        IOException fatal;
+        // 416: 이미 다 받았음.
+        boolean complete;
+
+        Sink(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            one.clear();
+            one.put((byte) b).flip();
+            write(one);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            write(ByteBuffer.wrap(b, off, len));
+        }
+
+        private void write(ByteBuffer src) throws IOException {
+            if (fatal != null)
+                throw fatal;
+            if (discard)
+                return;
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        }
+    }
+
+    // output을 offset부터 이어 받음. offset이 -1이면 파일 크기부터.
+    void download(Path output, long offset, PrintStream log) throws IOException, InterruptedException {
+        Path meta = output.resolveSibling(output.getFileName() + ".resume");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = offset < 0 ? channel.size() : Math.min(offset, channel.size());
+            String validator = start > 0 && Files.exists(meta) ? Files.readString(meta).strip() : null;
+            if (start > 0 && validator == null)
+                log.println("* No saved validator for the partial file, resuming without If-Range");
+
+            for (int attempt = 0;; attempt++) {
+                if (start > 0)
+                    log.printf("* Resuming transfer from byte position %d%n", start);
+                List<String> h = new ArrayList<>(Arrays.asList(headers));
+                if (start > 0) {
+                    h.add("Range: bytes=" + start + "-");
+                    if (validator != null)
+                        h.add("If-Range: " + validator);
+                }
+                Sink sink = new Sink(channel, start);
+                long from = start;
+                HttpRequest get = request(Method.GET, h)
+                        .setResponseListener(header -> onDownloadHeader(header, sink, from, channel, meta))
+                        .setOutput(sink)
+                        .build();
+                get.request();
+
+                if (sink.fatal != null)
+                    throw sink.fatal;
+                if (sink.complete) {
+                    Files.deleteIfExists(meta);
+                    log.println("* The file is already fully retrieved");
+                    return;
+                }
+                if (get.getFailure() == null) {
+                    if (sink.discard)
+                        throw new IOException("HTTP " + get.getStatusCode());
+                    channel.truncate(sink.position);
+                    Files.deleteIfExists(meta);
+                    return;
+                }
+                // 바디 도중에 끊김. 받은 곳까지는 파일에 있으므로 거기서부터 다시.
+                if (attempt >= retry)
+                    throw get.getFailure();
+                start = sink.position;
+                validator = Files.exists(meta) ? Files.readString(meta).strip() : validator;
+                backoff(log, attempt, get.getFailure());
+            }
+        }
+    }
+
+    // 바디를 쓰기 전에 응답을 보고 파일 위치를 정함.
+    private static void onDownloadHeader(ResponseHeader header, Sink sink, long from, FileChannel channel,
+            Path meta) {
+        try {
+            int status = header.getStatusCode();
+            if (status == 206) {
+                long first = rangeStart(header.get("Content-Range"));
+                if (first != from) {
+                    sink.fatal = new IOException("Server resumed at " + first + " instead of " + from);
+                    return;
+                }
+                saveValidator(header, meta);
+            } else if (status == 200) {
+                // 범위를 무시했거나 If-Range가 맞지 않음. 처음부터 다시 씀.
+                channel.truncate(0);
+                sink.position = 0;
+                saveValidator(header, meta);
+            } else if (status == 416 && from > 0 && totalLength(header.get("Content-Range")) == from) {
+                sink.complete = true;
+                sink.discard = true;
+            } else {
+                sink.discard = true;
+            }
+        } catch (IOException e) {
+            sink.fatal = e;
+        }
+    }
+
+    private static void saveValidator(ResponseHeader header, Path meta) throws IOException {
+        String v = header.get("ETag");
+        if (v == null)
+            v = header.get("Last-Modified");
+        if (v != null) {
+            Files.writeString(meta, v, StandardCharsets.ISO_8859_1);
+        } else {
+            Files.deleteIfExists(meta);
+        }
+    }
+
+    // "bytes 100-199/1000"의 100. 형식이 다르면 -1.
+    private static long rangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes "))
+            return -1;
+        int dash = contentRange.indexOf('-');
+        try {
+            return dash < 0 ? -1 : Long.parseLong(contentRange.substring(6, dash).strip());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // "bytes */1000" 또는 "bytes 0-9/1000"의 1000. 모르면 -1.
+    private static long totalLength(String contentRange) {
+        if (contentRange == null)
+            return -1;
+        int slash = contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).strip());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // file을 올림. offset이 -1이면 서버에 있는 크기를 HEAD로 확인해서 그 뒤부터 보냄.
+    void upload(Path file, long offset, PrintStream out, PrintStream log) throws IOException, InterruptedException {
+        long size = Files.size(file);
+        for (int attempt = 0;; attempt++) {
+            long start = offset >= 0 && attempt == 0 ? offset : remoteLength();
+            if (start > size)
+                throw new IOException("Remote file is larger than " + file);
+            if (start == size && size > 0) {
+                log.println("* The file is already fully uploaded");
+                return;
+            }
+            if (start > 0)
+                log.printf("* Resuming upload from byte position %d%n", start);
+            HttpRequest put = request(Method.PUT, Arrays.asList(headers))
+                    .setUploadFile(file)
+                    .setUploadOffset(start)
+                    .setOutput(out)
+                    .build();
+            put.request();
+            if (put.getFailure() == null) {
+                if (put.getStatusCode() >= 400)
+                    throw new IOException("HTTP " + put.getStatusCode());
+                return;
+            }
+            if (attempt >= retry)
+                throw put.getFailure();
+            backoff(log, attempt, put.getFailure());
+        }
+    }
+
+    // 서버에 이미 있는 크기. 없으면(404) 0.
+    // 2xx가 아닌 응답의 Content-Length는 오류 페이지의 크기일 수 있으므로 이어 보낼 위치로 쓰지 않음.
+    private long remoteLength() throws IOException {
+        HttpRequest head = request(Method.HEAD, Arrays.asList(headers))
+                .setOutput(OutputStream.nullOutputStream())
+                .build();
+        head.request();
+        if (head.getFailure() != null)
+            throw head.getFailure();
+        int status = head.getStatusCode();
+        if (status == 404)
+            return 0;
+        if (status < 200 || status >= 300)
+            throw new IOException("Cannot determine remote size: HTTP " + status);
+        return Math.max(0, head.getResponseHeader().getLong("Content-Length", 0));
+    }
+
+    private HttpRequest.Builder request(Method method, List<String> header) {
+        HttpRequest.Builder b = HttpRequest.builder().setHost(url).setMethod(method);
+        if (!header.isEmpty())
+            b.setCustomHeader(header.toArray(new String[0]));
+        if (redirect)
+            b.setRedirect();
+        return b;
+    }
+
+    // 1초에서 시작해 두 배씩, 최대 30초까지 기다림.
+    private static void backoff(PrintStream log, int attempt, IOException cause) throws InterruptedException {
+        long wait = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(attempt, 16));
+        log.printf("* Transfer interrupted (%s), retrying in %d seconds%n", cause.getMessage(),
+                TimeUnit.MILLISECONDS.toSeconds(wait));
+        Thread.sleep(wait);
+    }
+}
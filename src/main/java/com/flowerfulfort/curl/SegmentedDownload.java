@@ -0,0 +1,267 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 큰 파일을 여러 연결로 나눠 받는 다운로드.
+// 먼저 HEAD로 Content-Length와 Accept-Ranges를 확인하고, 파일을 그 크기로 만든 뒤
+// 구간(segment)마다 워커 하나가 Range 요청으로 받아 mmap 한 자기 영역에 바로 씀.
+//
+// 각 워커는 자기 구간을 작은 조각(chunk)으로 나눠 keep-alive 연결로 차례로 요청함.
+// 아직 요청하지 않은 부분은 다른 워커가 가져갈 수 있으므로, 먼저 끝난 워커는
+// 가장 많이 남은 구간의 뒤쪽 절반을 떼어 와서 받음. 느린 연결 하나 때문에 전체가
+// 늦어지지 않음.
+//
+// 서버가 Range를 지원하지 않거나 크기를 알 수 없으면 연결 하나로 받음.
+final class SegmentedDownload {
+    // 이보다 작은 구간은 더 나누지 않음.
+    private static final long MIN_SEGMENT = 1L << 20;
+    // 한 번에 요청하는 크기. 잘 받히면 MAX_CHUNK까지 두 배씩 늘림.
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final long MAX_CHUNK = 16L << 20;
+    // 조각 하나를 다시 요청하는 최대 횟수.
+    private static final int MAX_RETRY = 3;
+
+    private final String url;
+    private final String[] headers;
+    private final boolean redirect;
+    private final int connections;
+    private final Path output;
+
+    // 워커 하나가 맡은 구간 [next, end). next 이전은 이미 요청했거나 받은 부분.
+    private static final class Segment {
+        long next;
+        long end;
+
+        Segment(long start, long end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        long remaining() {
+            return end - next;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private volatile IOException failure;
+
+    SegmentedDownload(String url, String[] headers, boolean redirect, int connections, Path output) {
+        if (connections <= 0)
+            throw new IllegalArgumentException();
+        this.url = url;
+        this.headers = headers != null ? headers : new String[0];
+        this.redirect = redirect;
+        this.connections = connections;
+        this.output = output;
+    }
+
+    void run(PrintStream log) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpRequest head = request(url, Method.HEAD, headers).setOutput(OutputStream.nullOutputStream()).build();
+        head.request();
+        if (head.getFailure() != null)
+            throw head.getFailure();
+        ResponseHeader h = head.getResponseHeader();
+        long length = h.getLong("Content-Length", -1);
+        boolean ranges = h.containsToken("Accept-Ranges", "bytes");
+        // 받는 도중 파일이 바뀌면 If-Range 때문에 200 전체 응답이 오므로 알아챌 수 있음.
+        String validator = ifRangeValidator(h);
+        String target = head.getEffectiveUrl();
+
+        int workers = length > 0 ? (int) Math.min(connections, Math.max(1, length / MIN_SEGMENT)) : 1;
+        if (head.getStatusCode() != 200 || length <= 0 || !ranges || workers == 1) {
+            log.println("* Ranges not available, downloading with a single connection");
+            single(target, log, start);
+            return;
+        }
+
+        ConnectionPool.shared().setMaxIdlePerHost(workers);
+        try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+            file.setLength(length);
+            FileChannel channel = file.getChannel();
+            long per = length / workers;
+            for (int i = 0; i < workers; i++) {
+                segments.add(new Segment(i * per, i == workers - 1 ? length : (i + 1) * per));
+            }
+            List<String> extra = new ArrayList<>(Arrays.asList(headers));
+            if (validator != null)
+                extra.add("If-Range: " + validator);
+
+            ExecutorService executor = BatchRunner.newExecutor();
+            for (int i = 0; i < workers; i++) {
+                Segment own = segments.get(i);
+                executor.execute(() -> work(own, target, extra, channel, length));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        if (failure != null) {
+            Files.deleteIfExists(output);
+            throw failure;
+        }
+        report(log, received.get(), workers, start);
+    }
+
+    // 연결 하나로 전체를 받음.
+    private void single(String target, PrintStream log, long start) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            HttpRequest get = request(target, Method.GET, headers).setOutput(out).build();
+            get.request();
+            if (get.getFailure() != null)
+                throw get.getFailure();
+            report(log, get.getBodyBytes(), 1, start);
+        }
+    }
+
+    private HttpRequest.Builder request(String target, Method method, String[] header) {
+        HttpRequest.Builder b = HttpRequest.builder().setHost(target).setMethod(method);
+        if (header.length > 0)
+            b.setCustomHeader(header);
+        if (redirect)
+            b.setRedirect();
+        return b;
+    }
+
+    // If-Range에 쓸 검증값. RFC 9110에 따라 약한 ETag(W/"...")는 쓸 수 없으므로 Last-Modified를 씀.
+    // 둘 다 없으면 null이고, 그때는 조각마다 Content-Range의 전체 크기로만 바뀐 것을 알아챔.
+    private static String ifRangeValidator(ResponseHeader h) {
+        String etag = h.get("ETag");
+        if (etag != null && !etag.startsWith("W/"))
+            return etag;
+        return h.get("Last-Modified");
+    }
+
+    private void work(Segment own, String target, List<String> extra, FileChannel channel, long length) {
+        Segment seg = own;
+        long chunk = MIN_CHUNK;
+        while (failure == null) {
+            long from;
+            long to;
+            synchronized (this) {
+                if (seg.remaining() <= 0) {
+                    seg = steal();
+                    if (seg == null)
+                        return;
+                }
+                from = seg.next;
+                to = Math.min(seg.end, from + chunk);
+                seg.next = to;
+            }
+            try {
+                fetch(target, extra, channel, from, to, length);
+                chunk = Math.min(MAX_CHUNK, chunk * 2);
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+        }
+    }
+
+    // 가장 많이 남은 구간의 뒤쪽 절반을 떼어 새 구간으로 만듦. 나눌 것이 없으면 null.
+    private Segment steal() {
+        Segment victim = null;
+        for (Segment s : segments) {
+            if (victim == null || s.remaining() > victim.remaining())
+                victim = s;
+        }
+        if (victim == null || victim.remaining() < 2 * MIN_SEGMENT)
+            return null;
+        long mid = victim.next + victim.remaining() / 2;
+        Segment taken = new Segment(mid, victim.end);
+        victim.end = mid;
+        segments.add(taken);
+        return taken;
+    }
+
+    // [from, to)를 받아 파일의 같은 위치에 씀. 실패하면 몇 번 다시 시도함.
+    private void fetch(String target, List<String> extra, FileChannel channel, long from, long to, long length)
+            throws IOException {
+        List<String> h = new ArrayList<>(extra);
+        h.add("Range: bytes=" + from + "-" + (to - 1));
+        String[] header = h.toArray(new String[0]);
+        IOException last = null;
+        for (int attempt = 0; attempt < MAX_RETRY; attempt++) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, from, to - from);
+            RegionOutputStream out = new RegionOutputStream(region);
+            HttpRequest get = request(target, Method.GET, header)
+                    .setResponseListener(r -> out.rejected = checkRange(r, from, to, length))
+                    .setOutput(out).build();
+            get.request();
+            // 다른 범위나 다른 크기의 파일이 옴. 다시 요청해도 같으므로 바로 실패.
+            if (out.rejected != null)
+                throw out.rejected;
+            if (get.getStatusCode() == 200)
+                throw new IOException("Server ignored the range or the file changed during download");
+            if (get.getFailure() == null && get.getStatusCode() == 206 && get.getBodyBytes() == to - from) {
+                received.addAndGet(to - from);
+                return;
+            }
+            last = get.getFailure() != null ? get.getFailure()
+                    : new IOException("Unexpected response for range " + from + "-" + (to - 1) + ": "
+                            + get.getStatusCode());
+        }
+        throw last;
+    }
+
+    // 206 응답의 Content-Range가 요청한 [from, to)와 전체 크기 length에 맞는지 봄. 맞지 않으면 그 오류.
+    private static IOException checkRange(ResponseHeader h, long from, long to, long length) {
+        if (h.getStatusCode() != 206)
+            return null;
+        String range = h.get("Content-Range");
+        String expected = "bytes " + from + "-" + (to - 1) + "/" + length;
+        if (range == null || !range.strip().equals(expected))
+            return new IOException("Unexpected Content-Range " + range + ", expected " + expected);
+        return null;
+    }
+
+    private static void report(PrintStream log, long bytes, int workers, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.printf(Locale.ROOT, "* Downloaded %d bytes in %.2fs (%.2f MB/s) using %d connection%s%n", bytes,
+                seconds, bytes / 1e6 / seconds, workers, workers == 1 ? "" : "s");
+    }
+
+    // mmap 한 영역에 바로 쓰는 스트림. 영역보다 많이 쓰거나 응답 헤더가 맞지 않으면 실패함.
+    private static final class RegionOutputStream extends OutputStream {
+        private final MappedByteBuffer region;
+        // 응답 헤더를 보고 정함. null이 아니면 한 바이트도 쓰지 않음.
+        volatile IOException rejected;
+
+        RegionOutputStream(MappedByteBuffer region) {
+            this.region = region;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (rejected != null)
+                throw rejected;
+            if (!region.hasRemaining())
+                throw new IOException("Server sent more than the requested range");
+            region.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (rejected != null)
+                throw rejected;
+            if (len > region.remaining())
+                throw new IOException("Server sent more than the requested range");
+            region.put(b, off, len);
+        }
+    }
+}
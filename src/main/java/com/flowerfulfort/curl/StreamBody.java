@@ -0,0 +1,120 @@
+package com.flowerfulfort.curl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+// 길이를 미리 알 수 없는 바디를 Transfer-Encoding: chunked로 흘려보냄(-d @file, -d @-).
+// 고정 크기 버퍼 하나로 읽어서 쓰므로 바디 전체를 메모리에 두지 않음.
+//
+// 파일은 보낼 때마다 다시 열므로 리디렉션 뒤에도 다시 보낼 수 있지만,
+// 표준 입력은 한 번만 읽을 수 있음.
+final class StreamBody implements RequestBody {
+    private final Path file;
+    // -d 처럼 CR, LF를 빼고 보냄. --data-binary는 그대로.
+    private final boolean stripNewlines;
+    private final boolean gzip;
+    private boolean consumed;
+
+    // file이 null이면 표준 입력.
+    StreamBody(Path file, boolean stripNewlines, boolean gzip) {
+        this.file = file;
+        this.stripNewlines = stripNewlines;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Connection conn) throws IOException {
+        ChunkedOutputStream chunked = new ChunkedOutputStream(conn.getOutputStream());
+        writeTo(chunked);
+        chunked.finish();
+    }
+
+    @Override
+    public void writeTo(OutputStream target) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(target, BodyInputStream.BUFFER_SIZE) : target;
+        byte[] buf = new byte[BodyInputStream.BUFFER_SIZE];
+        try (InputStream in = open()) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (stripNewlines)
+                    n = strip(buf, n);
+                if (n > 0)
+                    out.write(buf, 0, n);
+            }
+        }
+        if (out instanceof GZIPOutputStream g)
+            g.finish();
+    }
+
+    private InputStream open() throws IOException {
+        if (file != null)
+            return Files.newInputStream(file);
+        if (consumed)
+            throw new IOException("Cannot send the standard input body again");
+        consumed = true;
+        // System.in은 닫지 않음.
+        return new FilterInputStream(System.in) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // CR, LF를 빼고 앞으로 당김. 남은 길이를 반환.
+    private static int strip(byte[] buf, int n) {
+        int w = 0;
+        for (int r = 0; r < n; r++) {
+            byte b = buf[r];
+            if (b != '\r' && b != '\n')
+                buf[w++] = b;
+        }
+        return w;
+    }
+
+    // 쓰는 단위마다 chunk 하나로 감싸서 씀. finish()로 마지막 chunk를 씀.
+    private static final class ChunkedOutputStream extends OutputStream {
+        private static final byte[] CRLF = { '\r', '\n' };
+        private static final byte[] LAST = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        private final OutputStream out;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return;
+            out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(b, off, len);
+            out.write(CRLF);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        void finish() throws IOException {
+            out.write(LAST);
+        }
+    }
+}
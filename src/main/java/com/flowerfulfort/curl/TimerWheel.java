@@ -0,0 +1,102 @@
+package com.flowerfulfort.curl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 해시 타이머 휠. 이벤트 루프 스레드 하나에서만 사용하므로 동기화하지 않음.
+// 타임아웃 등록/취소가 O(1)이라 요청마다 타이머를 걸어도 부담이 적음.
+final class TimerWheel {
+    // 등록된 타임아웃 하나. cancel()은 표시만 하고 실제 제거는 해당 칸을 돌 때 함.
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final List<List<Timeout>> slots;
+    private final int mask;
+    private long currentTick;
+    private long startNanos;
+    private int pending;
+
+    TimerWheel(long tickNanos, int slotCount) {
+        if (Integer.bitCount(slotCount) != 1 || tickNanos <= 0)
+            throw new IllegalArgumentException();
+        this.tickNanos = tickNanos;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.mask = slotCount - 1;
+        this.startNanos = System.nanoTime();
+        this.currentTick = 0;
+    }
+
+    Timeout schedule(long delayNanos, Runnable task) {
+        long deadline = System.nanoTime() + Math.max(0, delayNanos);
+        Timeout t = new Timeout(task, deadline);
+        long tick = Math.max(currentTick, (deadline - startNanos + tickNanos - 1) / tickNanos);
+        t.rounds = (tick - currentTick) / slots.size();
+        slots.get((int) (tick & mask)).add(t);
+        pending++;
+        return t;
+    }
+
+    boolean isEmpty() {
+        return pending == 0;
+    }
+
+    // 다음 tick까지 남은 시간(ms). select()의 대기 시간으로 씀.
+    long millisUntilNextTick() {
+        long next = startNanos + (currentTick + 1) * tickNanos;
+        return Math.max(1, (next - System.nanoTime() + 999_999) / 1_000_000);
+    }
+
+    // 현재 시각까지의 tick을 돌며 만료된 타임아웃을 실행.
+    void advance() {
+        long now = System.nanoTime();
+        long targetTick = (now - startNanos) / tickNanos;
+        while (currentTick <= targetTick) {
+            List<Timeout> slot = slots.get((int) (currentTick & mask));
+            int keep = 0;
+            for (int i = 0; i < slot.size(); i++) {
+                Timeout t = slot.get(i);
+                if (t.cancelled) {
+                    pending--;
+                } else if (t.rounds > 0) {
+                    t.rounds--;
+                    slot.set(keep++, t);
+                } else if (t.deadline <= now) {
+                    pending--;
+                    t.cancelled = true;
+                    t.task.run();
+                } else {
+                    slot.set(keep++, t);
+                }
+            }
+            // task.run()이 이 칸에 새로 등록한 것도 위 반복에서 함께 처리됨.
+            int size = slot.size();
+            if (keep < size) {
+                slot.subList(keep, size).clear();
+            }
+            if (currentTick == targetTick)
+                break;
+            currentTick++;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+// https 연결의 TLS 설정. 이미 연결된 TCP 소켓 위에 SSLSocket을 얹어 핸드셰이크함.
+//
+// 모든 연결이 SSLContext 하나를 같이 쓰며, 그 클라이언트 세션 캐시는 host:port를 키로
+// 세션(TLS 1.3이면 서버가 준 세션 티켓)을 보관함. 같은 서버로 다시 연결하면 PSK로 세션을
+// 재개하므로 인증서 교환과 검증을 건너뜀.
+//
+// 인증서는 기본적으로 JDK의 신뢰 저장소로 검증하고 호스트 이름도 확인함.
+// --cacert로 다른 CA 묶음(PEM 또는 키스토어)을 쓰거나, -k로 검증을 끌 수 있음.
+final class Tls {
+    private static final int SESSION_CACHE_SIZE = 256;
+    // 세션을 재개할 수 있는 시간(초).
+    private static final int SESSION_TIMEOUT = 24 * 60 * 60;
+    // keytool과 JDK cacerts의 기본 암호.
+    private static final String DEFAULT_STORE_PASSWORD = "changeit";
+
+    private static final Tls SHARED = new Tls();
+
+    private boolean insecure;
+    private Path caCert;
+    private String[] applicationProtocols = { "http/1.1" };
+    // 설정이 바뀌면 다시 만듦.
+    private SSLSocketFactory factory;
+
+    static Tls shared() {
+        return SHARED;
+    }
+
+    // -k. 인증서와 호스트 이름을 확인하지 않음.
+    synchronized void setInsecure(boolean insecure) {
+        this.insecure = insecure;
+        factory = null;
+    }
+
+    // --cacert. JDK 기본 신뢰 저장소 대신 file의 CA 인증서들을 믿음.
+    synchronized void setCaCert(Path file) {
+        this.caCert = file;
+        factory = null;
+    }
+
+    // ALPN으로 제안할 프로토콜. 서버가 고른 것은 SSLSocket.getApplicationProtocol()로 확인.
+    synchronized void setApplicationProtocols(String... protocols) {
+        this.applicationProtocols = protocols.clone();
+    }
+
+    // 연결된 plain 소켓 위에서 핸드셰이크를 마친 SSLSocket을 돌려줌. 닫으면 plain도 닫힘.
+    SSLSocket handshake(Socket plain, String host, int port) throws IOException {
+        SSLSocketFactory f;
+        String[] protocols;
+        boolean verifyHost;
+        synchronized (this) {
+            f = factory();
+            protocols = applicationProtocols;
+            verifyHost = !insecure;
+        }
+        // host, port를 주어야 세션 캐시에서 재개할 세션을 찾고 SNI도 보냄.
+        SSLSocket ssl = (SSLSocket) f.createSocket(plain, host, port, true);
+        SSLParameters params = ssl.getSSLParameters();
+        if (verifyHost)
+            params.setEndpointIdentificationAlgorithm("HTTPS");
+        params.setApplicationProtocols(protocols);
+        ssl.setSSLParameters(params);
+        try {
+            ssl.startHandshake();
+        } catch (IOException e) {
+            ssl.close();
+            throw e;
+        }
+        return ssl;
+    }
+
+    private SSLSocketFactory factory() throws IOException {
+        if (factory == null) {
+            try {
+                SSLContext ctx = SSLContext.getInstance("TLS");
+                ctx.init(null, trustManagers(), null);
+                SSLSessionContext sessions = ctx.getClientSessionContext();
+                sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessions.setSessionTimeout(SESSION_TIMEOUT);
+                factory = ctx.getSocketFactory();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cannot initialize TLS: " + e.getMessage(), e);
+            }
+        }
+        return factory;
+    }
+
+    private TrustManager[] trustManagers() throws IOException, GeneralSecurityException {
+        if (insecure)
+            return new TrustManager[] { new TrustAll() };
+        if (caCert == null)
+            return null;
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(loadTrustStore(caCert));
+        return tmf.getTrustManagers();
+    }
+
+    // PEM 인증서 묶음이면 그 인증서들로, 아니면 PKCS12/JKS 키스토어로 읽음.
+    // keytool로 만든 PKCS12는 인증서도 암호로 감싸서 암호 없이 읽으면 비어 있으므로,
+    // 그때는 JDK 신뢰 저장소의 기본 암호로 한 번 더 읽음.
+    private static KeyStore loadTrustStore(Path file) throws IOException, GeneralSecurityException {
+        byte[] head = new byte[11];
+        try (InputStream in = Files.newInputStream(file)) {
+            in.readNBytes(head, 0, head.length);
+        }
+        if (!new String(head, StandardCharsets.US_ASCII).startsWith("-----BEGIN")) {
+            KeyStore ks = KeyStore.getInstance(file.toFile(), (char[]) null);
+            if (ks.size() == 0)
+                ks = KeyStore.getInstance(file.toFile(), DEFAULT_STORE_PASSWORD.toCharArray());
+            if (ks.size() == 0)
+                throw new IOException("No certificates in " + file);
+            return ks;
+        }
+        KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+        ks.load(null, null);
+        Collection<? extends Certificate> certs;
+        try (InputStream in = Files.newInputStream(file)) {
+            certs = CertificateFactory.getInstance("X.509").generateCertificates(in);
+        }
+        if (certs.isEmpty())
+            throw new IOException("No certificates in " + file);
+        int i = 0;
+        for (Certificate c : certs) {
+            ks.setCertificateEntry("ca" + i++, c);
+        }
+        return ks;
+    }
+
+    // -k 용. 어떤 인증서든 받아들임.
+    private static final class TrustAll extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
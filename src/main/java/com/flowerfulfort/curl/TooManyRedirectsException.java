@@ -0,0 +1,18 @@
+package com.flowerfulfort.curl;
+
+// 리디렉션을 정해진 횟수보다 많이 따라간 경우.
+public class TooManyRedirectsException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    private final String url;
+
+    public TooManyRedirectsException(String url, int redirects) {
+        super("Redirection loop detected: more than " + redirects + " redirects, last to " + url);
+        this.url = url;
+    }
+
+    // 마지막으로 리디렉션된 곳.
+    public String getUrl() {
+        return url;
+    }
+}
@@ -0,0 +1,183 @@
+package com.flowerfulfort.curl;
+
+import jdk.jfr.FlightRecorder;
+
+// request() 한 번 동안의 단계별 시각과 크기. -w 출력과 JFR 이벤트에 씀.
+// 시각은 System.nanoTime() 값이며, 밖으로는 시작부터의 경과 초로 내보냄.
+// 리디렉션을 따라가면 각 단계 시각은 마지막 요청의 것이고, 그 전까지 걸린 시간은 redirect에 남음.
+final class TransferStats {
+    private long start;
+    private long redirect;
+    private long lookup;
+    private long connect;
+    private long appconnect;
+    private long pretransfer;
+    private long posttransfer;
+    private long starttransfer;
+    private long end;
+
+    private int exchanges;
+    private int numConnects;
+    private String remoteIp;
+    private int remotePort;
+
+    private long sizeRequest;
+    private long sizeUpload;
+    private long sizeHeader;
+    private long sizeDownload;
+    private String contentType;
+
+    // JFR이 켜져 있을 때만 이벤트 객체를 만듦. 이벤트 클래스를 처음 읽으면 JFR 전체가 초기화되어
+    // 기록하지 않을 때도 실행마다 수백 ms가 더 걸림.
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    void reset(long now) {
+        start = now;
+        redirect = lookup = connect = appconnect = pretransfer = posttransfer = starttransfer = end = 0;
+        exchanges = numConnects = remotePort = 0;
+        remoteIp = "";
+        sizeRequest = sizeUpload = sizeHeader = sizeDownload = 0;
+        contentType = null;
+    }
+
+    // 요청 하나(리디렉션의 한 단계)를 시작함.
+    void beginExchange(long now) {
+        if (exchanges > 0)
+            redirect = now;
+        exchanges++;
+        lookup = connect = appconnect = pretransfer = posttransfer = starttransfer = 0;
+    }
+
+    // 연결을 얻음. 새 연결이면 acquired에서 핸드셰이크, TCP 연결에 걸린 시간을 거슬러 각 단계의 시각을 정함.
+    void connected(Connection conn, long acquired) {
+        connected(conn, conn.isReused(), acquired);
+    }
+
+    // reused는 이미 다른 요청에 쓴 연결인지. HTTP/2는 연결이 아니라 스트림마다 정함.
+    void connected(Connection conn, boolean reused, long acquired) {
+        if (reused) {
+            lookup = acquired;
+            connect = acquired;
+            appconnect = conn.isSecure() ? acquired : 0;
+        } else {
+            numConnects++;
+            appconnect = conn.isSecure() ? acquired : 0;
+            connect = acquired - conn.getHandshakeNanos();
+            lookup = connect - conn.getConnectNanos();
+        }
+        remoteIp = conn.getInetAddress() != null ? conn.getInetAddress().getHostAddress() : "";
+        remotePort = conn.getPort();
+    }
+
+    void requestStarted(long now, long requestBytes, long uploadBytes) {
+        pretransfer = now;
+        sizeRequest += requestBytes;
+        sizeUpload += uploadBytes;
+    }
+
+    void requestSent(long now) {
+        posttransfer = now;
+    }
+
+    void responseStarted(long now, int headerBytes) {
+        starttransfer = now;
+        sizeHeader += headerBytes;
+    }
+
+    void finished(long now, long bodyBytes, String contentType) {
+        end = now;
+        sizeDownload = bodyBytes;
+        this.contentType = contentType;
+    }
+
+    // 실패했을 때도 total은 남김.
+    void failed(long now) {
+        end = now;
+    }
+
+    private double seconds(long mark) {
+        return mark == 0 ? 0 : (mark - start) / 1e9;
+    }
+
+    double timeNamelookup() {
+        return seconds(lookup);
+    }
+
+    double timeConnect() {
+        return seconds(connect);
+    }
+
+    // TLS 핸드셰이크가 끝난 시각. https가 아니면 curl처럼 0.
+    double timeAppconnect() {
+        return seconds(appconnect);
+    }
+
+    double timePretransfer() {
+        return seconds(pretransfer);
+    }
+
+    double timePosttransfer() {
+        return seconds(posttransfer);
+    }
+
+    double timeStarttransfer() {
+        return seconds(starttransfer);
+    }
+
+    double timeRedirect() {
+        return seconds(redirect);
+    }
+
+    double timeTotal() {
+        return seconds(end);
+    }
+
+    int numConnects() {
+        return numConnects;
+    }
+
+    int numRedirects() {
+        return Math.max(0, exchanges - 1);
+    }
+
+    String remoteIp() {
+        return remoteIp;
+    }
+
+    int remotePort() {
+        return remotePort;
+    }
+
+    long sizeRequest() {
+        return sizeRequest;
+    }
+
+    long sizeUpload() {
+        return sizeUpload;
+    }
+
+    long sizeHeader() {
+        return sizeHeader;
+    }
+
+    long sizeDownload() {
+        return sizeDownload;
+    }
+
+    String contentType() {
+        return contentType;
+    }
+
+    // 바이트/초. 시간이 0이면 0.
+    long speedDownload() {
+        double t = timeTotal();
+        return t > 0 ? (long) (sizeDownload / t) : 0;
+    }
+
+    long speedUpload() {
+        double t = timeTotal();
+        return t > 0 ? (long) (sizeUpload / t) : 0;
+    }
+}
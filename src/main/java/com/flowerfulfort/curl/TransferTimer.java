@@ -0,0 +1,109 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// --max-time. 요청 하나(리디렉션 포함)에 걸리는 전체 시간을 제한함.
+// 시간이 다 되면 쓰고 있는 연결(HTTP/2면 스트림)을 닫아 블록된 읽기/쓰기를 깨우고,
+// 아직 연결 중이면 요청한 스레드를 interrupt해서 Connector의 대기를 끝냄.
+// 연결된 동안에는 interrupt하지 않으므로 -o 파일의 FileChannel이 interrupt로 닫히는 일은 없음.
+final class TransferTimer {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "scurl-max-time");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Thread owner;
+    private final long start = System.nanoTime();
+    private final ScheduledFuture<?> task;
+
+    // 아래는 this로 보호.
+    private Connection conn;
+    private Http2Stream stream;
+    private boolean expired;
+    private boolean finished;
+
+    private TransferTimer(long limitNanos) {
+        this.owner = Thread.currentThread();
+        this.task = SCHEDULER.schedule(this::expire, limitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 지금 스레드의 요청에 limitNanos 제한을 걺.
+    static TransferTimer start(long limitNanos) {
+        return new TransferTimer(limitNanos);
+    }
+
+    // 요청을 보낼 연결. 이미 시간이 지났으면 바로 닫음.
+    synchronized void attach(Connection conn) {
+        this.conn = conn;
+        this.stream = null;
+        if (expired) {
+            Thread.interrupted();
+            conn.close();
+        }
+    }
+
+    synchronized void attach(Http2Stream stream) {
+        this.conn = null;
+        this.stream = stream;
+        if (expired) {
+            Thread.interrupted();
+            stream.abort(timeout());
+        }
+    }
+
+    // 교환 하나가 끝나 연결을 풀에 돌려줌. 이후로는 닫지 않음.
+    synchronized void detach() {
+        conn = null;
+        stream = null;
+    }
+
+    // 시간이 지났으면 새 교환을 시작하지 않음.
+    synchronized void check() throws SocketTimeoutException {
+        if (expired)
+            throw timeout();
+    }
+
+    synchronized boolean isExpired() {
+        return expired;
+    }
+
+    SocketTimeoutException timeout() {
+        return new SocketTimeoutException("Operation timed out after "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " milliseconds");
+    }
+
+    // 요청이 끝남. 늦게 온 interrupt가 남지 않도록 지움.
+    void finish() {
+        task.cancel(false);
+        synchronized (this) {
+            finished = true;
+            conn = null;
+            stream = null;
+        }
+        Thread.interrupted();
+    }
+
+    private synchronized void expire() {
+        if (finished)
+            return;
+        expired = true;
+        if (stream != null) {
+            stream.abort(timeout());
+        } else if (conn != null) {
+            conn.close();
+        } else {
+            owner.interrupt();
+        }
+    }
+
+    // 시간이 지나 생긴 실패면 시간 초과로 바꿔서 돌려줌.
+    IOException translate(IOException e) {
+        return isExpired() && !(e instanceof SocketTimeoutException) ? timeout() : e;
+    }
+}
@@ -0,0 +1,149 @@
+package com.flowerfulfort.curl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.StringTokenizer;
+
+// http(s)://host[:port]/path 를 나눈 것. 만들어진 뒤에는 바뀌지 않음.
+final class Url {
+    final String scheme;
+    final String host;
+    final int port;
+    // 요청줄에 쓰는 경로(쿼리 포함). 없으면 "/".
+    final String path;
+
+    private Url(String scheme, String host, int port, String path) {
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+    }
+
+    // http, https 가 아니거나 포트가 잘못되면 IllegalArgumentException.
+    static Url parse(String url) {
+        StringTokenizer stoken = new StringTokenizer(url, "/");
+        if (!stoken.hasMoreTokens())
+            throw new IllegalArgumentException("Invalid URL: " + url);
+        /* http(s): 를 먼저 떼어냄. */
+        String httpProto = stoken.nextToken();
+        int defaultPort = switch (httpProto) {
+            case "http:" -> 80;
+            case "https:" -> 443;
+            default -> throw new IllegalArgumentException("Unsupported protocol: " + url);
+        };
+        if (!stoken.hasMoreTokens())
+            throw new IllegalArgumentException("Invalid URL: " + url);
+
+        /* www.example.com:8080 */
+        String authority = stoken.nextToken();
+        String host;
+        int port;
+        int colon = authority.indexOf(':');
+        if (colon >= 0) { // 포트번호가 명시가 되어 있는 경우.
+            host = authority.substring(0, colon);
+            port = parsePort(authority.substring(colon + 1), url);
+        } else { // 프로토콜에 따른 기본 포트.
+            host = authority;
+            port = defaultPort;
+        }
+        // authority 뒤는 그대로 씀. 끝의 /도 경로의 일부이고, #부터는 서버에 보내지 않음.
+        String path = url.substring(url.indexOf(authority, httpProto.length()) + authority.length());
+        int hash = path.indexOf('#');
+        if (hash >= 0)
+            path = path.substring(0, hash);
+        if (!path.startsWith("/"))
+            path = "/" + path;
+        return new Url(httpProto.substring(0, httpProto.length() - 1), host, port, path);
+    }
+
+    private static int parsePort(String s, String url) {
+        int port = -1;
+        if (!s.isEmpty() && s.length() <= 5 && s.chars().allMatch(c -> c >= '0' && c <= '9'))
+            port = Integer.parseInt(s);
+        if (port < 1 || port > 65535)
+            throw new IllegalArgumentException("Invalid port: " + url);
+        return port;
+    }
+
+    boolean isSecure() {
+        return scheme.equals("https");
+    }
+
+    // Location 헤더가 가리키는 곳(RFC 3986 5.2). 상대 참조는 이 URL을 기준으로 풂.
+    // 서버가 보낸 값이므로 해석할 수 없으면 MalformedResponseException.
+    Url resolve(String location) throws MalformedResponseException {
+        try {
+            if (hasScheme(location))
+                return parse(location);
+            if (location.startsWith("//"))
+                return parse(scheme + ":" + location);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedResponseException("Invalid Location: " + e.getMessage());
+        }
+        int hash = location.indexOf('#');
+        String ref = hash >= 0 ? location.substring(0, hash) : location;
+        int q = path.indexOf('?');
+        String base = q >= 0 ? path.substring(0, q) : path;
+        String next;
+        if (ref.isEmpty()) {
+            next = path;
+        } else if (ref.startsWith("?")) {
+            next = base + ref;
+        } else if (ref.startsWith("/")) {
+            next = removeDots(ref);
+        } else { // 현재 경로의 마지막 / 뒤를 바꿈.
+            next = removeDots(base.substring(0, base.lastIndexOf('/') + 1) + ref);
+        }
+        if (next.chars().anyMatch(c -> c <= ' ' || c == 0x7f))
+            throw new MalformedResponseException("Invalid Location: " + location);
+        return new Url(scheme, host, port, next);
+    }
+
+    // "http:", "mailto:"처럼 scheme으로 시작하는지.
+    private static boolean hasScheme(String ref) {
+        int colon = ref.indexOf(':');
+        if (colon <= 0 || !Character.isLetter(ref.charAt(0)))
+            return false;
+        for (int i = 1; i < colon; i++) {
+            char c = ref.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.')
+                return false;
+        }
+        return true;
+    }
+
+    // 경로의 ., .. 세그먼트를 없앰. 쿼리는 그대로 둠.
+    private static String removeDots(String ref) {
+        int q = ref.indexOf('?');
+        String p = q >= 0 ? ref.substring(0, q) : ref;
+        if (!p.contains("/."))
+            return ref;
+        Deque<String> out = new ArrayDeque<>();
+        String[] segments = p.substring(1).split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String seg = segments[i];
+            boolean last = i == segments.length - 1;
+            if (seg.equals("..")) {
+                out.pollLast();
+                if (last)
+                    out.add("");
+            } else if (seg.equals(".")) {
+                if (last)
+                    out.add("");
+            } else {
+                out.add(seg);
+            }
+        }
+        return "/" + String.join("/", out) + (q >= 0 ? ref.substring(q) : "");
+    }
+
+    // Host 헤더의 값. 기본 포트가 아니면 포트를 붙임.
+    String authority() {
+        return port == (isSecure() ? 443 : 80) ? host : host + ":" + port;
+    }
+
+    @Override
+    public String toString() {
+        return scheme + "://" + authority() + path;
+    }
+}
@@ -0,0 +1,106 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// curl의 -w/--write-out. 요청이 끝난 뒤 %{변수}를 채운 문자열을 출력함.
+// %{time_*}는 요청을 시작한 시각부터의 초, %{size_*}는 바이트, %{speed_*}는 바이트/초.
+// \n, \r, \t 와 %% 를 해석하며, 모르는 변수는 경고를 출력하고 빈 문자열로 둠.
+final class WriteOut {
+    private WriteOut() {
+    }
+
+    // -w 인자. @파일 이면 파일 내용을, @- 이면 표준 입력을 형식으로 씀.
+    static String template(String arg) throws IOException {
+        if (!arg.startsWith("@"))
+            return arg;
+        String file = arg.substring(1);
+        if (file.equals("-"))
+            return new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+        return Files.readString(Path.of(file), StandardCharsets.UTF_8);
+    }
+
+    static String format(String template, HttpRequest request) {
+        StringBuilder sb = new StringBuilder(template.length() + 64);
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '%' && i + 1 < template.length()) {
+                char n = template.charAt(i + 1);
+                if (n == '%') {
+                    sb.append('%');
+                    i += 2;
+                    continue;
+                }
+                int close = n == '{' ? template.indexOf('}', i + 2) : -1;
+                if (close > 0) {
+                    String name = template.substring(i + 2, close);
+                    String value = variable(name, request);
+                    if (value == null) {
+                        System.err.printf("scurl: unknown --write-out variable: '%s'%n", name);
+                    } else {
+                        sb.append(value);
+                    }
+                    i = close + 1;
+                    continue;
+                }
+            } else if (c == '\\' && i + 1 < template.length()) {
+                char n = template.charAt(i + 1);
+                String escaped = switch (n) {
+                    case 'n' -> "\n";
+                    case 'r' -> "\r";
+                    case 't' -> "\t";
+                    case '\\' -> "\\";
+                    default -> null;
+                };
+                if (escaped != null) {
+                    sb.append(escaped);
+                    i += 2;
+                    continue;
+                }
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    // 변수의 값. 모르는 변수면 null.
+    private static String variable(String name, HttpRequest request) {
+        TransferStats s = request.getStats();
+        return switch (name) {
+            case "time_namelookup" -> seconds(s.timeNamelookup());
+            case "time_connect" -> seconds(s.timeConnect());
+            case "time_appconnect" -> seconds(s.timeAppconnect());
+            case "time_pretransfer" -> seconds(s.timePretransfer());
+            case "time_posttransfer" -> seconds(s.timePosttransfer());
+            case "time_starttransfer" -> seconds(s.timeStarttransfer());
+            case "time_redirect" -> seconds(s.timeRedirect());
+            case "time_total" -> seconds(s.timeTotal());
+            case "size_download" -> String.valueOf(s.sizeDownload());
+            case "size_upload" -> String.valueOf(s.sizeUpload());
+            case "size_header" -> String.valueOf(s.sizeHeader());
+            case "size_request" -> String.valueOf(s.sizeRequest());
+            case "speed_download" -> String.valueOf(s.speedDownload());
+            case "speed_upload" -> String.valueOf(s.speedUpload());
+            case "http_code", "response_code" -> String.format(Locale.ROOT, "%03d", request.getStatusCode());
+            case "num_connects" -> String.valueOf(s.numConnects());
+            case "num_redirects" -> String.valueOf(s.numRedirects());
+            case "remote_ip" -> s.remoteIp();
+            case "remote_port" -> s.remotePort() > 0 ? String.valueOf(s.remotePort()) : "";
+            case "content_type" -> s.contentType() != null ? s.contentType() : "";
+            case "url_effective" -> request.getEffectiveUrl();
+            case "method" -> request.getMethod().name();
+            case "errormsg" -> request.getFailure() != null ? String.valueOf(request.getFailure().getMessage()) : "";
+            default -> null;
+        };
+    }
+
+    // curl과 같이 소수점 아래 여섯 자리.
+    private static String seconds(double s) {
+        return String.format(Locale.ROOT, "%.6f", s);
+    }
+}
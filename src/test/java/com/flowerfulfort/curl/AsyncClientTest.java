@@ -0,0 +1,166 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class AsyncClientTest {
+    private static TestServer server;
+    private static final byte[] BIG = new byte[2 << 20];
+
+    @BeforeAll
+    static void start() throws IOException {
+        for (int i = 0; i < BIG.length; i++)
+            BIG[i] = (byte) i;
+        server = TestServer.http()
+                .handle("/n/", ex -> TestServer.send(ex, 200, ex.getRequestURI().getPath().substring(3)))
+                .handle("/big", ex -> TestServer.send(ex, 200, BIG))
+                .handle("/chunked", ex -> {
+                    ex.sendResponseHeaders(200, 0);
+                    try (OutputStream out = ex.getResponseBody()) {
+                        for (int i = 0; i < BIG.length; i += 8192)
+                            out.write(BIG, i, 8192);
+                    }
+                })
+                .handle("/gzip", ex -> {
+                    ex.getResponseHeaders().set("Content-Encoding", "gzip");
+                    ex.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new GZIPOutputStream(ex.getResponseBody())) {
+                        out.write(new byte[4 << 20]);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    private static Throwable failure(CompletableFuture<Response> f) {
+        return assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS)).getCause();
+    }
+
+    // 같은 Request 객체를 여러 번 보내도 되고, 응답이 끝난 연결은 다시 씀.
+    @Test
+    void concurrentSendsShareConnections() throws Exception {
+        try (AsyncClient client = AsyncClient.builder().setEventLoops(2).build()) {
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+                futures.add(client.send(Request.builder().setUrl(server.url("/n/" + i)).build()));
+            for (int i = 0; i < futures.size(); i++) {
+                try (Response res = futures.get(i).get(10, TimeUnit.SECONDS)) {
+                    assertEquals(200, res.statusCode());
+                    assertEquals(String.valueOf(i), new String(res.bodyAsBytes()));
+                }
+            }
+            Request same = Request.builder().setUrl(server.url("/n/x")).build();
+            int before = server.connections();
+            for (int i = 0; i < 20; i++) {
+                try (Response res = client.send(same).get(10, TimeUnit.SECONDS)) {
+                    assertEquals("x", new String(res.bodyAsBytes()));
+                }
+            }
+            assertTrue(server.connections() - before <= 2, "connections: " + (server.connections() - before));
+        }
+    }
+
+    @Test
+    void largeBodiesWithinLimit() throws Exception {
+        try (AsyncClient client = AsyncClient.builder().build()) {
+            for (String path : new String[] { "/big", "/chunked" }) {
+                try (Response res = client.send(Request.builder().setUrl(server.url(path)).build())
+                        .get(10, TimeUnit.SECONDS)) {
+                    assertArrayEquals(BIG, res.bodyAsBytes(), path);
+                }
+            }
+        }
+    }
+
+    @Test
+    void bodyOverLimitFails() throws Exception {
+        try (AsyncClient client = AsyncClient.builder().setMaxResponseSize(1 << 20).build()) {
+            for (String path : new String[] { "/big", "/chunked" }) {
+                Throwable e = failure(client.send(Request.builder().setUrl(server.url(path)).build()));
+                assertTrue(e.getMessage().contains("exceeds"), path + ": " + e);
+            }
+            // 압축을 푼 크기도 제한함.
+            Throwable e = failure(client.send(Request.builder().setUrl(server.url("/gzip")).setCompressed().build()));
+            assertTrue(e.getMessage().contains("exceeds"), e.toString());
+            // 실패한 뒤에도 루프는 계속 돎.
+            try (Response res = client.send(Request.builder().setUrl(server.url("/n/ok")).build())
+                    .get(10, TimeUnit.SECONDS)) {
+                assertEquals("ok", new String(res.bodyAsBytes()));
+            }
+        }
+    }
+
+    // 요청을 읽기만 하고 답하지 않는 서버.
+    @Test
+    void readTimeout() throws Exception {
+        try (ServerSocket ss = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+                AsyncClient client = AsyncClient.builder().setReadTimeout(300).build()) {
+            Thread t = new Thread(() -> {
+                try (Socket s = ss.accept()) {
+                    s.getInputStream().read(new byte[1024]);
+                    Thread.sleep(5000);
+                } catch (IOException | InterruptedException e) {
+                    // 테스트가 끝나면 닫힘.
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            long start = System.nanoTime();
+            Throwable e = failure(client.send(Request.builder()
+                    .setUrl("http://127.0.0.1:" + ss.getLocalPort() + "/").build()));
+            assertInstanceOf(SocketTimeoutException.class, e);
+            assertEquals("Read timed out", e.getMessage());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        }
+    }
+
+    // 연결은 받지만 읽지 않는 서버. 요청이 송수신 버퍼를 다 채우면 멈춤.
+    @Test
+    void writeTimeout() throws Exception {
+        try (ServerSocket ss = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+                AsyncClient client = AsyncClient.builder().setWriteTimeout(300).setReadTimeout(60_000).build()) {
+            Thread t = new Thread(() -> {
+                try {
+                    // 읽지 않고 붙잡아 두기만 함.
+                    Socket s = ss.accept();
+                    try {
+                        Thread.sleep(10_000);
+                    } finally {
+                        s.close();
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // 테스트가 끝나면 닫힘.
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            Throwable e = failure(client.send(Request.builder().setMethod(Method.POST)
+                    .setUrl("http://127.0.0.1:" + ss.getLocalPort() + "/").setBody(new byte[64 << 20]).build()));
+            assertInstanceOf(SocketTimeoutException.class, e);
+            assertEquals("Write timed out", e.getMessage());
+        }
+    }
+}
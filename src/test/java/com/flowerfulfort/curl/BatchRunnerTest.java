@@ -0,0 +1,203 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunnerTest {
+    private static TestServer server;
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger maxActive = new AtomicInteger();
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = TestServer.http()
+                .handle("/hello", ex -> TestServer.send(ex, 200, "hello\n"))
+                .handle("/slow", ex -> {
+                    int n = active.incrementAndGet();
+                    maxActive.accumulateAndGet(n, Math::max);
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                    TestServer.send(ex, 200, "slow\n");
+                })
+                .handle("/bad-redirect", ex -> {
+                    ex.getResponseHeaders().set("Location", "httpz://example.com/");
+                    TestServer.send(ex, 302, "");
+                })
+                .handle("/bad-port", ex -> {
+                    ex.getResponseHeaders().set("Location", "http://localhost:abc/");
+                    TestServer.send(ex, 302, "");
+                });
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    // 결과 줄만 NDJSON으로 나오고 표준 출력에는 아무것도 새지 않아야 함.
+    private List<String> run(BatchRunner runner, String... lines) throws Exception {
+        Path input = dir.resolve("batch.txt");
+        Files.write(input, List.of(lines));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ByteArrayOutputStream leaked = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(leaked, true, StandardCharsets.UTF_8));
+        try {
+            runner.run(input.toString(), new PrintStream(result, true, StandardCharsets.UTF_8));
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals("", leaked.toString(StandardCharsets.UTF_8));
+        List<String> out = new ArrayList<>();
+        for (String line : result.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty())
+                out.add(line);
+        }
+        return out;
+    }
+
+    @Test
+    void verboseLineIsRejectedWithoutCorruptingOutput() throws Exception {
+        List<String> out = run(new BatchRunner(4, 2, true, 0),
+                server.url("/hello"),
+                "-v " + server.url("/hello"),
+                server.url("/hello"));
+        assertEquals(3, out.size());
+        assertTrue(out.get(0).startsWith("{\"index\":0,") && out.get(0).contains("\"status\":200"), out.get(0));
+        assertTrue(out.get(1).startsWith("{\"index\":1,") && out.get(1).contains("-v is not allowed"), out.get(1));
+        assertTrue(out.get(2).startsWith("{\"index\":2,") && out.get(2).contains("\"status\":200"), out.get(2));
+    }
+
+    @Test
+    void unknownOptionBecomesErrorLine() throws Exception {
+        List<String> out = run(new BatchRunner(4, 2, true, 0), "-w %{http_code} " + server.url("/hello"));
+        assertEquals(1, out.size());
+        assertTrue(out.get(0).contains("\"status\":0,\"error\":"), out.get(0));
+    }
+
+    @Test
+    void badNumericOptionBecomesErrorLine() throws Exception {
+        List<String> out = run(new BatchRunner(4, 2, true, 0),
+                "-m x " + server.url("/hello"),
+                "-X FETCH " + server.url("/hello"),
+                "-m 5 " + server.url("/hello"));
+        assertOrdered(out, 3);
+        assertTrue(out.get(0).contains("Invalid value for -m: x"), out.get(0));
+        assertTrue(out.get(1).contains("Invalid value for -X: FETCH"), out.get(1));
+        assertTrue(out.get(2).contains("\"status\":200"), out.get(2));
+    }
+
+    private static void assertOrdered(List<String> out, int count) {
+        assertEquals(count, out.size(), out.toString());
+        for (int i = 0; i < count; i++)
+            assertTrue(out.get(i).startsWith("{\"index\":" + i + ","), out.get(i));
+    }
+
+    @Test
+    void pipelinedBatchHonoursParallelLimits() throws Exception {
+        String[] lines = new String[24];
+        Arrays.fill(lines, server.url("/slow"));
+        maxActive.set(0);
+        List<String> out = run(new BatchRunner(8, 2, true, 4), lines);
+        assertOrdered(out, lines.length);
+        assertTrue(out.stream().allMatch(l -> l.contains("\"status\":200")), out.toString());
+        assertTrue(maxActive.get() <= 2, "per host: " + maxActive.get());
+
+        maxActive.set(0);
+        out = run(new BatchRunner(3, 10, true, 1), lines);
+        assertOrdered(out, lines.length);
+        assertTrue(maxActive.get() <= 3, "parallel: " + maxActive.get());
+    }
+
+    // 입력이 끝나기 전에도 읽은 줄의 결과가 나와야 함.
+    @Test
+    void pipelinedBatchStreamsInput() throws Exception {
+        PipedOutputStream feed = new PipedOutputStream();
+        InputStream stdin = System.in;
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        System.setIn(new PipedInputStream(feed));
+        Thread runner = new Thread(() -> {
+            try {
+                new BatchRunner(4, 2, true, 4).run("-", new PrintStream(result, true, StandardCharsets.UTF_8));
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            runner.start();
+            feed.write((server.url("/hello") + "\n" + server.url("/hello") + "\n").getBytes(StandardCharsets.UTF_8));
+            feed.flush();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (result.toString(StandardCharsets.UTF_8).split("\n").length < 2 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertTrue(runner.isAlive());
+            assertEquals(2, result.toString(StandardCharsets.UTF_8).split("\n").length);
+            feed.write((server.url("/hello") + "\n").getBytes(StandardCharsets.UTF_8));
+            feed.close();
+            runner.join(10_000);
+        } finally {
+            System.setIn(stdin);
+        }
+        assertOrdered(List.of(result.toString(StandardCharsets.UTF_8).split("\n")), 3);
+    }
+
+    // Pipeline.run이 예외로 끝나도 묶음의 모든 순번에 줄이 나와 ordered 출력이 멈추지 않음.
+    @Test
+    void failedPipelineEmitsEveryIndex() throws Exception {
+        List<String> out = run(new BatchRunner(8, 1, true, 4),
+                "-L " + server.url("/bad-redirect"),
+                server.url("/hello"),
+                server.url("/hello"),
+                server.url("/hello"),
+                server.url("/hello"));
+        assertOrdered(out, 5);
+        assertTrue(out.get(0).contains("Unsupported protocol"), out.get(0));
+        assertTrue(out.get(4).contains("\"status\":200"), out.get(4));
+    }
+
+    // 요청이 실패해도 그 순번에 오류 줄이 나와 뒤의 결과가 막히지 않음.
+    @Test
+    void failedRequestEmitsErrorLine() throws Exception {
+        List<String> out = run(new BatchRunner(4, 2, true, 0),
+                server.url("/hello"),
+                "-L " + server.url("/bad-port"),
+                server.url("/hello"),
+                server.url("/hello"));
+        assertOrdered(out, 4);
+        assertTrue(out.get(1).contains("\"error\":") && out.get(1).contains("Invalid Location"), out.get(1));
+        assertTrue(out.get(3).contains("\"status\":200"), out.get(3));
+    }
+
+    @Test
+    void tokenizeHonoursQuotes() {
+        assertEquals(List.of("-H", "X-A: b c", "u"), List.of(BatchRunner.tokenize("-H 'X-A: b c' u")));
+        assertEquals(List.of("a\"b", "c d"), List.of(BatchRunner.tokenize("\"a\\\"b\" c\\ d")));
+    }
+}
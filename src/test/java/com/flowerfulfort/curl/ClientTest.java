@@ -0,0 +1,179 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClientTest {
+    private static final int SIZE = 3 << 20;
+    private static TestServer server;
+    private static Client client;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() throws IOException {
+        // /redirect/<code>는 code로 /target에 보냄. /target은 받은 메소드, Content-Type, 바디 길이를 돌려줌.
+        server = TestServer.http()
+                .handle("/redirect/", ex -> {
+                    TestServer.readBody(ex);
+                    int code = Integer.parseInt(ex.getRequestURI().getPath().substring(10));
+                    ex.getResponseHeaders().set("Location", "/target");
+                    TestServer.send(ex, code, "");
+                })
+                .handle("/target", ex -> {
+                    byte[] body = TestServer.readBody(ex);
+                    TestServer.send(ex, 200, ex.getRequestMethod() + " "
+                            + ex.getRequestHeaders().getFirst("Content-Type") + " " + body.length);
+                })
+                .handle("/echo/", ex -> TestServer.send(ex, 200, ex.getRequestURI().getPath().substring(6)))
+                .handle("/rel/", ex -> {
+                    // ?to=<Location>이면 그곳으로 보내고, 아니면 받은 경로와 쿼리를 돌려줌.
+                    String query = ex.getRequestURI().getRawQuery();
+                    if (query != null && query.startsWith("to=")) {
+                        ex.getResponseHeaders().set("Location",
+                                URLDecoder.decode(query.substring(3), StandardCharsets.UTF_8));
+                        TestServer.send(ex, 302, "");
+                    } else {
+                        TestServer.send(ex, 200, ex.getRequestURI().toString());
+                    }
+                })
+                .handle("/loop", ex -> {
+                    ex.getResponseHeaders().set("Location", "/loop");
+                    TestServer.send(ex, 302, "");
+                });
+        client = Client.builder().setMaxIdlePerHost(16).build();
+    }
+
+    @AfterAll
+    static void stop() {
+        client.close();
+        server.close();
+    }
+
+    private static String body(Response res) throws IOException {
+        try (res) {
+            return new String(res.bodyAsBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String follow(Method method, int code) throws IOException {
+        Request request = Request.builder().setMethod(method).setUrl(server.url("/redirect/" + code))
+                .setBody("a=1&b=2").setRedirect().build();
+        return body(client.send(request));
+    }
+
+    // 303, 그리고 POST의 301, 302는 바디 없는 GET으로 따라감. 307, 308은 그대로 다시 보냄.
+    @Test
+    void redirectRewritesMethodLikeCurl() throws IOException {
+        assertEquals("GET null 0", follow(Method.POST, 303));
+        assertEquals("GET null 0", follow(Method.POST, 302));
+        assertEquals("GET null 0", follow(Method.POST, 301));
+        assertEquals("GET null 0", follow(Method.PUT, 303));
+        assertEquals("PUT application/x-www-form-urlencoded 7", follow(Method.PUT, 302));
+        assertEquals("POST application/x-www-form-urlencoded 7", follow(Method.POST, 307));
+        assertEquals("POST application/x-www-form-urlencoded 7", follow(Method.POST, 308));
+    }
+
+    @Test
+    void redirectDropsFileBody() throws IOException {
+        Path file = dir.resolve("body");
+        Files.write(file, new byte[SIZE]);
+        Request request = Request.builder().setUrl(server.url("/redirect/303")).setBody(file).setRedirect()
+                .build();
+        try (Response res = client.send(request)) {
+            assertEquals(server.url("/target"), res.url());
+            assertEquals("GET null 0", body(res));
+        }
+        request = Request.builder().setUrl(server.url("/redirect/307")).setBody(file).setRedirect().build();
+        assertEquals("POST application/x-www-form-urlencoded " + SIZE, body(client.send(request)));
+    }
+
+    @Test
+    void redirectIsNotFollowedWithoutFlag() throws IOException {
+        try (Response res = client.send(Request.builder().setUrl(server.url("/redirect/302")).build())) {
+            assertEquals(302, res.statusCode());
+            assertEquals("/target", res.header("Location"));
+        }
+    }
+
+    @Test
+    void redirectLoopIsBounded() {
+        TooManyRedirectsException e = assertThrows(TooManyRedirectsException.class,
+                () -> client.send(Request.builder().setUrl(server.url("/loop")).setRedirect().build()));
+        assertTrue(e.getMessage().contains("/loop"), e.getMessage());
+    }
+
+    private static String redirectTo(String path, String location) throws IOException {
+        String url = server.url(path) + "?to=" + URLEncoder.encode(location, StandardCharsets.UTF_8);
+        return body(client.send(Request.builder().setUrl(url).setRedirect().build()));
+    }
+
+    // 상대 Location은 현재 URL을 기준으로 풂.
+    @Test
+    void relativeLocationIsResolvedAgainstCurrentUrl() throws IOException {
+        assertEquals("/rel/a/next", redirectTo("/rel/a/page", "next"));
+        assertEquals("/rel/b", redirectTo("/rel/a/page", "../b"));
+        assertEquals("/rel/a/page?q=1", redirectTo("/rel/a/page", "?q=1"));
+        assertEquals("/rel/x?y=1", redirectTo("/rel/a/page", "/rel/x?y=1#frag"));
+    }
+
+    @Test
+    void malformedLocationIsTypedError() {
+        for (String location : new String[] { "http://localhost:abc/", "http://localhost:99999/", "ftp://x/",
+                "a b" }) {
+            MalformedResponseException e = assertThrows(MalformedResponseException.class,
+                    () -> redirectTo("/rel/page", location));
+            assertTrue(e.getMessage().startsWith("Invalid Location"), e.getMessage());
+        }
+    }
+
+    // 여러 스레드가 Client 하나로 동시에 보내도 응답이 섞이지 않고, 연결은 풀에서 다시 씀.
+    @Test
+    void concurrentSendsShareOneClient() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int before = server.connections();
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        String path = id + "-" + i;
+                        String got = body(client.send(Request.builder().setUrl(server.url("/echo/" + path)).build()));
+                        if (!got.equals(path))
+                            return "expected " + path + " but got " + got;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<String> f : futures)
+                assertNull(f.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        int opened = server.connections() - before;
+        assertTrue(opened <= threads, "connections: " + opened);
+    }
+}
@@ -0,0 +1,141 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// 루프백 주소로 Connector의 연결 경쟁을 확인함. 응답하지 않는 주소(블랙홀)는 받아 주지 않는
+// 리스너의 대기열을 채워서 흉내 냄. 대기열이 차면 리눅스는 새 SYN을 버리므로 연결이 끝나지 않음.
+class ConnectorTest {
+    private static final Duration LIMIT = Duration.ofSeconds(5);
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (AutoCloseable c : resources)
+            c.close();
+    }
+
+    private static InetAddress addr(String a) throws IOException {
+        return InetAddress.getByName(a);
+    }
+
+    // 아무도 듣지 않는 포트.
+    private static int closedPort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return s.getLocalPort();
+        }
+    }
+
+    private ServerSocket listen(InetAddress a, int port) throws IOException {
+        ServerSocket s = new ServerSocket(port, 50, a);
+        resources.add(s);
+        return s;
+    }
+
+    // a:port에 받아 주지 않는 리스너를 열고 대기열을 채움. 만들 수 없는 환경이면 테스트를 건너뜀.
+    private void blackhole(InetAddress a, int port) throws Exception {
+        ServerSocketChannel hole = ServerSocketChannel.open();
+        resources.add(hole);
+        hole.bind(new InetSocketAddress(a, port), 1);
+        for (int i = 0; i < 16; i++) {
+            SocketChannel ch = SocketChannel.open();
+            resources.add(ch);
+            ch.configureBlocking(false);
+            if (ch.connect(new InetSocketAddress(a, port)))
+                continue;
+            Thread.sleep(100);
+            if (!ch.finishConnect())
+                return;
+        }
+        assumeTrue(false, "listen backlog does not fill up here");
+    }
+
+    private static SocketChannel connect(Connector connector, int port, InetAddress... addresses) {
+        return assertTimeoutPreemptively(LIMIT, () -> connector.connect("test", addresses, port));
+    }
+
+    private static <T extends Throwable> T fails(Class<T> type, Connector connector, int port,
+            InetAddress... addresses) {
+        return assertTimeoutPreemptively(LIMIT,
+                () -> assertThrows(type, () -> connector.connect("test", addresses, port)));
+    }
+
+    // 모든 주소가 거절하면 기다리지 않고 거절을 알림.
+    @Test
+    void allRefusedFailsFast() throws IOException {
+        int port = closedPort();
+        InetAddress[] all = { addr("::1"), addr("127.0.0.1"), addr("127.0.0.2") };
+        fails(ConnectException.class, new Connector(), port, all);
+        Connector limited = new Connector();
+        limited.setConnectTimeout(60_000);
+        fails(ConnectException.class, limited, port, all);
+    }
+
+    // --connect-timeout이 있어도 거절은 시간 초과가 아님.
+    @Test
+    void refusedSingleAddressIsNotTimeout() throws IOException {
+        Connector connector = new Connector();
+        connector.setConnectTimeout(3_000);
+        long start = System.nanoTime();
+        fails(ConnectException.class, connector, closedPort(), addr("127.0.0.1"));
+        assertTrue(System.nanoTime() - start < 2_000_000_000L);
+    }
+
+    // 거절한 주소 뒤의 주소로 연결함.
+    @Test
+    void refusedAddressFallsThrough() throws Exception {
+        ServerSocket server = listen(addr("127.0.0.1"), 0);
+        try (SocketChannel ch = connect(new Connector(), server.getLocalPort(), addr("::1"), addr("127.0.0.1"))) {
+            assertEquals(addr("127.0.0.1"), ((InetSocketAddress) ch.getRemoteAddress()).getAddress());
+        }
+    }
+
+    // 첫 주소가 블랙홀이면 OS의 연결 시간 제한을 기다리지 않고 STAGGER 뒤에 다음 주소로 연결함.
+    @Test
+    void blackholedFirstAddressIsSkipped() throws Exception {
+        ServerSocket server = listen(addr("127.0.0.1"), 0);
+        int port = server.getLocalPort();
+        blackhole(addr("127.0.0.2"), port);
+        Connector connector = new Connector();
+        long start = System.nanoTime();
+        try (SocketChannel ch = connect(connector, port, addr("127.0.0.2"), addr("127.0.0.1"))) {
+            assertEquals(addr("127.0.0.1"), ((InetSocketAddress) ch.getRemoteAddress()).getAddress());
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsed >= Connector.STAGGER - 10 && elapsed < 2_000, "elapsed " + elapsed + " ms");
+    }
+
+    @Test
+    void blackholeTimesOut() throws Exception {
+        int port = closedPort();
+        blackhole(addr("127.0.0.2"), port);
+        Connector connector = new Connector();
+        connector.setConnectTimeout(500);
+        long start = System.nanoTime();
+        SocketTimeoutException e = fails(SocketTimeoutException.class, connector, port, addr("127.0.0.2"));
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsed >= 450 && elapsed < 2_000, "elapsed " + elapsed + " ms");
+        assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+        // 블랙홀 뒤에 거절하는 주소가 있어도 남은 블랙홀을 기다리다 시간 초과가 됨.
+        fails(SocketTimeoutException.class, connector, port, addr("127.0.0.2"), addr("127.0.0.1"));
+    }
+}
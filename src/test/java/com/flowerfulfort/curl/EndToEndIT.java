@@ -0,0 +1,356 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+
+// scurl 명령(Main)을 별도 프로세스로 띄워 루프백 서버에 실제로 요청해 봄. mvn verify(failsafe)에서 돎.
+// HTTP/1.1의 Content-Length, chunked, 연결 종료로 끝나는 바디, POST, multipart, -T, -L과
+// --compressed, -C, --cache, https(--cacert, -k), h2c(prior knowledge, Upgrade)를 다룸.
+class EndToEndIT {
+    private static final int LARGE = 8 << 20;
+
+    @TempDir
+    static Path certDir;
+    private static TestServer http;
+    private static TestServer https;
+    private static H2TestServer h2;
+    private static TestCertificate cert;
+    private static final AtomicInteger cacheHits = new AtomicInteger();
+    private static volatile String lastRange;
+    private static volatile byte[] lastBody;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() throws Exception {
+        // /data/N은 N 바이트를 Content-Length로, /chunked/N은 chunked로 보냄.
+        http = TestServer.http()
+                .handle("/data/", ex -> TestServer.send(ex, 200, pattern(size(ex, "/data/"))))
+                .handle("/chunked/", ex -> {
+                    byte[] body = pattern(size(ex, "/chunked/"));
+                    ex.sendResponseHeaders(200, 0);
+                    try (OutputStream out = ex.getResponseBody()) {
+                        for (int off = 0; off < body.length; off += 10_000)
+                            out.write(body, off, Math.min(10_000, body.length - off));
+                    }
+                })
+                // 받은 바디를 남겨 두고 "메소드 길이"를 돌려줌.
+                .handle("/echo", ex -> {
+                    lastBody = TestServer.readBody(ex);
+                    ex.getResponseHeaders().set("Content-Type", "text/plain");
+                    TestServer.send(ex, 200, ex.getRequestMethod() + " " + lastBody.length);
+                })
+                // /redirect/K는 K번 302로 돌린 뒤 /data/100으로 보냄.
+                .handle("/redirect/", ex -> {
+                    int hops = size(ex, "/redirect/");
+                    ex.getResponseHeaders().set("Location", hops > 1 ? "/redirect/" + (hops - 1) : "/data/100");
+                    TestServer.send(ex, 302, "");
+                })
+                // /see-other/CODE는 받은 바디를 버리고 CODE로 /echo에 보냄.
+                .handle("/see-other/", ex -> {
+                    TestServer.readBody(ex);
+                    ex.getResponseHeaders().set("Location", "/echo");
+                    TestServer.send(ex, size(ex, "/see-other/"), "");
+                })
+                .handle("/gzip", ex -> {
+                    byte[] text = ("gzip body line\n".repeat(20_000)).getBytes(StandardCharsets.US_ASCII);
+                    ex.getResponseHeaders().set("Content-Type", "text/plain");
+                    String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+                    if (accept != null && accept.contains("gzip")) {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                            gz.write(text);
+                        }
+                        ex.getResponseHeaders().set("Content-Encoding", "gzip");
+                        text = out.toByteArray();
+                    }
+                    TestServer.send(ex, 200, text);
+                })
+                // Range: bytes=N- 를 받으면 206으로 나머지만 보냄.
+                .handle("/file", ex -> {
+                    byte[] body = pattern(LARGE);
+                    lastRange = ex.getRequestHeaders().getFirst("Range");
+                    ex.getResponseHeaders().set("ETag", "\"v1\"");
+                    if (lastRange != null && lastRange.startsWith("bytes=") && lastRange.endsWith("-")) {
+                        int from = Integer.parseInt(lastRange.substring(6, lastRange.length() - 1));
+                        ex.getResponseHeaders().set("Content-Range",
+                                "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+                        TestServer.send(ex, 206, Arrays.copyOfRange(body, from, body.length));
+                    } else {
+                        TestServer.send(ex, 200, body);
+                    }
+                })
+                .handle("/cached", ex -> {
+                    cacheHits.incrementAndGet();
+                    ex.getResponseHeaders().set("Content-Type", "text/plain");
+                    ex.getResponseHeaders().set("Cache-Control", "max-age=60");
+                    TestServer.send(ex, 200, "cached body");
+                });
+
+        cert = TestCertificate.create(certDir);
+        https = TestServer.https(cert.serverContext())
+                .handle("/secure", ex -> {
+                    ex.getResponseHeaders().set("Content-Type", "text/plain");
+                    TestServer.send(ex, 200, "secure body");
+                });
+
+        // /h2/N은 N 바이트를 보냄. 클라이언트의 스트림 창(1 MiB)보다 크면 WINDOW_UPDATE를 기다려야 함.
+        // 다른 경로는 "메소드 바디길이"를 돌려줌.
+        h2 = new H2TestServer(ex -> {
+            if (ex.path().startsWith("/h2/"))
+                ex.respond(200, pattern(Integer.parseInt(ex.path().substring(4))),
+                        "content-type", "application/octet-stream");
+            else
+                ex.respond(200, ex.method() + " " + ex.body().length, "content-type", "text/plain");
+        });
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        http.close();
+        https.close();
+        h2.close();
+    }
+
+    private static int size(HttpExchange ex, String prefix) {
+        return Integer.parseInt(ex.getRequestURI().getPath().substring(prefix.length()));
+    }
+
+    private static byte[] pattern(int size) {
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++)
+            b[i] = (byte) ('a' + i % 26);
+        return b;
+    }
+
+    private record Result(int exit, String out, String err) {
+    }
+
+    // 이 테스트와 같은 클래스패스로 Main을 실행함.
+    private static Result scurl(String... args) throws Exception {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(Main.class.getName());
+        cmd.addAll(List.of(args));
+        Process p = new ProcessBuilder(cmd).redirectInput(ProcessBuilder.Redirect.PIPE).start();
+        p.getOutputStream().close();
+        CompletableFuture<byte[]> out = CompletableFuture.supplyAsync(() -> readAll(p.getInputStream()));
+        CompletableFuture<byte[]> err = CompletableFuture.supplyAsync(() -> readAll(p.getErrorStream()));
+        if (!p.waitFor(60, TimeUnit.SECONDS)) {
+            p.destroyForcibly();
+            throw new AssertionError("scurl " + String.join(" ", args) + " did not finish");
+        }
+        return new Result(p.exitValue(), new String(out.get(), StandardCharsets.UTF_8),
+                new String(err.get(), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    // -o 파일로 받고 받은 바이트를 돌려줌.
+    private byte[] download(String... args) throws Exception {
+        Path out = dir.resolve("out-" + System.nanoTime());
+        List<String> all = new ArrayList<>(List.of(args));
+        all.add(0, "-o");
+        all.add(1, out.toString());
+        Result r = scurl(all.toArray(String[]::new));
+        assertEquals(0, r.exit(), r.err());
+        return Files.readAllBytes(out);
+    }
+
+    @Test
+    void contentLengthAndChunkedBodies() throws Exception {
+        assertArrayEquals(pattern(1), download(http.url("/data/1")));
+        assertArrayEquals(pattern(LARGE), download(http.url("/data/" + LARGE)));
+        assertArrayEquals(pattern(LARGE), download(http.url("/chunked/" + LARGE)));
+    }
+
+    // 길이도 chunked도 없이 연결을 닫아서 끝내는 응답.
+    @Test
+    void bodyEndsWithConnectionClose() throws Exception {
+        byte[] body = pattern(300_000);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread t = new Thread(() -> {
+                try (Socket s = server.accept()) {
+                    InputStream in = s.getInputStream();
+                    // 요청 헤더 끝(빈 줄)까지 읽음.
+                    int state = 0;
+                    while (state < 4) {
+                        int c = in.read();
+                        if (c < 0)
+                            return;
+                        state = c == (state % 2 == 0 ? '\r' : '\n') ? state + 1 : 0;
+                    }
+                    OutputStream out = s.getOutputStream();
+                    out.write("HTTP/1.1 200 OK\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                } catch (IOException e) {
+                    // 테스트가 실패로 확인함.
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            assertArrayEquals(body, download("http://127.0.0.1:" + server.getLocalPort() + "/eof"));
+        }
+    }
+
+    @Test
+    void postMultipartAndUpload() throws Exception {
+        Result r = scurl("-X", "POST", "-d", "a=1&b=2", http.url("/echo"));
+        assertEquals("POST 7", r.out());
+
+        Path file = dir.resolve("upload.bin");
+        Files.write(file, pattern(LARGE));
+        r = scurl("--data-binary", "@" + file, http.url("/echo"));
+        assertEquals("POST " + LARGE, r.out());
+        assertArrayEquals(pattern(LARGE), lastBody);
+
+        r = scurl("-T", file.toString(), http.url("/echo"));
+        assertEquals("PUT " + LARGE, r.out());
+        assertArrayEquals(pattern(LARGE), lastBody);
+
+        Path part = dir.resolve("part.txt");
+        Files.writeString(part, "multipart file content");
+        r = scurl("-F", "file=@" + part, http.url("/echo"));
+        assertTrue(r.out().startsWith("POST "), r.out());
+        String sent = new String(lastBody, StandardCharsets.UTF_8);
+        assertTrue(sent.contains("filename=\"part.txt\""), sent);
+        assertTrue(sent.contains("multipart file content"), sent);
+    }
+
+    @Test
+    void redirectsAreFollowedWithL() throws Exception {
+        Result r = scurl("-L", "-o", dir.resolve("r").toString(), "-w", "%{http_code} %{num_redirects}",
+                http.url("/redirect/3"));
+        assertEquals(0, r.exit(), r.err());
+        assertEquals("200 3", r.out());
+        assertArrayEquals(pattern(100), Files.readAllBytes(dir.resolve("r")));
+
+        r = scurl("-w", "%{http_code}", http.url("/redirect/3"));
+        assertEquals("302", r.out());
+    }
+
+    // 303과 POST의 302는 바디 없는 GET으로, 307은 메소드와 바디 그대로 따라감(Client.send와 같은 규칙).
+    @Test
+    void redirectRewritesPostToGet() throws Exception {
+        assertEquals("GET 0", scurl("-L", "-X", "POST", "-d", "a=1", http.url("/see-other/303")).out());
+        assertEquals("GET 0", scurl("-L", "-X", "POST", "-d", "a=1", http.url("/see-other/302")).out());
+        assertEquals("POST 3", scurl("-L", "-X", "POST", "-d", "a=1", http.url("/see-other/307")).out());
+        Path file = dir.resolve("data.bin");
+        Files.write(file, pattern(LARGE));
+        assertEquals("GET 0", scurl("-L", "--data-binary", "@" + file, http.url("/see-other/303")).out());
+        assertEquals("GET 0", scurl("-L", "-T", file.toString(), http.url("/see-other/303")).out());
+        assertEquals("PUT " + LARGE, scurl("-L", "-T", file.toString(), http.url("/see-other/302")).out());
+    }
+
+    @Test
+    void compressedBodyIsDecoded() throws Exception {
+        String expected = "gzip body line\n".repeat(20_000);
+        assertEquals(expected, scurl("--compressed", http.url("/gzip")).out());
+        assertEquals(expected, scurl(http.url("/gzip")).out());
+    }
+
+    // 받다 만 파일은 Range로 나머지만 받아 붙임.
+    @Test
+    void downloadResumesWithRange() throws Exception {
+        Path file = dir.resolve("partial");
+        Files.write(file, Arrays.copyOf(pattern(LARGE), 1_000_000));
+        Result r = scurl("-C", "-", "-o", file.toString(), http.url("/file"));
+        assertEquals(0, r.exit(), r.err());
+        assertEquals("bytes=1000000-", lastRange);
+        assertArrayEquals(pattern(LARGE), Files.readAllBytes(file));
+    }
+
+    @Test
+    void cachedResponseIsReused() throws Exception {
+        String cacheDir = dir.resolve("cache").toString();
+        int before = cacheHits.get();
+        assertEquals("cached body", scurl("--cache", cacheDir, http.url("/cached")).out());
+        assertEquals("cached body", scurl("--cache", cacheDir, http.url("/cached")).out());
+        assertEquals(before + 1, cacheHits.get());
+    }
+
+    @Test
+    void httpsWithCaCertOrInsecure() throws Exception {
+        String url = https.url("/secure");
+        assertEquals("secure body", new String(download("--cacert", cert.pem().toString(), url),
+                StandardCharsets.UTF_8));
+        assertEquals("secure body", new String(download("-k", url), StandardCharsets.UTF_8));
+        // localhost도 SAN에 있음.
+        assertEquals("secure body", new String(download("--cacert", cert.pem().toString(),
+                url.replace("127.0.0.1", "localhost")), StandardCharsets.UTF_8));
+
+        Result r = scurl("-o", dir.resolve("untrusted").toString(), url);
+        assertNotEquals(0, r.exit());
+    }
+
+    @Test
+    void h2cPriorKnowledge() throws Exception {
+        int connections = h2.connections();
+        // 스트림 창(1 MiB)과 연결 창(16 MiB)을 넘는 바디.
+        int size = 20 << 20;
+        assertArrayEquals(pattern(size), download("--http2-prior-knowledge", h2.url("/h2/" + size)));
+        Result r = scurl("--http2-prior-knowledge", "-X", "POST", "-d", "a=1&b=2", h2.url("/echo"));
+        assertEquals("POST 7", r.out(), r.err());
+        assertEquals(connections + 2, h2.connections());
+    }
+
+    @Test
+    void h2cUpgrade() throws Exception {
+        int upgrades = h2.upgrades();
+        assertArrayEquals(pattern(100_000), download("--http2", h2.url("/h2/100000")));
+        assertEquals(upgrades + 1, h2.upgrades());
+    }
+
+    // batch 모드에서 같은 host로 가는 h2c 요청은 연결 하나에 스트림으로 나눠 보냄.
+    @Test
+    void h2cBatchMultiplexesStreams() throws Exception {
+        Path batch = dir.resolve("batch.txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            lines.add("--http2-prior-knowledge " + h2.url("/h2/" + (1000 + i)));
+        Files.write(batch, lines);
+        int connections = h2.connections();
+        int streams = h2.streams();
+        Result r = scurl("--batch", batch.toString(), "--parallel", "8");
+        assertEquals(0, r.exit(), r.err());
+        assertEquals(20, r.out().lines().filter(l -> l.contains("\"status\":200")).count(), r.out());
+        assertEquals(streams + 20, h2.streams());
+        assertTrue(h2.connections() - connections <= 2, "connections: " + (h2.connections() - connections));
+    }
+}
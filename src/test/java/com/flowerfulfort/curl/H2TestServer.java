@@ -0,0 +1,550 @@
+package com.flowerfulfort.curl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 테스트용 루프백 h2c 서버. prior knowledge와 HTTP/1.1 Upgrade: h2c 둘 다 받음.
+// 요청 헤더는 Hpack.Decoder로 풀고 응답 헤더는 Hpack.Encoder로 압축함. DATA는 클라이언트가 알린
+// 창(SETTINGS_INITIAL_WINDOW_SIZE, WINDOW_UPDATE)만큼만 보내고, 받은 DATA의 창은 바로 돌려줌.
+// 클라이언트가 보낸 RST_STREAM과 GOAWAY의 오류 코드는 남겨 두어 테스트에서 확인함.
+final class H2TestServer implements Closeable {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    // 프레임 종류
+    static final int DATA = 0x0;
+    static final int HEADERS = 0x1;
+    static final int RST_STREAM = 0x3;
+    static final int SETTINGS = 0x4;
+    static final int PING = 0x6;
+    static final int GOAWAY = 0x7;
+    static final int WINDOW_UPDATE = 0x8;
+    static final int CONTINUATION = 0x9;
+
+    // 플래그
+    static final int END_STREAM = 0x1;
+    static final int ACK = 0x1;
+    static final int END_HEADERS = 0x4;
+
+    // SETTINGS
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+    private static final int DEFAULT_WINDOW = 65_535;
+    private static final int FRAME_SIZE = 16_384;
+
+    interface Handler {
+        void handle(Exchange ex) throws IOException;
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "h2-test-server");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler handler;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicInteger upgrades = new AtomicInteger();
+    private final AtomicInteger http1 = new AtomicInteger();
+    // 클라이언트가 보낸 RST_STREAM(스트림 -> 오류 코드)과 GOAWAY 오류 코드.
+    private final Map<Integer, Integer> resets = new ConcurrentHashMap<>();
+    private final List<Integer> goAways = new CopyOnWriteArrayList<>();
+    private volatile int maxConcurrentStreams;
+    private volatile boolean upgrade = true;
+
+    H2TestServer(Handler handler) throws IOException {
+        this.handler = handler;
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + port() + path;
+    }
+
+    // 0이 아니면 SETTINGS_MAX_CONCURRENT_STREAMS로 알림. 이후에 맺는 연결부터 적용.
+    H2TestServer setMaxConcurrentStreams(int max) {
+        maxConcurrentStreams = max;
+        return this;
+    }
+
+    // false면 Upgrade: h2c를 무시하고 HTTP/1.1로 "http/1.1"을 돌려줌.
+    H2TestServer setUpgrade(boolean upgrade) {
+        this.upgrade = upgrade;
+        return this;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    int streams() {
+        return streams.get();
+    }
+
+    int upgrades() {
+        return upgrades.get();
+    }
+
+    // HTTP/1.1로 답한 요청 수.
+    int http1Requests() {
+        return http1.get();
+    }
+
+    Integer reset(int streamId) {
+        return resets.get(streamId);
+    }
+
+    List<Integer> goAways() {
+        return goAways;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                executor.execute(() -> new Conn(s).run());
+            } catch (IOException e) {
+                // close()로 닫힌 경우.
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    static byte[] setting(int id, int value) {
+        byte[] p = new byte[6];
+        p[0] = (byte) (id >>> 8);
+        p[1] = (byte) id;
+        putInt(p, 2, value);
+        return p;
+    }
+
+    static byte[] int32(int value) {
+        byte[] p = new byte[4];
+        putInt(p, 0, value);
+        return p;
+    }
+
+    private static void putInt(byte[] a, int off, int v) {
+        a[off] = (byte) (v >>> 24);
+        a[off + 1] = (byte) (v >>> 16);
+        a[off + 2] = (byte) (v >>> 8);
+        a[off + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] a, int off) {
+        return (a[off] & 0xff) << 24 | (a[off + 1] & 0xff) << 16 | (a[off + 2] & 0xff) << 8 | (a[off + 3] & 0xff);
+    }
+
+    // 요청 하나(스트림 하나). 핸들러는 respond 또는 reset으로 끝내야 함.
+    static final class Exchange {
+        private final Conn conn;
+        private final int id;
+        private final Map<String, String> headers;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private Exchange(Conn conn, int id, Map<String, String> headers) {
+            this.conn = conn;
+            this.id = id;
+            this.headers = headers;
+        }
+
+        int streamId() {
+            return id;
+        }
+
+        String method() {
+            return headers.get(":method");
+        }
+
+        String path() {
+            return headers.get(":path");
+        }
+
+        // 이름은 소문자.
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        byte[] body() {
+            return body.toByteArray();
+        }
+
+        // fields는 응답 헤더의 이름(소문자), 값이 번갈아 들어 있음. 바디는 창이 허락하는 만큼씩 보냄.
+        void respond(int status, byte[] data, String... fields) throws IOException {
+            conn.headers(id, status, fields, data.length == 0);
+            conn.data(id, data);
+        }
+
+        void respond(int status, String data, String... fields) throws IOException {
+            respond(status, data.getBytes(StandardCharsets.UTF_8), fields);
+        }
+
+        void reset(int code) throws IOException {
+            conn.frame(RST_STREAM, 0, id, int32(code));
+        }
+
+        // 아무 프레임이나 그대로 보냄. 오류 처리를 확인할 때 씀.
+        void frame(int type, int flags, int streamId, byte[] payload) throws IOException {
+            conn.frame(type, flags, streamId, payload);
+        }
+
+        // GOAWAY를 보내고 연결을 닫음. lastStreamId보다 큰 스트림은 처리하지 않은 것.
+        void goAway(int lastStreamId, int code) throws IOException {
+            byte[] p = new byte[8];
+            putInt(p, 0, lastStreamId);
+            putInt(p, 4, code);
+            conn.frame(GOAWAY, 0, 0, p);
+            conn.close();
+        }
+    }
+
+    // 연결 하나. 읽기는 이 연결의 스레드에서, 요청 처리와 응답 쓰기는 executor에서 함.
+    private final class Conn {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        // out으로 보호.
+        private final Hpack.Encoder encoder = new Hpack.Encoder();
+        private final Map<Integer, Exchange> open = new HashMap<>();
+
+        // 아래는 this로 보호.
+        private long sendWindow = DEFAULT_WINDOW;
+        private int initialWindow = DEFAULT_WINDOW;
+        private final Map<Integer, long[]> streamWindows = new HashMap<>();
+        private boolean closed;
+
+        Conn(Socket socket) {
+            this.socket = socket;
+            try {
+                this.in = new BufferedInputStream(socket.getInputStream());
+                this.out = socket.getOutputStream();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void run() {
+            try {
+                String line = readLine();
+                if (line == null)
+                    return;
+                if (line.equals("PRI * HTTP/2.0")) {
+                    readPreface(PREFACE.length - line.length() - 2);
+                    start();
+                } else if (!http1(line)) {
+                    return;
+                }
+                frames();
+            } catch (IOException e) {
+                // 클라이언트가 끊었거나 close()로 닫음.
+            } finally {
+                close();
+            }
+        }
+
+        private void readPreface(int remaining) throws IOException {
+            byte[] rest = in.readNBytes(remaining);
+            String expected = new String(PREFACE, PREFACE.length - remaining, remaining, StandardCharsets.US_ASCII);
+            if (!new String(rest, StandardCharsets.US_ASCII).equals(expected))
+                throw new IOException("bad preface");
+        }
+
+        private void start() throws IOException {
+            ByteArrayOutputStream settings = new ByteArrayOutputStream();
+            if (maxConcurrentStreams > 0)
+                settings.writeBytes(setting(SETTINGS_MAX_CONCURRENT_STREAMS, maxConcurrentStreams));
+            frame(SETTINGS, 0, 0, settings.toByteArray());
+        }
+
+        // HTTP/1.1 요청. Upgrade: h2c면 101로 바꾸고 그 요청을 스트림 1로 처리함. 연결을 계속 쓰면 true.
+        private boolean http1(String requestLine) throws IOException {
+            while (true) {
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine()) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0)
+                        headers.put(line.substring(0, colon).strip().toLowerCase(Locale.ROOT),
+                                line.substring(colon + 1).strip());
+                }
+                if (line == null)
+                    return false;
+                String[] parts = requestLine.split(" ");
+                if (upgrade && "h2c".equalsIgnoreCase(headers.get("upgrade"))) {
+                    upgrades.incrementAndGet();
+                    out.write(("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    applySettings(Base64.getUrlDecoder().decode(headers.getOrDefault("http2-settings", "")));
+                    readPreface(PREFACE.length);
+                    start();
+                    headers.put(":method", parts[0]);
+                    headers.put(":path", parts[1]);
+                    headers.put(":authority", headers.get("host"));
+                    synchronized (this) {
+                        streamWindows.put(1, new long[] { initialWindow });
+                    }
+                    dispatch(new Exchange(this, 1, headers));
+                    return true;
+                }
+                http1.incrementAndGet();
+                in.skipNBytes(Long.parseLong(headers.getOrDefault("content-length", "0")));
+                out.write("HTTP/1.1 200 OK\r\nContent-Length: 8\r\n\r\nhttp/1.1".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                if ((requestLine = readLine()) == null)
+                    return false;
+            }
+        }
+
+        private void frames() throws IOException {
+            byte[] header = new byte[9];
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            boolean blockEndStream = false;
+            while (true) {
+                if (in.readNBytes(header, 0, 9) < 9)
+                    return;
+                int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | (header[2] & 0xff);
+                int type = header[3] & 0xff;
+                int flags = header[4] & 0xff;
+                int streamId = getInt(header, 5) & 0x7fffffff;
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length)
+                    throw new EOFException();
+                switch (type) {
+                    case HEADERS -> {
+                        // 클라이언트는 패딩과 우선순위를 쓰지 않음.
+                        block.reset();
+                        block.writeBytes(payload);
+                        blockEndStream = (flags & END_STREAM) != 0;
+                        if ((flags & END_HEADERS) != 0)
+                            onHeaders(streamId, block.toByteArray(), blockEndStream);
+                    }
+                    case CONTINUATION -> {
+                        block.writeBytes(payload);
+                        if ((flags & END_HEADERS) != 0)
+                            onHeaders(streamId, block.toByteArray(), blockEndStream);
+                    }
+                    case DATA -> {
+                        Exchange ex = open.get(streamId);
+                        if (length > 0) {
+                            frame(WINDOW_UPDATE, 0, 0, int32(length));
+                            if (ex != null && (flags & END_STREAM) == 0)
+                                frame(WINDOW_UPDATE, 0, streamId, int32(length));
+                        }
+                        if (ex != null) {
+                            ex.body.writeBytes(payload);
+                            if ((flags & END_STREAM) != 0)
+                                dispatch(open.remove(streamId));
+                        }
+                    }
+                    case SETTINGS -> {
+                        if ((flags & ACK) == 0) {
+                            applySettings(payload);
+                            frame(SETTINGS, ACK, 0, new byte[0]);
+                        }
+                    }
+                    case WINDOW_UPDATE -> {
+                        int increment = getInt(payload, 0) & 0x7fffffff;
+                        synchronized (this) {
+                            if (streamId == 0) {
+                                sendWindow += increment;
+                            } else {
+                                long[] w = streamWindows.get(streamId);
+                                if (w != null)
+                                    w[0] += increment;
+                            }
+                            notifyAll();
+                        }
+                    }
+                    case RST_STREAM -> {
+                        resets.put(streamId, getInt(payload, 0));
+                        open.remove(streamId);
+                        synchronized (this) {
+                            streamWindows.remove(streamId);
+                            notifyAll();
+                        }
+                    }
+                    case PING -> {
+                        if ((flags & ACK) == 0)
+                            frame(PING, ACK, 0, payload);
+                    }
+                    case GOAWAY -> goAways.add(getInt(payload, 4));
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private void onHeaders(int streamId, byte[] block, boolean endStream) throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            decoder.decode(block, 0, block.length, headers::put);
+            synchronized (this) {
+                streamWindows.put(streamId, new long[] { initialWindow });
+            }
+            Exchange ex = new Exchange(this, streamId, headers);
+            if (endStream)
+                dispatch(ex);
+            else
+                open.put(streamId, ex);
+        }
+
+        private void applySettings(byte[] payload) {
+            for (int i = 0; i + 6 <= payload.length; i += 6) {
+                int id = (payload[i] & 0xff) << 8 | (payload[i + 1] & 0xff);
+                int value = getInt(payload, i + 2);
+                if (id == SETTINGS_INITIAL_WINDOW_SIZE) {
+                    synchronized (this) {
+                        int delta = value - initialWindow;
+                        initialWindow = value;
+                        for (long[] w : streamWindows.values())
+                            w[0] += delta;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        private void dispatch(Exchange ex) {
+            streams.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    handler.handle(ex);
+                } catch (IOException | RuntimeException e) {
+                    // 핸들러가 실패하면 클라이언트가 기다리지 않도록 연결을 끊음.
+                    close();
+                }
+            });
+        }
+
+        void headers(int streamId, int status, String[] fields, boolean endStream) throws IOException {
+            synchronized (out) {
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                encoder.encode(":status", String.valueOf(status), block);
+                for (int i = 0; i < fields.length; i += 2)
+                    encoder.encode(fields[i], fields[i + 1], block);
+                byte[] b = block.toByteArray();
+                int off = 0;
+                int type = HEADERS;
+                do {
+                    int n = Math.min(FRAME_SIZE, b.length - off);
+                    boolean last = off + n == b.length;
+                    int flags = (last ? END_HEADERS : 0) | (type == HEADERS && endStream ? END_STREAM : 0);
+                    writeFrame(type, flags, streamId, b, off, n);
+                    off += n;
+                    type = CONTINUATION;
+                } while (off < b.length);
+                out.flush();
+            }
+        }
+
+        // 연결 창과 스트림 창이 둘 다 남아 있을 때만 보냄. 클라이언트가 스트림을 끊으면 멈춤.
+        void data(int streamId, byte[] data) throws IOException {
+            int off = 0;
+            while (off < data.length) {
+                int n;
+                synchronized (this) {
+                    long[] w;
+                    while ((w = streamWindows.get(streamId)) != null && (sendWindow <= 0 || w[0] <= 0) && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException(e);
+                        }
+                    }
+                    if (w == null || closed)
+                        return;
+                    n = (int) Math.min(Math.min(data.length - off, FRAME_SIZE), Math.min(sendWindow, w[0]));
+                    sendWindow -= n;
+                    w[0] -= n;
+                }
+                boolean last = off + n == data.length;
+                synchronized (out) {
+                    writeFrame(DATA, last ? END_STREAM : 0, streamId, data, off, n);
+                    out.flush();
+                }
+                off += n;
+            }
+        }
+
+        void frame(int type, int flags, int streamId, byte[] payload) throws IOException {
+            synchronized (out) {
+                writeFrame(type, flags, streamId, payload, 0, payload.length);
+                out.flush();
+            }
+        }
+
+        private void writeFrame(int type, int flags, int streamId, byte[] payload, int off, int len)
+                throws IOException {
+            byte[] h = new byte[9];
+            h[0] = (byte) (len >>> 16);
+            h[1] = (byte) (len >>> 8);
+            h[2] = (byte) len;
+            h[3] = (byte) type;
+            h[4] = (byte) flags;
+            putInt(h, 5, streamId);
+            out.write(h);
+            out.write(payload, off, len);
+        }
+
+        // CRLF를 뺀 한 줄. 줄을 읽기 전에 EOF면 null.
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int len = sb.length();
+                    if (len > 0 && sb.charAt(len - 1) == '\r')
+                        sb.setLength(len - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return sb.length() == 0 ? null : sb.toString();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 이미 닫힘.
+            }
+        }
+    }
+}
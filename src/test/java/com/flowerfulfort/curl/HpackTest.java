@@ -0,0 +1,103 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+// RFC 7541 부록 C의 예제. 같은 Encoder, Decoder로 이어서 처리해야 동적 테이블이 예제와 맞음.
+class HpackTest {
+    private static byte[] hex(String s) {
+        return HexFormat.of().parseHex(s.replace(" ", ""));
+    }
+
+    private static List<String> decode(Hpack.Decoder decoder, byte[] block) throws IOException {
+        List<String> fields = new ArrayList<>();
+        decoder.decode(block, 0, block.length, (name, value) -> {
+            fields.add(name);
+            fields.add(value);
+        });
+        return fields;
+    }
+
+    private static byte[] encode(Hpack.Encoder encoder, String... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < fields.length; i += 2)
+            encoder.encode(fields[i], fields[i + 1], out);
+        return out.toByteArray();
+    }
+
+    private static final String[] REQUEST1 = { ":method", "GET", ":scheme", "http", ":path", "/",
+            ":authority", "www.example.com" };
+    private static final String[] REQUEST2 = { ":method", "GET", ":scheme", "http", ":path", "/",
+            ":authority", "www.example.com", "cache-control", "no-cache" };
+    private static final String[] REQUEST3 = { ":method", "GET", ":scheme", "https", ":path", "/index.html",
+            ":authority", "www.example.com", "custom-key", "custom-value" };
+
+    // C.3: 허프만 없이 보낸 요청.
+    @Test
+    void decodesRequestsWithoutHuffman() throws IOException {
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        assertEquals(List.of(REQUEST1), decode(decoder, hex("8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d")));
+        assertEquals(List.of(REQUEST2), decode(decoder, hex("8286 84be 5808 6e6f 2d63 6163 6865")));
+        assertEquals(List.of(REQUEST3), decode(decoder,
+                hex("8287 85bf 400a 6375 7374 6f6d 2d6b 6579 0c63 7573 746f 6d2d 7661 6c75 65")));
+    }
+
+    // C.4: 허프만으로 보낸 요청. Encoder는 허프만이 짧으면 허프만으로 쓰므로 예제와 바이트가 같음.
+    @Test
+    void encodesRequestsLikeTheRfc() throws IOException {
+        byte[][] expected = {
+                hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"),
+                hex("8286 84be 5886 a8eb 1064 9cbf"),
+                hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf") };
+        String[][] requests = { REQUEST1, REQUEST2, REQUEST3 };
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        for (int i = 0; i < requests.length; i++) {
+            byte[] block = encode(encoder, requests[i]);
+            assertArrayEquals(expected[i], block, "request " + (i + 1));
+            assertEquals(List.of(requests[i]), decode(decoder, block));
+        }
+    }
+
+    // C.5: 테이블 크기 256에서 항목이 밀려나는 응답.
+    @Test
+    void decodesResponsesWithEviction() throws IOException {
+        Hpack.Decoder decoder = new Hpack.Decoder(256);
+        assertEquals(List.of(":status", "302", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, hex("4803 3330 3258 0770 7269 7661 7465 611d 4d6f 6e2c 2032 3120 4f63 7420 3230"
+                        + "3133 2032 303a 3133 3a32 3120 474d 546e 1768 7474 7073 3a2f 2f77 7777 2e65 7861"
+                        + "6d70 6c65 2e63 6f6d")));
+        assertEquals(List.of(":status", "307", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, hex("4803 3330 37c1 c0bf")));
+        assertEquals(List.of(":status", "200", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:22 GMT", "location", "https://www.example.com",
+                "content-encoding", "gzip",
+                "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"),
+                decode(decoder, hex("88c1 611d 4d6f 6e2c 2032 3120 4f63 7420 3230 3133 2032 303a 3133 3a32 3220"
+                        + "474d 54c0 5a04 677a 6970 7738 666f 6f3d 4153 444a 4b48 514b 425a 584f 5157 454f"
+                        + "5049 5541 5851 5745 4f49 553b 206d 6178 2d61 6765 3d33 3630 303b 2076 6572 7369"
+                        + "6f6e 3d31")));
+    }
+
+    @Test
+    void rejectsBadBlocks() {
+        Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+        // 동적 테이블이 비어 있는데 62번을 가리킴.
+        assertThrows(MalformedResponseException.class, () -> decode(decoder, hex("be")));
+        // 알린 크기보다 큰 테이블 크기 변경.
+        assertThrows(MalformedResponseException.class, () -> decode(decoder, hex("3fe2 1f")));
+        // 길이보다 짧은 문자열.
+        assertThrows(MalformedResponseException.class, () -> decode(decoder, hex("400a 6375")));
+    }
+}
@@ -0,0 +1,242 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// 루프백 h2c 서버(H2TestServer)에 Client로 요청해 봄. 경로가 서버의 동작을 정함.
+class Http2ConnectionTest {
+    private static final int MAX_WINDOW = Integer.MAX_VALUE;
+
+    private H2TestServer server;
+    private Client client;
+    // 경로마다 한 번만 하는 동작(GOAWAY, REFUSED_STREAM)을 했는지.
+    private final Map<String, Boolean> done = new ConcurrentHashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new H2TestServer(this::handle);
+        client = Client.builder().build();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        release.countDown();
+        client.close();
+        server.close();
+    }
+
+    private void handle(H2TestServer.Exchange ex) throws IOException {
+        String path = ex.path();
+        int id = ex.streamId();
+        if (path.startsWith("/size/")) {
+            ex.respond(200, pattern(Integer.parseInt(path.substring(6))));
+        } else if (path.equals("/echo")) {
+            ex.respond(200, pattern(0), "x-method", ex.method(), "x-length", String.valueOf(ex.body().length),
+                    "x-match", String.valueOf(Arrays.equals(ex.body(), pattern(ex.body().length))));
+        } else if (path.equals("/big-header")) {
+            ex.respond(200, "ok", "x-big", "v".repeat(20_000), "x-echo", ex.header("x-request"));
+        } else if (path.equals("/goaway") && done.putIfAbsent(path, true) == null) {
+            // 이 스트림을 처리하지 않았다고 알리고 연결을 닫음.
+            ex.goAway(id - 2, Http2Connection.NO_ERROR);
+        } else if (path.equals("/refused") && done.putIfAbsent(path, true) == null) {
+            ex.reset(Http2Connection.REFUSED_STREAM);
+        } else if (path.equals("/internal-error")) {
+            ex.reset(0x2);
+        } else if (path.equals("/zero-window")) {
+            ex.frame(H2TestServer.WINDOW_UPDATE, 0, id, H2TestServer.int32(0));
+            await(ex);
+        } else if (path.equals("/stream-overflow")) {
+            ex.frame(H2TestServer.WINDOW_UPDATE, 0, id, H2TestServer.int32(MAX_WINDOW));
+            await(ex);
+        } else if (path.equals("/settings-overflow")) {
+            // 스트림 창을 2^31-1까지 채운 뒤 초기 창을 1 늘림.
+            ex.frame(H2TestServer.WINDOW_UPDATE, 0, id, H2TestServer.int32(MAX_WINDOW - 65_535));
+            ex.frame(H2TestServer.SETTINGS, 0, 0,
+                    H2TestServer.setting(H2TestServer.SETTINGS_INITIAL_WINDOW_SIZE, 65_536));
+            await(ex);
+        } else {
+            ex.respond(200, "stream " + id);
+        }
+    }
+
+    // 클라이언트가 스트림을 끊을 때까지 응답하지 않음. 끊지 않으면 테스트가 멈추지 않도록 CANCEL로 끊음.
+    private void await(H2TestServer.Exchange ex) throws IOException {
+        try {
+            if (!release.await(3, TimeUnit.SECONDS))
+                ex.reset(Http2Connection.CANCEL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] pattern(int size) {
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++)
+            b[i] = (byte) ('a' + i % 26);
+        return b;
+    }
+
+    private Response send(String path) throws IOException {
+        return client.send(Request.builder().setUrl(server.url(path)).setHttp2PriorKnowledge().build());
+    }
+
+    private byte[] bytes(String path) throws IOException {
+        try (Response res = send(path)) {
+            return res.bodyAsBytes();
+        }
+    }
+
+    private String get(String path) throws IOException {
+        return new String(bytes(path), StandardCharsets.UTF_8);
+    }
+
+    private Integer awaitReset(int streamId) throws InterruptedException {
+        for (int i = 0; i < 100 && server.reset(streamId) == null; i++)
+            Thread.sleep(50);
+        return server.reset(streamId);
+    }
+
+    // 여러 스레드의 요청이 연결 하나에 스트림으로 섞여 가고 응답은 제 스트림으로 돌아옴.
+    @Test
+    void concurrentStreamsShareOneConnection() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int size = 1000 * (i + 1);
+                futures.add(executor.submit(() -> bytes("/size/" + size)));
+            }
+            for (int i = 0; i < futures.size(); i++)
+                assertArrayEquals(pattern(1000 * (i + 1)), futures.get(i).get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(server.connections() <= 2, "connections: " + server.connections());
+        assertEquals(40, server.streams());
+    }
+
+    // 프레임 하나(16 KB)보다 큰 헤더 블록은 CONTINUATION으로 나눠 오고 감.
+    @Test
+    void largeHeaderBlocksUseContinuation() throws IOException {
+        Request request = Request.builder().setUrl(server.url("/big-header")).setHttp2PriorKnowledge()
+                .addHeader("X-Request", "r".repeat(30_000)).build();
+        try (Response res = client.send(request)) {
+            assertEquals(200, res.statusCode());
+            assertEquals("v".repeat(20_000), res.header("x-big"));
+            assertEquals("r".repeat(30_000), res.header("x-echo"));
+        }
+    }
+
+    // 응답은 클라이언트의 스트림 창(1 MiB)과 연결 창(16 MiB)을, 요청 바디는 서버의 기본 창(64 KB)을 넘음.
+    @Test
+    void flowControlWindowsAreHonoured() throws IOException {
+        int size = 20 << 20;
+        assertArrayEquals(pattern(size), bytes("/size/" + size));
+        Request upload = Request.builder().setUrl(server.url("/echo")).setMethod(Method.POST)
+                .setBody(pattern(3 << 20)).setHttp2PriorKnowledge().build();
+        try (Response res = client.send(upload)) {
+            assertEquals(String.valueOf(3 << 20), res.header("x-length"));
+            assertEquals("true", res.header("x-match"));
+        }
+    }
+
+    // GOAWAY의 마지막 스트림보다 뒤의 스트림은 처리되지 않았으므로 새 연결로 다시 보냄.
+    @Test
+    void streamRefusedByGoAwayIsRetried() throws IOException {
+        assertEquals("stream 1", get("/first"));
+        assertEquals("stream 1", get("/goaway"));
+        assertEquals(2, server.connections());
+    }
+
+    @Test
+    void refusedStreamIsRetried() throws IOException {
+        assertEquals("stream 3", get("/refused"));
+        assertEquals(1, server.connections());
+    }
+
+    // 처리했을 수도 있는 스트림의 오류는 다시 보내지 않음.
+    @Test
+    void resetStreamFails() {
+        HttpException e = assertThrows(HttpException.class, () -> get("/internal-error"));
+        assertTrue(e.getMessage().contains("INTERNAL_ERROR"), e.getMessage());
+        assertEquals(1, server.streams());
+    }
+
+    @Test
+    void zeroStreamWindowUpdateResetsStream() throws Exception {
+        HttpException e = assertThrows(HttpException.class, () -> get("/zero-window"));
+        assertTrue(e.getMessage().contains("PROTOCOL_ERROR"), e.getMessage());
+        assertEquals(Http2Connection.PROTOCOL_ERROR, awaitReset(1));
+        // 스트림 오류이므로 연결은 계속 씀.
+        assertEquals("stream 3", get("/next"));
+        assertEquals(1, server.connections());
+    }
+
+    @Test
+    void streamWindowOverflowResetsStream() throws Exception {
+        HttpException e = assertThrows(HttpException.class, () -> get("/stream-overflow"));
+        assertTrue(e.getMessage().contains("FLOW_CONTROL_ERROR"), e.getMessage());
+        assertEquals(Http2Connection.FLOW_CONTROL_ERROR, awaitReset(1));
+        assertEquals("stream 3", get("/next"));
+        assertEquals(1, server.connections());
+    }
+
+    // 초기 창을 바꿔 열린 스트림의 창이 넘치면 연결 오류로 GOAWAY를 보냄.
+    @Test
+    void settingsWindowOverflowIsConnectionError() throws Exception {
+        HttpException e = assertThrows(HttpException.class, () -> get("/settings-overflow"));
+        assertTrue(e.getMessage().contains("FLOW_CONTROL_ERROR"), e.getMessage());
+        for (int i = 0; i < 100 && server.goAways().isEmpty(); i++)
+            Thread.sleep(50);
+        assertEquals(List.of(Http2Connection.FLOW_CONTROL_ERROR), server.goAways());
+        assertNull(server.reset(1));
+        // 다음 요청은 새 연결로 감.
+        assertEquals("stream 1", get("/next"));
+        assertEquals(2, server.connections());
+    }
+
+    // Upgrade: h2c를 받아 주면 요청은 스트림 1로 답하고, 다음 요청은 그 연결의 스트림 3으로 감.
+    @Test
+    void upgradeSwitchesConnectionToHttp2() throws IOException {
+        Request request = Request.builder().setUrl(server.url("/upgrade")).setHttp2().build();
+        for (String expected : new String[] { "stream 1", "stream 3" }) {
+            try (Response res = client.send(request)) {
+                assertEquals(expected, new String(res.bodyAsBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(1, server.upgrades());
+        assertEquals(1, server.connections());
+    }
+
+    @Test
+    void refusedUpgradeStaysOnHttp11() throws IOException {
+        server.setUpgrade(false);
+        Request request = Request.builder().setUrl(server.url("/upgrade")).setHttp2().build();
+        try (Response res = client.send(request)) {
+            assertEquals("http/1.1", new String(res.bodyAsBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0, server.upgrades());
+        assertEquals(1, server.http1Requests());
+    }
+}
@@ -0,0 +1,189 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HttpCacheTest {
+    private TestServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = TestServer.http()
+                .handle("/fresh", ex -> {
+                    hits.incrementAndGet();
+                    ex.getResponseHeaders().set("Cache-Control", "max-age=60");
+                    TestServer.send(ex, 200, "fresh body");
+                })
+                .handle("/etag", ex -> {
+                    hits.incrementAndGet();
+                    ex.getResponseHeaders().set("ETag", "\"v1\"");
+                    if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        ex.getResponseHeaders().set("Cache-Control", "max-age=60");
+                        ex.sendResponseHeaders(304, -1);
+                        return;
+                    }
+                    ex.getResponseHeaders().set("Cache-Control", "no-cache");
+                    TestServer.send(ex, 200, "version one");
+                });
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private String get(HttpCache cache, String path) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpRequest request = HttpRequest.builder().setHost(server.url(path)).setCache(cache).setOutput(out).build();
+        request.request();
+        assertNull(request.getFailure());
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void freshResponseIsServedWithoutAskingServer() throws IOException {
+        HttpCache cache = new HttpCache(dir, HttpCache.DEFAULT_MAX_SIZE);
+        assertEquals("fresh body", get(cache, "/fresh"));
+        assertEquals("fresh body", get(cache, "/fresh"));
+        assertEquals(1, hits.get());
+    }
+
+    // no-cache 응답은 매번 If-None-Match로 묻고, 304가 오면 저장된 바디와 새 기한을 씀.
+    @Test
+    void staleResponseIsRevalidatedWith304() throws IOException {
+        HttpCache cache = new HttpCache(dir, HttpCache.DEFAULT_MAX_SIZE);
+        assertEquals("version one", get(cache, "/etag"));
+        assertEquals("version one", get(cache, "/etag"));
+        assertEquals(2, hits.get());
+        assertEquals(1, notModified.get());
+        // 304의 max-age=60으로 신선해졌으므로 더 묻지 않음.
+        assertEquals("version one", get(cache, "/etag"));
+        assertEquals(2, hits.get());
+    }
+
+    private static ResponseHeader header(String... lines) throws IOException {
+        String text = "HTTP/1.1 200 OK\r\n" + String.join("\r\n", lines) + "\r\n\r\n";
+        ResponseHeader header = new ResponseHeader();
+        assertTrue(header.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1))));
+        return header;
+    }
+
+    private static void store(HttpCache cache, String url, byte[] body, String... headers) throws IOException {
+        try (HttpCache.Writer writer = cache.writer(Method.GET, url, "", header(headers))) {
+            assertNotNull(writer);
+            writer.tee(OutputStream.nullOutputStream()).write(body);
+            writer.commit();
+        }
+    }
+
+    private static byte[] body(HttpCache.Entry entry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.copyTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        HttpCache cache = new HttpCache(dir, 2500);
+        byte[] body = new byte[1000];
+        store(cache, "http://h/a", body, "Cache-Control: max-age=60");
+        Thread.sleep(20);
+        store(cache, "http://h/b", body, "Cache-Control: max-age=60");
+        Thread.sleep(20);
+        // a를 읽어서 b가 가장 오래 쓰지 않은 항목이 됨.
+        try (HttpCache.Entry a = cache.lookup(Method.GET, "http://h/a", "")) {
+            assertNotNull(a);
+        }
+        Thread.sleep(20);
+        store(cache, "http://h/c", body, "Cache-Control: max-age=60");
+
+        try (HttpCache.Entry a = cache.lookup(Method.GET, "http://h/a", "");
+                HttpCache.Entry b = cache.lookup(Method.GET, "http://h/b", "");
+                HttpCache.Entry c = cache.lookup(Method.GET, "http://h/c", "")) {
+            assertNotNull(a);
+            assertNull(b);
+            assertNotNull(c);
+        }
+    }
+
+    // 같은 디렉터리를 쓰는 여러 HttpCache(batch 모드의 줄마다 하나)가 동시에 써도
+    // 읽는 쪽은 언제나 짝이 맞는 meta와 body를 봄.
+    @Test
+    void concurrentWritersKeepEntriesConsistent() throws Exception {
+        int writers = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(writers * 2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < writers; t++) {
+                int id = t;
+                futures.add(executor.submit(() -> {
+                    HttpCache cache = new HttpCache(dir, HttpCache.DEFAULT_MAX_SIZE);
+                    byte[] body = new byte[4096 + id * 100];
+                    Arrays.fill(body, (byte) id);
+                    for (int i = 0; i < 40; i++)
+                        store(cache, "http://h/" + (i % 4), body, "Cache-Control: max-age=60", "X-Writer: " + id);
+                    return null;
+                }));
+                futures.add(executor.submit(() -> {
+                    HttpCache cache = new HttpCache(dir, HttpCache.DEFAULT_MAX_SIZE);
+                    for (int i = 0; i < 40; i++) {
+                        try (HttpCache.Entry e = cache.lookup(Method.GET, "http://h/" + (i % 4), "")) {
+                            if (e != null)
+                                assertConsistent(e);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures)
+                f.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        HttpCache cache = new HttpCache(dir, HttpCache.DEFAULT_MAX_SIZE);
+        for (int k = 0; k < 4; k++) {
+            try (HttpCache.Entry e = cache.lookup(Method.GET, "http://h/" + k, "")) {
+                assertNotNull(e);
+                assertConsistent(e);
+            }
+        }
+    }
+
+    private static void assertConsistent(HttpCache.Entry e) throws IOException {
+        ResponseHeader h = new ResponseHeader();
+        assertTrue(h.read(new ByteArrayInputStream(e.headerBytes())));
+        int id = Integer.parseInt(h.get("X-Writer"));
+        byte[] body = body(e);
+        assertEquals(4096 + id * 100, body.length);
+        assertEquals(String.valueOf(body.length), h.get("Content-Length"));
+        for (byte b : body)
+            assertEquals(id, b);
+    }
+}
@@ -0,0 +1,130 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+// Client, AsyncClient로 보낸 요청도 scurl 명령처럼 JFR 이벤트를 남기는지 확인함.
+class JfrEventTest {
+    private static final String EXCHANGE = "com.flowerfulfort.curl.Exchange";
+    private static final String CONNECT = "com.flowerfulfort.curl.Connect";
+
+    private static TestServer server;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = TestServer.http()
+                .handle("/data", ex -> TestServer.send(ex, 200, new byte[1000]))
+                .handle("/redirect", ex -> {
+                    ex.getResponseHeaders().set("Location", "/data");
+                    TestServer.send(ex, 302, "moved");
+                });
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    // body를 실행하는 동안 남은 이 서버의 이벤트.
+    private List<RecordedEvent> record(Body body) throws Exception {
+        Path file = dir.resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EXCHANGE);
+            recording.enable(CONNECT);
+            recording.start();
+            body.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        String port = String.valueOf(server.port());
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals(CONNECT) ? e.getInt("port") == server.port()
+                        : e.getString("url").contains(":" + port + "/"))
+                .toList();
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+    }
+
+    // 단계 시각은 이벤트 시작부터 연결, 요청 전송, 첫 응답 순으로 늘어남.
+    private static void assertPhases(RecordedEvent e, long bytesReceived) {
+        Duration connected = e.getDuration("connected");
+        Duration requestSent = e.getDuration("requestSent");
+        Duration firstByte = e.getDuration("firstByte");
+        assertTrue(connected.toNanos() > 0, e.toString());
+        assertTrue(requestSent.compareTo(connected) >= 0, e.toString());
+        assertTrue(firstByte.compareTo(requestSent) >= 0, e.toString());
+        assertTrue(e.getDuration().compareTo(firstByte) >= 0, e.toString());
+        assertTrue(e.getLong("bytesSent") > 0, e.toString());
+        assertEquals(bytesReceived, e.getLong("bytesReceived"), e.toString());
+        assertNull(e.getString("failure"), e.toString());
+    }
+
+    // 리디렉션을 따라가면 단계마다 이벤트가 하나씩 생기고, 바디를 다 읽어야 마지막 이벤트가 남음.
+    @Test
+    void clientSendRecordsExchanges() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            try (Client client = Client.builder().build();
+                    Response res = client.send(
+                            Request.builder().setUrl(server.url("/redirect")).setRedirect().build())) {
+                assertEquals(1000, res.bodyAsBytes().length);
+            }
+        });
+        List<RecordedEvent> exchanges = ofType(events, EXCHANGE);
+        assertEquals(2, exchanges.size(), exchanges.toString());
+        RecordedEvent first = exchanges.get(0);
+        RecordedEvent second = exchanges.get(1);
+        assertEquals(302, first.getInt("statusCode"));
+        assertEquals("GET", first.getString("method"));
+        assertFalse(first.getBoolean("reused"));
+        assertPhases(first, 0);
+        assertEquals(200, second.getInt("statusCode"));
+        assertEquals(server.url("/data"), second.getString("url"));
+        assertTrue(second.getBoolean("reused"));
+        assertPhases(second, 1000);
+        assertEquals(1, ofType(events, CONNECT).size());
+    }
+
+    @Test
+    void asyncClientRecordsConnectAndExchange() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            try (AsyncClient client = AsyncClient.builder().setEventLoops(1).build()) {
+                Response res = client.send(Request.builder().setUrl(server.url("/data")).build())
+                        .get(10, TimeUnit.SECONDS);
+                assertEquals(200, res.statusCode());
+            }
+        });
+        List<RecordedEvent> exchanges = ofType(events, EXCHANGE);
+        assertEquals(1, exchanges.size(), exchanges.toString());
+        assertEquals(200, exchanges.get(0).getInt("statusCode"));
+        assertPhases(exchanges.get(0), 1000);
+        List<RecordedEvent> connects = ofType(events, CONNECT);
+        assertEquals(1, connects.size(), connects.toString());
+        assertEquals("127.0.0.1", connects.get(0).getString("address"));
+    }
+}
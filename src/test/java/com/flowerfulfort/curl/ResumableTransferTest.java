@@ -0,0 +1,88 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResumableTransferTest {
+    private static final byte[] DATA = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private TestServer server;
+    // HEAD가 돌려줄 상태 코드와 서버에 이미 있는 바이트.
+    private volatile int headStatus;
+    private volatile byte[] stored;
+    private volatile String contentRange;
+    private volatile byte[] received;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = TestServer.http().handle("/upload", ex -> {
+            if (ex.getRequestMethod().equals("HEAD")) {
+                TestServer.send(ex, headStatus, headStatus == 200 ? stored : "error page".getBytes());
+                return;
+            }
+            contentRange = ex.getRequestHeaders().getFirst("Content-Range");
+            received = TestServer.readBody(ex);
+            TestServer.send(ex, 204, "");
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private void upload() throws Exception {
+        Path file = dir.resolve("data");
+        Files.write(file, DATA);
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        new ResumableTransfer(server.url("/upload"), null, false, 0).upload(file, -1, discard, discard);
+    }
+
+    @Test
+    void uploadResumesFromRemoteSize() throws Exception {
+        headStatus = 200;
+        stored = Arrays.copyOf(DATA, 4);
+        upload();
+        assertEquals("bytes 4-9/10", contentRange);
+        assertArrayEquals(Arrays.copyOfRange(DATA, 4, 10), received);
+    }
+
+    @Test
+    void uploadStartsOverWhenRemoteIsMissing() throws Exception {
+        headStatus = 404;
+        upload();
+        assertNull(contentRange);
+        assertArrayEquals(DATA, received);
+    }
+
+    // 오류 응답의 Content-Length(오류 페이지 크기)를 이어 보낼 위치로 쓰면 안 됨.
+    @Test
+    void uploadFailsWhenRemoteSizeIsUnknown() {
+        for (int status : new int[] { 401, 500 }) {
+            headStatus = status;
+            received = null;
+            IOException e = assertThrows(IOException.class, this::upload);
+            assertTrue(e.getMessage().contains("HTTP " + status), e.getMessage());
+            assertNull(received);
+        }
+    }
+}
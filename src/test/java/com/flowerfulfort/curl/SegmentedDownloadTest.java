@@ -0,0 +1,101 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedDownloadTest {
+    private static final byte[] DATA = new byte[3 << 20];
+    private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 00:00:00 GMT";
+
+    static {
+        for (int i = 0; i < DATA.length; i++)
+            DATA[i] = (byte) (i * 31);
+    }
+
+    private TestServer server;
+    private volatile String etag;
+    // 0이 아니면 Content-Range의 시작을 이만큼 밀어서 보냄.
+    private volatile long shift;
+    private final Queue<String> ifRange = new ConcurrentLinkedQueue<>();
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = TestServer.http().handle("/file", ex -> {
+            ex.getResponseHeaders().set("Accept-Ranges", "bytes");
+            ex.getResponseHeaders().set("ETag", etag);
+            ex.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            String range = ex.getRequestHeaders().getFirst("Range");
+            if (range == null) {
+                TestServer.send(ex, 200, DATA);
+                return;
+            }
+            String v = ex.getRequestHeaders().getFirst("If-Range");
+            ifRange.add(v != null ? v : "");
+            String[] r = range.substring("bytes=".length()).split("-");
+            long from = Long.parseLong(r[0]);
+            long to = Long.parseLong(r[1]) + 1;
+            ex.getResponseHeaders().set("Content-Range",
+                    "bytes " + (from + shift) + "-" + (to - 1 + shift) + "/" + DATA.length);
+            TestServer.send(ex, 206, Arrays.copyOfRange(DATA, (int) from, (int) to));
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private Path download() throws Exception {
+        Path file = dir.resolve("out");
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        new SegmentedDownload(server.url("/file"), null, false, 2, file).run(discard);
+        return file;
+    }
+
+    @Test
+    void strongEtagIsUsedForIfRange() throws Exception {
+        etag = "\"v1\"";
+        assertArrayEquals(DATA, Files.readAllBytes(download()));
+        assertFalse(ifRange.isEmpty());
+        assertTrue(ifRange.stream().allMatch("\"v1\""::equals), ifRange.toString());
+    }
+
+    // 약한 ETag는 If-Range에 쓸 수 없으므로 Last-Modified로 대신함.
+    @Test
+    void weakEtagFallsBackToLastModified() throws Exception {
+        etag = "W/\"v1\"";
+        assertArrayEquals(DATA, Files.readAllBytes(download()));
+        assertFalse(ifRange.isEmpty());
+        assertTrue(ifRange.stream().allMatch(LAST_MODIFIED::equals), ifRange.toString());
+    }
+
+    // 요청과 다른 범위의 바디를 그대로 파일에 쓰면 안 됨.
+    @Test
+    void mismatchedContentRangeFails() {
+        etag = "\"v1\"";
+        shift = 1;
+        IOException e = assertThrows(IOException.class, this::download);
+        assertTrue(e.getMessage().contains("Content-Range"), e.getMessage());
+        assertFalse(Files.exists(dir.resolve("out")));
+    }
+}
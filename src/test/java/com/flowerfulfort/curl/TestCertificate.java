@@ -0,0 +1,74 @@
+package com.flowerfulfort.curl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+// keytool로 만든 자체 서명 인증서(SAN: localhost, 127.0.0.1). 서버용 PKCS12와 --cacert로 줄 PEM을 dir에 씀.
+final class TestCertificate {
+    static final String PASSWORD = "changeit";
+
+    private final Path dir;
+    private final Path keyStore;
+    private final Path pem;
+
+    private TestCertificate(Path dir) {
+        this.dir = dir;
+        this.keyStore = dir.resolve("server.p12");
+        this.pem = dir.resolve("server.pem");
+    }
+
+    static TestCertificate create(Path dir) throws IOException, InterruptedException {
+        TestCertificate cert = new TestCertificate(dir);
+        keytool("-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2",
+                "-storetype", "PKCS12", "-keystore", cert.keyStore.toString(), "-storepass", PASSWORD);
+        keytool("-exportcert", "-rfc", "-alias", "server", "-file", cert.pem.toString(),
+                "-keystore", cert.keyStore.toString(), "-storepass", PASSWORD);
+        return cert;
+    }
+
+    Path pem() {
+        return pem;
+    }
+
+    // 인증서만 담은 신뢰 저장소. open이면 keytool 기본 설정(인증서를 암호로 감쌈) 대신 암호 없이 읽을 수 있게 만듦.
+    Path trustStore(String name, boolean open) throws IOException, InterruptedException {
+        Path store = dir.resolve(name);
+        List<String> args = new ArrayList<>();
+        if (open) {
+            args.add("-J-Dkeystore.pkcs12.certProtectionAlgorithm=NONE");
+            args.add("-J-Dkeystore.pkcs12.macAlgorithm=NONE");
+        }
+        args.addAll(List.of("-importcert", "-noprompt", "-alias", "ca", "-file", pem.toString(),
+                "-storetype", "PKCS12", "-keystore", store.toString(), "-storepass", PASSWORD));
+        keytool(args.toArray(String[]::new));
+        return store;
+    }
+
+    // 이 인증서로 서버 쪽 핸드셰이크를 하는 SSLContext.
+    SSLContext serverContext() throws IOException, GeneralSecurityException {
+        KeyStore ks = KeyStore.getInstance(keyStore.toFile(), PASSWORD.toCharArray());
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, PASSWORD.toCharArray());
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), null, null);
+        return ctx;
+    }
+
+    private static void keytool(String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "keytool").toString());
+        cmd.addAll(List.of(args));
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        byte[] out = p.getInputStream().readAllBytes();
+        if (p.waitFor() != 0)
+            throw new IOException("keytool failed: " + new String(out));
+    }
+}
@@ -0,0 +1,114 @@
+package com.flowerfulfort.curl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+// 테스트용 루프백 HTTP/1.1 서버. 경로마다 핸들러를 붙여 씀.
+// 프레이밍을 직접 정해야 하는 경우(잘린 응답 등)는 각 테스트에서 ServerSocket으로 따로 만듦.
+final class TestServer implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "test-server");
+        t.setDaemon(true);
+        return t;
+    });
+    // 요청을 보낸 클라이언트 포트. 연결 수를 셀 때 씀.
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private TestServer(HttpServer server) {
+        this.server = server;
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    static TestServer http() throws IOException {
+        return new TestServer(HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50));
+    }
+
+    // context의 인증서로 https를 받음.
+    static TestServer https(SSLContext context) throws IOException {
+        HttpsServer server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        server.setHttpsConfigurator(new HttpsConfigurator(context));
+        return new TestServer(server);
+    }
+
+    TestServer handle(String path, HttpHandler handler) {
+        server.createContext(path, ex -> {
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            try {
+                handler.handle(ex);
+            } finally {
+                ex.close();
+            }
+        });
+        return this;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    String url(String path) {
+        return (server instanceof HttpsServer ? "https" : "http") + "://127.0.0.1:" + port() + path;
+    }
+
+    // 지금까지 요청을 보낸 연결 수.
+    int connections() {
+        return clientPorts.size();
+    }
+
+    static void send(HttpExchange ex, int code, String body) throws IOException {
+        send(ex, code, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void send(HttpExchange ex, int code, byte[] body) throws IOException {
+        if (ex.getRequestMethod().equals("HEAD")) {
+            // HttpServer는 바디 없는 HEAD 응답 뒤에 연결을 닫으므로 클라이언트가 재사용하지 않게 알림.
+            ex.getResponseHeaders().set("Connection", "close");
+            ex.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            ex.sendResponseHeaders(code, -1);
+            return;
+        }
+        if (body.length == 0) {
+            // -1이면 바디 스트림이 이미 닫혀 있어 쓸 수 없음.
+            ex.sendResponseHeaders(code, -1);
+            return;
+        }
+        ex.sendResponseHeaders(code, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static byte[] readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,179 @@
+package com.flowerfulfort.curl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// 자체 서명 인증서(SAN: localhost, 127.0.0.1)를 쓰는 루프백 TLS 서버에 Tls.handshake로 붙어 봄.
+class TlsTest {
+    @TempDir
+    static Path dir;
+    private static TestCertificate cert;
+    private static Path pem;
+    private static SSLServerSocket server;
+
+    @BeforeAll
+    static void start() throws Exception {
+        cert = TestCertificate.create(dir);
+        pem = cert.pem();
+        server = (SSLServerSocket) cert.serverContext().getServerSocketFactory().createServerSocket(0, 50,
+                InetAddress.getLoopbackAddress());
+        SSLParameters params = server.getSSLParameters();
+        params.setApplicationProtocols(new String[] { "h2", "http/1.1" });
+        server.setSSLParameters(params);
+        Thread t = new Thread(TlsTest::serve, "tls-test-server");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // 핸드셰이크 뒤 한 바이트를 보내고 클라이언트가 닫을 때까지 기다림.
+    // 클라이언트는 그 바이트를 읽으면서 TLS 1.3 세션 티켓도 받음.
+    private static void serve() {
+        while (!server.isClosed()) {
+            Socket s;
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread t = new Thread(() -> {
+                try (Socket c = s) {
+                    c.getOutputStream().write('x');
+                    c.getOutputStream().flush();
+                    c.getInputStream().read();
+                } catch (IOException e) {
+                    // 클라이언트가 핸드셰이크에 실패함.
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        server.close();
+    }
+
+    private static SSLSocket connect(Tls tls, String host) throws IOException {
+        Socket plain = new Socket();
+        plain.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+        SSLSocket ssl = tls.handshake(plain, host, server.getLocalPort());
+        InputStream in = ssl.getInputStream();
+        assertEquals('x', in.read());
+        return ssl;
+    }
+
+    private static Tls trusting(Path caCert) {
+        Tls tls = new Tls();
+        tls.setCaCert(caCert);
+        return tls;
+    }
+
+    @Test
+    void pemCaCertIsTrusted() throws IOException {
+        try (SSLSocket ssl = connect(trusting(pem), "localhost")) {
+            assertEquals("CN=localhost", ssl.getSession().getPeerPrincipal().getName());
+        }
+        // IP 주소로 연결하면 SAN의 IP로 확인함.
+        try (SSLSocket ssl = connect(trusting(pem), "127.0.0.1")) {
+            assertTrue(ssl.getSession().isValid());
+        }
+    }
+
+    @Test
+    void keystoreCaCertIsTrusted() throws Exception {
+        // keytool 기본 설정(인증서를 암호로 감쌈)과 암호 없이 읽을 수 있는 것 둘 다.
+        Path protectedStore = cert.trustStore("trust.p12", false);
+        Path openStore = cert.trustStore("open.p12", true);
+        for (Path store : new Path[] { protectedStore, openStore }) {
+            try (SSLSocket ssl = connect(trusting(store), "localhost")) {
+                assertTrue(ssl.getSession().isValid(), store.toString());
+            }
+        }
+    }
+
+    @Test
+    void emptyCaCertFails() throws IOException {
+        Path empty = dir.resolve("empty.pem");
+        Files.writeString(empty, "-----BEGIN CERTIFICATE-----\n-----END CERTIFICATE-----\n");
+        assertThrows(IOException.class, () -> connect(trusting(empty), "localhost"));
+    }
+
+    @Test
+    void untrustedCertificateFails() {
+        assertThrows(SSLHandshakeException.class, () -> connect(new Tls(), "localhost"));
+    }
+
+    @Test
+    void hostnameMismatchFails() {
+        SSLHandshakeException e = assertThrows(SSLHandshakeException.class,
+                () -> connect(trusting(pem), "example.invalid"));
+        assertTrue(e.getMessage().contains("example.invalid"), e.getMessage());
+    }
+
+    // -k는 신뢰하지 않는 인증서도, 이름이 다른 인증서도 받아들임.
+    @Test
+    void insecureSkipsVerification() throws IOException {
+        Tls tls = new Tls();
+        tls.setInsecure(true);
+        try (SSLSocket ssl = connect(tls, "example.invalid")) {
+            assertTrue(ssl.getSession().isValid());
+        }
+    }
+
+    @Test
+    void alpnNegotiatesProtocol() throws IOException {
+        Tls tls = trusting(pem);
+        try (SSLSocket ssl = connect(tls, "localhost")) {
+            assertEquals("http/1.1", ssl.getApplicationProtocol());
+        }
+        tls.setApplicationProtocols("h2", "http/1.1");
+        try (SSLSocket ssl = connect(tls, "localhost")) {
+            assertEquals("h2", ssl.getApplicationProtocol());
+        }
+    }
+
+    // 같은 host:port로 다시 연결하면 저장된 세션(TLS 1.3이면 세션 티켓)으로 재개함.
+    // 재개한 세션은 처음 세션의 생성 시각과 서버 인증서를 그대로 가짐.
+    @Test
+    void sessionIsResumed() throws Exception {
+        Tls tls = trusting(pem);
+        SSLSession first;
+        try (SSLSocket ssl = connect(tls, "localhost")) {
+            first = ssl.getSession();
+        }
+        Thread.sleep(50);
+        try (SSLSocket ssl = connect(tls, "localhost")) {
+            SSLSession second = ssl.getSession();
+            assertEquals(first.getProtocol(), second.getProtocol());
+            assertEquals(first.getCreationTime(), second.getCreationTime());
+            assertArrayEquals(first.getPeerCertificates(), second.getPeerCertificates());
+        }
+        // 다른 Tls(다른 SSLContext)는 세션 캐시를 같이 쓰지 않으므로 새 세션을 만듦.
+        try (SSLSocket ssl = connect(trusting(pem), "localhost")) {
+            assertNotEquals(first.getCreationTime(), ssl.getSession().getCreationTime());
+        }
+    }
+}